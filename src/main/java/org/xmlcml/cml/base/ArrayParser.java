@@ -0,0 +1,334 @@
+/**
+ *    Copyright 2011 Peter Murray-Rust et. al.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package org.xmlcml.cml.base;
+
+import java.text.ParseException;
+
+import org.xmlcml.euclid.Util;
+
+/**
+ * <p>
+ * parses whitespace-separated arrays without regexes.
+ * </p>
+ * <p>
+ * String.split(S_WHITEREGEX) compiles a regex and creates a String for every
+ * token; for array attributes with 10^5 values (e.g. x3 on atomArray) that
+ * dominates parsing. This scans the string once and parses numbers in place.
+ * Plain decimals of up to 15 significant digits are converted exactly;
+ * anything else (NaN, INF, long mantissas, ...) falls back to
+ * Util.parseFlexibleDouble() or Integer.parseInt() so values and errors are
+ * unchanged.
+ * </p>
+ * <p>
+ * whitespace is that of S_WHITEREGEX (space, tab, newline, return, formfeed,
+ * vertical tab).
+ * </p>
+ * 
+ * @author pm286
+ * 
+ */
+public final class ArrayParser {
+
+	/** exactly representable powers of ten */
+	private static final double[] POW10 = {
+		1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+		1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22,
+	};
+	private static final int MAX_DIGITS = 15;
+
+	private ArrayParser() {
+	}
+
+	/** is character matched by \s.
+	 * @param c
+	 * @return true if whitespace
+	 */
+	public static boolean isWhitespace(char c) {
+		return c == ' ' || c == '\t' || c == '\n' || c == '\r' || c == '\f' || c == '\u000B';
+	}
+
+	/** trims and collapses whitespace to single spaces.
+	 * 
+	 * @param s
+	 * @return s itself if already normalized
+	 */
+	public static String normalize(String s) {
+		int n = s.length();
+		boolean normal = n == 0 || (!isWhitespace(s.charAt(0)) && !isWhitespace(s.charAt(n - 1)));
+		for (int i = 1; normal && i < n; i++) {
+			char c = s.charAt(i);
+			if (isWhitespace(c) && (c != ' ' || isWhitespace(s.charAt(i - 1)))) {
+				normal = false;
+			}
+		}
+		if (normal) {
+			return s;
+		}
+		StringBuilder sb = new StringBuilder(n);
+		int i = 0;
+		while (i < n) {
+			while (i < n && isWhitespace(s.charAt(i))) {
+				i++;
+			}
+			int start = i;
+			while (i < n && !isWhitespace(s.charAt(i))) {
+				i++;
+			}
+			if (i > start) {
+				if (sb.length() > 0) {
+					sb.append(' ');
+				}
+				sb.append(s, start, i);
+			}
+		}
+		return sb.toString();
+	}
+
+	/** number of whitespace-separated tokens.
+	 * 
+	 * @param s
+	 * @return count (0 for blank string)
+	 */
+	public static int countTokens(String s) {
+		int count = 0;
+		boolean inToken = false;
+		for (int i = 0, n = s.length(); i < n; i++) {
+			boolean white = isWhitespace(s.charAt(i));
+			if (!white && !inToken) {
+				count++;
+			}
+			inToken = !white;
+		}
+		return count;
+	}
+
+	/** splits on whitespace.
+	 * as s.trim().split(S_WHITEREGEX) so a blank string gives one empty token.
+	 * 
+	 * @param s
+	 * @return tokens
+	 */
+	public static String[] splitWhitespace(String s) {
+		int count = countTokens(s);
+		if (count == 0) {
+			return new String[] { CMLConstants.S_EMPTY };
+		}
+		String[] ss = new String[count];
+		if (count == 1) {
+			ss[0] = s.trim();
+			return ss;
+		}
+		int n = s.length();
+		int i = 0;
+		for (int k = 0; k < count; k++) {
+			while (isWhitespace(s.charAt(i))) {
+				i++;
+			}
+			int start = i;
+			while (i < n && !isWhitespace(s.charAt(i))) {
+				i++;
+			}
+			ss[k] = s.substring(start, i);
+		}
+		return ss;
+	}
+
+	/** parses whitespace-separated doubles.
+	 * 
+	 * @param s
+	 * @return array
+	 * @throws RuntimeException if any value is not a double
+	 */
+	public static double[] parseDoubles(String s) {
+		int count = countTokens(s);
+		if (count == 0) {
+			return new double[] { parseDouble(CMLConstants.S_EMPTY, 0, 0, 0) };
+		}
+		double[] dd = new double[count];
+		int n = s.length();
+		int i = 0;
+		for (int k = 0; k < count; k++) {
+			while (isWhitespace(s.charAt(i))) {
+				i++;
+			}
+			int start = i;
+			while (i < n && !isWhitespace(s.charAt(i))) {
+				i++;
+			}
+			dd[k] = parseDouble(s, start, i, k);
+		}
+		return dd;
+	}
+
+	/** parses whitespace-separated ints.
+	 * 
+	 * @param s
+	 * @return array
+	 * @throws RuntimeException if any value is not an int
+	 */
+	public static int[] parseInts(String s) {
+		int count = countTokens(s);
+		if (count == 0) {
+			return new int[] { parseInt(CMLConstants.S_EMPTY, 0, 0) };
+		}
+		int[] ii = new int[count];
+		int n = s.length();
+		int i = 0;
+		for (int k = 0; k < count; k++) {
+			while (isWhitespace(s.charAt(i))) {
+				i++;
+			}
+			int start = i;
+			while (i < n && !isWhitespace(s.charAt(i))) {
+				i++;
+			}
+			ii[k] = parseInt(s, start, i);
+		}
+		return ii;
+	}
+
+	/** parses s[start, end).
+	 * @param index of token for error message
+	 */
+	static double parseDouble(String s, int start, int end, int index) {
+		int i = start;
+		boolean negative = false;
+		if (i < end && (s.charAt(i) == '-' || s.charAt(i) == '+')) {
+			negative = s.charAt(i) == '-';
+			i++;
+		}
+		long mantissa = 0;
+		int nDigits = 0;
+		int exponent = 0;
+		boolean hasDigits = false;
+		for (; i < end; i++) {
+			int d = s.charAt(i) - '0';
+			if (d < 0 || d > 9) {
+				break;
+			}
+			hasDigits = true;
+			if (mantissa != 0 || d != 0) {
+				if (++nDigits > MAX_DIGITS) {
+					return parseDoubleSlow(s, start, end, index);
+				}
+				mantissa = mantissa * 10 + d;
+			}
+		}
+		if (i < end && s.charAt(i) == '.') {
+			for (i++; i < end; i++) {
+				int d = s.charAt(i) - '0';
+				if (d < 0 || d > 9) {
+					break;
+				}
+				hasDigits = true;
+				if (mantissa != 0 || d != 0) {
+					if (++nDigits > MAX_DIGITS) {
+						return parseDoubleSlow(s, start, end, index);
+					}
+					mantissa = mantissa * 10 + d;
+				}
+				exponent--;
+			}
+		}
+		if (!hasDigits) {
+			return parseDoubleSlow(s, start, end, index);
+		}
+		if (i < end && (s.charAt(i) == 'e' || s.charAt(i) == 'E')) {
+			i++;
+			boolean negativeExponent = false;
+			if (i < end && (s.charAt(i) == '-' || s.charAt(i) == '+')) {
+				negativeExponent = s.charAt(i) == '-';
+				i++;
+			}
+			if (i == end) {
+				return parseDoubleSlow(s, start, end, index);
+			}
+			int e = 0;
+			for (; i < end; i++) {
+				int d = s.charAt(i) - '0';
+				if (d < 0 || d > 9 || e > 1000) {
+					return parseDoubleSlow(s, start, end, index);
+				}
+				e = e * 10 + d;
+			}
+			exponent += (negativeExponent) ? -e : e;
+		}
+		if (i != end) {
+			return parseDoubleSlow(s, start, end, index);
+		}
+		double d;
+		if (mantissa == 0) {
+			d = 0.0;
+		} else if (exponent >= 0 && exponent < POW10.length) {
+			d = mantissa * POW10[exponent];
+		} else if (exponent < 0 && -exponent < POW10.length) {
+			d = mantissa / POW10[-exponent];
+		} else {
+			return parseDoubleSlow(s, start, end, index);
+		}
+		return (negative) ? -d : d;
+	}
+
+	private static double parseDoubleSlow(String s, int start, int end, int index) {
+		String token = s.substring(start, end);
+		try {
+			return Util.parseFlexibleDouble(token);
+		} catch (NumberFormatException nfe) {
+			throw new RuntimeException(CMLConstants.S_EMPTY + nfe);
+		} catch (ParseException e) {
+			throw new RuntimeException("Bad double value: " + token
+					+ " at " + index + " in " + s, e);
+		}
+	}
+
+	/** parses s[start, end). */
+	static int parseInt(String s, int start, int end) {
+		int i = start;
+		boolean negative = false;
+		if (i < end && (s.charAt(i) == '-' || s.charAt(i) == '+')) {
+			negative = s.charAt(i) == '-';
+			i++;
+		}
+		// at most 10 digits cannot overflow a long
+		if (i == end || end - i > 10) {
+			return parseIntSlow(s, start, end);
+		}
+		long value = 0;
+		for (; i < end; i++) {
+			int d = s.charAt(i) - '0';
+			if (d < 0 || d > 9) {
+				return parseIntSlow(s, start, end);
+			}
+			value = value * 10 + d;
+		}
+		if (negative) {
+			value = -value;
+		}
+		if (value < Integer.MIN_VALUE || value > Integer.MAX_VALUE) {
+			return parseIntSlow(s, start, end);
+		}
+		return (int) value;
+	}
+
+	private static int parseIntSlow(String s, int start, int end) {
+		try {
+			return Integer.parseInt(s.substring(start, end));
+		} catch (NumberFormatException nfe) {
+			throw new RuntimeException(CMLConstants.S_EMPTY + nfe);
+		}
+	}
+}
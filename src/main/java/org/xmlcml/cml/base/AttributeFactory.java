@@ -19,6 +19,8 @@
  */
 package org.xmlcml.cml.base;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -51,15 +53,77 @@ public class AttributeFactory implements CMLConstants {
 	private AttributeFactory() {
 	}
 	
+    /** reads the precompiled SchemaIndex if present, else the XSD.
+     */
     void init() {
+    	InputStream is = AttributeFactory.class.getClassLoader().getResourceAsStream(SchemaIndex.SCHEMA_INDEX);
+    	if (is != null) {
+    		try {
+    			initFromSchemaIndex(is);
+    			return;
+    		} catch (IOException e) {
+    			LOG.warn("cannot read "+SchemaIndex.SCHEMA_INDEX+"; using schema files: "+e);
+    		} finally {
+    			try {
+    				is.close();
+    			} catch (IOException e) {
+    				// ignore
+    			}
+    		}
+    	}
+    	initFromSchemaFiles();
+    }
+
+    void initFromSchemaFiles() {
 //        attributeGroupNameAttributeMap = new HashMap<String, CMLAttribute>();
         elementSynonymMap = new HashMap<String, Map<String, String>>();
         schemaManager = new SchemaManager();
     	schemaManager.readAndCreateIndexesFromSchemaFiles();
-    	AttributeFactory.attributeFactory.setSchemaManager(schemaManager);
+    	this.setSchemaManager(schemaManager);
     	makeSynonymMap();
     }
 
+    void initFromSchemaIndex(InputStream is) throws IOException {
+        schemaManager = new SchemaManager();
+        attributeGroupElementMap = new HashMap<String, Element>();
+        SchemaIndex.read(this, is);
+    }
+
+    /** factory indexed from the XSD files, ignoring any SchemaIndex.
+     * used to build the index and for comparison.
+     * @return factory
+     */
+    static AttributeFactory createFromSchemaFiles() {
+    	AttributeFactory factory = new AttributeFactory();
+    	factory.initFromSchemaFiles();
+    	return factory;
+    }
+
+    /** factory read from a SchemaIndex.
+     * @param is index
+     * @return factory
+     * @throws IOException
+     */
+    static AttributeFactory createFromSchemaIndex(InputStream is) throws IOException {
+    	AttributeFactory factory = new AttributeFactory();
+    	factory.initFromSchemaIndex(is);
+    	return factory;
+    }
+
+    void setIndexes(Map<String, CMLAttribute> attributeGroupNameAttributeMap, 
+    		Map<String, Map<String, String>> elementSynonymMap) {
+    	this.attributeGroupNameAttributeMap = attributeGroupNameAttributeMap;
+    	this.elementSynonymMap = elementSynonymMap;
+    }
+
+    Map<String, CMLAttribute> getAttributeGroupNameAttributeMap() {
+    	return attributeGroupNameAttributeMap;
+    }
+
+    Map<String, Map<String, String>> getElementSynonymMap() {
+    	return elementSynonymMap;
+    }
+
 	/** custom attributeFactory.
 	 * 
 	 * @param className
@@ -186,6 +250,19 @@ public class AttributeFactory implements CMLConstants {
 	}
 
 
+    /** schema type of attributeGroup.
+     * templates do not carry their type (so values are not checked by
+     * default); this is used by CMLNodeFactory when validating.
+     * @param attributeGroupName
+     * @return type or null if not known
+     */
+    public CMLType getSchemaTypeByGroupName(String attributeGroupName) {
+    	String typeName = schemaManager.getAttributeGenerator()
+    			.getAttributeGroupTypeNameMap().get(attributeGroupName);
+    	return (typeName == null) ? null :
+    		schemaManager.getTypeGenerator().getMap().get(typeName);
+    }
+
     /** create subclassed attribute template with dummy value.
      * @param attributeName 
      * @param element
@@ -42,6 +42,7 @@ import org.xmlcml.euclid.Util;
 public class AttributeGenerator extends AbstractGenerator {
 
 	private Map<String, CMLAttribute> attributeGroupMap;
+	private Map<String, String> attributeGroupTypeNameMap;
 	
 	/**
 	 * @param schemaManager 
@@ -54,6 +55,7 @@ public class AttributeGenerator extends AbstractGenerator {
 	
 	private void init() {
 		attributeGroupMap = new HashMap<String, CMLAttribute>();
+		attributeGroupTypeNameMap = new HashMap<String, String>();
 		nameList = new ArrayList<String>();
 	}
 	
@@ -130,6 +132,7 @@ public class AttributeGenerator extends AbstractGenerator {
 			throw new RuntimeException("Cannot find CMLType for "+typeS);
 		}
 		attribute = AttributeFactory.createCMLAttribute(attributeName, type);
+		attributeGroupTypeNameMap.put(attributeGroupName, typeS);
 		
 		List<Node> summarys = CMLUtil.getQueryNodes(attributeElement, ".//*[@class='summary']");
 		String summary = (summarys.size() == 0) ? "No summary" : summarys.get(0).getValue();
@@ -162,4 +165,12 @@ public class AttributeGenerator extends AbstractGenerator {
 		this.attributeGroupMap = attributeGroupMap;
 	}
 
+	/**
+	 * names of the types (keys in TypeGenerator map) of each attributeGroup.
+	 * @return the attributeGroupTypeNameMap
+	 */
+	public Map<String, String> getAttributeGroupTypeNameMap() {
+		return attributeGroupTypeNameMap;
+	}
+
 }
@@ -161,6 +161,7 @@ public class BooleanArraySTAttribute extends CMLAttribute {
      * @return null if not set
      */
     public Object getCMLValue() {
+        checkDeferred();
         return bb;
     }
 
@@ -170,6 +171,7 @@ public class BooleanArraySTAttribute extends CMLAttribute {
      * @return null if not set
      */
     public boolean[] getIntegerArray() {
+        checkDeferred();
         return bb;
     }
 
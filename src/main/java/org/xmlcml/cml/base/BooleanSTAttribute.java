@@ -129,6 +129,7 @@ public class BooleanSTAttribute extends CMLAttribute {
      * @return value
      */
     public Object getCMLValue() {
+        checkDeferred();
         return b;
     }
 
@@ -138,6 +139,7 @@ public class BooleanSTAttribute extends CMLAttribute {
      * @return value
      */
     public boolean getBoolean() {
+        checkDeferred();
         if (b == null) {
             throw new RuntimeException("booleaneger attribute unset");
         }
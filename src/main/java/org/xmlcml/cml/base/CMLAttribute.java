@@ -18,6 +18,7 @@ package org.xmlcml.cml.base;
 
 import nu.xom.Attribute;
 import nu.xom.NamespaceConflictException;
+import nu.xom.ParentNode;
 
 import org.apache.log4j.Logger;
 
@@ -49,6 +50,8 @@ public class CMLAttribute extends Attribute implements CMLConstants {
 
     
     protected CMLType cmlType;
+    /** type checked on first typed access (CMLBuilder.Validation.DEFERRED) */
+    protected CMLType deferredType;
     protected String summary;
     protected String description;
     protected String attributeGroupName; // used in code generation
@@ -96,6 +99,7 @@ public class CMLAttribute extends Attribute implements CMLConstants {
     public CMLAttribute(CMLAttribute att) {
         super(att);
         this.cmlType = att.cmlType;
+        this.deferredType = att.deferredType;
         // if (att.getLocalName().equals("dictRef")) {
         // new Exception().printStackTrace();
         // }
@@ -132,6 +136,24 @@ public class CMLAttribute extends Attribute implements CMLConstants {
         return newAttribute;
     }
     
+    /**
+     * sets value.
+     * invalidates structural hash and updates id index of owning element
+     * 
+     * @param value
+     */
+    public void setValue(String value) {
+        String oldValue = this.getValue();
+        super.setValue(value);
+        ParentNode parent = this.getParent();
+        if (parent instanceof CMLElement) {
+            ((CMLElement) parent).invalidateStructuralHash();
+            if (CMLElement.isIdAttribute(this)) {
+                ((CMLElement) parent).idChanged(oldValue, this.getValue());
+            }
+        }
+    }
+
     /**
      * sets attributeGroup name. normally only useful when generating code when
      * the attributeGroup name may be different from the attribute name. it is
@@ -263,6 +285,7 @@ public class CMLAttribute extends Attribute implements CMLConstants {
      * @return the value
      */
     public Object getCMLValue() {
+        checkDeferred();
         return getValue();
     }
 
@@ -333,4 +356,34 @@ public class CMLAttribute extends Attribute implements CMLConstants {
 		this.cmlType = cmlType;
 	}
 
+	/**
+	 * type against which the value is checked on first typed access.
+	 * used by CMLBuilder.Validation.DEFERRED. The value is not checked
+	 * when it is set.
+	 * 
+	 * @param type could be null
+	 */
+	public void setDeferredType(CMLType type) {
+		this.deferredType = type;
+	}
+
+	/**
+	 * checks value against any deferred type.
+	 * on success the type becomes the cmlType so later values
+	 * are checked when set. called by the typed getters.
+	 * 
+	 * @throws RuntimeException if value does not conform to type
+	 */
+	protected void checkDeferred() {
+		CMLType type = deferredType;
+		if (type != null) {
+			CMLAttribute check = (CMLAttribute) this.copy();
+			check.deferredType = null;
+			check.cmlType = type;
+			check.setCMLValue(this.getValue());
+			deferredType = null;
+			cmlType = type;
+		}
+	}
+
 }
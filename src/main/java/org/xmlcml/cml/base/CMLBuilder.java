@@ -35,6 +35,10 @@ import nu.xom.ValidityException;
  * Class extending the XOM builder, constructs a XOM builder using either the
  * CML node factory as default or a passed node factory.
  * </p>
+ * <p>
+ * The default constructors give each builder its own CMLNodeFactory so that
+ * separate builders may parse concurrently. A single builder is not threadsafe.
+ * </p>
  * 
  * @author Peter Murray-Rust
  * @version 5.0
@@ -42,22 +46,33 @@ import nu.xom.ValidityException;
  */
 public class CMLBuilder extends Builder implements CMLConstants {
 
+    /** checking of CML attribute values against their schema types.
+     */
+    public enum Validation {
+        /** check each value as it is parsed */
+        STRICT,
+        /** check each value on first typed access (getString(), getDouble(), ...) */
+        DEFERRED,
+        /** trusted input; values are not checked (default) */
+        OFF;
+    }
+
     /**
-     * Constructs a XOM builder using the (subclassed) CML node factory
+     * Constructs a XOM builder using a new (subclassed) CML node factory
      */
     public CMLBuilder() {
-        this(CMLNodeFactory.nodeFactory);
+        this(CMLNodeFactory.newInstance());
     }
     
 
     /**
-     * Constructs a XOM builder using the (subclassed) CML node factory
+     * Constructs a XOM builder using a new (subclassed) CML node factory
      * 
      * @param validate
      *            if true
      */
     public CMLBuilder(boolean validate) {
-        this(validate, CMLNodeFactory.nodeFactory);
+        this(validate, CMLNodeFactory.newInstance());
     }
 
     /**
@@ -82,6 +97,43 @@ public class CMLBuilder extends Builder implements CMLConstants {
         super(validate, nodeFactory);
     }
 
+    /**
+     * Constructs a XOM builder using a new CML node factory
+     * which checks attribute values against the schema.
+     * 
+     * @param validation
+     *            policy for CML attribute values
+     */
+    public CMLBuilder(Validation validation) {
+        this(CMLNodeFactory.newInstance());
+        setValidation(validation);
+    }
+
+    /**
+     * set policy for checking CML attribute values.
+     * only has effect if the node factory is a CMLNodeFactory.
+     * 
+     * @param validation
+     */
+    public void setValidation(Validation validation) {
+        NodeFactory factory = this.getNodeFactory();
+        if (!(factory instanceof CMLNodeFactory)) {
+            throw new RuntimeException("validation requires CMLNodeFactory");
+        }
+        ((CMLNodeFactory) factory).setValidation(validation);
+    }
+
+    /**
+     * get policy for checking CML attribute values.
+     * 
+     * @return policy (OFF if node factory is not a CMLNodeFactory)
+     */
+    public Validation getValidation() {
+        NodeFactory factory = this.getNodeFactory();
+        return (factory instanceof CMLNodeFactory) ?
+            ((CMLNodeFactory) factory).getValidation() : Validation.OFF;
+    }
+
     /**
      * convenience method to parse XML string.
      * 
@@ -41,6 +41,7 @@ import nu.xom.Text;
 import org.apache.log4j.Logger;
 import org.xmlcml.cml.attribute.RefAttribute;
 import org.xmlcml.cml.base.CMLLog.Severity;
+import org.xmlcml.cml.element.CMLElementRegistry;
 import org.xmlcml.euclid.Util;
 
 /**
@@ -120,9 +121,16 @@ public class CMLElement extends Element implements CMLConstants, Comparable<CMLE
 
     private Map<String, Object> propertyMap;
 
-    private Map<String, List<CMLElement>> idMap;
+    /** id index of tree; only held by oldest CML ancestor.*/
+    private IdIndex idIndex;
     private CMLLog log = null;
     private AbstractTool tool;
+    /** cached structural hash; null until requested or after mutation.*/
+    private Long structuralHash;
+    /** index of subtree; null until requested or after mutation.*/
+    private DescendantIndex descendantIndex;
+    /** incremented when elements are added to or removed from the subtree.*/
+    private int modificationCount;
     
     protected static CMLNodeFactory nodeFactory = CMLNodeFactory.nodeFactory;
     protected static AttributeFactory attributeFactory = AttributeFactory.attributeFactory;
@@ -223,10 +231,66 @@ public class CMLElement extends Element implements CMLConstants, Comparable<CMLE
     	} else if (att == null) {
     	} else {
     		att.setCMLValue(value);
+    		String oldId = isIdAttribute(att) ? this.getAttributeValue(ID) : null;
     		super.addAttribute(att);
+    		invalidateStructuralHash();
+    		if (isIdAttribute(att)) {
+    			idChanged(oldId, att.getValue());
+    		}
     	}
     }
 
+    /** override addAttribute.
+     * invalidates structural hash, updates id index
+     * @param attribute
+     */
+    public void addAttribute(Attribute attribute) {
+        String oldId = isIdAttribute(attribute) ? this.getAttributeValue(ID) : null;
+        super.addAttribute(attribute);
+        invalidateStructuralHash();
+        if (isIdAttribute(attribute)) {
+            idChanged(oldId, attribute.getValue());
+        }
+    }
+
+    /** override removeAttribute.
+     * invalidates structural hash, updates id index
+     * @param attribute
+     * @return removed attribute
+     */
+    public Attribute removeAttribute(Attribute attribute) {
+        Attribute removed = super.removeAttribute(attribute);
+        invalidateStructuralHash();
+        if (isIdAttribute(removed)) {
+            idChanged(removed.getValue(), null);
+        }
+        return removed;
+    }
+
+    static boolean isIdAttribute(Attribute attribute) {
+        return attribute != null && ID.equals(attribute.getLocalName()) &&
+            attribute.getNamespaceURI().length() == 0;
+    }
+
+    /** updates id index of tree (if any) after id of this changes.
+     * @param oldId null if none
+     * @param newId null if none
+     */
+    void idChanged(String oldId, String newId) {
+        if (oldId == null ? newId == null : oldId.equals(newId)) {
+            return;
+        }
+        IdIndex index = getOldestCMLAncestor().idIndex;
+        if (index != null) {
+            if (oldId != null) {
+                index.remove(oldId, this);
+            }
+            if (newId != null) {
+                index.add(newId, this);
+            }
+        }
+    }
+
     /**
      * copies attributes. makes subclass if necessary.
      * 
@@ -287,6 +351,68 @@ public class CMLElement extends Element implements CMLConstants, Comparable<CMLE
     public void insertChild(Node newNode, int pos) {
         newNode.detach();
         super.insertChild(newNode, pos);
+        invalidateStructuralHash();
+        if (newNode instanceof Element) {
+            invalidateDescendantIndex();
+        }
+        if (newNode instanceof CMLElement) {
+            CMLElement child = (CMLElement) newNode;
+            // no longer the oldest ancestor
+            child.idIndex = null;
+            IdIndex index = getOldestCMLAncestor().idIndex;
+            if (index != null) {
+                index.addSubtree(child);
+            }
+        }
+    }
+
+    /** override insertChild.
+     * invalidates structural hash
+     * @param text
+     * @param pos
+     */
+    public void insertChild(String text, int pos) {
+        super.insertChild(text, pos);
+        invalidateStructuralHash();
+    }
+
+    /** override removeChild.
+     * invalidates structural hash
+     * @param pos
+     * @return removed node
+     */
+    public Node removeChild(int pos) {
+        Node removed = super.removeChild(pos);
+        invalidateStructuralHash();
+        if (removed instanceof Element) {
+            invalidateDescendantIndex();
+        }
+        removeFromIdIndex(removed);
+        return removed;
+    }
+
+    /** override removeChild.
+     * invalidates structural hash
+     * @param child
+     * @return removed node
+     */
+    public Node removeChild(Node child) {
+        Node removed = super.removeChild(child);
+        invalidateStructuralHash();
+        if (removed instanceof Element) {
+            invalidateDescendantIndex();
+        }
+        removeFromIdIndex(removed);
+        return removed;
+    }
+
+    private void removeFromIdIndex(Node removed) {
+        if (removed instanceof CMLElement) {
+            IdIndex index = getOldestCMLAncestor().idIndex;
+            if (index != null) {
+                index.removeSubtree((CMLElement) removed);
+            }
+        }
     }
 
     /** re-route detach().
@@ -295,6 +421,8 @@ public class CMLElement extends Element implements CMLConstants, Comparable<CMLE
     public void detach() {
         ParentNode parent = this.getParent();
         if (parent != null) {
+            // parent may be a non-CML element which does not invalidate
+            invalidateDescendantIndex();
             if (parent instanceof Document) {
                 parent.replaceChild(this, new Element("dummy"));
             } else {
@@ -442,13 +570,66 @@ public class CMLElement extends Element implements CMLConstants, Comparable<CMLE
     }
 
     /**
-     * compares elements for identity. sorting order based on canonical strings
+     * structural hash of this subtree.
+     * cached until this element or a CMLElement descendant is changed
+     * through XOM/CML methods. Changes made directly on Text nodes or
+     * on non-CML descendant elements are not seen; call
+     * invalidateStructuralHash() after them.
+     * 
+     * @return the hash (see CMLUtil.getStructuralHash())
+     */
+    public long getStructuralHash() {
+        Long hash = structuralHash;
+        if (hash == null) {
+            hash = CMLUtil.computeStructuralHash(this);
+            structuralHash = hash;
+        }
+        return hash.longValue();
+    }
+
+    /**
+     * discards cached structural hash of this and its ancestors.
+     * called on mutation
+     */
+    public void invalidateStructuralHash() {
+        // an ancestor's hash is only cached if all descendant hashes are
+        ParentNode node = this;
+        while (node != null) {
+            if (node instanceof CMLElement) {
+                CMLElement element = (CMLElement) node;
+                if (element.structuralHash == null) {
+                    break;
+                }
+                element.structuralHash = null;
+            }
+            node = node.getParent();
+        }
+    }
+
+    /**
+     * compares structure without serializing.
+     * see StructuralComparator
+     * 
+     * @param element
+     * @return true if structurally equal
+     */
+    public boolean equalsStructurally(Element element) {
+        return new StructuralComparator().compare(this, element) == 0;
+    }
+
+    /**
+     * compares elements for identity. sorting order based on canonical strings.
+     * serializes both elements; for sorting or deduplicating many elements
+     * use StructuralComparator
      * 
      * @param elem
      *            to compare
      * @return 0 if content is identical else -1 or 1
      */
     public int compareTo(CMLElement elem) {
+        if (this == elem) {
+            return 0;
+        }
         String thisS = CMLUtil.getCanonicalString(this);
         String elemS = CMLUtil.getCanonicalString(elem);
         int i = thisS.compareTo(elemS);
@@ -479,11 +660,13 @@ public class CMLElement extends Element implements CMLConstants, Comparable<CMLE
     protected CMLElement getOrCreateChild(String name) throws RuntimeException {
         CMLElement element = (CMLElement) this.getFirstChildElement(name,
                 CMLConstants.CML_NS);
+        if (element == null) {
+            element = CMLElementRegistry.createElement(name);
+        }
         if (element == null) {
             try {
-                element = (CMLElement) Class.forName(
-                        ELEMENT_CLASS_BASE+".CML" + name.substring(0, 1)
-                                + name.substring(1)).newInstance();
+                element = (CMLElement) CMLNodeFactory.makeClass(
+                        ELEMENT_CLASS_BASE, name).newInstance();
             } catch (Exception e) {
                 throw new RuntimeException("" + e);
             }
@@ -492,11 +675,12 @@ public class CMLElement extends Element implements CMLConstants, Comparable<CMLE
     }
 
     /** ensures queries which may have cml namespace prefix have XPath context
+     * simple child and descendant paths are evaluated without XPath
      * @param query
      * @return nodes
      */
     public Nodes cmlQuery(String query) {
-    	return super.query(query, CMLConstants.CML_XPATH);
+    	return QueryPlan.query(this, query, CMLConstants.CML_XPATH);
     }
 
     /**
@@ -755,20 +939,16 @@ public class CMLElement extends Element implements CMLConstants, Comparable<CMLE
 
     /**
      * descendant elements by id. normally only one, but id is not required to
-     * be unique
+     * be unique. uses the id index (see getElementsById())
      * 
      * @param id
-     * @return elements
+     * @return elements (excluding this)
      */
     public List<CMLElement> getDescendantCMLElementsById(String id) {
         List<CMLElement> elementList = new ArrayList<CMLElement>();
         if (id != null) {
-            List<CMLElement> childElements = this.getChildCMLElements();
-            for (CMLElement e : childElements) {
-                if (id.equals(e.getAttribute(ID))) {
-                    elementList.add(e);
-                }
-            }
+            elementList = getElementsById(id, false);
+            elementList.remove(this);
         }
         return elementList;
     }
@@ -780,7 +960,7 @@ public class CMLElement extends Element implements CMLConstants, Comparable<CMLE
      * @return list of CMLelements
      */
     public List<CMLElement> getElements(String cmlQueryString) {
-        Nodes nodes = this.query(cmlQueryString, CMLConstants.CML_XPATH);
+        Nodes nodes = QueryPlan.query(this, cmlQueryString, CMLConstants.CML_XPATH);
         List<CMLElement> cmlElements = new ArrayList<CMLElement>();
         for (int i = 0; i < nodes.size(); i++) {
             if (nodes.get(i) instanceof CMLElement) {
@@ -790,6 +970,72 @@ public class CMLElement extends Element implements CMLConstants, Comparable<CMLE
         return cmlElements;
     }
 
+    /**
+     * get descendants in CML namespace with local name.
+     * same result as getElements(".//cml:"+localName) but uses an index
+     * of this subtree (or of an indexed ancestor) built on first use, so
+     * repeated calls cost O(result) rather than a tree walk and XPath
+     * compilation. Indexes are discarded when CMLElement methods change
+     * the tree below them; changes made only through non-CML elements
+     * are not seen.
+     * 
+     * @param localName
+     * @return list of elements in document order (empty if none)
+     */
+    public List<CMLElement> getDescendantElements(String localName) {
+        return getDescendantElements(localName, true);
+    }
+
+    /**
+     * get descendants in CML namespace with local name.
+     * see getDescendantElements(String)
+     * 
+     * @param localName
+     * @param nested if false omits elements inside earlier matches
+     * @return list of elements in document order (empty if none)
+     */
+    public List<CMLElement> getDescendantElements(String localName, boolean nested) {
+        return getDescendantIndex().getElements(this, CML_NS, localName, null, false, nested);
+    }
+
+    /** index of nearest indexed ancestor-or-self, else new index of this.*/
+    private DescendantIndex getDescendantIndex() {
+        ParentNode node = this;
+        while (node != null) {
+            if (node instanceof CMLElement) {
+                DescendantIndex index = ((CMLElement) node).descendantIndex;
+                if (index != null) {
+                    return index;
+                }
+            }
+            node = node.getParent();
+        }
+        DescendantIndex index = new DescendantIndex(this);
+        descendantIndex = index;
+        return index;
+    }
+
+    /** discards indexes on this and all ancestors.*/
+    private void invalidateDescendantIndex() {
+        ParentNode node = this;
+        while (node != null) {
+            if (node instanceof CMLElement) {
+                ((CMLElement) node).descendantIndex = null;
+                ((CMLElement) node).modificationCount++;
+            }
+            node = node.getParent();
+        }
+    }
+
+    /** count of element insertions and removals in this subtree.
+     * changes whenever a descendant element is added or removed (not for
+     * text or attribute changes) so can key caches derived from descendants.
+     * @return count
+     */
+    public int getModificationCount() {
+        return modificationCount;
+    }
+
     /**
      * get all descendants with local name.
      * @deprecated use query 
@@ -817,41 +1063,17 @@ public class CMLElement extends Element implements CMLConstants, Comparable<CMLE
      */
     public List<CMLElement> getDescendants(String elementName,
             String attributeName, boolean nested) {
-        List<CMLElement> elementList = new ArrayList<CMLElement>();
-        boolean found = false;
-        if (elementName == null || this.getLocalName().equals(elementName)) {
-            if (attributeName == null
-                    || this.getAttributeValue(attributeName) != null) {
-                elementList.add(this);
-                found = true;
-            }
-        }
-        // recurse if not found or nested
-        if (!found || nested) {
-            List<CMLElement> childElements = this.getChildCMLElements();
-            for (CMLElement e : childElements) {
-                List<CMLElement> descendants = e.getDescendants(elementName,
-                        attributeName, nested);
-                elementList.addAll(descendants);
-            }
-        }
-        return elementList;
+        return getDescendantIndex().getElements(
+        		this, null, elementName, attributeName, true, nested);
     }
 
     /**
      * get all descendants.
      * 
-     * @return list of elements
+     * @return list of elements including this
      */
     public List<CMLElement> getDescendants() {
-        List<CMLElement> elementList = new ArrayList<CMLElement>();
-        elementList.add(this);
-        List<CMLElement> childElements = this.getChildCMLElements();
-        for (CMLElement e : childElements) {
-            List<CMLElement> descendants = e.getDescendants();
-            elementList.addAll(descendants);
-        }
-        return elementList;
+        return getDescendantIndex().getElements(this, null, null, null, true, true);
     }
 
     /**
@@ -951,41 +1173,38 @@ public class CMLElement extends Element implements CMLConstants, Comparable<CMLE
         return current;
     }
     
-    /** gets element(s) which have given id.
-     * fragile as it indexes the object once and if the 
-     * XOM is modified will be out of sync and needs refreshing
+    /** gets element(s) in this subtree which have given id.
+     * the index covers the whole tree under the oldest CML ancestor
+     * and is built on first use. It is updated as ids are set or removed
+     * and as CMLElements are inserted or removed, so refresh is only needed
+     * after changes made through non-CML elements or plain
+     * Attribute.setValue()
      * @param id (not necessarily unique
-     * @param refresh the idMap
-     * @return list of ids (never null, nay be 0)
+     * @param refresh rebuild the index
+     * @return list of elements (never null, may be 0)
      */
     public List<CMLElement> getElementsById(String id, boolean refresh) {
-        if (idMap == null || refresh) {
-            idMap = new HashMap<String, List<CMLElement>>();
-            addIds(this);
+        CMLElement oldest = getOldestCMLAncestor();
+        if (oldest.idIndex == null || refresh) {
+            oldest.idIndex = new IdIndex(oldest);
         }
-        List<CMLElement> elemList = idMap.get(id);
-        if (elemList == null) {
-            elemList = new ArrayList<CMLElement>();
+        List<CMLElement> elemList = new ArrayList<CMLElement>();
+        for (CMLElement element : oldest.idIndex.get(id)) {
+            if (oldest == this || isAncestorOrSelfOf(element)) {
+                elemList.add(element);
+            }
         }
         return elemList;
     }
-    
-    void addIds(CMLElement elem) {
-        String id = elem.getAttributeValue(ID);
-        if (id != null) {
-            List<CMLElement> idList = idMap.get(id);
-            if (idList == null) {
-                idList = new ArrayList<CMLElement>();
-                idMap.put(id, idList);
-            }
-            if (!idList.contains(elem)) {
-                idList.add(elem);
+
+    private boolean isAncestorOrSelfOf(Node node) {
+        while (node != null) {
+            if (node == this) {
+                return true;
             }
+            node = node.getParent();
         }
-        List<CMLElement> childList = elem.getChildCMLElements();
-        for (CMLElement child : childList) {
-            addIds(child);
-        }
+        return false;
     }
     /**
      * gets an Xpointer-like string describing the context of the element.
@@ -1244,8 +1463,25 @@ public class CMLElement extends Element implements CMLConstants, Comparable<CMLE
 	}
 
 	private CMLElement referenceWithinXML(String ref) {
-		Nodes refs = this.query("ancestor::*//*[namespace-uri()='"+CMLConstants.CML_NS+"'and @id='"+ref+"']");
-		CMLElement element = refs.size() == 1 ? (CMLElement) refs.get(0) : null;
+		// uses id index of whole CML tree
+		CMLElement oldest = getOldestCMLAncestor();
+		List<CMLElement> refs = new ArrayList<CMLElement>();
+		for (CMLElement element : oldest.getElementsById(ref, false)) {
+			if (CMLConstants.CML_NS.equals(element.getNamespaceURI())) {
+				refs.add(element);
+			}
+		}
+		// index does not cover non-CML ancestors or elements below non-CML children
+		if (refs.isEmpty() || oldest.getParent() instanceof Element) {
+			Nodes nodes = this.query("ancestor::*//*[namespace-uri()='"+CMLConstants.CML_NS+"'and @id='"+ref+"']");
+			refs.clear();
+			for (int i = 0; i < nodes.size(); i++) {
+				if (nodes.get(i) instanceof CMLElement) {
+					refs.add((CMLElement) nodes.get(i));
+				}
+			}
+		}
+		CMLElement element = refs.size() == 1 ? refs.get(0) : null;
 		return element;
 	}
 	
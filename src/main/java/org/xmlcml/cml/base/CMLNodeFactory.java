@@ -21,17 +21,24 @@ import java.util.Map;
 import java.util.Stack;
 
 import nu.xom.Attribute;
+import nu.xom.Document;
 import nu.xom.Element;
 import nu.xom.NodeFactory;
 import nu.xom.Nodes;
 import nu.xom.Text;
 
 import org.apache.log4j.Logger;
+import org.xmlcml.cml.element.CMLElementRegistry;
 
 /** user-modifiable class supporting NodeFactory.
 *
 * autogenerated from schema
 * use as a shell which can be edited
+* 
+* the factory holds the element stack of the document being built
+* and must not be shared between threads. Each CMLBuilder() creates
+* its own instance; the static nodeFactory is retained for legacy callers
+* which parse on a single thread.
 
 */
 public class CMLNodeFactory extends NodeFactory implements CMLConstants {
@@ -46,19 +53,55 @@ public class CMLNodeFactory extends NodeFactory implements CMLConstants {
     /** must give simple documentation.
      */
      private Map<String, CMLElement> factoryElementMap;
+     /** checking of attribute values */
+     private CMLBuilder.Validation validation = CMLBuilder.Validation.OFF;
 
     // singleton
      /** singleton node factory.
+      * shared parse state; NOT threadsafe. Use newInstance() (as
+      * CMLBuilder() does) when parsing on more than one thread.
       */
     public static final CMLNodeFactory nodeFactory = new CMLNodeFactory();
     static {
     	nodeFactory.init();
     }
     
-    private CMLNodeFactory() {
+    protected CMLNodeFactory() {
     	factoryElementMap = new HashMap<String, CMLElement>();
     }
+
+    /** creates a node factory with its own parse state.
+     * a factory may be reused for successive documents
+     * but not for concurrent parses.
+     * @return new factory
+     */
+    public static CMLNodeFactory newInstance() {
+    	CMLNodeFactory factory = new CMLNodeFactory();
+    	factory.init();
+    	return factory;
+    }
     
+    /** set policy for checking CML attribute values.
+     * the shared nodeFactory cannot be changed.
+     * @param validation
+     */
+    public void setValidation(CMLBuilder.Validation validation) {
+    	if (this == nodeFactory) {
+    		throw new RuntimeException("cannot change validation of shared nodeFactory");
+    	}
+    	if (validation == null) {
+    		throw new RuntimeException("null validation");
+    	}
+    	this.validation = validation;
+    }
+
+    /** get policy for checking CML attribute values.
+     * @return policy
+     */
+    public CMLBuilder.Validation getValidation() {
+    	return validation;
+    }
+
     void init() {
 //    	LOG.debug("NODE FACTORY INIT");
     }
@@ -85,6 +128,16 @@ public class CMLNodeFactory extends NodeFactory implements CMLConstants {
 	private static String makeClassName(String base, String name) {
 		return base+S_PERIOD+CMLUtil.makeCMLName(name);
 	}
+    /** callback at start of document.
+     * clears any state left over from a previous (possibly failed) parse.
+     * @return Document
+     */
+    public Document startMakingDocument() {
+    	stack.clear();
+    	current = null;
+    	return super.startMakingDocument();
+    }
+
     /** callback from element end tag.
     *
     * @param element the context element
@@ -92,6 +145,9 @@ public class CMLNodeFactory extends NodeFactory implements CMLConstants {
     */
     public Nodes finishMakingElement(Element element) {
         Element parent = stack.pop();
+        if (current instanceof CMLElement && validation != CMLBuilder.Validation.OFF) {
+        	attachTypes((CMLElement) current);
+        }
         if (current instanceof CMLElement) {
         	// trap exceptions, mainly due to semantics
         	// still trying to work this out
@@ -107,6 +163,32 @@ public class CMLNodeFactory extends NodeFactory implements CMLConstants {
         nodes.append(element);
         return nodes;
     }
+    /** attaches schema types to the attributes of a parsed element.
+     * most elements rebuild their attributes from untyped templates
+     * (addAttribute() calls setFoo()) so this cannot be done in makeAttribute().
+     * STRICT values have already been checked.
+     * @param element
+     */
+    private void attachTypes(CMLElement element) {
+    	String elementName = element.getLocalName();
+    	for (int i = 0; i < element.getAttributeCount(); i++) {
+    		Attribute attribute = element.getAttribute(i);
+    		if (attribute instanceof CMLAttribute) {
+    			CMLAttribute cmlAttribute = (CMLAttribute) attribute;
+    			String attributeGroupName = AttributeFactory.attributeFactory.getAttributeGroupName(
+    					cmlAttribute.getLocalName(), elementName);
+    			if (attributeGroupName != null) {
+    				CMLType type = AttributeFactory.attributeFactory.getSchemaTypeByGroupName(attributeGroupName);
+    				if (validation == CMLBuilder.Validation.STRICT) {
+    					cmlAttribute.setCmlType(type);
+    				} else {
+    					cmlAttribute.setDeferredType(type);
+    				}
+    			}
+    		}
+    	}
+    }
+
     /** callback from each attribute.
     *
     * @param attributeName attribute name
@@ -128,8 +210,13 @@ public class CMLNodeFactory extends NodeFactory implements CMLConstants {
             if (attributeGroupName == null) {
             	attribute = new Attribute(attributeName, value);
             } else {
-            	attribute = AttributeFactory.attributeFactory.getAttributeByGroupName(attributeGroupName);
-            	((CMLAttribute)attribute).setCMLValue(value);
+            	// copy the shared template; it must not carry per-document values
+            	CMLAttribute cmlAttribute = (CMLAttribute) AttributeFactory.attributeFactory.getAttributeByGroupName(attributeGroupName).copy();
+            	if (validation == CMLBuilder.Validation.STRICT) {
+            		cmlAttribute.setCmlType(AttributeFactory.attributeFactory.getSchemaTypeByGroupName(attributeGroupName));
+            	}
+            	cmlAttribute.setCMLValue(value);
+            	attribute = cmlAttribute;
             }
         } else if (prefixLoc == -1) {
     // non-prefixed non-cml element
@@ -191,7 +278,13 @@ public class CMLNodeFactory extends NodeFactory implements CMLConstants {
         } else {
             CMLElement factoryElement = factoryElementMap.get(name);
             if (factoryElement == null) {
-            	// tacky until we get a list of CML-lite classes
+            	factoryElement = CMLElementRegistry.createElement(name);
+            	if (factoryElement != null) {
+            		factoryElementMap.put(name, factoryElement);
+            	}
+            }
+            if (factoryElement == null) {
+            	// not in registry; fall back to reflection
 	            Class<?> newClass = CMLNodeFactory.makeClass(ELEMENT_CLASS_BASE, name);
 //		            Class<?> newClass = CMLNodeFactory.makeClass(ELEMENT_CLASS_BASE+S_PERIOD+LITE, name);
 //		        	if (newClass == null) {
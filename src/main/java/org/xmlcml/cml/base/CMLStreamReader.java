@@ -0,0 +1,211 @@
+/**
+ *    Copyright 2011 Peter Murray-Rust et. al.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package org.xmlcml.cml.base;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import nu.xom.Document;
+
+import org.xmlcml.cml.element.CMLMolecule;
+
+/**
+ * <p>
+ * pull-style reader returning the outermost elements of one class
+ * (normally CMLMolecule) from a CML stream one at a time.
+ * </p>
+ * <p>
+ * XOM parsing is push-based, so the document is parsed on a background thread
+ * with a CMLStreamingNodeFactory and completed elements are passed through a
+ * small bounded queue. Only a few elements are held in memory at once,
+ * however large the file. Parsing errors are rethrown from hasNext() or
+ * next() as RuntimeException. close() stops the parse and closes the stream;
+ * it should be called if iteration is abandoned early.
+ * </p>
+ * <pre>
+ * CMLStreamReader&lt;CMLMolecule&gt; reader = CMLStreamReader.createMoleculeReader(is);
+ * try {
+ *     while (reader.hasNext()) {
+ *         CMLMolecule molecule = reader.next();
+ *         ...
+ *     }
+ * } finally {
+ *     reader.close();
+ * }
+ * </pre>
+ * 
+ * @author pm286
+ * 
+ * @param <T> class of element returned
+ */
+public class CMLStreamReader<T extends CMLElement> implements Iterator<T>, Iterable<T>, Closeable {
+
+	private final static int QUEUE_SIZE = 16;
+	private final static Object END = new Object();
+
+	private final InputStream inputStream;
+	private final Class<T> elementClass;
+	private final BlockingQueue<Object> queue;
+	private Thread parser;
+	private Object next;
+	private volatile boolean closed;
+
+	/** thrown inside the parser thread to abandon the parse. */
+	private static class StopParsingException extends RuntimeException {
+		private static final long serialVersionUID = 1L;
+	}
+
+	/** constructor.
+	 * parsing starts on first call of hasNext() or next()
+	 * @param inputStream CML
+	 * @param elementClass class of elements to return
+	 */
+	public CMLStreamReader(InputStream inputStream, Class<T> elementClass) {
+		this.inputStream = inputStream;
+		this.elementClass = elementClass;
+		this.queue = new ArrayBlockingQueue<Object>(QUEUE_SIZE);
+	}
+
+	/** reader for the outermost molecules in a document.
+	 * 
+	 * @param inputStream CML, typically cml or moleculeList root
+	 * @return reader
+	 */
+	public static CMLStreamReader<CMLMolecule> createMoleculeReader(InputStream inputStream) {
+		return new CMLStreamReader<CMLMolecule>(inputStream, CMLMolecule.class);
+	}
+
+	/** parses a stream passing each outermost element of the class to handler.
+	 * runs on the calling thread.
+	 * 
+	 * @param <T>
+	 * @param inputStream
+	 * @param elementClass
+	 * @param handler
+	 * @return the document without the streamed elements
+	 */
+	public static <T extends CMLElement> Document parse(InputStream inputStream, 
+			Class<T> elementClass, CMLStreamingNodeFactory.Handler<T> handler) {
+		CMLStreamingNodeFactory<T> factory = new CMLStreamingNodeFactory<T>(elementClass, handler);
+		try {
+			return new CMLBuilder(factory).build(inputStream);
+		} catch (Exception e) {
+			throw new RuntimeException("cannot parse: ", e);
+		}
+	}
+
+	/** returns this so that the reader can be used in a for loop.
+	 * @return this
+	 */
+	public Iterator<T> iterator() {
+		return this;
+	}
+
+	public boolean hasNext() {
+		if (next == null) {
+			if (closed) {
+				return false;
+			}
+			startParser();
+			try {
+				next = queue.take();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new RuntimeException("interrupted", e);
+			}
+		}
+		if (next instanceof Throwable) {
+			Throwable t = (Throwable) next;
+			next = END;
+			throw (t instanceof RuntimeException) ? (RuntimeException) t : new RuntimeException(t);
+		}
+		return next != END;
+	}
+
+	public T next() {
+		if (!hasNext()) {
+			throw new NoSuchElementException();
+		}
+		T element = elementClass.cast(next);
+		next = null;
+		return element;
+	}
+
+	/** not supported.
+	 */
+	public void remove() {
+		throw new UnsupportedOperationException("cannot remove from stream");
+	}
+
+	/** stops parsing and closes input stream.
+	 * @throws IOException
+	 */
+	public void close() throws IOException {
+		closed = true;
+		next = END;
+		if (parser != null) {
+			parser.interrupt();
+			queue.clear();
+		}
+		inputStream.close();
+	}
+
+	private void startParser() {
+		if (parser != null) {
+			return;
+		}
+		parser = new Thread(new Runnable() {
+			public void run() {
+				try {
+					parse(inputStream, elementClass, new CMLStreamingNodeFactory.Handler<T>() {
+						public void handle(T element) {
+							put(element);
+						}
+					});
+					put(END);
+				} catch (Throwable t) {
+					// XOM wraps StopParsingException; nothing to report once closed
+					if (!closed) {
+						try {
+							put(t);
+						} catch (StopParsingException e) {
+							// closed by consumer
+						}
+					}
+				}
+			}
+		}, "CMLStreamReader");
+		parser.setDaemon(true);
+		parser.start();
+	}
+
+	private void put(Object object) {
+		if (closed) {
+			throw new StopParsingException();
+		}
+		try {
+			queue.put(object);
+		} catch (InterruptedException e) {
+			throw new StopParsingException();
+		}
+	}
+}
@@ -0,0 +1,135 @@
+/**
+ *    Copyright 2011 Peter Murray-Rust et. al.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package org.xmlcml.cml.base;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import nu.xom.Element;
+
+import org.xmlcml.cml.element.CMLCml;
+
+/**
+ * <p>
+ * writes a CML document one child at a time.
+ * </p>
+ * <p>
+ * The start tag of the root (by default cml) is written before the first
+ * child and its end tag on close(). Each element passed to writeElement()
+ * (normally CMLMolecule, CMLReaction or CMLSpectrum) is serialized directly
+ * to the stream without being copied or attached to the root, so a result set
+ * of any size can be written without holding it in memory. Namespace prefixes
+ * used only inside attribute values (e.g. dictRef) should be declared on the
+ * root.
+ * </p>
+ * <pre>
+ * CMLStreamWriter writer = new CMLStreamWriter(os, new CMLMoleculeList());
+ * writer.setIndent(2);
+ * for (CMLMolecule molecule : molecules) {
+ *     writer.writeElement(molecule);
+ * }
+ * writer.close();
+ * </pre>
+ * 
+ * @author pm286
+ * 
+ */
+public class CMLStreamWriter extends CMLSerializer implements Closeable {
+
+	private Element root;
+	private boolean started;
+	private boolean closed;
+	private int count;
+
+	/** writes children of a cml root.
+	 * 
+	 * @param os
+	 */
+	public CMLStreamWriter(OutputStream os) {
+		this(os, new CMLCml());
+	}
+
+	/** writes children of given root.
+	 * only the name, attributes and namespace declarations of root
+	 * are written; any children it has are ignored.
+	 * 
+	 * @param os
+	 * @param root e.g. CMLCml or CMLMoleculeList
+	 */
+	public CMLStreamWriter(OutputStream os, Element root) {
+		super(os);
+		if (root == null) {
+			throw new RuntimeException("null root");
+		}
+		this.root = root;
+	}
+
+	/** writes the next child of the root.
+	 * 
+	 * @param element to write; not modified
+	 * @throws IOException
+	 */
+	public void writeElement(Element element) throws IOException {
+		if (closed) {
+			throw new RuntimeException("writer is closed");
+		}
+		if (element == null) {
+			throw new RuntimeException("null element");
+		}
+		start();
+		this.write(element);
+		count++;
+	}
+
+	/** writes end tag of the root and flushes.
+	 * does not close the underlying stream. 
+	 * @throws IOException
+	 */
+	public void close() throws IOException {
+		if (closed) {
+			return;
+		}
+		start();
+		Element endTag = root;
+		if (count > 0) {
+			// writeEndTag only breaks the line before an element with
+			// element children; the streamed children were never attached
+			endTag = new Element(root.getQualifiedName(), root.getNamespaceURI());
+			endTag.appendChild(new Element("child"));
+		}
+		writeEndTag(endTag);
+		breakLine();
+		flush();
+		closed = true;
+	}
+
+	/** number of elements written.
+	 * @return count
+	 */
+	public int getCount() {
+		return count;
+	}
+
+	private void start() throws IOException {
+		if (!started) {
+			writeXMLDeclaration();
+			writeStartTag(root);
+			started = true;
+		}
+	}
+}
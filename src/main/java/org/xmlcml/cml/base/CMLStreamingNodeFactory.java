@@ -0,0 +1,129 @@
+/**
+ *    Copyright 2011 Peter Murray-Rust et. al.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package org.xmlcml.cml.base;
+
+import nu.xom.Document;
+import nu.xom.Element;
+import nu.xom.Nodes;
+
+/**
+ * <p>
+ * node factory which passes completed elements of a given class to a
+ * handler instead of adding them to the tree.
+ * </p>
+ * <p>
+ * Only outermost elements are handed off; a molecule inside a handed-off
+ * molecule stays part of it. The handed-off element has no parent and is
+ * not retained by the factory, so a document with any number of such
+ * elements is parsed in constant memory. Whitespace-only text outside the
+ * streamed elements is discarded for the same reason. If the root element
+ * is itself of the streamed class it is handed off and also kept as the
+ * document root.
+ * </p>
+ * 
+ * @author pm286
+ * 
+ * @param <T> class of element to stream
+ */
+public class CMLStreamingNodeFactory<T extends CMLElement> extends CMLNodeFactory {
+
+	/** receives each completed element.
+	 * 
+	 * @param <T>
+	 */
+	public interface Handler<T> {
+		/** called when end tag of element has been read.
+		 * 
+		 * @param element detached element
+		 */
+		void handle(T element);
+	}
+
+	private Class<T> elementClass;
+	private Handler<T> handler;
+	private int depth;
+	private int streamedDepth;
+	// XOM detaches an element only after finishMakingElement returns
+	private T pending;
+
+	/** constructor.
+	 * 
+	 * @param elementClass class of elements to stream (e.g. CMLMolecule.class)
+	 * @param handler to receive elements
+	 */
+	public CMLStreamingNodeFactory(Class<T> elementClass, Handler<T> handler) {
+		super();
+		init();
+		this.elementClass = elementClass;
+		this.handler = handler;
+	}
+
+	public Element startMakingElement(String name, String namespace) {
+		flush();
+		Element element = super.startMakingElement(name, namespace);
+		depth++;
+		if (elementClass.isInstance(element)) {
+			streamedDepth++;
+		}
+		return element;
+	}
+
+	public Nodes finishMakingElement(Element element) {
+		flush();
+		Nodes nodes = super.finishMakingElement(element);
+		depth--;
+		if (elementClass.isInstance(element)) {
+			streamedDepth--;
+			if (streamedDepth == 0) {
+				if (depth > 0) {
+					pending = elementClass.cast(element);
+					nodes = new Nodes();
+				} else {
+					handler.handle(elementClass.cast(element));
+				}
+			}
+		}
+		return nodes;
+	}
+
+	public void finishMakingDocument(Document document) {
+		flush();
+		super.finishMakingDocument(document);
+	}
+
+	private void flush() {
+		if (pending != null) {
+			T element = pending;
+			pending = null;
+			handler.handle(element);
+		}
+	}
+
+	public Nodes makeText(String text) {
+		if (streamedDepth == 0 && text.trim().length() == 0) {
+			return new Nodes();
+		}
+		return super.makeText(text);
+	}
+
+	public Document startMakingDocument() {
+		depth = 0;
+		streamedDepth = 0;
+		pending = null;
+		return super.startMakingDocument();
+	}
+}
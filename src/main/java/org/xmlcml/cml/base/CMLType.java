@@ -19,6 +19,7 @@ package org.xmlcml.cml.base;
 import java.text.NumberFormat;
 import java.text.ParseException;
 import java.util.List;
+import java.util.regex.Pattern;
 
 import org.xmlcml.euclid.Util;
 
@@ -48,6 +49,7 @@ public class CMLType implements CMLConstants {
 	protected String id = null;
 	protected boolean isList = false;
 	protected String pattern = null;
+	private Pattern compiledPattern = null;
 	protected int listLength = Integer.MIN_VALUE;
 	protected int iMinInclusive = Integer.MIN_VALUE;
 	protected int iMinExclusive = Integer.MIN_VALUE;
@@ -483,11 +485,19 @@ public class CMLType implements CMLConstants {
 	 */
 	public void checkValue(String s) throws RuntimeException {
 		if (subTypes.length > 0) {
+			// union; value must conform to one member
+			RuntimeException failure = null;
 			for (int j = 0; j < subTypes.length; j++) {
-				(subTypes[j]).checkValue(s);
+				try {
+					(subTypes[j]).checkValue(s);
+					return;
+				} catch (RuntimeException e) {
+					failure = e;
+				}
 			}
+			throw failure;
 		} else {
-			if (!base.equals(XSD_STRING)) {
+			if (!isJavaType(XSD_STRING)) {
 				throw new RuntimeException("Cannot accept String for type: "
 						+ base);
 			}
@@ -512,11 +522,19 @@ public class CMLType implements CMLConstants {
 	 */
 	public void checkValue(String ss[]) throws RuntimeException {
 		if (subTypes.length > 0) {
+			// union; value must conform to one member
+			RuntimeException failure = null;
 			for (int j = 0; j < subTypes.length; j++) {
-				(subTypes[j]).checkValue(ss);
+				try {
+					(subTypes[j]).checkValue(ss);
+					return;
+				} catch (RuntimeException e) {
+					failure = e;
+				}
 			}
+			throw failure;
 		} else {
-			if (!base.equals(XSD_STRING)) {
+			if (!isJavaType(XSD_STRING)) {
 				throw new RuntimeException("Cannot accept String for type: "
 						+ base);
 			}
@@ -561,11 +579,19 @@ public class CMLType implements CMLConstants {
 	 */
 	public void checkValue(int i) throws RuntimeException {
 		if (subTypes.length > 0) {
+			// union; value must conform to one member
+			RuntimeException failure = null;
 			for (int j = 0; j < subTypes.length; j++) {
-				(subTypes[j]).checkValue(i);
+				try {
+					(subTypes[j]).checkValue(i);
+					return;
+				} catch (RuntimeException e) {
+					failure = e;
+				}
 			}
+			throw failure;
 		} else {
-			if (!base.equals(XSD_INTEGER)) {
+			if (!isJavaType(XSD_INTEGER)) {
 				throw new RuntimeException("Cannot accept int for type: "
 						+ base);
 			}
@@ -590,11 +616,19 @@ public class CMLType implements CMLConstants {
 	 */
 	public void checkValue(int ii[]) throws RuntimeException {
 		if (subTypes.length > 0) {
+			// union; value must conform to one member
+			RuntimeException failure = null;
 			for (int j = 0; j < subTypes.length; j++) {
-				(subTypes[j]).checkValue(ii);
+				try {
+					(subTypes[j]).checkValue(ii);
+					return;
+				} catch (RuntimeException e) {
+					failure = e;
+				}
 			}
+			throw failure;
 		} else {
-			if (!base.equals(XSD_INTEGER)) {
+			if (!isJavaType(XSD_INTEGER)) {
 				throw new RuntimeException("Cannot accept int for type: "
 						+ base);
 			}
@@ -629,11 +663,19 @@ public class CMLType implements CMLConstants {
 	 */
 	public void checkValue(double d) throws RuntimeException {
 		if (subTypes.length > 0) {
+			// union; value must conform to one member
+			RuntimeException failure = null;
 			for (int j = 0; j < subTypes.length; j++) {
-				(subTypes[j]).checkValue(d);
+				try {
+					(subTypes[j]).checkValue(d);
+					return;
+				} catch (RuntimeException e) {
+					failure = e;
+				}
 			}
+			throw failure;
 		} else {
-			if (!base.equals(XSD_DOUBLE)) {
+			if (!isJavaType(XSD_DOUBLE)) {
 				throw new RuntimeException("Cannot accept double for type: "
 						+ base);
 			}
@@ -658,11 +700,19 @@ public class CMLType implements CMLConstants {
 	 */
 	public void checkValue(double dd[]) throws RuntimeException {
 		if (subTypes.length > 0) {
+			// union; value must conform to one member
+			RuntimeException failure = null;
 			for (int j = 0; j < subTypes.length; j++) {
-				(subTypes[j]).checkValue(dd);
+				try {
+					(subTypes[j]).checkValue(dd);
+					return;
+				} catch (RuntimeException e) {
+					failure = e;
+				}
 			}
+			throw failure;
 		} else {
-			if (!base.equals(XSD_DOUBLE)) {
+			if (!isJavaType(XSD_DOUBLE)) {
 				throw new RuntimeException("Cannot accept String for type: "
 						+ base);
 			}
@@ -696,11 +746,19 @@ public class CMLType implements CMLConstants {
 	 */
 	public void checkValue(boolean b) throws RuntimeException {
 		if (subTypes.length > 0) {
+			// union; value must conform to one member
+			RuntimeException failure = null;
 			for (int j = 0; j < subTypes.length; j++) {
-				(subTypes[j]).checkValue(b);
+				try {
+					(subTypes[j]).checkValue(b);
+					return;
+				} catch (RuntimeException e) {
+					failure = e;
+				}
 			}
+			throw failure;
 		} else {
-			if (!base.equals(XSD_BOOLEAN)) {
+			if (!isJavaType(XSD_BOOLEAN)) {
 				throw new RuntimeException(
 						"Cannot accept boolean for type: " + base);
 			}
@@ -722,11 +780,19 @@ public class CMLType implements CMLConstants {
 	 */
 	public void checkValue(boolean bb[]) throws RuntimeException {
 		if (subTypes.length > 0) {
+			// union; value must conform to one member
+			RuntimeException failure = null;
 			for (int j = 0; j < subTypes.length; j++) {
-				(subTypes[j]).checkValue(bb);
+				try {
+					(subTypes[j]).checkValue(bb);
+					return;
+				} catch (RuntimeException e) {
+					failure = e;
+				}
 			}
+			throw failure;
 		} else {
-			if (!base.equals(XSD_BOOLEAN)) {
+			if (!isJavaType(XSD_BOOLEAN)) {
 				throw new RuntimeException(
 						"Cannot accept boolean for type: " + base);
 			}
@@ -819,6 +885,24 @@ public class CMLType implements CMLConstants {
 		return this.pattern;
 	}
 
+	/**
+	 * get compiled pattern.
+	 * compiled on first use and recompiled if pattern has changed.
+	 * 
+	 * @return compiled pattern or null if no pattern
+	 */
+	Pattern getCompiledPattern() {
+		if (pattern == null) {
+			return null;
+		}
+		Pattern p = compiledPattern;
+		if (p == null || !p.pattern().equals(pattern)) {
+			p = Pattern.compile(pattern);
+			compiledPattern = p;
+		}
+		return p;
+	}
+
 	/**
 	 * get list length.
 	 * 
@@ -1050,11 +1134,20 @@ public class CMLType implements CMLConstants {
 		return this.dEnumerationValues;
 	}
 
+	/** compares the XSD builtin underlying this type.
+	 * base may be a derived type (e.g. namespaceRefType) so uses javaType if known.
+	 */
+	private boolean isJavaType(String xsdType) {
+		String type = (javaType != null) ? javaType : base;
+		return xsdType.equals(type);
+	}
+
 	private void checkPattern(String s) throws RuntimeException {
 		if (s == null) {
 			throw new RuntimeException("Null strings not allowed");
 		}
-		if (pattern != null && !s.matches(pattern)) {
+		Pattern p = getCompiledPattern();
+		if (p != null && !p.matcher(s).matches()) {
 			throw new RuntimeException("String (" + s
 					+ ") does not match pattern (" + pattern + ") for " + name);
 		}
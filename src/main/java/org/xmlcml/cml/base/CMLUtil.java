@@ -28,6 +28,8 @@ import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.StringReader;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
 import java.util.List;
 
 import nu.xom.Attribute;
@@ -64,6 +66,23 @@ public abstract class CMLUtil implements CMLConstants {
 	private static final String DUMMY = "dummy";
 
 	private static Logger LOG = Logger.getLogger(CMLUtil.class);
+
+	// FNV-1a; tokens lie outside the char range so cannot collide with text
+	private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+	private static final long FNV_PRIME = 0x100000001b3L;
+	private static final int END_STRING = 0x10000;
+	private static final int CHILDREN = 0x10001;
+	private static final int TEXT = 0x10002;
+	private static final int CHILD = 0x10003;
+	private static final int END = 0x10004;
+	private static final int SEPARATOR = 0x10005;
+
+	private static final Comparator<Attribute> ATTRIBUTE_NAME_COMPARATOR =
+		new Comparator<Attribute>() {
+			public int compare(Attribute att1, Attribute att2) {
+				return compareAttributeNames(att1, att2);
+			}
+		};
 	
 	public final static String DTD = ".dtd\">";
 
@@ -123,7 +142,7 @@ public abstract class CMLUtil implements CMLConstants {
 		if (element == null) {
 			LOG.warn("Null element");
 		} else {
-			Nodes nodes = element.query(xpath, xPathContext);
+			Nodes nodes = QueryPlan.query(element, xpath, xPathContext);
 			s = (nodes.size() == 1) ? nodes.get(0).getValue() : null;
 		}
 		return s;
@@ -141,7 +160,7 @@ public abstract class CMLUtil implements CMLConstants {
 		if (element == null) {
 			LOG.warn("Null element");
 		} else {
-			Nodes nodes = element.query(xpath);
+			Nodes nodes = QueryPlan.query(element, xpath, null);
 			s = (nodes.size() == 1) ? nodes.get(0).getValue() : null;
 		}
 		return s;
@@ -160,7 +179,7 @@ public abstract class CMLUtil implements CMLConstants {
 		if (element == null) {
 			LOG.warn("Null element");
 		} else {
-			Nodes nodes = element.query(xpath, xPathContext);
+			Nodes nodes = QueryPlan.query(element, xpath, xPathContext);
 			s = (nodes.size() >= 1) ? nodes.get(0).getValue() : null;
 		}
 		return s;
@@ -175,7 +194,7 @@ public abstract class CMLUtil implements CMLConstants {
 	 * @return value if exactly 1 element (0 or many returns null)
 	 */
 	public static Element getSingleElement(Element element, String xpath, XPathContext xPathContext) {
-		Nodes nodes = element.query(xpath, xPathContext);
+		Nodes nodes = QueryPlan.query(element, xpath, xPathContext);
 		return (nodes.size() == 1) ? (Element) nodes.get(0) : null;
 	}
 	
@@ -195,7 +214,7 @@ public abstract class CMLUtil implements CMLConstants {
 			XPathContext context) {
 		List<CMLElement> nodeList = new ArrayList<CMLElement>();
 		if (node != null) {
-			Nodes nodes = node.query(xpath, context);
+			Nodes nodes = QueryPlan.query(node, xpath, context);
 			for (int i = 0; i < nodes.size(); i++) {
 				if (nodes.get(i) instanceof CMLElement) {
 					nodeList.add((CMLElement)nodes.get(i));
@@ -446,10 +465,7 @@ public abstract class CMLUtil implements CMLConstants {
 			XPathContext context) {
 		List<Node> nodeList = new ArrayList<Node>();
 		if (node != null) {
-			Nodes nodes = node.query(xpath, context);
-			for (int i = 0; i < nodes.size(); i++) {
-				nodeList.add(nodes.get(i));
-			}
+			nodeList = QueryPlan.queryList(node, xpath, context);
 		}
 		return nodeList;
 	}
@@ -466,10 +482,7 @@ public abstract class CMLUtil implements CMLConstants {
 		List<Node> nodeList = new ArrayList<Node>();
 		if (node != null) {
 			try {
-				Nodes nodes = node.query(xpath);
-				for (int i = 0; i < nodes.size(); i++) {
-					nodeList.add(nodes.get(i));
-				}
+				nodeList = QueryPlan.queryList(node, xpath, null);
 			} catch (Exception e) {
 				throw new RuntimeException("Bad xpath: "+xpath, e);
 			}
@@ -628,6 +641,129 @@ public abstract class CMLUtil implements CMLConstants {
 		return baos.toString();
 	}
 
+	/**
+	 * structural hash of element.
+	 * 
+	 * streams over namespaces, local names, attributes sorted by namespace
+	 * and name, and text with whitespace trimmed and collapsed (see
+	 * ArrayParser.normalize()); comments, PIs, prefixes
+	 * and namespace declarations are ignored. Elements equal by
+	 * getCanonicalString(), equalsCanonically() or StructuralComparator
+	 * therefore have equal hashes. CMLElements cache the hash until mutated
+	 * (see CMLElement.getStructuralHash()).
+	 * 
+	 * @param element
+	 * @return the hash
+	 */
+	public static long getStructuralHash(Element element) {
+		return (element instanceof CMLElement) ?
+			((CMLElement) element).getStructuralHash() :
+			computeStructuralHash(element);
+	}
+
+	/** hash of element using cached hashes of descendant CMLElements.
+	 * @param element
+	 * @return the hash
+	 */
+	static long computeStructuralHash(Element element) {
+		long h = FNV_OFFSET;
+		h = hashString(h, element.getNamespaceURI());
+		h = hashString(h, element.getLocalName());
+		for (Attribute attribute : getSortedAttributes(element)) {
+			h = hashString(h, attribute.getNamespaceURI());
+			h = hashString(h, attribute.getLocalName());
+			h = hashString(h, attribute.getValue());
+		}
+		h = hash(h, CHILDREN);
+		boolean inText = false;
+		boolean pendingSeparator = false;
+		int nChild = element.getChildCount();
+		for (int i = 0; i < nChild; i++) {
+			Node child = element.getChild(i);
+			if (child instanceof Text) {
+				String value = child.getValue();
+				for (int j = 0; j < value.length(); j++) {
+					char c = value.charAt(j);
+					if (ArrayParser.isWhitespace(c)) {
+						pendingSeparator = inText;
+					} else {
+						if (!inText) {
+							h = hash(h, TEXT);
+							inText = true;
+						} else if (pendingSeparator) {
+							h = hash(h, SEPARATOR);
+						}
+						pendingSeparator = false;
+						h = hash(h, c);
+					}
+				}
+			} else if (child instanceof Element) {
+				inText = false;
+				pendingSeparator = false;
+				h = hash(h, CHILD);
+				long childHash = getStructuralHash((Element) child);
+				for (int j = 0; j < 64; j += 16) {
+					h = hash(h, (int) (childHash >>> j) & 0xffff);
+				}
+			}
+		}
+		h = hash(h, END);
+		// final avalanche so that hash order is well spread
+		h ^= h >>> 33;
+		h *= 0xff51afd7ed558ccdL;
+		h ^= h >>> 33;
+		h *= 0xc4ceb9fe1a85ec53L;
+		h ^= h >>> 33;
+		return h;
+	}
+
+	private static long hash(long h, int value) {
+		return (h ^ value) * FNV_PRIME;
+	}
+
+	/** hashes s as if normalized; each whitespace run between
+	 * tokens hashes as one separator.
+	 */
+	private static long hashString(long h, String s) {
+		boolean inToken = false;
+		boolean pendingSeparator = false;
+		for (int i = 0; i < s.length(); i++) {
+			char c = s.charAt(i);
+			if (ArrayParser.isWhitespace(c)) {
+				pendingSeparator = inToken;
+			} else {
+				if (pendingSeparator) {
+					h = hash(h, SEPARATOR);
+					pendingSeparator = false;
+				}
+				inToken = true;
+				h = hash(h, c);
+			}
+		}
+		return hash(h, END_STRING);
+	}
+
+	/** attributes sorted by namespace and local name.
+	 * @param element
+	 * @return new array
+	 */
+	static Attribute[] getSortedAttributes(Element element) {
+		int natt = element.getAttributeCount();
+		Attribute[] attributes = new Attribute[natt];
+		for (int i = 0; i < natt; i++) {
+			attributes[i] = element.getAttribute(i);
+		}
+		if (natt > 1) {
+			Arrays.sort(attributes, ATTRIBUTE_NAME_COMPARATOR);
+		}
+		return attributes;
+	}
+
+	static int compareAttributeNames(Attribute att1, Attribute att2) {
+		int i = att1.getNamespaceURI().compareTo(att2.getNamespaceURI());
+		return (i != 0) ? i : att1.getLocalName().compareTo(att2.getLocalName());
+	}
+
 	/**
 	 * remeoves all whitespace-only text nodes.
 	 * 
@@ -906,19 +1042,21 @@ public abstract class CMLUtil implements CMLConstants {
 		String message = null;
 		// check if they are different objects
 		if (refElement != testElement) {
-			if (stripWhite) {
-				refElement = new Element(refElement);
-				removeWhitespaceNodes(refElement);
-				testElement = new Element(testElement);
-				removeWhitespaceNodes(testElement);
-			}
 			xpath = xpath+"*[local-name()='"+refElement.getLocalName()+"']/";
-			message = equalsCanonically(refElement, testElement, xpath);
+			message = equalsCanonically(refElement, testElement, xpath, stripWhite);
 		}
 		return message;
 	}
 
 	private static String equalsCanonically(Element refElement, Element testElement, String xpath) {
+		return equalsCanonically(refElement, testElement, xpath, false);
+	}
+
+	/** stripWhite skips whitespace-only text nodes in place of copying
+	 * both trees and removing them.
+	 */
+	private static String equalsCanonically(Element refElement, Element testElement,
+			String xpath, boolean stripWhite) {
 		String message;
 		message = CMLUtil.compareNamespacesCanonically(refElement, testElement, xpath);
 		if (message != null) {
@@ -938,7 +1076,7 @@ public abstract class CMLUtil implements CMLConstants {
 			message = CMLUtil.compareAttributesCanonically(refElement, testElement, xpath);
 		}
 		if (message == null) {
-			message = CMLUtil.compareChildNodesCanonically(refElement, testElement, xpath);
+			message = CMLUtil.compareChildNodesCanonically(refElement, testElement, xpath, stripWhite);
 		}
 		return message;
 	}
@@ -1050,25 +1188,38 @@ public abstract class CMLUtil implements CMLConstants {
 	 * @return
 	 */
 	public static String compareChildNodesCanonically(Element refNode, Element testNode, String xpath) {
+		return compareChildNodesCanonically(refNode, testNode, xpath, false);
+	}
+
+	/** compare child nodes recursively.
+	 * if stripWhite whitespace-only text nodes are skipped and, as
+	 * for stripped copies, element subclasses are not distinguished
+	 */
+	private static String compareChildNodesCanonically(Element refNode, Element testNode,
+			String xpath, boolean stripWhite) {
 		String message = null;
-		int refCount = refNode.getChildCount();
-		int testCount = testNode.getChildCount();
+		List<Node> refChildren = getChildNodes(refNode, stripWhite);
+		List<Node> testChildren = getChildNodes(testNode, stripWhite);
+		int refCount = refChildren.size();
+		int testCount = testChildren.size();
 		if (refCount != testCount) {
 			message = "unequal child node count at "+xpath+" ("+refCount+" != "+testCount+")";
 		}
 		if (message == null) {
 			for (int i = 0; i < refCount; i++) {
 				String xpathChild = xpath+"node()[position()="+(i+1)+"]";
-				Node refChildNode = refNode.getChild(i);
-				Node testChildNode = testNode.getChild(i);
+				Node refChildNode = refChildren.get(i);
+				Node testChildNode = testChildren.get(i);
 				Class<?> refClass = refChildNode.getClass();
 				Class<?> testClass = testChildNode.getClass();
-				if (!refClass.equals(testClass)) {
+				boolean bothElements = stripWhite &&
+					refChildNode instanceof Element && testChildNode instanceof Element;
+				if (!bothElements && !refClass.equals(testClass)) {
 					message = "child node classes differ at "+xpathChild+" "+refClass+"/"+testClass;
 					break;
 				} else if (refChildNode instanceof Element) {
 					message = CMLUtil.equalsCanonically((Element) refChildNode, (Element) testChildNode,
-						xpathChild);
+						xpathChild, stripWhite);
 				} else {
 					message = CMLUtil.compareNonElementNodesCanonically(refChildNode, testChildNode, xpath);
 					if (message != null) {
@@ -1081,6 +1232,19 @@ public abstract class CMLUtil implements CMLConstants {
 	}
 	
 	
+	private static List<Node> getChildNodes(Element element, boolean stripWhite) {
+		int nChild = element.getChildCount();
+		List<Node> nodeList = new ArrayList<Node>(nChild);
+		for (int i = 0; i < nChild; i++) {
+			Node node = element.getChild(i);
+			if (!stripWhite || !(node instanceof Text) ||
+					node.getValue().trim().length() != 0) {
+				nodeList.add(node);
+			}
+		}
+		return nodeList;
+	}
+
 	/** compare non-element nodes.
 	 * not yet tuned for normalizing adjacent CDATA and other horrors
 	 * @param refNode
@@ -1127,7 +1291,7 @@ public abstract class CMLUtil implements CMLConstants {
 	}
 	
 	public static Element getSingleElement(Element element, String xpath) {
-		Nodes nodes = element.query(xpath);
+		Nodes nodes = QueryPlan.query(element, xpath, null);
 		return (nodes.size() == 1) ? (Element) nodes.get(0) : null;
 	}
 
@@ -0,0 +1,172 @@
+/**
+ *    Copyright 2011 Peter Murray-Rust et. al.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package org.xmlcml.cml.base;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import nu.xom.Element;
+import nu.xom.Node;
+
+/**
+ * index of the elements in a subtree by local name.
+ * 
+ * elements are numbered in document (pre)order so that the descendants
+ * of any element form a contiguous range; each local name keeps its
+ * elements in the same order and a lookup is a binary search plus a
+ * walk over the result. built lazily by CMLElement and discarded when
+ * CMLElement methods change the subtree.
+ * 
+ * @author pm286
+ */
+class DescendantIndex {
+
+	/** elements with one local name in document order.*/
+	private static class Entries {
+		Element[] elements = new Element[4];
+		int[] positions = new int[4];
+		int size;
+
+		void add(Element element, int position) {
+			if (size == elements.length) {
+				Element[] newElements = new Element[2 * size];
+				System.arraycopy(elements, 0, newElements, 0, size);
+				elements = newElements;
+				int[] newPositions = new int[2 * size];
+				System.arraycopy(positions, 0, newPositions, 0, size);
+				positions = newPositions;
+			}
+			elements[size] = element;
+			positions[size++] = position;
+		}
+
+		/** first index with position >= start.*/
+		int lowerBound(int start) {
+			int lo = 0;
+			int hi = size;
+			while (lo < hi) {
+				int mid = (lo + hi) >>> 1;
+				if (positions[mid] < start) {
+					lo = mid + 1;
+				} else {
+					hi = mid;
+				}
+			}
+			return lo;
+		}
+	}
+
+	private List<Element> elements = new ArrayList<Element>();
+	private int[] ends = new int[16];
+	private Map<Element, Integer> positions = new IdentityHashMap<Element, Integer>();
+	private Map<String, Entries> entriesByName = new HashMap<String, Entries>();
+
+	/**
+	 * @param root of (sub)tree to index
+	 */
+	DescendantIndex(Element root) {
+		add(root);
+	}
+
+	private void add(Element element) {
+		int position = elements.size();
+		elements.add(element);
+		positions.put(element, position);
+		String name = element.getLocalName();
+		Entries entries = entriesByName.get(name);
+		if (entries == null) {
+			entries = new Entries();
+			entriesByName.put(name, entries);
+		}
+		entries.add(element, position);
+		int nChild = element.getChildCount();
+		for (int i = 0; i < nChild; i++) {
+			Node child = element.getChild(i);
+			if (child instanceof Element) {
+				add((Element) child);
+			}
+		}
+		if (position >= ends.length) {
+			int[] newEnds = new int[Math.max(2 * ends.length, position + 1)];
+			System.arraycopy(ends, 0, newEnds, 0, ends.length);
+			ends = newEnds;
+		}
+		ends[position] = elements.size();
+	}
+
+	/**
+	 * CMLElements in subtree of context in document order.
+	 * non-CML elements are searched through but never returned.
+	 * 
+	 * @param context element in this index
+	 * @param namespaceURI if not null elements must have this namespace
+	 * @param localName if null all elements
+	 * @param attributeName if not null elements must have this attribute
+	 * @param includeSelf include context if it matches
+	 * @param nested if false omit matches inside earlier matches
+	 * @return list (empty if none)
+	 */
+	List<CMLElement> getElements(Element context, String namespaceURI,
+			String localName, String attributeName, boolean includeSelf, boolean nested) {
+		Integer contextPosition = positions.get(context);
+		if (contextPosition == null) {
+			throw new RuntimeException("element not in index: "+context.getLocalName());
+		}
+		int start = contextPosition.intValue() + (includeSelf ? 0 : 1);
+		int end = ends[contextPosition.intValue()];
+		List<CMLElement> result = new ArrayList<CMLElement>();
+		int skipEnd = start;
+		if (localName == null) {
+			for (int position = start; position < end; position++) {
+				Element element = elements.get(position);
+				if (position >= skipEnd && matches(element, namespaceURI, attributeName)) {
+					result.add((CMLElement) element);
+					if (!nested) {
+						skipEnd = ends[position];
+					}
+				}
+			}
+		} else {
+			Entries entries = entriesByName.get(localName);
+			if (entries != null) {
+				for (int i = entries.lowerBound(start); i < entries.size; i++) {
+					int position = entries.positions[i];
+					if (position >= end) {
+						break;
+					}
+					Element element = entries.elements[i];
+					if (position >= skipEnd && matches(element, namespaceURI, attributeName)) {
+						result.add((CMLElement) element);
+						if (!nested) {
+							skipEnd = ends[position];
+						}
+					}
+				}
+			}
+		}
+		return result;
+	}
+
+	private static boolean matches(Element element, String namespaceURI, String attributeName) {
+		return element instanceof CMLElement &&
+			(namespaceURI == null || namespaceURI.equals(element.getNamespaceURI())) &&
+			(attributeName == null || element.getAttribute(attributeName) != null);
+	}
+}
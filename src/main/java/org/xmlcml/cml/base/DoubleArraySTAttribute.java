@@ -101,9 +101,11 @@ public class DoubleArraySTAttribute extends CMLAttribute {
 	 */
 	public void setCMLValue(String s) {
 		if (s != null && !s.trim().equals(S_EMPTY)) {
-			double[] dd = split(s.trim().replace(S_WHITEREGEX, S_SPACE),
-					S_WHITEREGEX);
-			this.setCMLValue(dd);
+			double[] dd = ArrayParser.parseDoubles(s);
+			checkValue(dd);
+			this.dd = dd;
+			// the normalized input is kept rather than reformatting dd
+			this.setValue(ArrayParser.normalize(s));
 		}
 	}
 
@@ -150,13 +152,11 @@ public class DoubleArraySTAttribute extends CMLAttribute {
 	 * @return split doubles
 	 */
 	public static double[] split(String s, String delim) {
-		String sss = s;
 		if (delim == null || delim.trim().equals(S_EMPTY)
 				|| delim.equals(S_WHITEREGEX)) {
-			delim = S_WHITEREGEX;
-			sss = sss.trim();
-		} else {
+			return ArrayParser.parseDoubles(s);
 		}
+		String sss = s;
 		String[] ss = sss.split(delim);
 		double[] dd = new double[ss.length];
 		for (int i = 0; i < ss.length; i++) {
@@ -178,6 +178,7 @@ public class DoubleArraySTAttribute extends CMLAttribute {
 	 * @return null if not set
 	 */
 	public Object getCMLValue() {
+		checkDeferred();
 		return dd;
 	}
 
@@ -187,6 +188,7 @@ public class DoubleArraySTAttribute extends CMLAttribute {
 	 * @return null if not set
 	 */
 	public double[] getDoubleArray() {
+		checkDeferred();
 		return dd;
 	}
 
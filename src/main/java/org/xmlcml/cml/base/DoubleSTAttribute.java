@@ -161,6 +161,7 @@ public class DoubleSTAttribute extends CMLAttribute {
 	 * @return value
 	 */
 	public double getDouble() {
+		checkDeferred();
 		return d.doubleValue();
 	}
 
@@ -0,0 +1,131 @@
+/**
+ *    Copyright 2011 Peter Murray-Rust et. al.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package org.xmlcml.cml.base;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import nu.xom.Node;
+
+/**
+ * index of CMLElements by id attribute.
+ * 
+ * covers the oldest CML ancestor and all CMLElements reached from it
+ * through CMLElement children (as getElementsById() always has). held
+ * by the oldest CML ancestor and kept up to date by CMLElement when ids
+ * are set or removed and when CMLElements are inserted or removed.
+ * 
+ * @author pm286
+ */
+class IdIndex {
+
+    private final Map<String, List<CMLElement>> map;
+
+    /** indexes root and its CML descendants.
+     * @param root
+     */
+    IdIndex(CMLElement root) {
+        map = new HashMap<String, List<CMLElement>>();
+        addSubtree(root);
+    }
+
+    /** elements with id.
+     * @param id
+     * @return elements in order of indexing (do not modify)
+     */
+    List<CMLElement> get(String id) {
+        List<CMLElement> list = map.get(id);
+        if (list == null) {
+            list = Collections.emptyList();
+        }
+        return list;
+    }
+
+    /** adds element.
+     * @param id
+     * @param element
+     */
+    void add(String id, CMLElement element) {
+        List<CMLElement> list = map.get(id);
+        if (list == null) {
+            list = new ArrayList<CMLElement>(1);
+            map.put(id, list);
+        }
+        list.add(element);
+    }
+
+    /** removes element (by identity).
+     * @param id
+     * @param element
+     */
+    void remove(String id, CMLElement element) {
+        List<CMLElement> list = map.get(id);
+        if (list != null) {
+            for (int i = list.size() - 1; i >= 0; i--) {
+                if (list.get(i) == element) {
+                    list.remove(i);
+                    break;
+                }
+            }
+            if (list.isEmpty()) {
+                map.remove(id);
+            }
+        }
+    }
+
+    /** adds element and its CML descendants.
+     * @param element
+     */
+    void addSubtree(CMLElement element) {
+        String id = element.getAttributeValue(CMLElement.ID);
+        if (id != null) {
+            add(id, element);
+        }
+        for (int i = 0; i < element.getChildCount(); i++) {
+            Node child = element.getChild(i);
+            if (child instanceof CMLElement) {
+                addSubtree((CMLElement) child);
+            }
+        }
+    }
+
+    /** removes element and its CML descendants.
+     * @param element
+     */
+    void removeSubtree(CMLElement element) {
+        String id = element.getAttributeValue(CMLElement.ID);
+        if (id != null) {
+            remove(id, element);
+        }
+        for (int i = 0; i < element.getChildCount(); i++) {
+            Node child = element.getChild(i);
+            if (child instanceof CMLElement) {
+                removeSubtree((CMLElement) child);
+            }
+        }
+    }
+
+    /** number of distinct ids.
+     * @return size
+     */
+    int size() {
+        return map.size();
+    }
+}
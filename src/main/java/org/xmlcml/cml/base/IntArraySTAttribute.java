@@ -129,12 +129,11 @@ public class IntArraySTAttribute extends CMLAttribute {
      * @return array
      */
     public static int[] split(String s, String delim) {
-        String sss = s.trim().replace(S_WHITEREGEX, CMLConstants.S_SPACE);
         if (delim == null || delim.trim().equals(S_EMPTY)
                 || delim.equals(S_WHITEREGEX)) {
-            delim = CMLConstants.S_WHITEREGEX;
-            sss = sss.trim();
+            return ArrayParser.parseInts(s);
         }
+        String sss = s.trim();
         String[] ss = sss.split(delim);
         int[] ii = new int[ss.length];
         for (int i = 0; i < ss.length; i++) {
@@ -155,8 +154,11 @@ public class IntArraySTAttribute extends CMLAttribute {
      * @throws RuntimeException
      */
     public void setCMLValue(String s) {
-        int[] ii = split(s.trim(), CMLConstants.S_WHITEREGEX);
-        this.setCMLValue(ii);
+        int[] ii = ArrayParser.parseInts(s);
+        checkValue(ii);
+        this.ii = ii;
+        // the normalized input is kept rather than reformatting ii
+        this.setValue(ArrayParser.normalize(s));
     }
 
     /**
@@ -165,6 +167,7 @@ public class IntArraySTAttribute extends CMLAttribute {
      * @return null if not set
      */
     public Object getCMLValue() {
+        checkDeferred();
         return ii;
     }
 
@@ -174,6 +177,7 @@ public class IntArraySTAttribute extends CMLAttribute {
      * @return null if not set
      */
     public int[] getIntArray() {
+        checkDeferred();
         return ii;
     }
 
@@ -138,6 +138,7 @@ public class IntSTAttribute extends CMLAttribute {
      * @return value
      */
     public Object getCMLValue() {
+        checkDeferred();
         return i;
     }
 
@@ -147,6 +148,7 @@ public class IntSTAttribute extends CMLAttribute {
      * @return int
      */
     public int getInt() {
+        checkDeferred();
         if (i == null) {
             throw new RuntimeException("integer attribute unset");
         }
@@ -0,0 +1,96 @@
+/**
+ *    Copyright 2011 Peter Murray-Rust et. al.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package org.xmlcml.cml.base;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * bounded map dropping least recently used entries.
+ * <p>
+ * an access-ordered LinkedHashMap behind synchronized methods, so a cache
+ * may be shared between threads. Used for parsed xpath expressions and
+ * formulae; values should be immutable.
+ * </p>
+ * @author pm286
+ *
+ * @param <K> key
+ * @param <V> value
+ */
+public class LRUCache<K, V> {
+
+    private final Map<K, V> map;
+
+    /** cache holding up to maxSize entries.
+     * @param maxSize
+     * @throws RuntimeException if maxSize is not positive
+     */
+    public LRUCache(final int maxSize) {
+        if (maxSize <= 0) {
+            throw new RuntimeException("cache size must be positive: "+maxSize);
+        }
+        map = new LinkedHashMap<K, V>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+            protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    /** cached value, marking it most recently used.
+     * @param key
+     * @return value or null
+     */
+    public synchronized V get(K key) {
+        return map.get(key);
+    }
+
+    /** caches value, dropping the least recently used entry if full.
+     * @param key
+     * @param value
+     */
+    public synchronized void put(K key, V value) {
+        map.put(key, value);
+    }
+
+    /** caches value unless key is already cached.
+     * @param key
+     * @param value
+     * @return the cached value (value if it was added)
+     */
+    public synchronized V putIfAbsent(K key, V value) {
+        V cached = map.get(key);
+        if (cached == null) {
+            map.put(key, value);
+            cached = value;
+        }
+        return cached;
+    }
+
+    /** number of entries.
+     * @return size
+     */
+    public synchronized int size() {
+        return map.size();
+    }
+
+    /** empties cache.
+     */
+    public synchronized void clear() {
+        map.clear();
+    }
+}
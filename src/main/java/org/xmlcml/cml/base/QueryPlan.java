@@ -0,0 +1,318 @@
+/**
+ *    Copyright 2011 Peter Murray-Rust et. al.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package org.xmlcml.cml.base;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import nu.xom.Element;
+import nu.xom.Node;
+import nu.xom.Nodes;
+import nu.xom.ParentNode;
+import nu.xom.XPathContext;
+
+/**
+ * parsed form of simple xpath location paths.
+ * 
+ * covers relative paths made only of element name tests joined by
+ * '/' and '//' (e.g. "./cml:molecule", ".//cml:atom", "cml:list/cml:scalar",
+ * "./xsd:attributeGroup", "*"). these are evaluated by walking the tree.
+ * anything else (predicates, axes, functions, attributes, unions, absolute
+ * paths) is passed to XOM. prefixes are looked up in the XPathContext
+ * on each evaluation so a plan does not depend on the context. plans are
+ * kept in a bounded cache keyed by expression.
+ * 
+ * @author pm286
+ */
+final class QueryPlan {
+
+    /** maximum number of expressions cached */
+    static final int CACHE_SIZE = 512;
+
+    /** marks expressions which must be evaluated by XOM */
+    private static final QueryPlan UNSUPPORTED = new QueryPlan(
+            new boolean[0], new String[0], new String[0]);
+
+    private static final LRUCache<String, QueryPlan> CACHE =
+        new LRUCache<String, QueryPlan>(CACHE_SIZE);
+
+    /** true if step i selects descendants rather than children */
+    private final boolean[] descendant;
+    /** prefix of step i (null if none) */
+    private final String[] prefix;
+    /** local name of step i ("*" for any) */
+    private final String[] localName;
+
+    private QueryPlan(boolean[] descendant, String[] prefix, String[] localName) {
+        this.descendant = descendant;
+        this.prefix = prefix;
+        this.localName = localName;
+    }
+
+    /** evaluates xpath on node.
+     * same result as node.query(xpath, context)
+     * @param node
+     * @param xpath
+     * @param context may be null
+     * @return nodes in document order
+     */
+    static Nodes query(Node node, String xpath, XPathContext context) {
+        List<Element> list = (node instanceof ParentNode) ?
+                getPlan(xpath).evaluate((ParentNode) node, context) : null;
+        if (list == null) {
+            return (context == null) ? node.query(xpath) : node.query(xpath, context);
+        }
+        Nodes nodes = new Nodes();
+        for (Element element : list) {
+            nodes.append(element);
+        }
+        return nodes;
+    }
+
+    /** evaluates xpath on node.
+     * same result as node.query(xpath, context)
+     * @param node
+     * @param xpath
+     * @param context may be null
+     * @return list of nodes in document order
+     */
+    static List<Node> queryList(Node node, String xpath, XPathContext context) {
+        List<Element> list = (node instanceof ParentNode) ?
+                getPlan(xpath).evaluate((ParentNode) node, context) : null;
+        if (list != null) {
+            return new ArrayList<Node>(list);
+        }
+        Nodes nodes = (context == null) ? node.query(xpath) : node.query(xpath, context);
+        List<Node> nodeList = new ArrayList<Node>(nodes.size());
+        for (int i = 0; i < nodes.size(); i++) {
+            nodeList.add(nodes.get(i));
+        }
+        return nodeList;
+    }
+
+    /** number of cached expressions.
+     * @return size
+     */
+    static int getCacheSize() {
+        return CACHE.size();
+    }
+
+    /** parses xpath.
+     * @param xpath
+     * @return plan or UNSUPPORTED
+     */
+    static QueryPlan parse(String xpath) {
+        if (xpath == null) {
+            return UNSUPPORTED;
+        }
+        int length = xpath.length();
+        int pos = 0;
+        boolean nextDescendant = false;
+        if (xpath.startsWith(".//")) {
+            pos = 3;
+            nextDescendant = true;
+        } else if (xpath.startsWith("./")) {
+            pos = 2;
+        }
+        List<Boolean> descendantList = new ArrayList<Boolean>();
+        List<String> prefixList = new ArrayList<String>();
+        List<String> nameList = new ArrayList<String>();
+        while (true) {
+            int end = pos;
+            while (end < length && xpath.charAt(end) != '/') {
+                end++;
+            }
+            String step = xpath.substring(pos, end);
+            String stepPrefix = null;
+            String stepName = step;
+            int idx = step.indexOf(':');
+            if (idx != -1) {
+                stepPrefix = step.substring(0, idx);
+                stepName = step.substring(idx + 1);
+                if (!isNCName(stepPrefix)) {
+                    return UNSUPPORTED;
+                }
+            }
+            if (!stepName.equals("*") && !isNCName(stepName)) {
+                return UNSUPPORTED;
+            }
+            descendantList.add(nextDescendant);
+            prefixList.add(stepPrefix);
+            nameList.add(stepName);
+            if (end == length) {
+                break;
+            }
+            pos = end + 1;
+            nextDescendant = false;
+            if (pos < length && xpath.charAt(pos) == '/') {
+                pos++;
+                nextDescendant = true;
+            }
+        }
+        int n = nameList.size();
+        boolean[] descendant = new boolean[n];
+        for (int i = 0; i < n; i++) {
+            descendant[i] = descendantList.get(i);
+        }
+        return new QueryPlan(descendant,
+                prefixList.toArray(new String[n]), nameList.toArray(new String[n]));
+    }
+
+    private static boolean isNCName(String s) {
+        if (s.length() == 0) {
+            return false;
+        }
+        char c = s.charAt(0);
+        if (!Character.isLetter(c) && c != '_') {
+            return false;
+        }
+        for (int i = 1; i < s.length(); i++) {
+            c = s.charAt(i);
+            if (!Character.isLetterOrDigit(c) && c != '_' && c != '-' && c != '.') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** evaluates plan.
+     * @param node
+     * @param context
+     * @return elements in document order or null if XOM must be used
+     */
+    List<Element> evaluate(ParentNode node, XPathContext context) {
+        int n = localName.length;
+        if (n == 0) {
+            return null;
+        }
+        // resolve namespaces first so that XOM reports unbound prefixes
+        String[] uri = new String[n];
+        for (int i = 0; i < n; i++) {
+            if (prefix[i] == null) {
+                uri[i] = CMLConstants.S_EMPTY;
+            } else {
+                uri[i] = (context == null) ? null : context.lookup(prefix[i]);
+                if (uri[i] == null) {
+                    return null;
+                }
+            }
+        }
+        List<ParentNode> current = new ArrayList<ParentNode>(1);
+        current.add(node);
+        List<Element> result = null;
+        // true if current may hold an element and one of its ancestors;
+        // following steps could then be out of document order
+        boolean nested = false;
+        for (int i = 0; i < n; i++) {
+            if (nested) {
+                return null;
+            }
+            result = new ArrayList<Element>();
+            for (ParentNode parent : current) {
+                if (descendant[i]) {
+                    nested |= addDescendants(parent, uri[i], localName[i], result);
+                } else {
+                    addChildren(parent, uri[i], localName[i], result);
+                }
+            }
+            current = new ArrayList<ParentNode>(result);
+        }
+        return result;
+    }
+
+    private static boolean matches(Element element, String uri, String name) {
+        return ("*".equals(name) || name.equals(element.getLocalName())) &&
+            uri.equals(element.getNamespaceURI());
+    }
+
+    private static void addChildren(ParentNode parent, String uri, String name,
+            List<Element> result) {
+        boolean anyNamespace = "*".equals(name) && uri.length() == 0;
+        for (int i = 0; i < parent.getChildCount(); i++) {
+            Node child = parent.getChild(i);
+            if (child instanceof Element &&
+                    (anyNamespace || matches((Element) child, uri, name))) {
+                result.add((Element) child);
+            }
+        }
+    }
+
+    /** adds matching descendants in document order.
+     * @return true if any match is inside another match
+     */
+    private static boolean addDescendants(ParentNode parent, String uri, String name,
+            List<Element> result) {
+        boolean anyNamespace = "*".equals(name) && uri.length() == 0;
+        boolean nested = false;
+        // explicit stack of (node, next child index, inside a match)
+        List<ParentNode> nodeStack = new ArrayList<ParentNode>();
+        int[] indexStack = new int[16];
+        boolean[] insideStack = new boolean[16];
+        nodeStack.add(parent);
+        indexStack[0] = 0;
+        insideStack[0] = false;
+        while (!nodeStack.isEmpty()) {
+            int top = nodeStack.size() - 1;
+            ParentNode current = nodeStack.get(top);
+            int index = indexStack[top];
+            if (index >= current.getChildCount()) {
+                nodeStack.remove(top);
+                continue;
+            }
+            indexStack[top] = index + 1;
+            Node child = current.getChild(index);
+            if (child instanceof Element) {
+                Element element = (Element) child;
+                boolean inside = insideStack[top];
+                if (anyNamespace || matches(element, uri, name)) {
+                    result.add(element);
+                    nested |= inside;
+                    inside = true;
+                }
+                if (element.getChildCount() > 0) {
+                    if (top + 1 == indexStack.length) {
+                        int[] newIndex = new int[2 * indexStack.length];
+                        System.arraycopy(indexStack, 0, newIndex, 0, indexStack.length);
+                        indexStack = newIndex;
+                        boolean[] newInside = new boolean[2 * insideStack.length];
+                        System.arraycopy(insideStack, 0, newInside, 0, insideStack.length);
+                        insideStack = newInside;
+                    }
+                    nodeStack.add(element);
+                    indexStack[top + 1] = 0;
+                    insideStack[top + 1] = inside;
+                }
+            }
+        }
+        return nested;
+    }
+
+    /** parses xpath or returns cached plan.
+     * @param xpath
+     * @return plan
+     */
+    private static QueryPlan getPlan(String xpath) {
+        QueryPlan plan = CACHE.get(xpath);
+        if (plan == null) {
+            plan = parse(xpath);
+            if (xpath != null) {
+                CACHE.put(xpath, plan);
+            }
+        }
+        return plan;
+    }
+}
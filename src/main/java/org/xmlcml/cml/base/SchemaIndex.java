@@ -0,0 +1,382 @@
+/**
+ *    Copyright 2011 Peter Murray-Rust et. al.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package org.xmlcml.cml.base;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import nu.xom.Element;
+import nu.xom.Node;
+
+/**
+ * <p>
+ * precompiled form of the schema indexes built by AttributeFactory.
+ * </p>
+ * <p>
+ * AttributeFactory normally indexes types.xsd, attributes.xsd and elements.xsd
+ * with XPath at class initialisation. This class serialises the resulting
+ * types, attribute templates and element/attribute synonyms into a compact
+ * binary resource (SCHEMA_INDEX) which is written at build time by main() and
+ * read back without touching the XSD. If the resource is missing or cannot be
+ * read AttributeFactory falls back to the XSD.
+ * </p>
+ * <p>
+ * CMLTypes read from the index carry their values and facets but not the
+ * XSD elements (getSimpleType(), getRestriction(), etc. return null) and the
+ * ElementGenerator of the SchemaManager is not populated.
+ * </p>
+ * 
+ * @author pm286
+ * 
+ */
+public class SchemaIndex implements CMLConstants {
+
+	/** resource holding the index */
+	public static final String SCHEMA_INDEX = "org/xmlcml/cml/base/schemaindex.dat";
+
+	private static final int MAGIC = 0x434d4c49;
+	private static final int VERSION = 2;
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private SchemaIndex() {
+	}
+
+	/** writes index of a factory built from the schema files.
+	 * 
+	 * @param factory must have been indexed from XSD
+	 * @param os
+	 * @throws IOException
+	 */
+	public static void write(AttributeFactory factory, OutputStream os) throws IOException {
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(os));
+		SchemaManager schemaManager = factory.getSchemaManager();
+		TypeGenerator typeGenerator = schemaManager.getTypeGenerator();
+		AttributeGenerator attributeGenerator = schemaManager.getAttributeGenerator();
+		out.writeInt(MAGIC);
+		out.writeInt(VERSION);
+
+		Map<String, CMLType> typeMap = typeGenerator.getMap();
+		out.writeInt(typeMap.size());
+		for (String key : typeMap.keySet()) {
+			writeString(out, key);
+			writeType(out, typeMap.get(key));
+		}
+		writeStrings(out, typeGenerator.nameList);
+
+		// attributeGroup -> attribute templates in generator and factory
+		Map<String, CMLAttribute> generatorMap = attributeGenerator.getAttributeGroupMap();
+		Map<String, CMLAttribute> factoryMap = factory.getAttributeGroupNameAttributeMap();
+		Map<String, String> typeNameMap = attributeGenerator.getAttributeGroupTypeNameMap();
+		List<String> groupNames = attributeGenerator.nameList;
+		out.writeInt(groupNames.size());
+		for (String groupName : groupNames) {
+			List<Node> attributes = CMLUtil.getQueryNodes(attributeGenerator.getSchema(), 
+					"./"+XSD_ATTRIBUTE_GROUP+"[@name='"+groupName+"']/"+XSD_ATTRIBUTE, XPATH_XSD);
+			Element attributeElement = (Element) attributes.get(0);
+			writeString(out, groupName);
+			writeString(out, attributeElement.getAttributeValue("name"));
+			writeString(out, typeNameMap.get(groupName));
+			writeAttribute(out, generatorMap.get(groupName));
+			writeAttribute(out, factoryMap.get(groupName));
+		}
+
+		Map<String, Map<String, String>> synonymMap = factory.getElementSynonymMap();
+		out.writeInt(synonymMap.size());
+		for (String elementName : synonymMap.keySet()) {
+			writeString(out, elementName);
+			Map<String, String> map = synonymMap.get(elementName);
+			out.writeInt(map.size());
+			for (String attributeName : map.keySet()) {
+				writeString(out, attributeName);
+				writeString(out, map.get(attributeName));
+			}
+		}
+		out.flush();
+	}
+
+	/** reads index into an empty factory.
+	 * 
+	 * @param factory with new SchemaManager
+	 * @param is
+	 * @throws IOException if the index is corrupt or of wrong version
+	 */
+	public static void read(AttributeFactory factory, InputStream is) throws IOException {
+		DataInputStream in = new DataInputStream(new BufferedInputStream(is));
+		if (in.readInt() != MAGIC) {
+			throw new IOException("not a schema index");
+		}
+		int version = in.readInt();
+		if (version != VERSION) {
+			throw new IOException("schema index version "+version+" (expected "+VERSION+")");
+		}
+		SchemaManager schemaManager = factory.getSchemaManager();
+		TypeGenerator typeGenerator = schemaManager.getTypeGenerator();
+		AttributeGenerator attributeGenerator = schemaManager.getAttributeGenerator();
+
+		Map<String, CMLType> typeMap = typeGenerator.getMap();
+		int nTypes = in.readInt();
+		for (int i = 0; i < nTypes; i++) {
+			String key = readString(in);
+			typeMap.put(key, readType(in));
+		}
+		typeGenerator.nameList.addAll(readStrings(in));
+
+		Map<String, CMLAttribute> generatorMap = attributeGenerator.getAttributeGroupMap();
+		Map<String, CMLAttribute> factoryMap = new HashMap<String, CMLAttribute>();
+		Map<String, String> typeNameMap = attributeGenerator.getAttributeGroupTypeNameMap();
+		int nGroups = in.readInt();
+		for (int i = 0; i < nGroups; i++) {
+			String groupName = readString(in);
+			String attributeName = readString(in);
+			String typeName = readString(in);
+			if (typeName != null) {
+				typeNameMap.put(groupName, typeName);
+			}
+			generatorMap.put(groupName, readAttribute(in, attributeName));
+			factoryMap.put(groupName, readAttribute(in, attributeName));
+			attributeGenerator.nameList.add(groupName);
+		}
+
+		Map<String, Map<String, String>> synonymMap = new HashMap<String, Map<String, String>>();
+		int nElements = in.readInt();
+		for (int i = 0; i < nElements; i++) {
+			String elementName = readString(in);
+			int n = in.readInt();
+			Map<String, String> map = new HashMap<String, String>();
+			for (int j = 0; j < n; j++) {
+				String attributeName = readString(in);
+				map.put(attributeName, readString(in));
+			}
+			synonymMap.put(elementName, map);
+		}
+		factory.setIndexes(factoryMap, synonymMap);
+	}
+
+	private static void writeType(DataOutputStream out, CMLType type) throws IOException {
+		writeString(out, type.name);
+		writeString(out, type.id);
+		writeString(out, type.base);
+		writeString(out, type.javaType);
+		writeString(out, type.pattern);
+		writeString(out, type.summary);
+		writeString(out, type.description);
+		out.writeBoolean(type.isList);
+		out.writeInt(type.listLength);
+		out.writeInt(type.iMinInclusive);
+		out.writeInt(type.iMinExclusive);
+		out.writeInt(type.iMaxInclusive);
+		out.writeInt(type.iMaxExclusive);
+		out.writeDouble(type.dMinInclusive);
+		out.writeDouble(type.dMinExclusive);
+		out.writeDouble(type.dMaxInclusive);
+		out.writeDouble(type.dMaxExclusive);
+		writeStrings(out, Arrays.asList(type.sEnumerationValues));
+		out.writeInt(type.iEnumerationValues.length);
+		for (int i : type.iEnumerationValues) {
+			out.writeInt(i);
+		}
+		out.writeInt(type.dEnumerationValues.length);
+		for (double d : type.dEnumerationValues) {
+			out.writeDouble(d);
+		}
+		out.writeInt(type.subTypes.length);
+		for (CMLType subType : type.subTypes) {
+			writeType(out, subType);
+		}
+	}
+
+	private static CMLType readType(DataInputStream in) throws IOException {
+		CMLType type = new CMLType();
+		type.name = readString(in);
+		type.id = readString(in);
+		type.base = readString(in);
+		type.javaType = readString(in);
+		type.pattern = readString(in);
+		type.summary = readString(in);
+		type.description = readString(in);
+		type.isList = in.readBoolean();
+		type.listLength = in.readInt();
+		type.iMinInclusive = in.readInt();
+		type.iMinExclusive = in.readInt();
+		type.iMaxInclusive = in.readInt();
+		type.iMaxExclusive = in.readInt();
+		type.dMinInclusive = in.readDouble();
+		type.dMinExclusive = in.readDouble();
+		type.dMaxInclusive = in.readDouble();
+		type.dMaxExclusive = in.readDouble();
+		type.sEnumerationValues = readStrings(in).toArray(new String[0]);
+		type.iEnumerationValues = new int[in.readInt()];
+		for (int i = 0; i < type.iEnumerationValues.length; i++) {
+			type.iEnumerationValues[i] = in.readInt();
+		}
+		type.dEnumerationValues = new double[in.readInt()];
+		for (int i = 0; i < type.dEnumerationValues.length; i++) {
+			type.dEnumerationValues[i] = in.readDouble();
+		}
+		type.subTypes = new CMLType[in.readInt()];
+		for (int i = 0; i < type.subTypes.length; i++) {
+			type.subTypes[i] = readType(in);
+		}
+		return type;
+	}
+
+	private static void writeAttribute(DataOutputStream out, CMLAttribute attribute) throws IOException {
+		writeString(out, (attribute == null) ? null : attribute.getClass().getName());
+		if (attribute != null) {
+			writeString(out, attribute.summary);
+			writeString(out, attribute.description);
+		}
+	}
+
+	private static CMLAttribute readAttribute(DataInputStream in, String attributeName) throws IOException {
+		String className = readString(in);
+		if (className == null) {
+			return null;
+		}
+		CMLAttribute attribute = createAttribute(className, attributeName);
+		attribute.summary = readString(in);
+		attribute.description = readString(in);
+		return attribute;
+	}
+
+	/** avoids reflection for the common STAttribute classes.
+	 */
+	private static CMLAttribute createAttribute(String className, String attributeName) throws IOException {
+		if (StringSTAttribute.class.getName().equals(className)) {
+			return new StringSTAttribute(attributeName);
+		} else if (StringArraySTAttribute.class.getName().equals(className)) {
+			return new StringArraySTAttribute(attributeName);
+		} else if (DoubleSTAttribute.class.getName().equals(className)) {
+			return new DoubleSTAttribute(attributeName);
+		} else if (DoubleArraySTAttribute.class.getName().equals(className)) {
+			return new DoubleArraySTAttribute(attributeName);
+		} else if (IntSTAttribute.class.getName().equals(className)) {
+			return new IntSTAttribute(attributeName);
+		} else if (IntArraySTAttribute.class.getName().equals(className)) {
+			return new IntArraySTAttribute(attributeName);
+		} else if (BooleanSTAttribute.class.getName().equals(className)) {
+			return new BooleanSTAttribute(attributeName);
+		} else if (BooleanArraySTAttribute.class.getName().equals(className)) {
+			return new BooleanArraySTAttribute(attributeName);
+		}
+		// special attributes (IdAttribute, etc.)
+		try {
+			return (CMLAttribute) Class.forName(className).newInstance();
+		} catch (Exception e) {
+			throw new IOException("cannot create attribute "+className+": "+e);
+		}
+	}
+
+	private static void writeStrings(DataOutputStream out, List<String> strings) throws IOException {
+		out.writeInt(strings.size());
+		for (String s : strings) {
+			writeString(out, s);
+		}
+	}
+
+	private static List<String> readStrings(DataInputStream in) throws IOException {
+		int n = in.readInt();
+		List<String> strings = new ArrayList<String>(n);
+		for (int i = 0; i < n; i++) {
+			strings.add(readString(in));
+		}
+		return strings;
+	}
+
+	// writeUTF() is limited to 64K so documentation is written as raw UTF-8
+	private static void writeString(DataOutputStream out, String s) throws IOException {
+		if (s == null) {
+			out.writeInt(-1);
+		} else {
+			byte[] bytes = s.getBytes(UTF8);
+			out.writeInt(bytes.length);
+			out.write(bytes);
+		}
+	}
+
+	private static String readString(DataInputStream in) throws IOException {
+		int length = in.readInt();
+		if (length < 0) {
+			return null;
+		}
+		byte[] bytes = new byte[length];
+		in.readFully(bytes);
+		return new String(bytes, UTF8);
+	}
+
+	/** writes the index from the schema files.
+	 * run at build time (process-classes).
+	 * with -bench, instead times building the AttributeFactory from the
+	 * schema files against reading it from the index (best of repeat runs)
+	 * 
+	 * @param args output directory (e.g. target/classes) or -bench [repeat]
+	 * @throws IOException
+	 */
+	public static void main(String[] args) throws IOException {
+		if (args.length >= 1 && args[0].equals("-bench")) {
+			bench((args.length > 1) ? Integer.parseInt(args[1]) : 5);
+			return;
+		}
+		if (args.length != 1) {
+			System.err.println("usage: SchemaIndex <outputDirectory> | -bench [repeat]");
+			return;
+		}
+		AttributeFactory factory = AttributeFactory.createFromSchemaFiles();
+		File file = new File(args[0], SCHEMA_INDEX);
+		file.getParentFile().mkdirs();
+		OutputStream os = new FileOutputStream(file);
+		try {
+			write(factory, os);
+		} finally {
+			os.close();
+		}
+	}
+
+	private static void bench(int repeat) throws IOException {
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		write(AttributeFactory.createFromSchemaFiles(), baos);
+		byte[] index = baos.toByteArray();
+		long xsdTime = Long.MAX_VALUE;
+		long indexTime = Long.MAX_VALUE;
+		for (int i = 0; i < repeat; i++) {
+			long t0 = System.nanoTime();
+			AttributeFactory.createFromSchemaFiles();
+			long t1 = System.nanoTime();
+			AttributeFactory.createFromSchemaIndex(new ByteArrayInputStream(index));
+			long t2 = System.nanoTime();
+			xsdTime = Math.min(xsdTime, t1 - t0);
+			indexTime = Math.min(indexTime, t2 - t1);
+		}
+		System.out.println("AttributeFactory startup: XSD "+xsdTime / 1000000+" ms; SchemaIndex "+
+				indexTime / 1000000+" ms ("+index.length+" bytes, best of "+repeat+")");
+	}
+}
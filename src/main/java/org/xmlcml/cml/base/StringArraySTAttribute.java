@@ -105,12 +105,15 @@ public class StringArraySTAttribute extends CMLAttribute {
      *            the value
      */
     public void setCMLValue(String s) {
-        this.setCMLValue(arrayFromString(s));
+        String[] ss = arrayFromString(s);
+        checkValue(ss);
+        this.ss = ss;
+        // equal to stringFromArray(ss) without building it
+        super.setValue(ArrayParser.normalize(s));
     }
     
     protected String[] arrayFromString(String s){
-    	String[] split = s.trim().split(S_WHITEREGEX);
-    	return split;
+    	return ArrayParser.splitWhitespace(s);
     }
 
     protected String stringFromArray(String[] array){
@@ -150,6 +153,7 @@ public class StringArraySTAttribute extends CMLAttribute {
      * @return null if not set
      */
     public Object getCMLValue() {
+        checkDeferred();
         return ss;
     }
 
@@ -159,6 +163,7 @@ public class StringArraySTAttribute extends CMLAttribute {
      * @return null if not set
      */
     public String[] getStringArray() {
+        checkDeferred();
         return ss;
     }
 
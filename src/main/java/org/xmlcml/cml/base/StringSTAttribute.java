@@ -131,6 +131,7 @@ public class StringSTAttribute extends CMLAttribute {
      * @return value
      */
     public String getString() {
+        checkDeferred();
         return this.getValue();
     }
 
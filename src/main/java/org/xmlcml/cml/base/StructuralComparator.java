@@ -0,0 +1,155 @@
+/**
+ *    Copyright 2011 Peter Murray-Rust et. al.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package org.xmlcml.cml.base;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+import nu.xom.Attribute;
+import nu.xom.Element;
+import nu.xom.Node;
+import nu.xom.Text;
+
+/**
+ * orders elements by structure without serializing them.
+ * 
+ * compares structural hashes first (see CMLUtil.getStructuralHash())
+ * and only walks both trees when the hashes are equal. returns 0 exactly
+ * when elements have the same namespaces, local names, attributes (in
+ * any order) and text, with whitespace in attribute values and text
+ * trimmed and collapsed (see ArrayParser.normalize()); comments, PIs, prefixes and
+ * namespace declarations are ignored. the order is arbitrary but
+ * consistent, so it is suitable for sorting and deduplication, not
+ * for presentation.
+ * 
+ * @author pm286
+ */
+public class StructuralComparator implements Comparator<Element> {
+
+	/**
+	 * compare elements.
+	 * 
+	 * @param element1
+	 * @param element2
+	 * @return 0 if structurally equal else -1 or 1
+	 */
+	public int compare(Element element1, Element element2) {
+		if (element1 == element2) {
+			return 0;
+		}
+		long hash1 = CMLUtil.getStructuralHash(element1);
+		long hash2 = CMLUtil.getStructuralHash(element2);
+		if (hash1 != hash2) {
+			return (hash1 < hash2) ? -1 : 1;
+		}
+		return compareStructure(element1, element2);
+	}
+
+	private int compareStructure(Element element1, Element element2) {
+		int i = element1.getNamespaceURI().compareTo(element2.getNamespaceURI());
+		if (i == 0) {
+			i = element1.getLocalName().compareTo(element2.getLocalName());
+		}
+		if (i == 0) {
+			i = compareAttributes(element1, element2);
+		}
+		if (i == 0) {
+			i = compareChildren(element1, element2);
+		}
+		return (i == 0) ? 0 : ((i < 0) ? -1 : 1);
+	}
+
+	private int compareAttributes(Element element1, Element element2) {
+		int count1 = element1.getAttributeCount();
+		int count2 = element2.getAttributeCount();
+		if (count1 != count2) {
+			return (count1 < count2) ? -1 : 1;
+		}
+		Attribute[] attributes1 = CMLUtil.getSortedAttributes(element1);
+		Attribute[] attributes2 = CMLUtil.getSortedAttributes(element2);
+		for (int j = 0; j < count1; j++) {
+			int i = CMLUtil.compareAttributeNames(attributes1[j], attributes2[j]);
+			if (i == 0) {
+				i = ArrayParser.normalize(attributes1[j].getValue()).compareTo(
+						ArrayParser.normalize(attributes2[j].getValue()));
+			}
+			if (i != 0) {
+				return i;
+			}
+		}
+		return 0;
+	}
+
+	private int compareChildren(Element element1, Element element2) {
+		List<Object> items1 = getItems(element1);
+		List<Object> items2 = getItems(element2);
+		int n = Math.min(items1.size(), items2.size());
+		for (int j = 0; j < n; j++) {
+			Object item1 = items1.get(j);
+			Object item2 = items2.get(j);
+			int i;
+			if (item1 instanceof String) {
+				i = (item2 instanceof String) ?
+					((String) item1).compareTo((String) item2) : -1;
+			} else {
+				i = (item2 instanceof String) ? 1 :
+					this.compare((Element) item1, (Element) item2);
+			}
+			if (i != 0) {
+				return i;
+			}
+		}
+		return items1.size() - items2.size();
+	}
+
+	/** child elements and normalized runs of text.
+	 * adjacent text nodes are merged before normalizing and
+	 * blank runs dropped
+	 * @param element
+	 * @return Strings and Elements in document order
+	 */
+	private static List<Object> getItems(Element element) {
+		List<Object> items = new ArrayList<Object>();
+		StringBuilder run = null;
+		int nChild = element.getChildCount();
+		for (int i = 0; i < nChild; i++) {
+			Node child = element.getChild(i);
+			if (child instanceof Text) {
+				if (run == null) {
+					run = new StringBuilder();
+				}
+				run.append(child.getValue());
+			} else if (child instanceof Element) {
+				addRun(items, run);
+				run = null;
+				items.add(child);
+			}
+		}
+		addRun(items, run);
+		return items;
+	}
+
+	private static void addRun(List<Object> items, StringBuilder run) {
+		if (run != null) {
+			String value = ArrayParser.normalize(run.toString());
+			if (value.length() > 0) {
+				items.add(value);
+			}
+		}
+	}
+}
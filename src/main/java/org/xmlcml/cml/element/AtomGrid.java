@@ -0,0 +1,287 @@
+/**
+ *    Copyright 2011 Peter Murray-Rust et. al.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package org.xmlcml.cml.element;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.xmlcml.cml.base.CMLElement.CoordinateType;
+import org.xmlcml.euclid.Point3;
+
+/**
+ * cell-list index of atoms by 3D position.
+ * <p>
+ * Space is divided into cubic cells of given size and each atom is
+ * filed under the cell containing it, so a neighbours-within-radius query
+ * only examines nearby cells. Building is O(n log n) and a query with
+ * radius close to the cell size is O(neighbours). Queries are clipped to
+ * the occupied cells and, if that box is still larger than the number of
+ * occupied cells, scan those cells instead, so large radii or distant
+ * points do not walk empty space. Either cartesian
+ * (x3, y3, z3) or fractional (xFract, yFract, zFract) coordinates may be
+ * indexed; radius and cell size are in the same units. Fractional
+ * coordinates are treated as orthogonal and not wrapped.
+ * </p>
+ * <p>
+ * Atoms lacking the coordinates are ignored. The index is a snapshot and
+ * is not updated when atoms move.
+ * </p>
+ * @author pm286
+ */
+public class AtomGrid {
+
+    private final static int MAX_CELL = (1 << 21) - 1;
+
+    private CMLAtom[] atoms;
+    private double[] x;
+    private double[] y;
+    private double[] z;
+    private double cellSize;
+    private double xmin;
+    private double ymin;
+    private double zmin;
+    /** largest occupied cell index along each axis */
+    private int ixlim;
+    private int iylim;
+    private int izlim;
+    /** atom serials sorted by cell */
+    private int[] order;
+    /** cell key to {start, end} in order */
+    private Map<Long, int[]> cellMap;
+    private Map<CMLAtom, Integer> atomIndexMap;
+
+    /** indexes cartesian coordinates.
+     * @param atomList
+     * @param cellSize normally the largest radius that will be queried
+     */
+    public AtomGrid(List<CMLAtom> atomList, double cellSize) {
+        this(atomList, CoordinateType.CARTESIAN, cellSize);
+    }
+
+    /** indexes cartesian or fractional coordinates.
+     * @param atomList
+     * @param type CARTESIAN or FRACTIONAL
+     * @param cellSize normally the largest radius that will be queried
+     */
+    public AtomGrid(List<CMLAtom> atomList, CoordinateType type, double cellSize) {
+        if (!(cellSize > 0.0)) {
+            throw new RuntimeException("cell size must be positive: "+cellSize);
+        }
+        if (!CoordinateType.CARTESIAN.equals(type) &&
+                !CoordinateType.FRACTIONAL.equals(type)) {
+            throw new RuntimeException("cannot index coordinates of type: "+type);
+        }
+        this.cellSize = cellSize;
+        List<CMLAtom> indexed = new ArrayList<CMLAtom>(atomList.size());
+        for (CMLAtom atom : atomList) {
+            if (atom.hasCoordinates(type)) {
+                indexed.add(atom);
+            }
+        }
+        int n = indexed.size();
+        atoms = indexed.toArray(new CMLAtom[n]);
+        atomIndexMap = new IdentityHashMap<CMLAtom, Integer>(n);
+        for (int i = 0; i < n; i++) {
+            atomIndexMap.put(atoms[i], i);
+        }
+        x = new double[n];
+        y = new double[n];
+        z = new double[n];
+        boolean cartesian = CoordinateType.CARTESIAN.equals(type);
+        for (int i = 0; i < n; i++) {
+            CMLAtom atom = atoms[i];
+            x[i] = (cartesian) ? atom.getX3() : atom.getXFract();
+            y[i] = (cartesian) ? atom.getY3() : atom.getYFract();
+            z[i] = (cartesian) ? atom.getZ3() : atom.getZFract();
+        }
+        xmin = min(x);
+        ymin = min(y);
+        zmin = min(z);
+        final long[] keys = new long[n];
+        Integer[] sorted = new Integer[n];
+        for (int i = 0; i < n; i++) {
+            int ix = cell(x[i], xmin);
+            int iy = cell(y[i], ymin);
+            int iz = cell(z[i], zmin);
+            ixlim = Math.max(ixlim, ix);
+            iylim = Math.max(iylim, iy);
+            izlim = Math.max(izlim, iz);
+            keys[i] = key(ix, iy, iz);
+            sorted[i] = i;
+        }
+        Arrays.sort(sorted, new Comparator<Integer>() {
+            public int compare(Integer i, Integer j) {
+                long ki = keys[i];
+                long kj = keys[j];
+                return (ki < kj) ? -1 : ((ki == kj) ? 0 : 1);
+            }
+        });
+        order = new int[n];
+        cellMap = new HashMap<Long, int[]>();
+        int start = 0;
+        for (int k = 0; k < n; k++) {
+            order[k] = sorted[k];
+            if (k == n - 1 || keys[sorted[k + 1]] != keys[sorted[k]]) {
+                cellMap.put(keys[sorted[k]], new int[] { start, k + 1 });
+                start = k + 1;
+            }
+        }
+    }
+
+    private static double min(double[] values) {
+        double min = 0.0;
+        for (int i = 0; i < values.length; i++) {
+            if (i == 0 || values[i] < min) {
+                min = values[i];
+            }
+        }
+        return min;
+    }
+
+    private int cell(double coord, double min) {
+        double c = Math.floor((coord - min) / cellSize);
+        if (c > MAX_CELL) {
+            throw new RuntimeException("grid too fine for extent of atoms; increase cell size");
+        }
+        return (int) c;
+    }
+
+    private static long key(int ix, int iy, int iz) {
+        return ((long) ix << 42) | ((long) iy << 21) | iz;
+    }
+
+    /** number of indexed atoms.
+     * @return count
+     */
+    public int size() {
+        return atoms.length;
+    }
+
+    /** atoms within radius of a point.
+     * @param point
+     * @param radius
+     * @return atoms (in no particular order)
+     */
+    public List<CMLAtom> getAtomsWithin(Point3 point, double radius) {
+        double[] xyz = point.getArray();
+        List<CMLAtom> atomList = new ArrayList<CMLAtom>();
+        for (int i : search(xyz[0], xyz[1], xyz[2], radius, -1)) {
+            atomList.add(atoms[i]);
+        }
+        return atomList;
+    }
+
+    /** other indexed atoms within radius of an indexed atom.
+     * @param atom
+     * @param radius
+     * @return atoms (in no particular order); empty if atom is not indexed
+     */
+    public List<CMLAtom> getNeighbours(CMLAtom atom, double radius) {
+        List<CMLAtom> atomList = new ArrayList<CMLAtom>();
+        Integer i = atomIndexMap.get(atom);
+        if (i != null) {
+            for (int j : search(x[i], y[i], z[i], radius, i)) {
+                atomList.add(atoms[j]);
+            }
+        }
+        return atomList;
+    }
+
+    /** all pairs of indexed atoms within radius.
+     * each pair is returned once.
+     * @param radius
+     * @return pairs
+     */
+    public List<CMLAtom[]> getPairsWithin(double radius) {
+        List<CMLAtom[]> pairList = new ArrayList<CMLAtom[]>();
+        for (int i = 0; i < atoms.length; i++) {
+            for (int j : search(x[i], y[i], z[i], radius, i)) {
+                if (j > i) {
+                    pairList.add(new CMLAtom[] { atoms[i], atoms[j] });
+                }
+            }
+        }
+        return pairList;
+    }
+
+    /** serials of atoms within radius of x, y, z.
+     * 
+     * @param exclude serial to omit (-1 for none)
+     */
+    private List<Integer> search(double xx, double yy, double zz, double radius, int exclude) {
+        List<Integer> found = new ArrayList<Integer>();
+        if (atoms.length == 0) {
+            return found;
+        }
+        double r2 = radius * radius;
+        int ixmin = Math.max(0, (int) Math.floor((xx - radius - xmin) / cellSize));
+        int iymin = Math.max(0, (int) Math.floor((yy - radius - ymin) / cellSize));
+        int izmin = Math.max(0, (int) Math.floor((zz - radius - zmin) / cellSize));
+        int ixmax = (int) Math.min(ixlim, Math.floor((xx + radius - xmin) / cellSize));
+        int iymax = (int) Math.min(iylim, Math.floor((yy + radius - ymin) / cellSize));
+        int izmax = (int) Math.min(izlim, Math.floor((zz + radius - zmin) / cellSize));
+        if (ixmin > ixmax || iymin > iymax || izmin > izmax) {
+            return found;
+        }
+        long boxCells = (long) (ixmax - ixmin + 1) * (iymax - iymin + 1) * (izmax - izmin + 1);
+        if (boxCells > cellMap.size()) {
+            for (Map.Entry<Long, int[]> entry : cellMap.entrySet()) {
+                long key = entry.getKey();
+                int ix = (int) (key >>> 42);
+                int iy = (int) (key >>> 21) & MAX_CELL;
+                int iz = (int) key & MAX_CELL;
+                if (ix >= ixmin && ix <= ixmax && iy >= iymin && iy <= iymax &&
+                        iz >= izmin && iz <= izmax) {
+                    addWithin(entry.getValue(), xx, yy, zz, r2, exclude, found);
+                }
+            }
+        } else {
+            for (int ix = ixmin; ix <= ixmax; ix++) {
+                for (int iy = iymin; iy <= iymax; iy++) {
+                    for (int iz = izmin; iz <= izmax; iz++) {
+                        int[] range = cellMap.get(key(ix, iy, iz));
+                        if (range != null) {
+                            addWithin(range, xx, yy, zz, r2, exclude, found);
+                        }
+                    }
+                }
+            }
+        }
+        return found;
+    }
+
+    private void addWithin(int[] range, double xx, double yy, double zz, double r2,
+            int exclude, List<Integer> found) {
+        for (int k = range[0]; k < range[1]; k++) {
+            int i = order[k];
+            if (i == exclude) {
+                continue;
+            }
+            double dx = x[i] - xx;
+            double dy = y[i] - yy;
+            double dz = z[i] - zz;
+            if (dx * dx + dy * dy + dz * dz <= r2) {
+                found.add(i);
+            }
+        }
+    }
+}
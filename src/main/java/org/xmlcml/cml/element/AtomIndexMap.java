@@ -0,0 +1,229 @@
+/**
+ *    Copyright 2011 Peter Murray-Rust et. al.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package org.xmlcml.cml.element;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * atom mapping held as indexes into two lists of atoms.
+ * <p>
+ * Links of a CMLMap with single from and to atom ids are resolved once to
+ * positions in the from and to atom lists (normally molecule.getAtomView())
+ * so forward and reverse lookups are array reads and maps can be composed
+ * (A to B with B to C gives A to C) without going through ids. Links with
+ * fromSet/toSet or ids not in the lists are ignored. The index map is always
+ * one-to-one: if an atom occurs in more than one link the last link wins and
+ * earlier links to or from that atom are dropped.
+ * </p>
+ * <p>
+ * An index map is immutable. It is not updated when the map or molecules
+ * change; CMLMap.getAtomIndexMap() rebuilds it as required.
+ * </p>
+ * @author pm286
+ */
+public class AtomIndexMap {
+
+    /** value for unmapped atoms */
+    public final static int UNMAPPED = -1;
+
+    private List<CMLAtom> fromAtoms;
+    private List<CMLAtom> toAtoms;
+    private int[] toIndex;
+    private int[] fromIndex;
+
+    /** resolves links of map.
+     * @param map
+     * @param fromAtoms atoms referenced by link/@from
+     * @param toAtoms atoms referenced by link/@to
+     */
+    public AtomIndexMap(CMLMap map, List<CMLAtom> fromAtoms, List<CMLAtom> toAtoms) {
+        this(fromAtoms, toAtoms);
+        Map<String, Integer> fromById = indexById(fromAtoms);
+        Map<String, Integer> toById = indexById(toAtoms);
+        for (CMLLink link : map.getLinkElements()) {
+            Integer from = lookup(fromById, link.getFrom());
+            Integer to = lookup(toById, link.getTo());
+            if (from != null && to != null) {
+                put(from.intValue(), to.intValue());
+            }
+        }
+    }
+
+    private void put(int from, int to) {
+        int oldTo = toIndex[from];
+        if (oldTo != UNMAPPED) {
+            fromIndex[oldTo] = UNMAPPED;
+        }
+        int oldFrom = fromIndex[to];
+        if (oldFrom != UNMAPPED) {
+            toIndex[oldFrom] = UNMAPPED;
+        }
+        toIndex[from] = to;
+        fromIndex[to] = from;
+    }
+
+    private AtomIndexMap(List<CMLAtom> fromAtoms, List<CMLAtom> toAtoms) {
+        this.fromAtoms = fromAtoms;
+        this.toAtoms = toAtoms;
+        toIndex = new int[fromAtoms.size()];
+        fromIndex = new int[toAtoms.size()];
+        Arrays.fill(toIndex, UNMAPPED);
+        Arrays.fill(fromIndex, UNMAPPED);
+    }
+
+    private static Map<String, Integer> indexById(List<CMLAtom> atoms) {
+        Map<String, Integer> indexById = new HashMap<String, Integer>();
+        for (int i = 0; i < atoms.size(); i++) {
+            indexById.put(atoms.get(i).getId(), i);
+        }
+        return indexById;
+    }
+
+    private static Integer lookup(Map<String, Integer> indexById, String id) {
+        return (id == null) ? null : indexById.get(id);
+    }
+
+    /** number of from atoms.
+     * @return count
+     */
+    public int getFromCount() {
+        return toIndex.length;
+    }
+
+    /** number of to atoms.
+     * @return count
+     */
+    public int getToCount() {
+        return fromIndex.length;
+    }
+
+    /** forward lookup.
+     * @param from index of from atom
+     * @return index of to atom or UNMAPPED
+     */
+    public int getTo(int from) {
+        return toIndex[from];
+    }
+
+    /** reverse lookup.
+     * @param to index of to atom
+     * @return index of from atom or UNMAPPED
+     */
+    public int getFrom(int to) {
+        return fromIndex[to];
+    }
+
+    /** forward mapping.
+     * @return copy, indexed by from atom
+     */
+    public int[] getToIndices() {
+        return toIndex.clone();
+    }
+
+    /** reverse mapping.
+     * @return copy, indexed by to atom
+     */
+    public int[] getFromIndices() {
+        return fromIndex.clone();
+    }
+
+    /** atom mapped from.
+     * @param from index of from atom
+     * @return to atom or null
+     */
+    public CMLAtom getToAtom(int from) {
+        int to = toIndex[from];
+        return (to == UNMAPPED) ? null : toAtoms.get(to);
+    }
+
+    /** atom mapped to.
+     * @param to index of to atom
+     * @return from atom or null
+     */
+    public CMLAtom getFromAtom(int to) {
+        int from = fromIndex[to];
+        return (from == UNMAPPED) ? null : fromAtoms.get(from);
+    }
+
+    /** number of mapped atoms.
+     * @return count
+     */
+    public int getMappedCount() {
+        int count = 0;
+        for (int to : toIndex) {
+            if (to != UNMAPPED) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /** reverse map.
+     * @return map from to atoms to from atoms
+     */
+    public AtomIndexMap inverse() {
+        AtomIndexMap inverse = new AtomIndexMap(toAtoms, fromAtoms);
+        inverse.toIndex = fromIndex.clone();
+        inverse.fromIndex = toIndex.clone();
+        return inverse;
+    }
+
+    /** composes with a following map.
+     * if this maps A to B and next maps B to C the result maps A to C.
+     * @param next whose from atoms are the to atoms of this
+     * @return composed map
+     * @throws RuntimeException if atom counts do not match
+     */
+    public AtomIndexMap compose(AtomIndexMap next) {
+        if (next.getFromCount() != this.getToCount()) {
+            throw new RuntimeException("cannot compose maps: "+
+                this.getToCount()+" to atoms, "+next.getFromCount()+" from atoms");
+        }
+        AtomIndexMap composed = new AtomIndexMap(fromAtoms, next.toAtoms);
+        for (int i = 0; i < toIndex.length; i++) {
+            int j = toIndex[i];
+            if (j != UNMAPPED) {
+                int k = next.toIndex[j];
+                if (k != UNMAPPED) {
+                    composed.toIndex[i] = k;
+                    composed.fromIndex[k] = i;
+                }
+            }
+        }
+        return composed;
+    }
+
+    /** creates map with a link for each mapped atom.
+     * @return new map with from and to ids
+     */
+    public CMLMap createCMLMap() {
+        CMLMap map = new CMLMap();
+        for (int i = 0; i < toIndex.length; i++) {
+            int j = toIndex[i];
+            if (j != UNMAPPED) {
+                CMLLink link = new CMLLink();
+                link.setFrom(fromAtoms.get(i).getId());
+                link.setTo(toAtoms.get(j).getId());
+                map.addLink(link);
+            }
+        }
+        return map;
+    }
+}
@@ -16,6 +16,8 @@
 
 package org.xmlcml.cml.element;
 
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
 import java.text.ParseException;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -24,12 +26,15 @@ import java.util.List;
 import nu.xom.Attribute;
 import nu.xom.Element;
 import nu.xom.Node;
+import nu.xom.Nodes;
+import nu.xom.Text;
 
 import org.apache.log4j.Logger;
 import org.joda.time.DateTime;
 import org.xmlcml.cml.attribute.DelimiterAttribute;
 import org.xmlcml.cml.attribute.DelimiterAttribute.Action;
 import org.xmlcml.cml.attribute.NamespaceRefAttribute;
+import org.xmlcml.cml.base.ArrayParser;
 import org.xmlcml.cml.base.CMLAttribute;
 import org.xmlcml.cml.base.CMLConstants;
 import org.xmlcml.cml.base.CMLElement;
@@ -39,8 +44,6 @@ import org.xmlcml.cml.interfacex.HasDataType;
 import org.xmlcml.cml.interfacex.HasDelimiter;
 import org.xmlcml.cml.interfacex.HasDictRef;
 import org.xmlcml.cml.interfacex.HasUnits;
-import org.xmlcml.euclid.EuclidRuntimeException;
-import org.xmlcml.euclid.IntArray;
 import org.xmlcml.euclid.JodaDate;
 import org.xmlcml.euclid.RealArray;
 import org.xmlcml.euclid.Util;
@@ -49,6 +52,14 @@ import org.xmlcml.euclid.Util;
  * user-modifiable class supporting array. * autogenerated from schema use as a
  * shell which can be edited
  * 
+ * numeric content is parsed once into a buffer which getDoubles()/getInts()
+ * copy from until the text children change; getDoubleView()/getIntView()
+ * read it without copying. append() adds to the buffer and
+ * rewrites only the last text chunk (of about CHUNK characters) so the text
+ * is always current for serialization but building an array is linear.
+ * Text children should be changed through setXMLContent() or the child
+ * methods of this element, not Text.setValue().
+ * 
  */
 public class CMLArray extends AbstractArray implements HasUnits, HasArraySize,
 		HasDataType, HasDictRef, HasDelimiter {
@@ -58,6 +69,15 @@ public class CMLArray extends AbstractArray implements HasUnits, HasArraySize,
 	public final static String NS = C_E + TAG;
 	private DelimiterAttribute delimiterAttribute = null;
 
+	private final static int CHUNK = 1024;
+	/** parsed numeric content; null if not parsed or content changed */
+	private double[] doubleBuffer = null;
+	private int[] intBuffer = null;
+	private int bufferSize = 0;
+	/** last text child written by append() and its content */
+	private Text tail = null;
+	private StringBuilder tailContent = null;
+
 	/**
 	 * constructor.
 	 */
@@ -110,6 +130,8 @@ public class CMLArray extends AbstractArray implements HasUnits, HasArraySize,
 	 */
 	@Override
 	public void finishMakingElement(Element parent) {
+		// builder adds text without insertChild()
+		clearBuffer();
 		delimiterAttribute = null;
 		delimiterAttribute = (DelimiterAttribute) this.getDelimiterAttribute();
 		int ll = -1;
@@ -124,16 +146,14 @@ public class CMLArray extends AbstractArray implements HasUnits, HasArraySize,
 			ll = ss.length;
 		} else if (XSD_DOUBLE.equals(CMLType.getNormalizedValue(dataType))) {
 			try {
-				double[] ss = this.getDoubles();
-				ll = ss.length;
+				ll = this.getDoubleView().limit();
 			} catch (RuntimeException e) {
 				throw new RuntimeException("Fault in XML: "
 						+ this.getXMLContent(), e);
 			}
 		} else if (dataType.equals(XSD_INTEGER)) {
 			try {
-				int[] ss = this.getInts();
-				ll = ss.length;
+				ll = this.getIntView().limit();
 			} catch (RuntimeException e) {
 				throw new RuntimeException("cannot parse as ints: "
 						+ this.getXMLContent());
@@ -386,11 +406,17 @@ public class CMLArray extends AbstractArray implements HasUnits, HasArraySize,
 			String delimiter = this.getDelimiter();
 			subArray = (delimiter == null) ? new CMLArray(sout) : new CMLArray(sout, delimiter);
 		} else if (dataType.equals(CMLConstants.XSD_DOUBLE)) {
-			RealArray realArray = new RealArray(this.getDoubles());
-			subArray = new CMLArray(realArray.getSubArray(start, end));
+			double[] dd = new double[end - start + 1];
+			DoubleBuffer view = this.getDoubleView();
+			view.position(start);
+			view.get(dd);
+			subArray = new CMLArray(dd);
 		} else if (dataType.equals(CMLConstants.XSD_INTEGER)) {
-			IntArray intArray = new IntArray(this.getInts());
-			subArray = new CMLArray(intArray.getSubArray(start, end).getArray());
+			int[] ii = new int[end - start + 1];
+			IntBuffer view = this.getIntView();
+			view.position(start);
+			view.get(ii);
+			subArray = new CMLArray(ii);
 		}
 		String dictRef = this.getDictRef();
 		if (dictRef != null) {
@@ -446,6 +472,16 @@ public class CMLArray extends AbstractArray implements HasUnits, HasArraySize,
 		return ss;
 	}
 
+	/**
+	 * get tokens of content whatever the dataType.
+	 * for types without a typed accessor (e.g. xsd:boolean, xsd:date)
+	 * 
+	 * @return tokens
+	 */
+	String[] getTokens() {
+		return getSplitContent();
+	}
+
 	/**
 	 * splits content into tokens. if delimiter is whitespace, trims content and
 	 * splits at whitespace (however long) else assume starts and ends with
@@ -511,23 +547,78 @@ public class CMLArray extends AbstractArray implements HasUnits, HasArraySize,
 		String dataType = this.getDataType();
 		if (dataType != null
 				&& XSD_DOUBLE.equals(CMLType.getNormalizedValue(dataType))) {
-			String[] ss = getSplitContent();
-			dd = new double[ss.length];
-			for (int i = 0; i < dd.length; i++) {
-				try {
-					dd[i] = Util.parseFlexibleDouble(ss[i]);
-				} catch (NumberFormatException nfe) {
-					throw new RuntimeException("Bad double :" + ss[i]
-							+ " at position: " + i, nfe);
-				} catch (ParseException e) {
-					throw new RuntimeException("Bad double : " + ss[i]
-							+ "at position " + i, e);
+			dd = Arrays.copyOf(getDoubleBuffer(), bufferSize);
+		}
+		return dd;
+	}
+
+	/**
+	 * read-only view of the parsed doubles, without copying.
+	 * position 0, limit the array size. Valid until the content changes.
+	 * 
+	 * @return view or null if not xsd:double
+	 */
+	public DoubleBuffer getDoubleView() {
+		DoubleBuffer view = null;
+		String dataType = this.getDataType();
+		if (dataType != null
+				&& XSD_DOUBLE.equals(CMLType.getNormalizedValue(dataType))) {
+			view = DoubleBuffer.wrap(getDoubleBuffer(), 0, bufferSize).slice().asReadOnlyBuffer();
+		}
+		return view;
+	}
+
+	/** parsed content.
+	 * cached until text content changes
+	 * @return buffer (only first bufferSize elements are used)
+	 */
+	private double[] getDoubleBuffer() {
+		if (doubleBuffer == null) {
+			double[] dd = parseWhitespaceDoubles();
+			if (dd == null) {
+				String[] ss = getSplitContent();
+				dd = new double[ss.length];
+				for (int i = 0; i < dd.length; i++) {
+					try {
+						dd[i] = Util.parseFlexibleDouble(ss[i]);
+					} catch (NumberFormatException nfe) {
+						throw new RuntimeException("Bad double :" + ss[i]
+								+ " at position: " + i, nfe);
+					} catch (ParseException e) {
+						throw new RuntimeException("Bad double : " + ss[i]
+								+ "at position " + i, e);
+					}
 				}
 			}
+			intBuffer = null;
+			doubleBuffer = dd;
+			bufferSize = dd.length;
+		}
+		return doubleBuffer;
+	}
+
+	/** fast path for whitespace-delimited content.
+	 * @return null if not whitespace-delimited or content is bad
+	 */
+	private double[] parseWhitespaceDoubles() {
+		double[] dd = null;
+		String content = this.getXMLContent();
+		if (content != null && content.length() > 0 && isWhitespaceDelimited()) {
+			try {
+				dd = ArrayParser.parseDoubles(content);
+				this.removeWhitespaceDelimiterAttribute();
+			} catch (RuntimeException e) {
+				// report through getSplitContent()
+			}
 		}
 		return dd;
 	}
 
+	private boolean isWhitespaceDelimited() {
+		String delimiter = super.getDelimiter();
+		return delimiter == null || delimiter.trim().length() == 0;
+	}
+
 	/** convenience method returns a list of doubles for either xsd:integer or xsd:double
 	 * 
 	 * @return
@@ -535,10 +626,12 @@ public class CMLArray extends AbstractArray implements HasUnits, HasArraySize,
 	public double[] getNumbersAsDoubles() {
 		double[] doubles = getDoubles();
 		if (doubles == null) {
-			int[] integers = getInts();
+			IntBuffer integers = getIntView();
 			if (integers != null) {
-				RealArray realArray = RealArray.createRealArray(integers);
-				doubles = (realArray == null) ? null : realArray.getArray();
+				doubles = new double[integers.limit()];
+				for (int i = 0; i < doubles.length; i++) {
+					doubles[i] = integers.get(i);
+				}
 			}
 		}
 		return doubles;
@@ -575,18 +668,58 @@ public class CMLArray extends AbstractArray implements HasUnits, HasArraySize,
 		int[] ii = null;
 		String dataType = this.getDataType();
 		if (XSD_INTEGER.equals(dataType)) {
-			String[] ss = getSplitContent();
-			ii = new int[ss.length];
-			for (int i = 0; i < ii.length; i++) {
+			ii = Arrays.copyOf(getIntBuffer(), bufferSize);
+		}
+		return ii;
+	}
+
+	/**
+	 * read-only view of the parsed ints, without copying.
+	 * position 0, limit the array size. Valid until the content changes.
+	 * 
+	 * @return view or null if not xsd:integer
+	 */
+	public IntBuffer getIntView() {
+		IntBuffer view = null;
+		if (XSD_INTEGER.equals(this.getDataType())) {
+			view = IntBuffer.wrap(getIntBuffer(), 0, bufferSize).slice().asReadOnlyBuffer();
+		}
+		return view;
+	}
+
+	/** parsed content.
+	 * cached until text content changes
+	 * @return buffer (only first bufferSize elements are used)
+	 */
+	private int[] getIntBuffer() {
+		if (intBuffer == null) {
+			int[] ii = null;
+			String content = this.getXMLContent();
+			if (content != null && content.length() > 0 && isWhitespaceDelimited()) {
 				try {
-					ii[i] = new Integer(ss[i]).intValue();
-				} catch (NumberFormatException nfe) {
-					throw new RuntimeException("Bad int (" + ss[i]
-							+ ") at position: " + i);
+					ii = ArrayParser.parseInts(content);
+					this.removeWhitespaceDelimiterAttribute();
+				} catch (RuntimeException e) {
+					// report below
 				}
 			}
+			if (ii == null) {
+				String[] ss = getSplitContent();
+				ii = new int[ss.length];
+				for (int i = 0; i < ii.length; i++) {
+					try {
+						ii[i] = new Integer(ss[i]).intValue();
+					} catch (NumberFormatException nfe) {
+						throw new RuntimeException("Bad int (" + ss[i]
+								+ ") at position: " + i);
+					}
+				}
+			}
+			doubleBuffer = null;
+			intBuffer = ii;
+			bufferSize = ii.length;
 		}
-		return ii;
+		return intBuffer;
 	}
 
 	public CMLScalar getElementAt(int i) {
@@ -607,10 +740,10 @@ public class CMLArray extends AbstractArray implements HasUnits, HasArraySize,
 				DateTime d = getDates()[i];
 				scalar = new CMLScalar(d);
 			} else if (dataType.equals(XSD_DOUBLE)) {
-				Double d = getDoubles()[i];
+				Double d = getDoubleBuffer()[i];
 				scalar = new CMLScalar(d);
 			} else if (dataType.equals(XSD_INTEGER)) {
-				Integer ii = getInts()[i];
+				Integer ii = getIntBuffer()[i];
 				scalar = new CMLScalar(ii);
 			}
 			CMLArray.copyAttributesFromTo(this, scalar);
@@ -650,15 +783,15 @@ public class CMLArray extends AbstractArray implements HasUnits, HasArraySize,
 				values.add(s);
 			}
 		} else if (XSD_INTEGER.equals(dataType)) {
-			int[] ints = this.getInts();
-			for (int i : ints) {
-				values.add(S_EMPTY + i);
+			IntBuffer ints = this.getIntView();
+			for (int i = 0; i < ints.limit(); i++) {
+				values.add(S_EMPTY + ints.get(i));
 			}
 		} else if (XSD_DOUBLE.equals(dataType)) {
 
-			double[] doubles = this.getDoubles();
-			for (double d : doubles) {
-				values.add(S_EMPTY + d);
+			DoubleBuffer doubles = this.getDoubleView();
+			for (int i = 0; i < doubles.limit(); i++) {
+				values.add(S_EMPTY + doubles.get(i));
 			}
 		}
 		return values;
@@ -673,7 +806,18 @@ public class CMLArray extends AbstractArray implements HasUnits, HasArraySize,
 	 * @throws RuntimeException
 	 */
 	public void setArray(String[] array) throws RuntimeException {
-		resetDataType(XSD_STRING);
+		setTokens(array, XSD_STRING);
+	}
+
+	/**
+	 * sets components as tokens of given dataType.
+	 * 
+	 * @param array tokens
+	 * @param dataType kept on the array (e.g. xsd:boolean)
+	 * @throws RuntimeException
+	 */
+	void setTokens(String[] array, String dataType) throws RuntimeException {
+		resetDataType(dataType);
 		ensureDelimiterAttribute(Action.PRESERVE);
 		for (String s : array) {
 			delimiterAttribute.checkDelimiter(s);
@@ -737,6 +881,8 @@ public class CMLArray extends AbstractArray implements HasUnits, HasArraySize,
 		setXMLContent(delimiterAttribute.getDelimitedXMLContent(array));
 		resetSize(array.length);
 		this.removeWhitespaceDelimiterAttribute();
+		doubleBuffer = Arrays.copyOf(array, array.length);
+		bufferSize = array.length;
 	}
 
 	/**
@@ -750,6 +896,8 @@ public class CMLArray extends AbstractArray implements HasUnits, HasArraySize,
 		setXMLContent(delimiterAttribute.getDelimitedXMLContent(array));
 		resetSize(array.length);
 		this.removeWhitespaceDelimiterAttribute();
+		intBuffer = Arrays.copyOf(array, array.length);
+		bufferSize = array.length;
 	}
 
 	/**
@@ -761,6 +909,8 @@ public class CMLArray extends AbstractArray implements HasUnits, HasArraySize,
 		int size = -1;
 		if (this.getSizeAttribute() != null) {
 			size = super.getSize();
+		} else if (doubleBuffer != null || intBuffer != null) {
+			size = bufferSize;
 		} else {
 			String[] array = this.getSplitContent();
 			size = array.length;
@@ -892,18 +1042,22 @@ public class CMLArray extends AbstractArray implements HasUnits, HasArraySize,
 	public CMLArray subtract(CMLArray array) {
 		checkNumericConformability(array);
 		CMLArray resultArray = null;
-		try {
-			if (this.getDataType().equals(XSD_DOUBLE)) {
-				RealArray result = new RealArray(array.getDoubles())
-						.subtract(new RealArray(this.getDoubles()));
-				resultArray = new CMLArray(result.getArray());
-			} else if (this.getDataType().equals(XSD_INTEGER)) {
-				IntArray result = new IntArray(array.getInts())
-						.subtract(new IntArray(this.getInts()));
-				resultArray = new CMLArray(result.getArray());
+		if (this.getDataType().equals(XSD_DOUBLE)) {
+			DoubleBuffer dd = array.getDoubleView();
+			DoubleBuffer dd1 = this.getDoubleView();
+			double[] result = new double[dd.limit()];
+			for (int i = 0; i < result.length; i++) {
+				result[i] = dd.get(i) - dd1.get(i);
 			}
-		} catch (EuclidRuntimeException je) {
-			throw new RuntimeException(S_EMPTY + je);
+			resultArray = new CMLArray(result);
+		} else if (this.getDataType().equals(XSD_INTEGER)) {
+			IntBuffer ii = array.getIntView();
+			IntBuffer ii1 = this.getIntView();
+			int[] result = new int[ii.limit()];
+			for (int i = 0; i < result.length; i++) {
+				result[i] = ii.get(i) - ii1.get(i);
+			}
+			resultArray = new CMLArray(result);
 		}
 		return resultArray;
 	}
@@ -925,18 +1079,22 @@ public class CMLArray extends AbstractArray implements HasUnits, HasArraySize,
 	public CMLArray plus(CMLArray array) {
 		checkNumericConformability(array);
 		CMLArray resultArray = null;
-		try {
-			if (this.getDataType().equals(XSD_DOUBLE)) {
-				RealArray result = new RealArray(this.getDoubles())
-						.plus(new RealArray(array.getDoubles()));
-				resultArray = new CMLArray(result.getArray());
-			} else if (this.getDataType().equals(XSD_INTEGER)) {
-				IntArray result = new IntArray(this.getInts())
-						.plus(new IntArray(array.getInts()));
-				resultArray = new CMLArray(result.getArray());
+		if (this.getDataType().equals(XSD_DOUBLE)) {
+			DoubleBuffer dd = this.getDoubleView();
+			DoubleBuffer dd1 = array.getDoubleView();
+			double[] result = new double[dd.limit()];
+			for (int i = 0; i < result.length; i++) {
+				result[i] = dd.get(i) + dd1.get(i);
+			}
+			resultArray = new CMLArray(result);
+		} else if (this.getDataType().equals(XSD_INTEGER)) {
+			IntBuffer ii = this.getIntView();
+			IntBuffer ii1 = array.getIntView();
+			int[] result = new int[ii.limit()];
+			for (int i = 0; i < result.length; i++) {
+				result[i] = ii.get(i) + ii1.get(i);
 			}
-		} catch (EuclidRuntimeException je) {
-			throw new RuntimeException(S_EMPTY + je);
+			resultArray = new CMLArray(result);
 		}
 		return resultArray;
 	}
@@ -992,7 +1150,17 @@ public class CMLArray extends AbstractArray implements HasUnits, HasArraySize,
 			throw new RuntimeException("Cannot add double to array of: "
 					+ dataType);
 		}
+		double[] buffer = doubleBuffer;
+		int n = bufferSize;
 		appendXML(Double.toString(d), 1);
+		if (buffer != null) {
+			if (n == buffer.length) {
+				buffer = Arrays.copyOf(buffer, Math.max(16, 2 * n));
+			}
+			buffer[n] = d;
+			doubleBuffer = buffer;
+			bufferSize = n + 1;
+		}
 	}
 
 	/**
@@ -1009,7 +1177,17 @@ public class CMLArray extends AbstractArray implements HasUnits, HasArraySize,
 			throw new RuntimeException("Cannot add int to array of: "
 					+ dataType);
 		}
+		int[] buffer = intBuffer;
+		int n = bufferSize;
 		appendXML(S_EMPTY + i, 1);
+		if (buffer != null) {
+			if (n == buffer.length) {
+				buffer = Arrays.copyOf(buffer, Math.max(16, 2 * n));
+			}
+			buffer[n] = i;
+			intBuffer = buffer;
+			bufferSize = n + 1;
+		}
 	}
 
 	public void append(CMLArray array) {
@@ -1038,16 +1216,44 @@ public class CMLArray extends AbstractArray implements HasUnits, HasArraySize,
 		appendXML(arrayString, array.getSize());
 	}
 
+	/** appends delimited s to content.
+	 * the first append rewrites the content; later ones extend the last
+	 * text chunk. clears the parsed buffers.
+	 */
 	private void appendXML(String s, int toAdd) {
 		int size = (this.getSizeAttribute() == null) ? 0 : this.getSize();
 		ensureDelimiterAttribute(Action.PRESERVE);
 		if (toAdd <= 1) {
 			delimiterAttribute.checkDelimiter(s);
 		}
-		String xmlContent = this.getXMLContent();
-		String delimitedContent = delimiterAttribute.appendXMLContent(
-				xmlContent, s);
-		this.setXMLContent(delimitedContent);
+		if (tail != null) {
+			String concat = delimiterAttribute.getConcat();
+			String chunk = (S_WHITEREGEX.equals(delimiterAttribute.getSplitter())) ?
+					concat + s : s + concat;
+			if (tailContent == null || tailContent.length() >= CHUNK) {
+				tailContent = new StringBuilder(CHUNK + chunk.length());
+				tailContent.append(chunk);
+				Text text = new Text(chunk);
+				super.insertChild(text, this.getChildCount());
+				tail = text;
+			} else {
+				tailContent.append(chunk);
+				tail.setValue(tailContent.toString());
+			}
+			doubleBuffer = null;
+			intBuffer = null;
+		} else {
+			String xmlContent = this.getXMLContent();
+			String delimitedContent = delimiterAttribute.appendXMLContent(
+					xmlContent, s);
+			this.setXMLContent(delimitedContent);
+			Node last = this.getChild(this.getChildCount() - 1);
+			if (last instanceof Text) {
+				tail = (Text) last;
+				tailContent = (delimitedContent.length() < CHUNK) ?
+						new StringBuilder(tail.getValue()) : null;
+			}
+		}
 		resetSize(size + toAdd);
 		this.removeWhitespaceDelimiterAttribute();
 	}
@@ -1159,4 +1365,55 @@ public class CMLArray extends AbstractArray implements HasUnits, HasArraySize,
 		return arrayList;
 	}
 	
+	/** override insertChild.
+	 * invalidates parsed content
+	 * @param newNode
+	 * @param pos
+	 */
+	@Override
+	public void insertChild(Node newNode, int pos) {
+		clearBuffer();
+		super.insertChild(newNode, pos);
+	}
+
+	/** override removeChild.
+	 * invalidates parsed content
+	 * @param pos
+	 * @return removed node
+	 */
+	@Override
+	public Node removeChild(int pos) {
+		clearBuffer();
+		return super.removeChild(pos);
+	}
+
+	/** override removeChild.
+	 * invalidates parsed content
+	 * @param node
+	 * @return removed node
+	 */
+	@Override
+	public Node removeChild(Node node) {
+		clearBuffer();
+		return super.removeChild(node);
+	}
+
+	/** override removeChildren.
+	 * invalidates parsed content
+	 * @return removed nodes
+	 */
+	@Override
+	public Nodes removeChildren() {
+		clearBuffer();
+		return super.removeChildren();
+	}
+
+	private void clearBuffer() {
+		doubleBuffer = null;
+		intBuffer = null;
+		bufferSize = 0;
+		tail = null;
+		tailContent = null;
+	}
+
 }
@@ -20,6 +20,7 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.Set;
 
+import nu.xom.Attribute;
 import nu.xom.Element;
 import nu.xom.Node;
 import nu.xom.ParentNode;
@@ -55,6 +56,9 @@ public class CMLAtom extends AbstractAtom {
 
     List<CMLAtom> ligandAtoms = null;
     List<CMLBond> ligandBonds = null;
+    /** bound by CoordinateBlock */
+    CoordinateBlock coordinateBlock;
+    int coordinateIndex;
 
     /**
      * Construct a new CMLAtom element without id.
@@ -819,12 +823,11 @@ public class CMLAtom extends AbstractAtom {
      * @return distance (throws Exception if atom(s) lack coordinates)
      */
     public double getDistanceTo(CMLAtom atom2) {
-        Vector3 vector = getVector3(atom2);
-        if (vector != null) {
-            return getVector3(atom2).getLength();
-        } else {
+        if (atom2 == null || !this.hasCoordinates(CoordinateType.CARTESIAN) ||
+                !atom2.hasCoordinates(CoordinateType.CARTESIAN)) {
         	throw new RuntimeException("cannot calculate distance");
         }
+        return Math.sqrt(getSquaredDistanceTo(atom2));
     }
 
     /**
@@ -850,13 +853,11 @@ public class CMLAtom extends AbstractAtom {
      * @return squared distance (NaN if atom(s) lack coordinates)
      */
     public double getSquaredDistanceTo(CMLAtom atom2) {
-    	double dist2 = Double.NaN;
-    	Point3 p = this.getPoint3(CoordinateType.CARTESIAN);
-    	Point3 p2 = atom2.getPoint3(CoordinateType.CARTESIAN);
-        if (p != null || p2 != null) {
-        	dist2 = p.getSquaredDistanceFromPoint(p2);
-        }
-        return dist2;
+    	// unset coordinates are NaN and propagate
+    	double dx = this.getX3() - atom2.getX3();
+    	double dy = this.getY3() - atom2.getY3();
+    	double dz = this.getZ3() - atom2.getZ3();
+        return dx * dx + dy * dy + dz * dz;
     }
 
     /**are two atoms within sum of radii.
@@ -933,6 +934,9 @@ public class CMLAtom extends AbstractAtom {
      * @return true if all coordinates or a given type are set, false otherwise
      */
     public boolean hasCoordinates(CoordinateType type) {
+        if (coordinateBlock != null) {
+            return coordinateBlock.hasCoordinates(coordinateIndex, type);
+        }
         boolean has = false;
         if (CoordinateType.TWOD.equals(type)) {
             has = (this.getX2Attribute() != null && this.getY2Attribute() != null);
@@ -947,6 +951,236 @@ public class CMLAtom extends AbstractAtom {
         return has;
     }
 
+    /** the coordinate block this atom is bound to.
+     * @see CMLMolecule#createCoordinateBlock()
+     * @return block or null
+     */
+    public CoordinateBlock getCoordinateBlock() {
+        return coordinateBlock;
+    }
+
+    /** x2.
+     * read from coordinate block if bound.
+     * @return value or NaN if unset
+     */
+    public double getX2() {
+        return (coordinateBlock == null) ? super.getX2() :
+            coordinateBlock.values[CoordinateBlock.X2][coordinateIndex];
+    }
+
+    /** x2.
+     * @param value
+     */
+    public void setX2(double value) {
+        super.setX2(value);
+        updateCoordinate(CoordinateBlock.X2, value);
+    }
+
+    /** x2.
+     * @param value (null or empty removes)
+     */
+    public void setX2(String value) {
+        super.setX2(value);
+        updateCoordinate(CoordinateBlock.X2, super.getX2());
+    }
+
+    /** y2.
+     * read from coordinate block if bound.
+     * @return value or NaN if unset
+     */
+    public double getY2() {
+        return (coordinateBlock == null) ? super.getY2() :
+            coordinateBlock.values[CoordinateBlock.Y2][coordinateIndex];
+    }
+
+    /** y2.
+     * @param value
+     */
+    public void setY2(double value) {
+        super.setY2(value);
+        updateCoordinate(CoordinateBlock.Y2, value);
+    }
+
+    /** y2.
+     * @param value (null or empty removes)
+     */
+    public void setY2(String value) {
+        super.setY2(value);
+        updateCoordinate(CoordinateBlock.Y2, super.getY2());
+    }
+
+    /** x3.
+     * read from coordinate block if bound.
+     * @return value or NaN if unset
+     */
+    public double getX3() {
+        return (coordinateBlock == null) ? super.getX3() :
+            coordinateBlock.values[CoordinateBlock.X3][coordinateIndex];
+    }
+
+    /** x3.
+     * @param value
+     */
+    public void setX3(double value) {
+        super.setX3(value);
+        updateCoordinate(CoordinateBlock.X3, value);
+    }
+
+    /** x3.
+     * @param value (null or empty removes)
+     */
+    public void setX3(String value) {
+        super.setX3(value);
+        updateCoordinate(CoordinateBlock.X3, super.getX3());
+    }
+
+    /** y3.
+     * read from coordinate block if bound.
+     * @return value or NaN if unset
+     */
+    public double getY3() {
+        return (coordinateBlock == null) ? super.getY3() :
+            coordinateBlock.values[CoordinateBlock.Y3][coordinateIndex];
+    }
+
+    /** y3.
+     * @param value
+     */
+    public void setY3(double value) {
+        super.setY3(value);
+        updateCoordinate(CoordinateBlock.Y3, value);
+    }
+
+    /** y3.
+     * @param value (null or empty removes)
+     */
+    public void setY3(String value) {
+        super.setY3(value);
+        updateCoordinate(CoordinateBlock.Y3, super.getY3());
+    }
+
+    /** z3.
+     * read from coordinate block if bound.
+     * @return value or NaN if unset
+     */
+    public double getZ3() {
+        return (coordinateBlock == null) ? super.getZ3() :
+            coordinateBlock.values[CoordinateBlock.Z3][coordinateIndex];
+    }
+
+    /** z3.
+     * @param value
+     */
+    public void setZ3(double value) {
+        super.setZ3(value);
+        updateCoordinate(CoordinateBlock.Z3, value);
+    }
+
+    /** z3.
+     * @param value (null or empty removes)
+     */
+    public void setZ3(String value) {
+        super.setZ3(value);
+        updateCoordinate(CoordinateBlock.Z3, super.getZ3());
+    }
+
+    /** xFract.
+     * read from coordinate block if bound.
+     * @return value or NaN if unset
+     */
+    public double getXFract() {
+        return (coordinateBlock == null) ? super.getXFract() :
+            coordinateBlock.values[CoordinateBlock.XFRACT][coordinateIndex];
+    }
+
+    /** xFract.
+     * @param value
+     */
+    public void setXFract(double value) {
+        super.setXFract(value);
+        updateCoordinate(CoordinateBlock.XFRACT, value);
+    }
+
+    /** xFract.
+     * @param value (null or empty removes)
+     */
+    public void setXFract(String value) {
+        super.setXFract(value);
+        updateCoordinate(CoordinateBlock.XFRACT, super.getXFract());
+    }
+
+    /** yFract.
+     * read from coordinate block if bound.
+     * @return value or NaN if unset
+     */
+    public double getYFract() {
+        return (coordinateBlock == null) ? super.getYFract() :
+            coordinateBlock.values[CoordinateBlock.YFRACT][coordinateIndex];
+    }
+
+    /** yFract.
+     * @param value
+     */
+    public void setYFract(double value) {
+        super.setYFract(value);
+        updateCoordinate(CoordinateBlock.YFRACT, value);
+    }
+
+    /** yFract.
+     * @param value (null or empty removes)
+     */
+    public void setYFract(String value) {
+        super.setYFract(value);
+        updateCoordinate(CoordinateBlock.YFRACT, super.getYFract());
+    }
+
+    /** zFract.
+     * read from coordinate block if bound.
+     * @return value or NaN if unset
+     */
+    public double getZFract() {
+        return (coordinateBlock == null) ? super.getZFract() :
+            coordinateBlock.values[CoordinateBlock.ZFRACT][coordinateIndex];
+    }
+
+    /** zFract.
+     * @param value
+     */
+    public void setZFract(double value) {
+        super.setZFract(value);
+        updateCoordinate(CoordinateBlock.ZFRACT, value);
+    }
+
+    /** zFract.
+     * @param value (null or empty removes)
+     */
+    public void setZFract(String value) {
+        super.setZFract(value);
+        updateCoordinate(CoordinateBlock.ZFRACT, super.getZFract());
+    }
+
+    /** removes attribute.
+     * keeps any coordinate block in step.
+     * @param attribute
+     * @return removed attribute
+     */
+    public Attribute removeAttribute(Attribute attribute) {
+        Attribute removed = super.removeAttribute(attribute);
+        if (coordinateBlock != null && S_EMPTY.equals(attribute.getNamespaceURI())) {
+            int coordinate = CoordinateBlock.getCoordinateIndex(attribute.getLocalName());
+            if (coordinate != -1) {
+                updateCoordinate(coordinate, Double.NaN);
+            }
+        }
+        return removed;
+    }
+
+    private void updateCoordinate(int coordinate, double value) {
+        if (coordinateBlock != null) {
+            coordinateBlock.update(coordinateIndex, coordinate, value);
+        }
+    }
+
     /**
      * simple atom comparison based on atomic mass (not recursive).
      *
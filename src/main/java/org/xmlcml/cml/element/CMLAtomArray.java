@@ -18,12 +18,15 @@ package org.xmlcml.cml.element;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
 
 import nu.xom.Element;
 import nu.xom.Node;
+import nu.xom.Nodes;
 import nu.xom.ParentNode;
 
 import org.apache.log4j.Logger;
@@ -49,6 +52,13 @@ public class CMLAtomArray extends AbstractAtomArray {
 
     /** map of atom ids to atoms.*/
     Map<String, CMLAtom> atomMap;
+    /** child atoms; null when children have changed.*/
+    private List<CMLAtom> atomList;
+    /** read-only wrapper of atomList; null until requested.*/
+    private List<CMLAtom> atomView;
+    /** positions of atoms in indexedView.*/
+    private Map<CMLAtom, Integer> atomIndex;
+    private List<CMLAtom> indexedView;
 
     /**
      * constructor.
@@ -126,7 +136,8 @@ public class CMLAtomArray extends AbstractAtomArray {
     public void finishMakingElement(Element parent) {
         super.finishMakingElement(parent);
         // this is here because the parser doesn't route through the
-        // addAtom
+        // addAtom (or insertChild)
+        clearAtomList();
         indexAtoms();
     }
 
@@ -178,7 +189,7 @@ public class CMLAtomArray extends AbstractAtomArray {
      * @return count
      */
     public int size() {
-        return this.getAtomElements().size();
+        return this.getAtomList().size();
     }
     
     /** sorts atomArray.
@@ -449,17 +460,114 @@ public class CMLAtomArray extends AbstractAtomArray {
         return atomMap;
     }
 
-    /** get list of atoms in order.
+    /** override insertChild.
+     * appending a atom extends the cached atom list; other
+     * element changes invalidate it
+     * @param newNode
+     * @param pos
+     */
+    public void insertChild(Node newNode, int pos) {
+        boolean append = atomList != null && newNode instanceof CMLAtom &&
+            newNode.getParent() != this && pos == this.getChildCount();
+        super.insertChild(newNode, pos);
+        if (append) {
+            if (atomView != null) {
+                // copy on write; views already handed out do not change
+                atomList = new ArrayList<CMLAtom>(atomList);
+                atomView = null;
+            }
+            atomList.add((CMLAtom) newNode);
+        } else if (newNode instanceof Element) {
+            clearAtomList();
+        }
+    }
+
+    /** override removeChild.
+     * invalidates cached atom list
+     * @param pos
+     * @return removed node
+     */
+    public Node removeChild(int pos) {
+        clearAtomList();
+        return super.removeChild(pos);
+    }
+
+    /** override removeChild.
+     * invalidates cached atom list
+     * @param node
+     * @return removed node
+     */
+    public Node removeChild(Node node) {
+        clearAtomList();
+        return super.removeChild(node);
+    }
+
+    /** override removeChildren.
+     * invalidates cached atom list
+     * @return removed nodes
+     */
+    public Nodes removeChildren() {
+        clearAtomList();
+        return super.removeChildren();
+    }
+
+    private void clearAtomList() {
+        atomList = null;
+        atomView = null;
+    }
+
+    private List<CMLAtom> getAtomList() {
+        if (atomList == null) {
+            atomList = new ArrayList<CMLAtom>();
+            for (CMLAtom atom : this.getAtomElements()) {
+                atomList.add(atom);
+            }
+        }
+        return atomList;
+    }
+
+    /** get read-only list of atoms in order.
+     * cached until children are added or removed; a returned list
+     * is never modified so may be iterated while editing the array.
      *
      * @return atoms
      */
-    public List<CMLAtom> getAtoms() {
-        List<CMLAtom> atomList = new ArrayList<CMLAtom>();
-        CMLElements<CMLAtom> atoms = this.getAtomElements();
-        for (CMLAtom atom : atoms) {
-            atomList.add(atom);
+    public List<CMLAtom> getAtomView() {
+        if (atomView == null) {
+            atomView = Collections.unmodifiableList(getAtomList());
         }
-        return atomList;
+        return atomView;
+    }
+
+    /** position of atom in getAtomView().
+     * the index is rebuilt when the view changes
+     *
+     * @param atom
+     * @return position or -1 if not a child
+     */
+    public int indexOf(CMLAtom atom) {
+        if (atom == null || atom.getParent() != this) {
+            return -1;
+        }
+        List<CMLAtom> view = getAtomView();
+        if (indexedView != view) {
+            Map<CMLAtom, Integer> index = new IdentityHashMap<CMLAtom, Integer>(view.size());
+            for (int i = 0; i < view.size(); i++) {
+                index.put(view.get(i), i);
+            }
+            atomIndex = index;
+            indexedView = view;
+        }
+        Integer i = atomIndex.get(atom);
+        return (i == null) ? -1 : i.intValue();
+    }
+
+    /** get list of atoms in order.
+     *
+     * @return atoms (a new list which the caller may modify)
+     */
+    public List<CMLAtom> getAtoms() {
+        return new ArrayList<CMLAtom>(getAtomList());
     }
 
     /** get atom by id.
@@ -17,6 +17,7 @@
 package org.xmlcml.cml.element;
 
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedHashSet;
@@ -26,6 +27,7 @@ import java.util.Set;
 
 import nu.xom.Element;
 import nu.xom.Node;
+import nu.xom.ParentNode;
 
 import org.apache.log4j.Logger;
 import org.xmlcml.cml.base.CMLConstants;
@@ -60,6 +62,12 @@ public class CMLAtomSet extends AbstractAtomSet {
     protected LinkedHashSet<CMLAtom> set = new LinkedHashSet<CMLAtom>();
     protected Map<String, CMLAtom> idTable;
     protected boolean checkDuplicates = false;
+    /** positions of atoms in bitSetScope; null until requested.*/
+    private BitSet bitSet;
+    private CMLAtomArray bitSetScope;
+    private List<CMLAtom> bitSetView;
+    /** true if set iterates in atomArray order.*/
+    private boolean bitSetOrdered;
     /**
      * constructor.
      */
@@ -71,6 +79,7 @@ public class CMLAtomSet extends AbstractAtomSet {
     private void init() {
     	set = new LinkedHashSet<CMLAtom>();
     	idTable = new HashMap<String, CMLAtom>();
+    	bitSet = null;
     	this.setXMLContent(S_EMPTY);
     	this.setSize(0);
     }
@@ -83,8 +92,10 @@ public class CMLAtomSet extends AbstractAtomSet {
         super(old);
         init();
         for (CMLAtom atom : old.set) {
-            this.addAtom(atom);
+            this.addAtom(atom, false);
         }
+        updateContent();
+        seedBitSet(old.getScopedBitSet(), old.bitSetScope, old.bitSetOrdered);
     }
 
 //    private void copyTable(Map<String, CMLAtom> fromMap,
@@ -161,6 +172,30 @@ public class CMLAtomSet extends AbstractAtomSet {
         return atomSet;
     }
 
+    /**
+     * creates atomSet from positions in a molecule's atomArray.
+     * inverse of getBitSet()
+     *
+     * @param mol
+     *            the molecule; must not have child molecules
+     * @param bits
+     *            positions in mol.getAtomView()
+     */
+    public CMLAtomSet(CMLMolecule mol, BitSet bits) {
+        this();
+        if (mol.isMoleculeContainer()) {
+            throw new RuntimeException("cannot index atoms of molecule with child molecules");
+        }
+        List<CMLAtom> atoms = mol.getAtomView();
+        for (int i = bits.nextSetBit(0); i >= 0; i = bits.nextSetBit(i + 1)) {
+            if (i >= atoms.size()) {
+                throw new RuntimeException("bit outside molecule: " + i);
+            }
+            this.addAtom(atoms.get(i), false);
+        }
+        updateContent();
+    }
+
     /**
      * create from a molecule.
      *
@@ -271,6 +306,7 @@ public class CMLAtomSet extends AbstractAtomSet {
     public void addAtom(CMLAtom atom, boolean forceUpdate) {
         if (atom != null && !set.contains(atom)) {
             set.add(atom);
+            bitSet = null;
             if (idTable == null) {
                 idTable = new HashMap<String, CMLAtom>();
             }
@@ -460,11 +496,7 @@ public class CMLAtomSet extends AbstractAtomSet {
             if (set.contains(atom)) {
 //                throw new RuntimeException("atom not in set:" + atom.getId() + CMLConstants.S_COLON
 //                        + Util.concatenate(this.getXMLContent(), CMLConstants.S_SLASH));
-	            // remove from set
-	            set.remove(atom);
-	            // and from id table
-	            String id = atom.getId();
-	            idTable.remove(id);
+	            String id = removeAtomFromSet(atom);
 	            // and from XOM XMLContent
 	            String[] content = this.getXMLContent();
 	            content = Util.removeElementFromStringArray(content, id);
@@ -499,13 +531,124 @@ public class CMLAtomSet extends AbstractAtomSet {
      */
     public void removeAtomSet(CMLAtomSet atomSet) throws RuntimeException {
         if (atomSet != null) {
+            boolean changed = false;
             for (CMLAtom atom : atomSet.getAtoms()) {
-                if (this.contains(atom))
-                    this.removeAtom(atom);
+                if (this.contains(atom)) {
+                    removeAtomFromSet(atom);
+                    changed = true;
+                }
+            }
+            if (changed) {
+                updateContent();
             }
         }
     }
 
+    /** removes atom from set and idTable but not XML content.
+     * @param atom in set
+     * @return id of atom
+     */
+    private String removeAtomFromSet(CMLAtom atom) {
+        set.remove(atom);
+        bitSet = null;
+        String id = atom.getId();
+        idTable.remove(id);
+        return id;
+    }
+
+    /**
+     * gets positions of atoms in their atomArray.
+     * the positions index the owning molecule's getAtomView().
+     * the bitset is cached until the set or atomArray changes;
+     * a copy is returned
+     *
+     * @return positions or null if atoms are not all children of
+     * the same atomArray (empty set gives empty bitset)
+     */
+    public BitSet getBitSet() {
+        if (set.isEmpty()) {
+            return new BitSet();
+        }
+        BitSet bits = getScopedBitSet();
+        return (bits == null) ? null : (BitSet) bits.clone();
+    }
+
+    /**
+     * does atomSet share any atom with another.
+     * word-parallel when both sets are in the same atomArray
+     *
+     * @param atomSet2
+     * @return true if intersection is not empty
+     */
+    public boolean intersects(CMLAtomSet atomSet2) {
+        BitSet bits = getScopedBitSet();
+        BitSet bits2 = atomSet2.getScopedBitSet();
+        if (bits != null && bits2 != null && bitSetScope == atomSet2.bitSetScope) {
+            return bits.intersects(bits2);
+        }
+        for (CMLAtom atom : set) {
+            if (atomSet2.contains(atom)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** cached bitset of positions in bitSetScope.
+     * @return live bitset (do not alter) or null if not in single atomArray
+     */
+    private BitSet getScopedBitSet() {
+        if (bitSet != null && bitSetView == bitSetScope.getAtomView()) {
+            return bitSet;
+        }
+        bitSet = null;
+        CMLAtomArray scope = null;
+        BitSet bits = new BitSet();
+        boolean ordered = true;
+        int last = -1;
+        for (CMLAtom atom : set) {
+            ParentNode parent = atom.getParent();
+            if (scope == null && parent instanceof CMLAtomArray) {
+                scope = (CMLAtomArray) parent;
+            } else if (scope == null || parent != scope) {
+                return null;
+            }
+            int i = scope.indexOf(atom);
+            ordered &= i > last;
+            last = i;
+            bits.set(i);
+        }
+        if (scope != null) {
+            seedBitSet(bits, scope, ordered);
+        }
+        return bitSet;
+    }
+
+    /** caches bitset computed elsewhere for the current atoms.
+     * @param bits (not copied) may be null
+     * @param scope atomArray indexing bits
+     * @param ordered true if set iterates in atomArray order
+     */
+    private void seedBitSet(BitSet bits, CMLAtomArray scope, boolean ordered) {
+        if (bits != null && scope != null) {
+            bitSet = bits;
+            bitSetScope = scope;
+            bitSetOrdered = ordered;
+            bitSetView = scope.getAtomView();
+        }
+    }
+
+    /** combined bitset if both sets share an atomArray.
+     * @param atomSet2
+     * @return copy of this bitset or null
+     */
+    private BitSet getCommonBitSet(CMLAtomSet atomSet2) {
+        BitSet bits = getScopedBitSet();
+        BitSet bits2 = atomSet2.getScopedBitSet();
+        return (bits != null && bits2 != null && bitSetScope == atomSet2.bitSetScope) ?
+            (BitSet) bits.clone() : null;
+    }
+
     /** gets vector of 3D coordinates.
      * all atoms must have coordinates
      *
@@ -877,6 +1020,8 @@ public class CMLAtomSet extends AbstractAtomSet {
      *
      * Creates new atomSet containing the atoms that are in both this atomSet,
      * and the one supplied.
+     * If both sets are children of the same atomArray and in atomArray order
+     * the result is combined word-parallel from their bitsets.
      * <p>
      * eg. as1 = {a1, a2, a3}; as2 = {a2, a4}<br>
      * (as1) intersection (as2) = (as2) intersection (as1) = {a2}
@@ -887,15 +1032,20 @@ public class CMLAtomSet extends AbstractAtomSet {
      * @throws RuntimeException
      */
     public CMLAtomSet intersection(CMLAtomSet atomSet2) throws RuntimeException {
+        BitSet bits = getCommonBitSet(atomSet2);
         CMLAtomSet newAtomSet = new CMLAtomSet();
-
-        List<CMLAtom> atoms = this.getAtoms();
-        for (int i = 0; i < atoms.size(); i++) {
-            if (atomSet2.contains(atoms.get(i))) {
-                newAtomSet.addAtom(atoms.get(i));
+        if (bits != null && bitSetOrdered) {
+            bits.and(atomSet2.bitSet);
+            newAtomSet.addScopedAtoms(bits, bitSetScope);
+            newAtomSet.finishAlgebra(bits, bitSetScope, true);
+        } else {
+            for (CMLAtom atom : set) {
+                if (atomSet2.contains(atom)) {
+                    newAtomSet.addAtom(atom, false);
+                }
             }
+            newAtomSet.updateContent();
         }
-
         return newAtomSet;
     }
 
@@ -904,6 +1054,8 @@ public class CMLAtomSet extends AbstractAtomSet {
      *
      * Creates new atomSet containing the atoms that are in this atomSet, and
      * not the one supplied.
+     * If both sets are children of the same atomArray and in atomArray order
+     * the result is combined word-parallel from their bitsets.
      * <p>
      * eg. as1 = {a1, a2, a3}; as2 = {a2, a4}<br>
      * (as1) complement (as2) = {a1, a3}<br>
@@ -917,13 +1069,19 @@ public class CMLAtomSet extends AbstractAtomSet {
         if (atomSet2 == null) {
             return this;
         }
+        BitSet bits = getCommonBitSet(atomSet2);
         CMLAtomSet newAtomSet = new CMLAtomSet();
-
-        List<CMLAtom> atoms = this.getAtoms();
-        for (int i = 0; i < atoms.size(); i++) {
-            if (!atomSet2.contains(atoms.get(i))) {
-                newAtomSet.addAtom(atoms.get(i));
+        if (bits != null && bitSetOrdered) {
+            bits.andNot(atomSet2.bitSet);
+            newAtomSet.addScopedAtoms(bits, bitSetScope);
+            newAtomSet.finishAlgebra(bits, bitSetScope, true);
+        } else {
+            for (CMLAtom atom : set) {
+                if (!atomSet2.contains(atom)) {
+                    newAtomSet.addAtom(atom, false);
+                }
             }
+            newAtomSet.updateContent();
         }
         return newAtomSet;
     }
@@ -933,6 +1091,8 @@ public class CMLAtomSet extends AbstractAtomSet {
      *
      * Creates new atomSet containing the atoms that are in this atomSet, and/or
      * the one supplied. (Inclusive or)
+     * If both sets are children of the same atomArray and in atomArray order
+     * the result is combined word-parallel from their bitsets.
      * <p>
      * eg. as1 = {a1, a2, a3}; as2 = {a2, a4}<br>
      * (as1) union (as2) = (as2) union (as1) = {a1, a2, a3, a4}
@@ -943,12 +1103,25 @@ public class CMLAtomSet extends AbstractAtomSet {
      * @return atom set
      */
     public CMLAtomSet union(CMLAtomSet atomSet2) throws RuntimeException {
+        BitSet bits = getCommonBitSet(atomSet2);
         CMLAtomSet newAtomSet = new CMLAtomSet();
-
-        List<CMLAtom> atoms = this.getAtoms();
-        newAtomSet.addAtoms(atoms);
-        newAtomSet.addAtoms(atomSet2.getAtoms());
-
+        for (CMLAtom atom : set) {
+            newAtomSet.addAtom(atom, false);
+        }
+        if (bits != null && atomSet2.bitSetOrdered) {
+            BitSet added = (BitSet) atomSet2.bitSet.clone();
+            added.andNot(bits);
+            newAtomSet.addScopedAtoms(added, bitSetScope);
+            boolean ordered = bitSetOrdered &&
+                (added.isEmpty() || added.nextSetBit(0) >= bits.length());
+            bits.or(added);
+            newAtomSet.finishAlgebra(bits, bitSetScope, ordered);
+        } else {
+            for (CMLAtom atom : atomSet2.set) {
+                newAtomSet.addAtom(atom, false);
+            }
+            newAtomSet.updateContent();
+        }
         return newAtomSet;
     }
 
@@ -957,6 +1130,8 @@ public class CMLAtomSet extends AbstractAtomSet {
      *
      * Creates new atomSet containing the atoms that are in either atomSet, or
      * the one supplied, but not both. (Exclusive or)
+     * If both sets are children of the same atomArray and in atomArray order
+     * the result is combined word-parallel from their bitsets.
      * <p>
      * eg. as1 = {a1, a2, a3}; as2 = {a2, a4}<br>
      * (as1) symmetric difference (as2) = {a1, a3, a4}
@@ -969,25 +1144,54 @@ public class CMLAtomSet extends AbstractAtomSet {
      */
     public CMLAtomSet symmetricDifference(CMLAtomSet atomSet2)
             {
+        BitSet bits = getCommonBitSet(atomSet2);
         CMLAtomSet newAtomSet = new CMLAtomSet();
-
-        List<CMLAtom> atoms = this.getAtoms();
-        for (int i = 0; i < atoms.size(); i++) {
-            if (!atomSet2.contains(atoms.get(i))) {
-                newAtomSet.addAtom(atoms.get(i));
+        if (bits != null && bitSetOrdered && atomSet2.bitSetOrdered) {
+            BitSet added = (BitSet) atomSet2.bitSet.clone();
+            added.andNot(bits);
+            bits.andNot(atomSet2.bitSet);
+            newAtomSet.addScopedAtoms(bits, bitSetScope);
+            newAtomSet.addScopedAtoms(added, bitSetScope);
+            boolean ordered = added.isEmpty() || added.nextSetBit(0) >= bits.length();
+            bits.or(added);
+            newAtomSet.finishAlgebra(bits, bitSetScope, ordered);
+        } else {
+            for (CMLAtom atom : set) {
+                if (!atomSet2.contains(atom)) {
+                    newAtomSet.addAtom(atom, false);
+                }
             }
-        }
-        List<CMLAtom> atoms2 = atomSet2.getAtoms();
-        for (int i = 0; i < atoms2.size(); i++) {
-            CMLAtom atom = atoms2.get(i);
-            if (!this.contains(atom)) {
-                newAtomSet.addAtom(atom);
+            for (CMLAtom atom : atomSet2.set) {
+                if (!this.contains(atom)) {
+                    newAtomSet.addAtom(atom, false);
+                }
             }
+            newAtomSet.updateContent();
         }
-
         return newAtomSet;
     }
 
+    /** writes XML content once after lazy additions and caches bitset.
+     * @param bits result of word-parallel algebra
+     * @param scope atomArray indexing bits
+     * @param ordered true if set iterates in atomArray order
+     */
+    private void finishAlgebra(BitSet bits, CMLAtomArray scope, boolean ordered) {
+        updateContent();
+        seedBitSet(bits, scope, ordered);
+    }
+
+    /** lazily adds atoms at positions in bits in atomArray order.
+     * @param bits
+     * @param scope atomArray indexing bits
+     */
+    private void addScopedAtoms(BitSet bits, CMLAtomArray scope) {
+        List<CMLAtom> atoms = scope.getAtomView();
+        for (int i = bits.nextSetBit(0); i >= 0; i = bits.nextSetBit(i + 1)) {
+            addAtom(atoms.get(i), false);
+        }
+    }
+
     /**
      * Returns intersection of this atomSet's atomIds with another's.
      *
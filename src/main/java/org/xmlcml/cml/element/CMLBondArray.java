@@ -17,22 +17,25 @@
 package org.xmlcml.cml.element;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
 
 import nu.xom.Element;
 import nu.xom.Node;
+import nu.xom.Nodes;
 import nu.xom.ParentNode;
 
 import org.apache.log4j.Logger;
-import org.xmlcml.cml.base.CMLElements;
 
 /**
  * class supporting bondArray.
  *  * autogenerated from schema use
  *  bondArray manages the bonds in the parent molecule.
  *  it always indexes them by atom hash (from atomRefs2) and
+ *  by the identity of the bonded atoms, and
  *  will also index by id if present.
  *
  */
@@ -58,6 +61,36 @@ public class CMLBondArray extends AbstractBondArray {
     Map<String, CMLBond> bondIdMap;
     /** map of atomRefs2 to bonds.*/
     Map<String, CMLBond> bondMap;
+    /** map of bonded atoms (by identity) to bonds.*/
+    Map<AtomPair, CMLBond> atomPairMap;
+    /** child bonds; null when children have changed.*/
+    private List<CMLBond> bondList;
+    /** read-only wrapper of bondList; null until requested.*/
+    private List<CMLBond> bondView;
+    /** positions of bonds in indexedView.*/
+    private Map<CMLBond, Integer> bondIndex;
+    private List<CMLBond> indexedView;
+
+    /** unordered pair of atoms compared by identity.*/
+    private static class AtomPair {
+        private CMLAtom atom1;
+        private CMLAtom atom2;
+        AtomPair(CMLAtom atom1, CMLAtom atom2) {
+            this.atom1 = atom1;
+            this.atom2 = atom2;
+        }
+        public int hashCode() {
+            return System.identityHashCode(atom1) ^ System.identityHashCode(atom2);
+        }
+        public boolean equals(Object obj) {
+            if (!(obj instanceof AtomPair)) {
+                return false;
+            }
+            AtomPair pair = (AtomPair) obj;
+            return (atom1 == pair.atom1 && atom2 == pair.atom2) ||
+                (atom1 == pair.atom2 && atom2 == pair.atom1);
+        }
+    }
 
 //    static int count = 0;
     /**
@@ -71,6 +104,7 @@ public class CMLBondArray extends AbstractBondArray {
     private void init() {
         bondMap = new HashMap<String, CMLBond>();
         bondIdMap = new HashMap<String, CMLBond>();
+        atomPairMap = new HashMap<AtomPair, CMLBond>();
     }
 
     /**
@@ -113,7 +147,8 @@ public class CMLBondArray extends AbstractBondArray {
     public void finishMakingElement(Element parent) {
         super.finishMakingElement(parent);
         // this is here because the parser doesn't route through the
-        // addBond
+        // addBond (or insertChild)
+        clearBondList();
         indexBonds();
     }
 
@@ -133,7 +168,7 @@ public class CMLBondArray extends AbstractBondArray {
      * @return count
      */
     public int size() {
-        return this.getBondElements().size();
+        return this.getBondList().size();
     }
 
     /** adds a bond.
@@ -186,6 +221,8 @@ public class CMLBondArray extends AbstractBondArray {
             bondMap.put(hash, bond);
             addedBond = bond;
             bond.updateLigands();
+            List<CMLAtom> atoms = bond.getAtoms();
+            getAtomPairMap().put(new AtomPair(atoms.get(0), atoms.get(1)), bond);
         }
         return addedBond;
     }
@@ -216,6 +253,7 @@ public class CMLBondArray extends AbstractBondArray {
         List<CMLBond> bonds = this.getBonds();
         bondMap.clear();
         bondIdMap.clear();
+        getAtomPairMap().clear();
         for (CMLBond bond : bonds) {
         	try {
         		indexBondAndLigands(bond);
@@ -280,6 +318,7 @@ public class CMLBondArray extends AbstractBondArray {
             if (atoms != null) {
                 int err = 0;
                 if (atoms.size() == 2) {
+                    this.getAtomPairMap().remove(new AtomPair(atoms.get(0), atoms.get(1)));
                     try {
                         atoms.get(0).clearLigandInfo(bond, atoms.get(1));
                     } catch (RuntimeException e) {
@@ -317,6 +356,13 @@ public class CMLBondArray extends AbstractBondArray {
         return bondMap;
     }
 
+    private Map<AtomPair, CMLBond> getAtomPairMap() {
+        if (atomPairMap == null) {
+            atomPairMap = new HashMap<AtomPair, CMLBond>();
+        }
+        return atomPairMap;
+    }
+
     /** get map of bond id to bonds.
      *
      * @return map
@@ -328,17 +374,114 @@ public class CMLBondArray extends AbstractBondArray {
         return bondIdMap;
     }
 
-    /** get list of bonds in order.
+    /** override insertChild.
+     * appending a bond extends the cached bond list; other
+     * element changes invalidate it
+     * @param newNode
+     * @param pos
+     */
+    public void insertChild(Node newNode, int pos) {
+        boolean append = bondList != null && newNode instanceof CMLBond &&
+            newNode.getParent() != this && pos == this.getChildCount();
+        super.insertChild(newNode, pos);
+        if (append) {
+            if (bondView != null) {
+                // copy on write; views already handed out do not change
+                bondList = new ArrayList<CMLBond>(bondList);
+                bondView = null;
+            }
+            bondList.add((CMLBond) newNode);
+        } else if (newNode instanceof Element) {
+            clearBondList();
+        }
+    }
+
+    /** override removeChild.
+     * invalidates cached bond list
+     * @param pos
+     * @return removed node
+     */
+    public Node removeChild(int pos) {
+        clearBondList();
+        return super.removeChild(pos);
+    }
+
+    /** override removeChild.
+     * invalidates cached bond list
+     * @param node
+     * @return removed node
+     */
+    public Node removeChild(Node node) {
+        clearBondList();
+        return super.removeChild(node);
+    }
+
+    /** override removeChildren.
+     * invalidates cached bond list
+     * @return removed nodes
+     */
+    public Nodes removeChildren() {
+        clearBondList();
+        return super.removeChildren();
+    }
+
+    private void clearBondList() {
+        bondList = null;
+        bondView = null;
+    }
+
+    private List<CMLBond> getBondList() {
+        if (bondList == null) {
+            bondList = new ArrayList<CMLBond>();
+            for (CMLBond bond : this.getBondElements()) {
+                bondList.add(bond);
+            }
+        }
+        return bondList;
+    }
+
+    /** get read-only list of bonds in order.
+     * cached until children are added or removed; a returned list
+     * is never modified so may be iterated while editing the array.
      *
      * @return bonds
      */
-    public List<CMLBond> getBonds() {
-        List<CMLBond> bondList = new ArrayList<CMLBond>();
-        CMLElements<CMLBond> bonds = this.getBondElements();
-        for (CMLBond bond : bonds) {
-            bondList.add(bond);
+    public List<CMLBond> getBondView() {
+        if (bondView == null) {
+            bondView = Collections.unmodifiableList(getBondList());
         }
-        return bondList;
+        return bondView;
+    }
+
+    /** position of bond in getBondView().
+     * the index is rebuilt when the view changes
+     *
+     * @param bond
+     * @return position or -1 if not a child
+     */
+    public int indexOf(CMLBond bond) {
+        if (bond == null || bond.getParent() != this) {
+            return -1;
+        }
+        List<CMLBond> view = getBondView();
+        if (indexedView != view) {
+            Map<CMLBond, Integer> index = new IdentityHashMap<CMLBond, Integer>(view.size());
+            for (int i = 0; i < view.size(); i++) {
+                index.put(view.get(i), i);
+            }
+            bondIndex = index;
+            indexedView = view;
+        }
+        Integer i = bondIndex.get(bond);
+        return (i == null) ? -1 : i.intValue();
+    }
+
+    /** get list of bonds in order.
+     *
+     * @return bonds (a new list which the caller may modify)
+     */
+    public List<CMLBond> getBonds() {
+        return new ArrayList<CMLBond>(getBondList());
     }
 
     /** get bond by hash.
@@ -350,6 +493,29 @@ public class CMLBondArray extends AbstractBondArray {
         return bondMap.get(hash);
     }
 
+    /** get bond joining two atoms.
+     * constant time lookup by atom identity. If either atom is not in
+     * this molecule (e.g. from a copy) falls back to matching by atom ids.
+     *
+     * @param atom1
+     * @param atom2
+     * @return bond or null
+     */
+    public CMLBond getBond(CMLAtom atom1, CMLAtom atom2) {
+        if (atom1 == null || atom2 == null || atom1 == atom2) {
+            return null;
+        }
+        CMLBond bond = getAtomPairMap().get(new AtomPair(atom1, atom2));
+        if (bond == null) {
+            CMLMolecule molecule = this.getMolecule();
+            if (atom1.getMolecule() != molecule || atom2.getMolecule() != molecule) {
+                String hash = CMLBond.atomHash(atom1, atom2);
+                bond = (hash == null) ? null : getBondMap().get(hash);
+            }
+        }
+        return bond;
+    }
+
     /** get bond by atomRefs2.
      *
      * @param atomRefs2
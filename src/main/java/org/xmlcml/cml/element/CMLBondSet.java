@@ -17,6 +17,7 @@
 package org.xmlcml.cml.element;
 
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.HashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
@@ -25,6 +26,7 @@ import java.util.Set;
 
 import nu.xom.Element;
 import nu.xom.Node;
+import nu.xom.ParentNode;
 
 import org.xmlcml.cml.base.CMLConstants;
 import org.xmlcml.cml.base.CMLElement;
@@ -47,6 +49,12 @@ public class CMLBondSet extends AbstractBondSet {
     protected Map<String, CMLBond> atomRefs2Table;
 
     protected CMLMolecule molecule = null;
+    /** positions of bonds in bitSetScope; null until requested.*/
+    private BitSet bitSet;
+    private CMLBondArray bitSetScope;
+    private List<CMLBond> bitSetView;
+    /** true if set iterates in bondArray order.*/
+    private boolean bitSetOrdered;
 
     /**
      * default constructor.
@@ -68,8 +76,10 @@ public class CMLBondSet extends AbstractBondSet {
         init();
         // copy bond references
         for (CMLBond bond : old.set) {
-        	this.addBond(bond);
+        	this.addBond(bond, false);
         }
+        updateContent();
+        seedBitSet(old.getScopedBitSet(), old.bitSetScope, old.bitSetOrdered);
     }
 
     /**
@@ -119,11 +129,38 @@ public class CMLBondSet extends AbstractBondSet {
     	this();
         try {
             for (CMLBond bond : mol.getBonds()) {
-                this.addBond(bond);
+                this.addBond(bond, false);
             }
         } catch (Exception e) {
             ;
         }
+        updateContent();
+    }
+
+    /**
+     * creates bondSet from positions in a molecule's bondArray.
+     * inverse of getBitSet()
+     *
+     * @param mol
+     *            the molecule; must not have child molecules
+     * @param bits
+     *            positions in the bondArray
+     */
+    public CMLBondSet(CMLMolecule mol, BitSet bits) {
+        this();
+        if (mol.isMoleculeContainer()) {
+            throw new RuntimeException("cannot index bonds of molecule with child molecules");
+        }
+        CMLBondArray bondArray = mol.getBondArray();
+        List<CMLBond> bonds = (bondArray == null) ?
+            new ArrayList<CMLBond>() : bondArray.getBondView();
+        for (int i = bits.nextSetBit(0); i >= 0; i = bits.nextSetBit(i + 1)) {
+            if (i >= bonds.size()) {
+                throw new RuntimeException("bit outside molecule: " + i);
+            }
+            this.addBond(bonds.get(i), false);
+        }
+        updateContent();
     }
 
     /**
@@ -165,6 +202,7 @@ public class CMLBondSet extends AbstractBondSet {
     void init() {
         set = new LinkedHashSet<CMLBond>();
         idTable = new HashMap<String, CMLBond>();
+        bitSet = null;
         setSize(0);
         setXMLContent(S_EMPTY);
     }
@@ -208,8 +246,9 @@ public class CMLBondSet extends AbstractBondSet {
      */
     public void addBonds(List<CMLBond> bonds) throws RuntimeException {
         for (CMLBond b : bonds) {
-            this.addBond(b);
+            this.addBond(b, false);
         }
+        updateContent();
     }
 
     /**
@@ -221,6 +260,20 @@ public class CMLBondSet extends AbstractBondSet {
      *             Bond must have id or duplicate bond
      */
     public void addBond(CMLBond bond) throws RuntimeException {
+        addBond(bond, true);
+    }
+
+    /**
+     * adds bond to set with lazy option.
+     * if forceUpdate is false must be finished with updateContent()
+     *
+     * @param bond
+     *            to add (if null throws Exception)
+     * @param forceUpdate if true updates text content (QUADRATIC and SLOW)
+     * @throws RuntimeException
+     *             Bond must have id or duplicate bond
+     */
+    public void addBond(CMLBond bond, boolean forceUpdate) throws RuntimeException {
         /*
          * set.add(bond); idTable.put(bond.getId(), bond);
          */
@@ -230,6 +283,7 @@ public class CMLBondSet extends AbstractBondSet {
             throw new RuntimeException("duplicate bond in bondSet: " + bond.getId());
         } else {
             set.add(bond);
+            bitSet = null;
             if (idTable == null) {
                 idTable = new HashMap<String, CMLBond>();
             }
@@ -245,11 +299,22 @@ public class CMLBondSet extends AbstractBondSet {
             } else {
             }
             idTable.put(bond.getId(), bond);
-            addBondId(bond.getId());
+            if (forceUpdate) {
+                addBondId(bond.getId());
+            }
             atomRefs2Table.put(CMLBond.atomHash(bond), bond);
         }
     }
 
+    /** update the string content and size attribute.
+     * only required for lazy addition of bonds.
+     */
+    public void updateContent() {
+        List<String> ids = this.getBondIDs();
+        this.setXMLContent(ids.toArray(new String[ids.size()]));
+        this.setSize(ids.size());
+    }
+
     void addBondId(String id) {
     	String[] content = {};
         int size = 0;
@@ -406,6 +471,8 @@ public class CMLBondSet extends AbstractBondSet {
      *
      * Creates new bondSet containing the bonds that are in this bondSet, and
      * not the one supplied.
+     * If both sets are children of the same bondArray and in bondArray order
+     * the result is combined word-parallel from their bitsets.
      * <p>
      * eg. as1 = {a1, a2, a3}; as2 = {a2, a4}<br>
      * (as1) complement (as2) = {a1, a3}<br>
@@ -418,13 +485,19 @@ public class CMLBondSet extends AbstractBondSet {
         if (bondSet2 == null) {
             return this;
         }
+        BitSet bits = getCommonBitSet(bondSet2);
         CMLBondSet newBondSet = new CMLBondSet();
-
-        List<CMLBond> bonds = this.getBonds();
-        for (int i = 0; i < bonds.size(); i++) {
-            if (!bondSet2.contains(bonds.get(i))) {
-                newBondSet.addBond(bonds.get(i));
+        if (bits != null && bitSetOrdered) {
+            bits.andNot(bondSet2.bitSet);
+            newBondSet.addScopedBonds(bits, bitSetScope);
+            newBondSet.finishAlgebra(bits, bitSetScope, true);
+        } else {
+            for (CMLBond bond : set) {
+                if (!bondSet2.contains(bond)) {
+                    newBondSet.addBond(bond, false);
+                }
             }
+            newBondSet.updateContent();
         }
         return newBondSet;
     }
@@ -434,6 +507,8 @@ public class CMLBondSet extends AbstractBondSet {
      *
      * Creates new bondSet containing the bonds that are in this bondSet, and/or
      * the one supplied. (Inclusive or)
+     * If both sets are children of the same bondArray and in bondArray order
+     * the result is combined word-parallel from their bitsets.
      * <p>
      * eg. as1 = {a1, a2, a3}; as2 = {a2, a4}<br>
      * (as1) union (as2) = (as2) union (as1) = {a1, a2, a3, a4}
@@ -444,15 +519,26 @@ public class CMLBondSet extends AbstractBondSet {
      * @return bond set
      */
     public CMLBondSet union(CMLBondSet bondSet2) throws RuntimeException {
+        BitSet bits = getCommonBitSet(bondSet2);
         CMLBondSet newBondSet = new CMLBondSet();
-
-        List<CMLBond> bonds = this.getBonds();
-        newBondSet.addBonds(bonds);
-        List<CMLBond> bonds2 =  bondSet2.getBonds();
-        for (CMLBond bond2 : bonds2) {
-            if (!newBondSet.contains(bond2)) {
-                newBondSet.addBond(bond2);
+        for (CMLBond bond : set) {
+            newBondSet.addBond(bond, false);
+        }
+        if (bits != null && bondSet2.bitSetOrdered) {
+            BitSet added = (BitSet) bondSet2.bitSet.clone();
+            added.andNot(bits);
+            newBondSet.addScopedBonds(added, bitSetScope);
+            boolean ordered = bitSetOrdered &&
+                (added.isEmpty() || added.nextSetBit(0) >= bits.length());
+            bits.or(added);
+            newBondSet.finishAlgebra(bits, bitSetScope, ordered);
+        } else {
+            for (CMLBond bond2 : bondSet2.set) {
+                if (!newBondSet.contains(bond2)) {
+                    newBondSet.addBond(bond2, false);
+                }
             }
+            newBondSet.updateContent();
         }
         return newBondSet;
     }
@@ -462,6 +548,8 @@ public class CMLBondSet extends AbstractBondSet {
      *
      * Creates new bondSet containing the bonds that are in this bondSet, and
      * the one supplied. (and)
+     * If both sets are children of the same bondArray and in bondArray order
+     * the result is combined word-parallel from their bitsets.
      * <p>
      * eg. as1 = {a1, a2, a3}; as2 = {a2, a4}<br>
      * (as1) union (as2) = (as2) intersection (as1) = {a2}
@@ -471,13 +559,19 @@ public class CMLBondSet extends AbstractBondSet {
      * @return bond set
      */
     public CMLBondSet intersection(CMLBondSet bondSet2) throws RuntimeException {
+        BitSet bits = getCommonBitSet(bondSet2);
         CMLBondSet newBondSet = new CMLBondSet();
-
-        List<CMLBond> bonds2 =  bondSet2.getBonds();
-        for (CMLBond bond2 : bonds2) {
-            if (this.contains(bond2)) {
-                newBondSet.addBond(bond2);
+        if (bits != null && bondSet2.bitSetOrdered) {
+            bits.and(bondSet2.bitSet);
+            newBondSet.addScopedBonds(bits, bitSetScope);
+            newBondSet.finishAlgebra(bits, bitSetScope, true);
+        } else {
+            for (CMLBond bond2 : bondSet2.set) {
+                if (this.contains(bond2)) {
+                    newBondSet.addBond(bond2, false);
+                }
             }
+            newBondSet.updateContent();
         }
         return newBondSet;
     }
@@ -488,6 +582,8 @@ public class CMLBondSet extends AbstractBondSet {
      *
      * Creates new bondSet containing the bonds that are in either bondSet, or
      * the one supplied, but not both. (Exclusive or)
+     * If both sets are children of the same bondArray and in bondArray order
+     * the result is combined word-parallel from their bitsets.
      * <p>
      * eg. as1 = {a1, a2, a3}; as2 = {a2, a4}<br>
      * (as1) symmetric difference (as2) = {a1, a3, a4}
@@ -498,25 +594,54 @@ public class CMLBondSet extends AbstractBondSet {
      *
      */
     public CMLBondSet symmetricDifference(CMLBondSet bondSet2) {
+        BitSet bits = getCommonBitSet(bondSet2);
         CMLBondSet newBondSet = new CMLBondSet();
-
-        List<CMLBond> bonds = this.getBonds();
-        for (int i = 0; i < bonds.size(); i++) {
-            if (!bondSet2.contains(bonds.get(i))) {
-                newBondSet.addBond(bonds.get(i));
+        if (bits != null && bitSetOrdered && bondSet2.bitSetOrdered) {
+            BitSet added = (BitSet) bondSet2.bitSet.clone();
+            added.andNot(bits);
+            bits.andNot(bondSet2.bitSet);
+            newBondSet.addScopedBonds(bits, bitSetScope);
+            newBondSet.addScopedBonds(added, bitSetScope);
+            boolean ordered = added.isEmpty() || added.nextSetBit(0) >= bits.length();
+            bits.or(added);
+            newBondSet.finishAlgebra(bits, bitSetScope, ordered);
+        } else {
+            for (CMLBond bond : set) {
+                if (!bondSet2.contains(bond)) {
+                    newBondSet.addBond(bond, false);
+                }
             }
-        }
-        List<CMLBond> bonds2 = bondSet2.getBonds();
-        for (int i = 0; i < bonds2.size(); i++) {
-            CMLBond bond = bonds2.get(i);
-            if (!this.contains(bond)) {
-                newBondSet.addBond(bond);
+            for (CMLBond bond : bondSet2.set) {
+                if (!this.contains(bond)) {
+                    newBondSet.addBond(bond, false);
+                }
             }
+            newBondSet.updateContent();
         }
-
         return newBondSet;
     }
 
+    /** writes XML content once after lazy additions and caches bitset.
+     * @param bits result of word-parallel algebra
+     * @param scope bondArray indexing bits
+     * @param ordered true if set iterates in bondArray order
+     */
+    private void finishAlgebra(BitSet bits, CMLBondArray scope, boolean ordered) {
+        updateContent();
+        seedBitSet(bits, scope, ordered);
+    }
+
+    /** lazily adds bonds at positions in bits in bondArray order.
+     * @param bits
+     * @param scope bondArray indexing bits
+     */
+    private void addScopedBonds(BitSet bits, CMLBondArray scope) {
+        List<CMLBond> bonds = scope.getBondView();
+        for (int i = bits.nextSetBit(0); i >= 0; i = bits.nextSetBit(i + 1)) {
+            addBond(bonds.get(i), false);
+        }
+    }
+
     /** get corresponding molecule.
      * @return the molecule (null if none)
      */
@@ -547,11 +672,7 @@ public class CMLBondSet extends AbstractBondSet {
                 throw new RuntimeException("Bond not in set:" + bond.getId() + CMLConstants.S_COLON
                         + Util.concatenate(this.getXMLContent(), CMLConstants.S_SLASH));
             }
-            // remove from set
-            set.remove(bond);
-            // and from id table
-            String id = bond.getId();
-            idTable.remove(id);
+            String id = removeBondFromSet(bond);
             // and from XOM XMLContent
             String[] content = this.getXMLContent();
             content = Util.removeElementFromStringArray(content, id);
@@ -585,13 +706,123 @@ public class CMLBondSet extends AbstractBondSet {
      */
     public void removeBondSet(CMLBondSet bondSet) throws RuntimeException {
         if (bondSet != null) {
+            boolean changed = false;
             for (CMLBond bond : bondSet.getBonds()) {
-                if (this.contains(bond))
-                    this.removeBond(bond);
+                if (this.contains(bond)) {
+                    removeBondFromSet(bond);
+                    changed = true;
+                }
+            }
+            if (changed) {
+                updateContent();
+            }
+        }
+    }
+
+    /** removes bond from set and idTable but not XML content.
+     * @param bond in set
+     * @return id of bond
+     */
+    private String removeBondFromSet(CMLBond bond) {
+        set.remove(bond);
+        bitSet = null;
+        String id = bond.getId();
+        idTable.remove(id);
+        return id;
+    }
+
+    /**
+     * gets positions of bonds in their bondArray.
+     * the bitset is cached until the set or bondArray changes;
+     * a copy is returned
+     *
+     * @return positions or null if bonds are not all children of
+     * the same bondArray (empty set gives empty bitset)
+     */
+    public BitSet getBitSet() {
+        if (set.isEmpty()) {
+            return new BitSet();
+        }
+        BitSet bits = getScopedBitSet();
+        return (bits == null) ? null : (BitSet) bits.clone();
+    }
+
+    /**
+     * does bondSet share any bond with another.
+     * word-parallel when both sets are in the same bondArray
+     *
+     * @param bondSet2
+     * @return true if intersection is not empty
+     */
+    public boolean intersects(CMLBondSet bondSet2) {
+        BitSet bits = getScopedBitSet();
+        BitSet bits2 = bondSet2.getScopedBitSet();
+        if (bits != null && bits2 != null && bitSetScope == bondSet2.bitSetScope) {
+            return bits.intersects(bits2);
+        }
+        for (CMLBond bond : set) {
+            if (bondSet2.contains(bond)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** cached bitset of positions in bitSetScope.
+     * @return live bitset (do not alter) or null if not in single bondArray
+     */
+    private BitSet getScopedBitSet() {
+        if (bitSet != null && bitSetView == bitSetScope.getBondView()) {
+            return bitSet;
+        }
+        bitSet = null;
+        CMLBondArray scope = null;
+        BitSet bits = new BitSet();
+        boolean ordered = true;
+        int last = -1;
+        for (CMLBond bond : set) {
+            ParentNode parent = bond.getParent();
+            if (scope == null && parent instanceof CMLBondArray) {
+                scope = (CMLBondArray) parent;
+            } else if (scope == null || parent != scope) {
+                return null;
             }
+            int i = scope.indexOf(bond);
+            ordered &= i > last;
+            last = i;
+            bits.set(i);
+        }
+        if (scope != null) {
+            seedBitSet(bits, scope, ordered);
+        }
+        return bitSet;
+    }
+
+    /** caches bitset computed elsewhere for the current bonds.
+     * @param bits (not copied) may be null
+     * @param scope bondArray indexing bits
+     * @param ordered true if set iterates in bondArray order
+     */
+    private void seedBitSet(BitSet bits, CMLBondArray scope, boolean ordered) {
+        if (bits != null && scope != null) {
+            bitSet = bits;
+            bitSetScope = scope;
+            bitSetOrdered = ordered;
+            bitSetView = scope.getBondView();
         }
     }
 
+    /** combined bitset if both sets share a bondArray.
+     * @param bondSet2
+     * @return copy of this bitset or null
+     */
+    private BitSet getCommonBitSet(CMLBondSet bondSet2) {
+        BitSet bits = getScopedBitSet();
+        BitSet bits2 = bondSet2.getScopedBitSet();
+        return (bits != null && bits2 != null && bitSetScope == bondSet2.bitSetScope) ?
+            (BitSet) bits.clone() : null;
+    }
+
 	/**
 	 * gets average 2D bond length.
 	 *
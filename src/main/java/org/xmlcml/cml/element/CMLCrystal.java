@@ -18,6 +18,7 @@ package org.xmlcml.cml.element;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
 
 import nu.xom.Element;
 import nu.xom.Elements;
@@ -28,6 +29,7 @@ import org.xmlcml.cml.base.CMLConstants;
 import org.xmlcml.cml.base.CMLElement;
 import org.xmlcml.cml.base.CMLElements;
 import org.xmlcml.cml.element.CMLCellParameter.Type;
+import org.xmlcml.euclid.Point3;
 import org.xmlcml.euclid.RealArray;
 import org.xmlcml.euclid.RealSquareMatrix;
 import org.xmlcml.euclid.Transform3;
@@ -806,6 +808,106 @@ public class CMLCrystal extends AbstractCrystal {
         return primitiveLattice;
     }
 
+    /** packs the unit cell from an asymmetric unit.
+     *
+     * @see #createSupercell(CMLMolecule, int, int, int)
+     * @param asymmetricUnit
+     * @return new molecule with one atom for each position in the cell
+     */
+    public CMLMolecule createUnitCell(CMLMolecule asymmetricUnit) {
+        return createSupercell(asymmetricUnit, 1, 1, 1);
+    }
+
+    /** packs a supercell from an asymmetric unit.
+     *
+     * all operators of the symmetry child are applied to atoms with
+     * fractional coordinates (others are ignored), images are moved into
+     * the cell, duplicates on special positions removed and the cell
+     * repeated na * nb * nc times. Atoms are copies of the originals with
+     * ids of the form a1_1, a1_2... Cartesians are calculated if cell
+     * parameters are present else removed. No bonds are created.
+     *
+     * @param asymmetricUnit
+     * @param na cells along a
+     * @param nb cells along b
+     * @param nc cells along c
+     * @return new molecule
+     * @throws RuntimeException if there are no symmetry operators
+     */
+    public CMLMolecule createSupercell(CMLMolecule asymmetricUnit, int na, int nb, int nc) {
+        return createSupercell(asymmetricUnit, na, nb, nc, null);
+    }
+
+    /** packs a supercell applying ranges of operators in parallel.
+     *
+     * as createSupercell(CMLMolecule, int, int, int) but the operators are
+     * split into tasks submitted to executor (see PackedCell). Atoms are
+     * created on the calling thread. The executor is not shut down.
+     *
+     * @param asymmetricUnit
+     * @param na cells along a
+     * @param nb cells along b
+     * @param nc cells along c
+     * @param executor if null operators are applied on the calling thread
+     * @return new molecule
+     * @throws RuntimeException if there are no symmetry operators
+     */
+    public CMLMolecule createSupercell(CMLMolecule asymmetricUnit, int na, int nb, int nc,
+            ExecutorService executor) {
+        CMLElements<CMLSymmetry> symmetryElements = this.getSymmetryElements();
+        if (symmetryElements.size() == 0) {
+            throw new RuntimeException("no symmetry in crystal");
+        }
+        CompiledSymmetry symmetry = symmetryElements.get(0).compile();
+        if (symmetry.size() == 0) {
+            throw new RuntimeException("no symmetry operators in crystal");
+        }
+        List<CMLAtom> atoms = new ArrayList<CMLAtom>();
+        for (CMLAtom atom : asymmetricUnit.getAtoms()) {
+            if (atom.getXYZFract() != null) {
+                atoms.add(atom);
+            }
+        }
+        double[] asym = new double[3 * atoms.size()];
+        for (int i = 0; i < atoms.size(); i++) {
+            System.arraycopy(atoms.get(i).getXYZFract().getArray(), 0, asym, 3 * i, 3);
+        }
+        PackedCell cell = (executor == null) ? new PackedCell(symmetry, asym) :
+            new PackedCell(symmetry, asym, CompiledSymmetry.FRACT_EPS, executor);
+        double[] xyz = cell.getSupercellXYZ(na, nb, nc);
+        int[] source = cell.getSourceIndices();
+        double[][] orth = null;
+        if (this.getScalarElements().size() > 0 || this.getCellParameterElements().size() > 0) {
+            orth = this.getOrthogonalizationMatrix().getMatrix();
+        }
+        int[] serial = new int[atoms.size()];
+        CMLMolecule molecule = new CMLMolecule();
+        for (int m = 0; m < xyz.length / 3; m++) {
+            int s = source[m % cell.size()];
+            CMLAtom oldAtom = atoms.get(s);
+            String oldId = oldAtom.getId();
+            if (oldId == null) {
+                oldId = "a"+(s + 1);
+            }
+            CMLAtom atom = new CMLAtom(oldAtom);
+            atom.resetId(oldId+CMLConstants.S_UNDER+(++serial[s]));
+            double x = xyz[3 * m];
+            double y = xyz[3 * m + 1];
+            double z = xyz[3 * m + 2];
+            atom.setXYZFract(new Point3(x, y, z));
+            if (orth == null) {
+                atom.unsetXYZ3();
+            } else {
+                atom.setXYZ3(new Point3(
+                    orth[0][0] * x + orth[0][1] * y + orth[0][2] * z,
+                    orth[1][0] * x + orth[1][1] * y + orth[1][2] * z,
+                    orth[2][0] * x + orth[2][1] * y + orth[2][2] * z));
+            }
+            molecule.addAtom(atom);
+        }
+        return molecule;
+    }
+
     /** convenience method to get a single crystal descendant of an element.
      *
      * @param element to search under
@@ -813,13 +915,13 @@ public class CMLCrystal extends AbstractCrystal {
      * @throws RuntimeException if 0 or >1 nodes
      */
     public static CMLCrystal getContainedCrystal(CMLElement element) throws RuntimeException {
-        Nodes crystalNodes = element.query(".//"+CMLCrystal.NS, CMLConstants.CML_XPATH);
-        if (crystalNodes.size() == 0) {
+        List<CMLElement> crystalList = element.getDescendantElements(CMLCrystal.TAG);
+        if (crystalList.size() == 0) {
             throw new RuntimeException("NO <crystal> FOUND");
-        } else if (crystalNodes.size() > 1) {
-            throw new RuntimeException("TOO MANY <crystal> FOUND "+crystalNodes.size());
+        } else if (crystalList.size() > 1) {
+            throw new RuntimeException("TOO MANY <crystal> FOUND "+crystalList.size());
         }
-        return (CMLCrystal) crystalNodes.get(0);
+        return (CMLCrystal) crystalList.get(0);
     }
 
 
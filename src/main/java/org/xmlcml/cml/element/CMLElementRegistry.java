@@ -0,0 +1,427 @@
+/**
+ *    Copyright 2011 Peter Murray-Rust et. al.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package org.xmlcml.cml.element;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.xmlcml.cml.base.CMLElement;
+
+/**
+ * static registry of the CML element classes indexed by tag.
+ *
+ * replaces Class.forName() lookup of CMLFoo from "foo" in the node factory
+ * and CMLElement.getOrCreateChild(). Autogenerated from the TAG constants of the
+ * AbstractFoo classes plus the hand-written AbstractHTMLContainer subclasses
+ * (definition, description); regenerate when elements are added to the schema.
+ *
+ */
+public class CMLElementRegistry {
+
+    private final static List<String> TAGS = Collections.unmodifiableList(Arrays.asList(
+        CMLAbundance.TAG,
+        CMLAction.TAG,
+        CMLActionList.TAG,
+        CMLAmount.TAG,
+        CMLAngle.TAG,
+        CMLArg.TAG,
+        CMLArray.TAG,
+        CMLArrayList.TAG,
+        CMLAtom.TAG,
+        CMLAtomArray.TAG,
+        CMLAtomParity.TAG,
+        CMLAtomSet.TAG,
+        CMLAtomType.TAG,
+        CMLAtomTypeList.TAG,
+        CMLAtomicBasisFunction.TAG,
+        CMLBand.TAG,
+        CMLBandList.TAG,
+        CMLBasisSet.TAG,
+        CMLBond.TAG,
+        CMLBondArray.TAG,
+        CMLBondSet.TAG,
+        CMLBondStereo.TAG,
+        CMLBondType.TAG,
+        CMLBondTypeList.TAG,
+        CMLCellParameter.TAG,
+        CMLCml.TAG,
+        CMLComplexObject.TAG,
+        CMLConditionList.TAG,
+        CMLCrystal.TAG,
+        CMLDefinition.TAG,
+        CMLDescription.TAG,
+        CMLDictionary.TAG,
+        CMLEigen.TAG,
+        CMLElectron.TAG,
+        CMLEntry.TAG,
+        CMLExpression.TAG,
+        CMLFormula.TAG,
+        CMLFragment.TAG,
+        CMLFragmentList.TAG,
+        CMLGradient.TAG,
+        CMLIdentifier.TAG,
+        CMLIsotope.TAG,
+        CMLIsotopeList.TAG,
+        CMLJoin.TAG,
+        CMLKpoint.TAG,
+        CMLKpointList.TAG,
+        CMLLabel.TAG,
+        CMLLattice.TAG,
+        CMLLatticeVector.TAG,
+        CMLLength.TAG,
+        CMLLine3.TAG,
+        CMLLink.TAG,
+        CMLList.TAG,
+        CMLMap.TAG,
+        CMLMatrix.TAG,
+        CMLMechanism.TAG,
+        CMLMechanismComponent.TAG,
+        CMLMetadata.TAG,
+        CMLMetadataList.TAG,
+        CMLModule.TAG,
+        CMLMolecule.TAG,
+        CMLMoleculeList.TAG,
+        CMLName.TAG,
+        CMLObject.TAG,
+        CMLObservation.TAG,
+        CMLOperator.TAG,
+        CMLParameter.TAG,
+        CMLParameterList.TAG,
+        CMLParticle.TAG,
+        CMLPeak.TAG,
+        CMLPeakGroup.TAG,
+        CMLPeakList.TAG,
+        CMLPeakStructure.TAG,
+        CMLPlane3.TAG,
+        CMLPoint3.TAG,
+        CMLPotential.TAG,
+        CMLPotentialForm.TAG,
+        CMLPotentialList.TAG,
+        CMLProduct.TAG,
+        CMLProductList.TAG,
+        CMLProperty.TAG,
+        CMLPropertyList.TAG,
+        CMLReactant.TAG,
+        CMLReactantList.TAG,
+        CMLReaction.TAG,
+        CMLReactionList.TAG,
+        CMLReactionScheme.TAG,
+        CMLReactionStep.TAG,
+        CMLReactionStepList.TAG,
+        CMLReactiveCentre.TAG,
+        CMLRegion.TAG,
+        CMLRelatedEntry.TAG,
+        CMLSample.TAG,
+        CMLScalar.TAG,
+        CMLSpectator.TAG,
+        CMLSpectatorList.TAG,
+        CMLSpectrum.TAG,
+        CMLSpectrumData.TAG,
+        CMLSpectrumList.TAG,
+        CMLSphere3.TAG,
+        CMLSubstance.TAG,
+        CMLSubstanceList.TAG,
+        CMLSymmetry.TAG,
+        CMLSystem.TAG,
+        CMLTable.TAG,
+        CMLTableCell.TAG,
+        CMLTableContent.TAG,
+        CMLTableHeader.TAG,
+        CMLTableHeaderCell.TAG,
+        CMLTableRow.TAG,
+        CMLTableRowList.TAG,
+        CMLTorsion.TAG,
+        CMLTransform3.TAG,
+        CMLTransitionState.TAG,
+        CMLVector3.TAG,
+        CMLXaxis.TAG,
+        CMLYaxis.TAG,
+        CMLZMatrix.TAG
+    ));
+
+    private CMLElementRegistry() {
+    }
+
+    /** creates a new element for a CML tag.
+     *
+     * @param tag local name of element (e.g. "atom")
+     * @return new element (e.g. CMLAtom) or null if tag is not registered
+     */
+    public static CMLElement createElement(String tag) {
+        if (tag == null) {
+            return null;
+        }
+        switch (tag) {
+        case CMLAbundance.TAG:
+            return new CMLAbundance();
+        case CMLAction.TAG:
+            return new CMLAction();
+        case CMLActionList.TAG:
+            return new CMLActionList();
+        case CMLAmount.TAG:
+            return new CMLAmount();
+        case CMLAngle.TAG:
+            return new CMLAngle();
+        case CMLArg.TAG:
+            return new CMLArg();
+        case CMLArray.TAG:
+            return new CMLArray();
+        case CMLArrayList.TAG:
+            return new CMLArrayList();
+        case CMLAtom.TAG:
+            return new CMLAtom();
+        case CMLAtomArray.TAG:
+            return new CMLAtomArray();
+        case CMLAtomParity.TAG:
+            return new CMLAtomParity();
+        case CMLAtomSet.TAG:
+            return new CMLAtomSet();
+        case CMLAtomType.TAG:
+            return new CMLAtomType();
+        case CMLAtomTypeList.TAG:
+            return new CMLAtomTypeList();
+        case CMLAtomicBasisFunction.TAG:
+            return new CMLAtomicBasisFunction();
+        case CMLBand.TAG:
+            return new CMLBand();
+        case CMLBandList.TAG:
+            return new CMLBandList();
+        case CMLBasisSet.TAG:
+            return new CMLBasisSet();
+        case CMLBond.TAG:
+            return new CMLBond();
+        case CMLBondArray.TAG:
+            return new CMLBondArray();
+        case CMLBondSet.TAG:
+            return new CMLBondSet();
+        case CMLBondStereo.TAG:
+            return new CMLBondStereo();
+        case CMLBondType.TAG:
+            return new CMLBondType();
+        case CMLBondTypeList.TAG:
+            return new CMLBondTypeList();
+        case CMLCellParameter.TAG:
+            return new CMLCellParameter();
+        case CMLCml.TAG:
+            return new CMLCml();
+        case CMLComplexObject.TAG:
+            return new CMLComplexObject();
+        case CMLConditionList.TAG:
+            return new CMLConditionList();
+        case CMLCrystal.TAG:
+            return new CMLCrystal();
+        case CMLDefinition.TAG:
+            return new CMLDefinition();
+        case CMLDescription.TAG:
+            return new CMLDescription();
+        case CMLDictionary.TAG:
+            return new CMLDictionary();
+        case CMLEigen.TAG:
+            return new CMLEigen();
+        case CMLElectron.TAG:
+            return new CMLElectron();
+        case CMLEntry.TAG:
+            return new CMLEntry();
+        case CMLExpression.TAG:
+            return new CMLExpression();
+        case CMLFormula.TAG:
+            return new CMLFormula();
+        case CMLFragment.TAG:
+            return new CMLFragment();
+        case CMLFragmentList.TAG:
+            return new CMLFragmentList();
+        case CMLGradient.TAG:
+            return new CMLGradient();
+        case CMLIdentifier.TAG:
+            return new CMLIdentifier();
+        case CMLIsotope.TAG:
+            return new CMLIsotope();
+        case CMLIsotopeList.TAG:
+            return new CMLIsotopeList();
+        case CMLJoin.TAG:
+            return new CMLJoin();
+        case CMLKpoint.TAG:
+            return new CMLKpoint();
+        case CMLKpointList.TAG:
+            return new CMLKpointList();
+        case CMLLabel.TAG:
+            return new CMLLabel();
+        case CMLLattice.TAG:
+            return new CMLLattice();
+        case CMLLatticeVector.TAG:
+            return new CMLLatticeVector();
+        case CMLLength.TAG:
+            return new CMLLength();
+        case CMLLine3.TAG:
+            return new CMLLine3();
+        case CMLLink.TAG:
+            return new CMLLink();
+        case CMLList.TAG:
+            return new CMLList();
+        case CMLMap.TAG:
+            return new CMLMap();
+        case CMLMatrix.TAG:
+            return new CMLMatrix();
+        case CMLMechanism.TAG:
+            return new CMLMechanism();
+        case CMLMechanismComponent.TAG:
+            return new CMLMechanismComponent();
+        case CMLMetadata.TAG:
+            return new CMLMetadata();
+        case CMLMetadataList.TAG:
+            return new CMLMetadataList();
+        case CMLModule.TAG:
+            return new CMLModule();
+        case CMLMolecule.TAG:
+            return new CMLMolecule();
+        case CMLMoleculeList.TAG:
+            return new CMLMoleculeList();
+        case CMLName.TAG:
+            return new CMLName();
+        case CMLObject.TAG:
+            return new CMLObject();
+        case CMLObservation.TAG:
+            return new CMLObservation();
+        case CMLOperator.TAG:
+            return new CMLOperator();
+        case CMLParameter.TAG:
+            return new CMLParameter();
+        case CMLParameterList.TAG:
+            return new CMLParameterList();
+        case CMLParticle.TAG:
+            return new CMLParticle();
+        case CMLPeak.TAG:
+            return new CMLPeak();
+        case CMLPeakGroup.TAG:
+            return new CMLPeakGroup();
+        case CMLPeakList.TAG:
+            return new CMLPeakList();
+        case CMLPeakStructure.TAG:
+            return new CMLPeakStructure();
+        case CMLPlane3.TAG:
+            return new CMLPlane3();
+        case CMLPoint3.TAG:
+            return new CMLPoint3();
+        case CMLPotential.TAG:
+            return new CMLPotential();
+        case CMLPotentialForm.TAG:
+            return new CMLPotentialForm();
+        case CMLPotentialList.TAG:
+            return new CMLPotentialList();
+        case CMLProduct.TAG:
+            return new CMLProduct();
+        case CMLProductList.TAG:
+            return new CMLProductList();
+        case CMLProperty.TAG:
+            return new CMLProperty();
+        case CMLPropertyList.TAG:
+            return new CMLPropertyList();
+        case CMLReactant.TAG:
+            return new CMLReactant();
+        case CMLReactantList.TAG:
+            return new CMLReactantList();
+        case CMLReaction.TAG:
+            return new CMLReaction();
+        case CMLReactionList.TAG:
+            return new CMLReactionList();
+        case CMLReactionScheme.TAG:
+            return new CMLReactionScheme();
+        case CMLReactionStep.TAG:
+            return new CMLReactionStep();
+        case CMLReactionStepList.TAG:
+            return new CMLReactionStepList();
+        case CMLReactiveCentre.TAG:
+            return new CMLReactiveCentre();
+        case CMLRegion.TAG:
+            return new CMLRegion();
+        case CMLRelatedEntry.TAG:
+            return new CMLRelatedEntry();
+        case CMLSample.TAG:
+            return new CMLSample();
+        case CMLScalar.TAG:
+            return new CMLScalar();
+        case CMLSpectator.TAG:
+            return new CMLSpectator();
+        case CMLSpectatorList.TAG:
+            return new CMLSpectatorList();
+        case CMLSpectrum.TAG:
+            return new CMLSpectrum();
+        case CMLSpectrumData.TAG:
+            return new CMLSpectrumData();
+        case CMLSpectrumList.TAG:
+            return new CMLSpectrumList();
+        case CMLSphere3.TAG:
+            return new CMLSphere3();
+        case CMLSubstance.TAG:
+            return new CMLSubstance();
+        case CMLSubstanceList.TAG:
+            return new CMLSubstanceList();
+        case CMLSymmetry.TAG:
+            return new CMLSymmetry();
+        case CMLSystem.TAG:
+            return new CMLSystem();
+        case CMLTable.TAG:
+            return new CMLTable();
+        case CMLTableCell.TAG:
+            return new CMLTableCell();
+        case CMLTableContent.TAG:
+            return new CMLTableContent();
+        case CMLTableHeader.TAG:
+            return new CMLTableHeader();
+        case CMLTableHeaderCell.TAG:
+            return new CMLTableHeaderCell();
+        case CMLTableRow.TAG:
+            return new CMLTableRow();
+        case CMLTableRowList.TAG:
+            return new CMLTableRowList();
+        case CMLTorsion.TAG:
+            return new CMLTorsion();
+        case CMLTransform3.TAG:
+            return new CMLTransform3();
+        case CMLTransitionState.TAG:
+            return new CMLTransitionState();
+        case CMLVector3.TAG:
+            return new CMLVector3();
+        case CMLXaxis.TAG:
+            return new CMLXaxis();
+        case CMLYaxis.TAG:
+            return new CMLYaxis();
+        case CMLZMatrix.TAG:
+            return new CMLZMatrix();
+        default:
+            return null;
+        }
+    }
+
+    /** is tag registered.
+     *
+     * @param tag local name of element
+     * @return true if createElement(tag) returns an element
+     */
+    public static boolean isRegistered(String tag) {
+        return createElement(tag) != null;
+    }
+
+    /** all registered tags.
+     *
+     * @return unmodifiable list of tags in alphabetical order of class
+     */
+    public static List<String> getTags() {
+        return TAGS;
+    }
+}
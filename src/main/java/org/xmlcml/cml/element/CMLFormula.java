@@ -253,6 +253,8 @@ public class CMLFormula extends AbstractFormula {
 	public CMLFormula(CMLMolecule molecule) {
 		init();
 		int formalCharge = 0;
+		// count first and write atomArray and concise once
+		FormulaCounter counter = new FormulaCounter();
 		// iterate through atoms adding elements, occupancies and charges
 
 //		HydrogenStrategy strategy = null;
@@ -276,7 +278,7 @@ public class CMLFormula extends AbstractFormula {
 //			}
 			if (!AS.H.equals(elementType) ) {
 //				HydrogenStrategy.EXPLICIT_HYDROGENS == strategy) {
-					this.add(elementType, 1.0);
+					counter.add(elementType, 1.0);
 	//			}
 				
 				if (atom.getFormalChargeAttribute() != null) {
@@ -285,7 +287,7 @@ public class CMLFormula extends AbstractFormula {
 	
 				int hydrogenCount = atom.getHydrogenCount();
 				if (hydrogenCount > 0) {
-					this.add(AS.H.value, hydrogenCount);
+					counter.add(AS.H.value, hydrogenCount);
 				}
 			}
 			else {
@@ -299,13 +301,14 @@ public class CMLFormula extends AbstractFormula {
 					}
 				}
 				if ( countit ) {
-					this.add(AS.H.value, 1.0);
+					counter.add(AS.H.value, 1.0);
 					if (atom.getFormalChargeAttribute() != null) {
 						formalCharge += atom.getFormalCharge();
 					}
 				}
 			}
 		}
+		this.add(counter);
 		// has the molecule a net computed charge?
 		if (formalCharge != Integer.MIN_VALUE) {
 			this.setFormalCharge(formalCharge);
@@ -978,6 +981,7 @@ public class CMLFormula extends AbstractFormula {
 	private void parseElementCountWhitespace(String formulaString,
 			Type formulaConvention) {
 		StringTokenizer st = new StringTokenizer(formulaString);
+		FormulaCounter counter = new FormulaCounter();
 		while (st.hasMoreTokens()) {
 			String s = st.nextToken();
 			String countS = null;
@@ -1025,8 +1029,9 @@ public class CMLFormula extends AbstractFormula {
 							+ ") in: " + s);
 				}
 			}
-			this.add(elTypeS, c);
+			counter.add(elTypeS, c);
 		}
+		this.add(counter);
 		String concise = getFormattedString(Type.ELEMENT_WHITESPACE_COUNT,
 				Sort.CHFIRST, false).trim();
 		if (!concise.equals(S_EMPTY)) {
@@ -1167,6 +1172,7 @@ public class CMLFormula extends AbstractFormula {
 		int charge = 0;
 		StringTokenizer st = new StringTokenizer(sm);
 		int l = st.countTokens();
+		FormulaCounter counter = new FormulaCounter();
 		for (int i = 0; i < l; i++) {
 			String ss = st.nextToken();
 			String s = ss;
@@ -1243,8 +1249,9 @@ public class CMLFormula extends AbstractFormula {
 			if (element == null) {
 				throw new RuntimeException("Bad element (" + elem + ") in: " + elem);
 			}
-			this.add(elem, count);
+			counter.add(elem, count);
 		}
+		this.add(counter);
 		if (charge != 0) {
 			this.setFormalCharge(charge);
 		}
@@ -1482,6 +1489,24 @@ public class CMLFormula extends AbstractFormula {
 	 *            the element multiplier
 	 */
 	public void add(String elementType, double count) {
+		FormulaCounter counter = new FormulaCounter();
+		counter.add(elementType, count);
+		this.add(counter);
+	}
+
+	/**
+	 * Adds all elements and counts to formula. Known elements have their
+	 * counts incremented. The atomArray and concise are rewritten once
+	 * so this should be used rather than repeated add(elementType, count).
+	 * An empty counter is ignored.
+	 *
+	 * @param counter
+	 *            the counts to add
+	 */
+	public void add(FormulaCounter counter) {
+		if (counter.isEmpty()) {
+			return;
+		}
 		CMLAtomArray atomArray = (getAtomArrayElements().size() == 0) ? null
 				: getAtomArrayElements().get(0);
 		if (atomArray == null) {
@@ -1495,33 +1520,13 @@ public class CMLFormula extends AbstractFormula {
 			}
 		}
 		String[] elements = getElementTypes();
-		if (elements == null) {
-			elements = new String[0];
-		}
 		double[] counts = getCounts();
-		if (counts == null) {
-			counts = new double[0];
-		}
-		int nelem = elements.length;
-		boolean added = false;
-		for (int i = 0; i < nelem; i++) {
-			if (elements[i].equals(elementType)) {
-				counts[i] += count;
-				added = true;
-				break;
-			}
-		}
-		if (!added) {
-			String[] newElem = new String[nelem + 1];
-			System.arraycopy(elements, 0, newElem, 0, nelem);
-			newElem[nelem] = elementType;
-			double[] newCount = new double[nelem + 1];
-			System.arraycopy(counts, 0, newCount, 0, nelem);
-			newCount[nelem] = count;
-			atomArray.setElementTypeAndCount(newElem, newCount);
-		} else {
-			atomArray.setElementTypeAndCount(elements, counts);
+		FormulaCounter total = new FormulaCounter();
+		if (elements != null && counts != null) {
+			total.add(elements, counts);
 		}
+		total.add(counter);
+		atomArray.setElementTypeAndCount(total.getElementTypes(), total.getCounts());
 		int formalCharge = (this.getFormalChargeAttribute() == null) ? 0 : this.getFormalCharge();
 		String conciseS = atomArray.generateConcise(formalCharge);
 		super.setConcise(conciseS);
@@ -1702,9 +1707,11 @@ public class CMLFormula extends AbstractFormula {
 		int fCharge = (form.getFormalChargeAttribute() == null) ? 0 : form
 				.getFormalCharge();
 		if (fElements != null) {
+			FormulaCounter counter = new FormulaCounter();
 			for (int i = 0; i < fElements.length; i++) {
-				this.add(fElements[i], fCounts[i] * fCount);
+				counter.add(fElements[i], fCounts[i] * fCount);
 			}
+			this.add(counter);
 		} else {
 			// build from concise
 			String concise = CMLConstants.S_EMPTY;
@@ -2015,15 +2022,17 @@ public class CMLFormula extends AbstractFormula {
 	private void combineSubFormulaElementVectors() {
 		Elements formulas = this.getChildElements("formula", CMLConstants.CML_NS);
 		if (formulas.size() > 0) {
+			FormulaCounter counter = new FormulaCounter();
 			for (int i = 0; i < formulas.size(); i++) {
 				CMLFormula subFormula = (CMLFormula) formulas.get(i);
 				String[] subElementTypes = subFormula.getElementTypes();
 				double[] subCounts = subFormula.getCounts();
 				for (int j = 0; j < subElementTypes.length; j++) {
-					this.add((String) subElementTypes[j], subCounts[j]
+					counter.add((String) subElementTypes[j], subCounts[j]
 					                                                * subFormula.getCount());
 				}
 			}
+			this.add(counter);
 		}
 	}
 
@@ -2128,6 +2137,7 @@ public class CMLFormula extends AbstractFormula {
 		}
 		CMLFormula newFormula = new CMLFormula();
 		newFormula.setAllowNegativeCounts(true);
+		FormulaCounter counter = new FormulaCounter();
 		String[] fElementTypes = form.getElementTypes();
 		double[] fCounts = form.getCounts();
 		double fCount = (form.getCountAttribute() == null) ? 1.0 : form.getCount();
@@ -2144,7 +2154,7 @@ public class CMLFormula extends AbstractFormula {
 					                                                  * fCount;
 				}
 				if (Math.abs(delta) > 0.000001) {
-					newFormula.add(element, delta);
+					counter.add(element, delta);
 				}
 				countTable.remove(element);
 			}
@@ -2153,9 +2163,10 @@ public class CMLFormula extends AbstractFormula {
 		for (String element : countTable.keySet()) {
 			Double count = countTable.get(element);
 			if (count != null) {
-				newFormula.add(element, count.doubleValue() * thisCount);
+				counter.add(element, count.doubleValue() * thisCount);
 			}
 		}
+		newFormula.add(counter);
 		int charge = (int) Math.round(this.getFormalCharge() * thisCount
 				- form.getFormalCharge() * fCount);
 		if (charge != 0) {
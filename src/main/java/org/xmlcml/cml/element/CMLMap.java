@@ -117,6 +117,14 @@ public class CMLMap extends org.xmlcml.cml.element.AbstractMap {
     protected Map<String, CMLLink> toLinkTable;
     protected Map<String, CMLLink> fromLinkTable;
 
+    // index form, rebuilt after links change
+    private AtomIndexMap atomIndexMap;
+    // molecules and their modification counts when atomIndexMap was built
+    private CMLMolecule atomIndexFrom;
+    private CMLMolecule atomIndexTo;
+    private int atomIndexFromCount;
+    private int atomIndexToCount;
+
     /**
      * constructor.
      */
@@ -349,6 +357,7 @@ public class CMLMap extends org.xmlcml.cml.element.AbstractMap {
      */
     void addLinkToTable(CMLLink link) {
         makeTables();
+        atomIndexMap = null;
         if (link != null) {
             String toLinkS = getToLink(link);
             String fromLinkS = getFromLink(link);
@@ -367,6 +376,7 @@ public class CMLMap extends org.xmlcml.cml.element.AbstractMap {
      */
     public void removeLink(CMLLink link) {
         if (link != null) {
+            atomIndexMap = null;
             String to = getToLink(link);
             String from = getFromLink(link);
             toFromTable.remove(to);
@@ -377,6 +387,34 @@ public class CMLMap extends org.xmlcml.cml.element.AbstractMap {
         }
     }
 
+    /**
+     * gets links as indexes into atoms of two molecules.
+     * the result is cached and rebuilt only after links are added or
+     * removed through this map or elements are added to or removed from
+     * either molecule (see CMLElement.getModificationCount()), so also hits
+     * for molecules with child molecules. changes to attributes of existing
+     * links or atoms are not detected.
+     *
+     * @param fromMolecule containing atoms in from attributes
+     * @param toMolecule containing atoms in to attributes
+     * @return index map
+     */
+    public AtomIndexMap getAtomIndexMap(CMLMolecule fromMolecule, CMLMolecule toMolecule) {
+        int fromCount = fromMolecule.getModificationCount();
+        int toCount = toMolecule.getModificationCount();
+        AtomIndexMap indexMap = atomIndexMap;
+        if (indexMap == null || atomIndexFrom != fromMolecule || atomIndexTo != toMolecule ||
+                atomIndexFromCount != fromCount || atomIndexToCount != toCount) {
+            indexMap = new AtomIndexMap(this, fromMolecule.getAtomView(), toMolecule.getAtomView());
+            atomIndexMap = indexMap;
+            atomIndexFrom = fromMolecule;
+            atomIndexTo = toMolecule;
+            atomIndexFromCount = fromCount;
+            atomIndexToCount = toCount;
+        }
+        return indexMap;
+    }
+
     /**
      * gets array of to attributes. does not do toSet
      *
@@ -16,11 +16,16 @@
 
 package org.xmlcml.cml.element;
 
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+
 import nu.xom.Element;
 import nu.xom.Node;
+import nu.xom.Nodes;
 
 import org.xmlcml.cml.attribute.DelimiterAttribute;
 import org.xmlcml.cml.attribute.NamespaceRefAttribute;
+import org.xmlcml.cml.base.ArrayParser;
 import org.xmlcml.cml.base.CMLElement;
 import org.xmlcml.cml.base.CMLType;
 import org.xmlcml.cml.interfacex.HasDataType;
@@ -38,6 +43,8 @@ import org.xmlcml.euclid.Util;
  * user-modifiable class supporting matrix. * autogenerated from schema use as a
  * shell which can be edited
  *
+ * numeric content is parsed once and cached until the text children change.
+ *
  */
 public class CMLMatrix extends AbstractMatrix 
     implements HasUnits, HasDataType, HasDictRef, HasDelimiter {
@@ -101,6 +108,10 @@ public class CMLMatrix extends AbstractMatrix
 	public final static String NS = C_E+TAG;
 
 	private DelimiterAttribute delimiterAttribute = null;
+    /** parsed content; null if not parsed or content changed */
+    private double[] doubleBuffer = null;
+    private int[] intBuffer = null;
+
     /**
      * constructor.
      *
@@ -391,7 +402,7 @@ public class CMLMatrix extends AbstractMatrix
      */
     public RealMatrix getEuclidRealMatrix() {
         RealMatrix rm = new RealMatrix(this.getRows(), this.getColumns(), this
-                    .getDoubleArray());
+                    .getNumericDoubles());
         return rm;
     }
 
@@ -402,7 +413,7 @@ public class CMLMatrix extends AbstractMatrix
      */
     public IntMatrix getEuclidIntMatrix() {
         return new IntMatrix(this.getRows(), this.getColumns(), this
-                    .getIntegerArray());
+                    .getNumericInts());
     }
 
     // ====================== subsidiary accessors =====================
@@ -421,6 +432,7 @@ public class CMLMatrix extends AbstractMatrix
         setDataType(XSD_DOUBLE);
         setXMLContent(content);
 		this.removeWhitespaceDelimiterAttribute();
+        doubleBuffer = mm.getMatrixAsArray();
     }
 
     /**
@@ -438,6 +450,7 @@ public class CMLMatrix extends AbstractMatrix
         setDataType(XSD_INTEGER);
         setXMLContent(content);
 		this.removeWhitespaceDelimiterAttribute();
+        intBuffer = mm.getMatrixAsArray();
     }
 
     /**
@@ -456,6 +469,7 @@ public class CMLMatrix extends AbstractMatrix
         setXMLContent(Util.concatenate(euclRealMatrix.getMatrixAsArray(),
                 S_SPACE));
 		this.removeWhitespaceDelimiterAttribute();
+        doubleBuffer = array.clone();
     }
 
     /**
@@ -476,6 +490,7 @@ public class CMLMatrix extends AbstractMatrix
         setXMLContent(Util.concatenate(euclIntMatrix.getMatrixAsArray(),
                 S_SPACE));
 		this.removeWhitespaceDelimiterAttribute();
+        intBuffer = array.clone();
     }
 
     /**
@@ -500,11 +515,49 @@ public class CMLMatrix extends AbstractMatrix
     public double[] getDoubleArray() {
         double[] dd = null;
         if (this.getDataType().equals(XSD_DOUBLE) || this.getDataType().equals(FPX_REAL)) {
-            dd = Util.splitToDoubleArray(this.getXMLContent(), S_WHITEREGEX);
+            dd = getDoubleBuffer().clone();
         }
         return dd;
     }
 
+    /**
+     * read-only view of the values, without copying.
+     * valid until the content changes.
+     *
+     * @return view (or null if different type)
+     */
+    public DoubleBuffer getDoubleView() {
+        double[] dd = getNumericDoubles();
+        return (dd == null) ? null : DoubleBuffer.wrap(dd).asReadOnlyBuffer();
+    }
+
+    /** parsed buffer, not copied; for euclid constructors which copy it.
+     * @return buffer (or null if different type)
+     */
+    private double[] getNumericDoubles() {
+        return (this.getDataType().equals(XSD_DOUBLE) || this.getDataType().equals(FPX_REAL)) ?
+                getDoubleBuffer() : null;
+    }
+
+    private double[] getDoubleBuffer() {
+        if (doubleBuffer == null) {
+            String content = this.getXMLContent();
+            double[] dd = null;
+            if (content.trim().length() > 0) {
+                try {
+                    dd = ArrayParser.parseDoubles(content);
+                } catch (RuntimeException e) {
+                    // report through Util
+                }
+            }
+            if (dd == null) {
+                dd = Util.splitToDoubleArray(content, S_WHITEREGEX);
+            }
+            doubleBuffer = dd;
+        }
+        return doubleBuffer;
+    }
+
     /**
      * gets values as array.
      *
@@ -513,15 +566,49 @@ public class CMLMatrix extends AbstractMatrix
     public int[] getIntegerArray() {
         int[] ii = null;
         if (XSD_INTEGER.equals(this.getDataType())) {
-            try {
-                ii = Util.splitToIntArray(this.getXMLContent(), S_WHITEREGEX);
-            } catch (EuclidRuntimeException e) {
-                throw new RuntimeException("bug " + e);
-            }
+            ii = getIntBuffer().clone();
         }
         return ii;
     }
 
+    /**
+     * read-only view of the values, without copying.
+     * valid until the content changes.
+     *
+     * @return view (or null if different type)
+     */
+    public IntBuffer getIntegerView() {
+        int[] ii = getNumericInts();
+        return (ii == null) ? null : IntBuffer.wrap(ii).asReadOnlyBuffer();
+    }
+
+    private int[] getNumericInts() {
+        return (XSD_INTEGER.equals(this.getDataType())) ? getIntBuffer() : null;
+    }
+
+    private int[] getIntBuffer() {
+        if (intBuffer == null) {
+            String content = this.getXMLContent();
+            int[] ii = null;
+            if (content.trim().length() > 0) {
+                try {
+                    ii = ArrayParser.parseInts(content);
+                } catch (RuntimeException e) {
+                    // report through Util
+                }
+            }
+            if (ii == null) {
+                try {
+                    ii = Util.splitToIntArray(content, S_WHITEREGEX);
+                } catch (EuclidRuntimeException e) {
+                    throw new RuntimeException("bug " + e);
+                }
+            }
+            intBuffer = ii;
+        }
+        return intBuffer;
+    }
+
     /**
      * gets values as matrix.
      *
@@ -529,7 +616,7 @@ public class CMLMatrix extends AbstractMatrix
      */
     public double[][] getDoubleMatrix() {
         double[][] ddd = null;
-        double[] dd = this.getDoubleArray();
+        double[] dd = getNumericDoubles();
         int count = 0;
         if (dd != null) {
             int rows = getRows();
@@ -550,7 +637,7 @@ public class CMLMatrix extends AbstractMatrix
      */
     public int[][] getIntegerMatrix() {
         int[][] iii = null;
-        int[] ii = this.getIntegerArray();
+        int[] ii = getNumericInts();
         int count = 0;
         if (ii != null) {
             int rows = getRows();
@@ -573,10 +660,10 @@ public class CMLMatrix extends AbstractMatrix
 			}
 			
 			if (dataType.equals(XSD_DOUBLE)) {
-				Double d = getDoubleMatrix()[row][col];
+				Double d = getDoubleBuffer()[row * getColumns() + col];
 				scalar = new CMLScalar(d);
 			} else if (dataType.equals(XSD_INTEGER)) {
-				Integer ii = getIntegerMatrix()[row][col];
+				Integer ii = getIntBuffer()[row * getColumns() + col];
 				scalar = new CMLScalar(ii);
 			}
 			CMLArray.copyAttributesFromTo(this, scalar);
@@ -605,9 +692,21 @@ public class CMLMatrix extends AbstractMatrix
      * @return true if equal
      */
     public boolean isEqualTo(CMLMatrix matrix, double eps) {
-        return (this.getRows() == matrix.getRows()
-                && this.getColumns() == matrix.getColumns() && Util.isEqual(
-                this.getDoubleArray(), matrix.getDoubleArray(), eps));
+        if (this.getRows() != matrix.getRows()
+                || this.getColumns() != matrix.getColumns()) {
+            return false;
+        }
+        DoubleBuffer dd = this.getDoubleView();
+        DoubleBuffer dd1 = matrix.getDoubleView();
+        if (dd == null || dd1 == null || dd.limit() != dd1.limit()) {
+            return false;
+        }
+        for (int i = 0; i < dd.limit(); i++) {
+            if (Math.abs(dd.get(i) - dd1.get(i)) > eps) {
+                return false;
+            }
+        }
+        return true;
     }
 
     /**
@@ -623,7 +722,7 @@ public class CMLMatrix extends AbstractMatrix
         RealMatrix t = null;
         int m2r = m2.getRows();
         int m2c = m2.getColumns();
-        RealMatrix teucl3 = new RealMatrix(m2r, m2c, this.getDoubleArray());
+        RealMatrix teucl3 = new RealMatrix(m2r, m2c, this.getNumericDoubles());
         t = teucl3.multiply(m2.getEuclidRealMatrix());
         CMLMatrix newMatrix = new CMLMatrix(m2r, m2c, t.getMatrixAsArray());
 		newMatrix.removeWhitespaceDelimiterAttribute();
@@ -649,4 +748,52 @@ public class CMLMatrix extends AbstractMatrix
 		CMLArray.removeWhitespaceDelimiterAttribute(this);
 	}
 
+    /** override insertChild.
+     * invalidates parsed content
+     * @param newNode
+     * @param pos
+     */
+    @Override
+    public void insertChild(Node newNode, int pos) {
+        clearBuffer();
+        super.insertChild(newNode, pos);
+    }
+
+    /** override removeChild.
+     * invalidates parsed content
+     * @param pos
+     * @return removed node
+     */
+    @Override
+    public Node removeChild(int pos) {
+        clearBuffer();
+        return super.removeChild(pos);
+    }
+
+    /** override removeChild.
+     * invalidates parsed content
+     * @param node
+     * @return removed node
+     */
+    @Override
+    public Node removeChild(Node node) {
+        clearBuffer();
+        return super.removeChild(node);
+    }
+
+    /** override removeChildren.
+     * invalidates parsed content
+     * @return removed nodes
+     */
+    @Override
+    public Nodes removeChildren() {
+        clearBuffer();
+        return super.removeChildren();
+    }
+
+    private void clearBuffer() {
+        doubleBuffer = null;
+        intBuffer = null;
+    }
+
 }
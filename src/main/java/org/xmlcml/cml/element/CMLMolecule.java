@@ -17,7 +17,7 @@
 package org.xmlcml.cml.element;
 
 import java.util.ArrayList;
-
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
@@ -40,6 +40,7 @@ import org.xmlcml.cml.base.CMLElements;
 import org.xmlcml.cml.base.CMLUtil;
 import org.xmlcml.euclid.Real2;
 import org.xmlcml.euclid.Real2Vector;
+import org.xmlcml.molutil.ChemicalElement;
 
 /**
  * Class representing the CML molecule element, this class can be used to
@@ -160,6 +161,10 @@ public class CMLMolecule
 	 */
 	Map<CMLAtom, CMLMolecule> atomChildMoleculeMap = null;
 
+	/** primitive coordinates of atoms; null unless created.
+	 */
+	CoordinateBlock coordinateBlock = null;
+
 	// =========================== main constructors ========================
 
 	/**
@@ -704,10 +709,39 @@ public class CMLMolecule
 	 *
 	 */
 	public CMLAtom getAtom(int i) {
-		List<CMLAtom> atoms = this.getAtoms();
+		List<CMLAtom> atoms = this.getAtomView();
 		return (i < 0 || i >= atoms.size()) ? null : atoms.get(i);
 	}
 
+	/** binds current atoms to a new primitive coordinate block.
+	 * atom coordinate getters then read double arrays rather than
+	 * attributes; setters write through to both. Replaces any existing
+	 * block. Atoms added later are not bound; call again after changing
+	 * the atoms.
+	 * @return the block
+	 */
+	public CoordinateBlock createCoordinateBlock() {
+		releaseCoordinateBlock();
+		coordinateBlock = new CoordinateBlock(this);
+		return coordinateBlock;
+	}
+
+	/** gets coordinate block.
+	 * @return null if none created
+	 */
+	public CoordinateBlock getCoordinateBlock() {
+		return coordinateBlock;
+	}
+
+	/** unbinds atoms from the coordinate block (if any).
+	 */
+	public void releaseCoordinateBlock() {
+		if (coordinateBlock != null) {
+			coordinateBlock.release();
+			coordinateBlock = null;
+		}
+	}
+
 	/**
 	 * gets atomArray child.
 	 *
@@ -775,16 +809,37 @@ public class CMLMolecule
 			// use atomArray first in case there are child molecules
 			if (atomArray != null) {
 				// crude check for update index
-				if (atomArray.atomMap.size() !=
-					atomArray.getAtomElements().size()) {
+				if (atomArray.atomMap.size() != atomArray.size()) {
 					atomArray.indexAtoms();
 				}
 				atom = atomArray.getAtomById(id);
 			} else if (getMoleculeCount() > 0) {
-				getChildMoleculeAtomMap();
-				List<CMLAtom> atomList = childMoleculeAtomMap.get(id);
-				if (atomList != null && atomList.size() == 1) {
-					atom = atomList.get(0);
+				atom = getChildMoleculeAtomById(id);
+			}
+		}
+		return atom;
+	}
+
+	/** unique atom with id in atomArray of a child (or nested) molecule.
+	 * uses the id index so is not affected by changes to child molecules
+	 * @param id
+	 * @return atom or null if none or more than one
+	 */
+	private CMLAtom getChildMoleculeAtomById(String id) {
+		CMLAtom atom = null;
+		for (CMLElement element : this.getElementsById(id, false)) {
+			if (element instanceof CMLAtom) {
+				Node atomArray = element.getParent();
+				Node molecule = (atomArray == null) ? null : atomArray.getParent();
+				Node ancestor = molecule;
+				while (ancestor instanceof CMLMolecule && ancestor != this) {
+					ancestor = ancestor.getParent();
+				}
+				if (atomArray instanceof CMLAtomArray && molecule != this && ancestor == this) {
+					if (atom != null) {
+						return null;
+					}
+					atom = (CMLAtom) element;
 				}
 			}
 		}
@@ -900,6 +955,50 @@ public class CMLMolecule
 		return contactMap;
 	}
 
+	/**
+	 * adds bonds between atoms closer than the sum of their covalent radii
+	 * plus tolerance.
+	 * uses an AtomGrid so time is close to linear in the number of atoms.
+	 * Existing bonds are kept; atoms without cartesians or a known element
+	 * are skipped. In a molecule container only atoms in the same child
+	 * molecule are bonded.
+	 *
+	 * @param tolerance added to the sum of radii (e.g. 0.4 Angstrom)
+	 * @return the new bonds
+	 */
+	public List<CMLBond> addBondsFromDistances(double tolerance) {
+		List<CMLBond> newBonds = new ArrayList<CMLBond>();
+		List<CMLAtom> atoms = new ArrayList<CMLAtom>();
+		double maxRadius = 0.0;
+		for (CMLAtom atom : this.getAtomView()) {
+			ChemicalElement element = atom.getChemicalElement();
+			if (element != null) {
+				atoms.add(atom);
+				maxRadius = Math.max(maxRadius, element.getCovalentRadius());
+			}
+		}
+		double range = 2 * maxRadius + tolerance;
+		if (atoms.size() < 2 || !(range > 0.0)) {
+			return newBonds;
+		}
+		AtomGrid grid = new AtomGrid(atoms, range);
+		for (CMLAtom[] pair : grid.getPairsWithin(range)) {
+			CMLMolecule molecule = pair[0].getMolecule();
+			if (molecule == null || molecule != pair[1].getMolecule() ||
+					molecule.getBond(pair[0], pair[1]) != null) {
+				continue;
+			}
+			double bondRange = pair[0].getChemicalElement().getCovalentRadius() +
+				pair[1].getChemicalElement().getCovalentRadius() + tolerance;
+			if (pair[0].getSquaredDistanceTo(pair[1]) < bondRange * bondRange) {
+				CMLBond bond = new CMLBond(pair[0], pair[1]);
+				molecule.addBond(bond);
+				newBonds.add(bond);
+			}
+		}
+		return newBonds;
+	}
+
 	/**
 	 * gets bond by id
 	 *
@@ -980,37 +1079,53 @@ public class CMLMolecule
 	 * @return int the atom count
 	 */
 	public int getAtomCount() {
-		return getAtoms().size();
+		return getAtomView().size();
 	}
 
 	/**
 	 * get atoms.
 	 *
-	 * @return the atoms (none returns emptyList)
+	 * @return the atoms (none returns emptyList); a new list which the
+	 * caller may modify
 	 */
 	public List<CMLAtom> getAtoms() {
+		return new ArrayList<CMLAtom>(getAtomView());
+	}
+
+	/**
+	 * get read-only list of atoms.
+	 * if this molecule has no child molecules this is the list cached by
+	 * the atomArray, so repeated calls do not allocate. The list is
+	 * rebuilt only after atoms are added or removed; a returned list is
+	 * never modified afterwards.
+	 *
+	 * @return the atoms (none returns emptyList)
+	 */
+	public List<CMLAtom> getAtomView() {
+		if (!hasChildMolecule()) {
+			CMLAtomArray atomArray = this.getAtomArray();
+			return (atomArray == null) ? Collections.<CMLAtom>emptyList() :
+				atomArray.getAtomView();
+		}
 		List<CMLAtom> atomList = new ArrayList<CMLAtom>();
 		for (CMLMolecule molecule : this.getDescendantsOrMolecule()) {
 			CMLAtomArray atomArray = molecule.getAtomArray();
 			if (atomArray != null) {
-				atomList.addAll(atomArray.getAtoms());
+				atomList.addAll(atomArray.getAtomView());
 			}
 		}
-		/*
-        if (isMoleculeContainer()) {
-            atomList = new ArrayList<CMLAtom>();
-            for (CMLMolecule mol : this.getMoleculeElements()) {
-                atomList.addAll(mol.getAtoms());
-            }
-        } else {
-            CMLAtomArray atomArray = this.getAtomArray();
-            if (atomArray != null) {
-                atomList = atomArray.getAtoms();
-            }
-        }
-		 */
-		// else return a blank list
-		return atomList;
+		return Collections.unmodifiableList(atomList);
+	}
+
+	/** does not allocate, unlike isMoleculeContainer().
+	 */
+	private boolean hasChildMolecule() {
+		for (int i = 0; i < this.getChildCount(); i++) {
+			if (this.getChild(i) instanceof CMLMolecule) {
+				return true;
+			}
+		}
+		return false;
 	}
 
 
@@ -1024,11 +1139,14 @@ public class CMLMolecule
 	 * @return bond or null if not found
 	 */
 	public CMLBond getBond(CMLAtom a1, CMLAtom a2) {
-		String atomHash = CMLBond.atomHash(a1, a2);
-		if (atomHash != null) {
-			for (CMLBond bond : getBonds()) {
-				String bondHash = CMLBond.atomHash(bond);
-				if (bondHash.equals(atomHash)) {
+		if (a1 == null || a2 == null || a1 == a2) {
+			return null;
+		}
+		for (CMLMolecule molecule : this.getDescendantsOrMolecule()) {
+			CMLBondArray bondArray = molecule.getBondArray();
+			if (bondArray != null) {
+				CMLBond bond = bondArray.getBond(a1, a2);
+				if (bond != null) {
 					return bond;
 				}
 			}
@@ -1051,24 +1169,38 @@ public class CMLMolecule
 	 * @return int the Bond count
 	 */
 	public int getBondCount() {
-		List<CMLBond> bonds = getBonds();
-		return bonds.size();
+		return getBondView().size();
 	}
 
 	/**
 	 * gets a typed list containing all the bonds in this molecule
 	 *
-	 * @return a typed list
+	 * @return a typed list which the caller may modify
 	 */
 	public List<CMLBond> getBonds() {
+		return new ArrayList<CMLBond>(getBondView());
+	}
+
+	/**
+	 * get read-only list of bonds.
+	 * cached in the same way as getAtomView().
+	 *
+	 * @return the bonds (none returns emptyList)
+	 */
+	public List<CMLBond> getBondView() {
+		if (!hasChildMolecule()) {
+			CMLBondArray bondArray = this.getBondArray();
+			return (bondArray == null) ? Collections.<CMLBond>emptyList() :
+				bondArray.getBondView();
+		}
 		List<CMLBond> bondList = new ArrayList<CMLBond>();
 		for (CMLMolecule molecule : this.getDescendantsOrMolecule()) {
 			CMLBondArray bondArray = molecule.getBondArray();
 			if (bondArray != null) {
-				bondList.addAll(bondArray.getBonds());
+				bondList.addAll(bondArray.getBondView());
 			}
 		}
-		return bondList;
+		return Collections.unmodifiableList(bondList);
 	}
 
 	/**
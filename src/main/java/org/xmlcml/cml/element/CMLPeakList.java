@@ -120,10 +120,9 @@ public class CMLPeakList extends AbstractPeakList {
      * @return list of peak descendants (not peakGroups)
      */
     public List<CMLPeak> getPeakDescendants() {
-    	Nodes nodes = this.query(".//cml:peak", CMLConstants.CML_XPATH);
     	List<CMLPeak> peaks = new ArrayList<CMLPeak>();
-    	for (int i = 0; i < nodes.size(); i++) {
-    		peaks.add((CMLPeak) nodes.get(i));
+    	for (CMLElement peak : this.getDescendantElements(CMLPeak.TAG)) {
+    		peaks.add((CMLPeak) peak);
     	}
     	return peaks;
     }
@@ -22,7 +22,6 @@ import java.util.List;
 import nu.xom.Element;
 import nu.xom.Elements;
 import nu.xom.Node;
-import nu.xom.Nodes;
 
 import org.apache.log4j.Logger;
 import org.xmlcml.cml.base.CMLConstants;
@@ -423,7 +422,7 @@ public class CMLReaction extends AbstractReaction implements ReactionComponent {
      */
     static List<CMLAtom> getAtoms(ReactionComponent component) {
         List<CMLAtom> atomList = new ArrayList<CMLAtom>();
-        List<CMLElement> elementList = ((CMLElement) component).getElements(".//"+CMLAtom.NS);
+        List<CMLElement> elementList = ((CMLElement) component).getDescendantElements(CMLAtom.TAG);
         for (CMLElement element : elementList) {
             atomList.add((CMLAtom) element);
         }
@@ -438,7 +437,7 @@ public class CMLReaction extends AbstractReaction implements ReactionComponent {
      */
     static List<CMLBond> getBonds(ReactionComponent component) {
         List<CMLBond> bondList = new ArrayList<CMLBond>();
-        List<CMLElement> elementList = ((CMLElement) component).getElements(".//"+CMLBond.NS);
+        List<CMLElement> elementList = ((CMLElement) component).getDescendantElements(CMLBond.TAG);
         for (CMLElement element : elementList) {
             bondList.add((CMLBond) element);
         }
@@ -453,7 +452,7 @@ public class CMLReaction extends AbstractReaction implements ReactionComponent {
      */
     static List<CMLFormula> getFormulas(ReactionComponent component) {
         List<CMLFormula> formulaList = new ArrayList<CMLFormula>();
-        List<CMLElement> elementList = ((CMLElement) component).getElements(".//"+CMLFormula.NS);
+        List<CMLElement> elementList = ((CMLElement) component).getDescendantElements(CMLFormula.TAG);
         for (CMLElement element : elementList) {
             formulaList.add((CMLFormula) element);
         }
@@ -477,7 +476,7 @@ public class CMLReaction extends AbstractReaction implements ReactionComponent {
      */
     static List<CMLMolecule> getMolecules(ReactionComponent component) {
         List<CMLMolecule> moleculeList = new ArrayList<CMLMolecule>();
-        List<CMLElement> elementList = ((CMLElement) component).getElements(".//"+CMLMolecule.NS);
+        List<CMLElement> elementList = ((CMLElement) component).getDescendantElements(CMLMolecule.TAG);
         for (CMLElement element : elementList) {
             moleculeList.add((CMLMolecule) element);
         }
@@ -516,7 +515,7 @@ public class CMLReaction extends AbstractReaction implements ReactionComponent {
      * @return list of descendant products
      */
     public List<CMLReactant> getDescendantReactants() {
-        List<CMLElement> elems = this.getElements(".//"+CMLReactant.NS);
+        List<CMLElement> elems = this.getDescendantElements(CMLReactant.TAG);
         List<CMLReactant> productList = new ArrayList<CMLReactant>();
         for (CMLElement elem : elems) {
             productList.add((CMLReactant) elem);
@@ -530,7 +529,7 @@ public class CMLReaction extends AbstractReaction implements ReactionComponent {
      * @return list of descendant products
      */
     public List<CMLProduct> getDescendantProducts() {
-        List<CMLElement> elems = this.getElements(".//"+CMLProduct.NS);
+        List<CMLElement> elems = this.getDescendantElements(CMLProduct.TAG);
         List<CMLProduct> productList = new ArrayList<CMLProduct>();
         for (CMLElement elem : elems) {
             productList.add((CMLProduct) elem);
@@ -556,18 +555,20 @@ public class CMLReaction extends AbstractReaction implements ReactionComponent {
     	}
     	
     	List<CMLMolecule> moleculeList = new ArrayList<CMLMolecule>();
-    	Nodes nodes = null;
     	if (typeS == null) {
     	} else if(typeS.equals(CMLReaction.Component.ANY)) {
-    		nodes = this.query(".//cml:molecule", CMLConstants.CML_XPATH);
+    		for (CMLElement molecule : this.getDescendantElements(CMLMolecule.TAG)) {
+    			moleculeList.add((CMLMolecule) molecule);
+    		}
     	} else {
-    		String qs = ".//"+typeS+"/cml:molecule";
-    		nodes = this.query(qs, CMLConstants.CML_XPATH);
-    	}
-    	if (nodes != null) {
-			for (int i = 0; i < nodes.size(); i++) {
-				moleculeList.add((CMLMolecule) nodes.get(i));
-			}
+    		// .//typeS/cml:molecule; components do not nest so this is document order
+    		String localName = typeS.substring(typeS.indexOf(S_COLON) + 1);
+    		for (CMLElement component : this.getDescendantElements(localName)) {
+    			Elements molecules = component.getChildCMLElements(CMLMolecule.TAG);
+    			for (int i = 0; i < molecules.size(); i++) {
+    				moleculeList.add((CMLMolecule) molecules.get(i));
+    			}
+    		}
     	}
     	return moleculeList;
     }
@@ -610,7 +611,7 @@ public class CMLReaction extends AbstractReaction implements ReactionComponent {
      * @return list of descendant spectators
      */
     public List<CMLSpectator> getDescendantSpectators() {
-        List<CMLElement> elems = this.getElements(".//"+CMLSpectator.NS);
+        List<CMLElement> elems = this.getDescendantElements(CMLSpectator.TAG);
         List<CMLSpectator> spectatorList = new ArrayList<CMLSpectator>();
         for (CMLElement elem : elems) {
             spectatorList.add((CMLSpectator) elem);
@@ -211,21 +211,14 @@ public class CMLSpectrum extends AbstractSpectrum {
      */
     public static List<CMLPeak> getDescendantPeaks(CMLElement element) {
         List<CMLPeak> peakList = new ArrayList<CMLPeak>();
-        getDescendantPeaks(element, peakList);
-        return peakList;
-    }
-
-    private static void getDescendantPeaks(CMLElement element,
-            List<CMLPeak> peakList) {
-        if (element != null && element instanceof CMLElement) {
-            for (CMLElement child : element.getChildCMLElements()) {
-                if (child instanceof CMLPeak) {
-                    peakList.add((CMLPeak) child);
-                } else {
-                    getDescendantPeaks(child, peakList);
-                }
+        if (element != null) {
+            // peaks inside peaks are not descended into
+            boolean nested = false;
+            for (CMLElement peak : element.getDescendantElements(CMLPeak.TAG, nested)) {
+                peakList.add((CMLPeak) peak);
             }
         }
+        return peakList;
     }
 
 }
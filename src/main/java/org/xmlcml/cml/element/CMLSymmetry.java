@@ -21,9 +21,7 @@ import java.util.List;
 
 import nu.xom.Element;
 import nu.xom.Node;
-import nu.xom.Nodes;
 
-import org.xmlcml.cml.base.CMLConstants;
 import org.xmlcml.cml.base.CMLElement;
 import org.xmlcml.cml.base.CMLElements;
 import org.xmlcml.euclid.Point3;
@@ -289,16 +287,41 @@ public class CMLSymmetry extends AbstractSymmetry {
         return centering;
     }
 
+    /** compiles operators for fast group and multiplicity calculations.
+     * the result is a snapshot of the current transform3 children
+     * 
+     * @return compiled operators
+     * @throws RuntimeException if any operator is not crystallographic
+     */
+    public CompiledSymmetry compile() {
+        return new CompiledSymmetry(this);
+    }
+
+    private CompiledSymmetry compileOrNull() {
+        CompiledSymmetry compiled = null;
+        try {
+            compiled = compile();
+        } catch (RuntimeException e) {
+            // not crystallographic, use transforms directly
+        }
+        return compiled;
+    }
+
     /**
      * do the elements form a group. translation is included but not normalized
      * (see isSpaceGroup()) iterates through all n^2 combinations (a*b and b*a)
-     * and tests them against group members. therefore O(n^3) and expensive for
-     * (say) spacegroups with 192 elements
+     * and tests them against group members. uses CompiledSymmetry so each
+     * test is O(1); non-crystallographic operators fall back to O(n^3)
+     * comparison.
      * 
      * @return true if group
      */
     public boolean isGroup() {
         this.normalizeCrystallographically();
+        CompiledSymmetry compiled = compileOrNull();
+        if (compiled != null) {
+            return compiled.isGroup();
+        }
         CMLElements<CMLTransform3> transform3s = this.getTransform3Elements();
         int i = 0;
         boolean group = false;
@@ -334,6 +357,10 @@ public class CMLSymmetry extends AbstractSymmetry {
      * @return true if group
      */
     public boolean isSpaceGroup() {
+        CompiledSymmetry compiled = compileOrNull();
+        if (compiled != null) {
+            return compiled.isSpaceGroup();
+        }
         CMLSymmetry symmetryCopy = new CMLSymmetry(this);
         symmetryCopy.normalizeCrystallographically();
         CMLElements<CMLTransform3> transform3s = symmetryCopy
@@ -387,14 +414,18 @@ public class CMLSymmetry extends AbstractSymmetry {
 
     /** gets count of operations which transform point into itself. applies all
      * operations to point and count which transform point into itself WITH
-     * crystallographic normalisation
+     * crystallographic normalisation. For many points use
+     * CompiledSymmetry.getSpaceGroupMultiplicities()
      * 
      * @param point
      * @return multiplicity
      */
     public int getSpaceGroupMultiplicity(Point3 point) {
         int operatorCount = 0;
-        if (point != null) {
+        CompiledSymmetry compiled = (point == null) ? null : compileOrNull();
+        if (compiled != null) {
+            operatorCount = compiled.getSpaceGroupMultiplicity(point);
+        } else if (point != null) {
             CMLElements<CMLTransform3> transforms = 
                 this.getTransform3Elements();
             for (CMLTransform3 tr : transforms) {
@@ -415,13 +446,13 @@ public class CMLSymmetry extends AbstractSymmetry {
      */
     //TODO should this really call a RunTimeException?
     public static CMLSymmetry getContainedSymmetry(CMLElement element) throws RuntimeException {
-        Nodes symmetryNodes = element.query(".//"+CMLSymmetry.NS, CMLConstants.CML_XPATH);
-        if (symmetryNodes.size() == 0) {
+        List<CMLElement> symmetryList = element.getDescendantElements(CMLSymmetry.TAG);
+        if (symmetryList.size() == 0) {
             throw new RuntimeException("NO <symmetry> FOUND");
-        } else if (symmetryNodes.size() > 1) {
-            throw new RuntimeException("TOO MANY <symmetry> FOUND "+symmetryNodes.size());
+        } else if (symmetryList.size() > 1) {
+            throw new RuntimeException("TOO MANY <symmetry> FOUND "+symmetryList.size());
         }
-        return (CMLSymmetry) symmetryNodes.get(0);
+        return (CMLSymmetry) symmetryList.get(0);
     }
 
     
@@ -342,6 +342,17 @@ public class CMLTable extends AbstractTable {
         return stringListList;
     }
 
+    /** creates a typed column-oriented view of the table.
+     * each column is parsed once; changes are written back by
+     * ColumnarTable.flush()
+     *
+     * @return view
+     * @throws RuntimeException table type unknown or table irregular
+     */
+    public ColumnarTable createColumnarTable() {
+        return new ColumnarTable(this);
+    }
+
     @SuppressWarnings("unused")
     private void writeArrays(Writer w, List<List<String>> stringListList)
             throws IOException {
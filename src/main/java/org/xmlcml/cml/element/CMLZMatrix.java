@@ -161,6 +161,16 @@ public class CMLZMatrix extends AbstractZMatrix {
         }
     }
 
+    /** compiles against molecule for repeated conversion of internal
+     * coordinates to cartesians.
+     *
+     * @param molecule
+     * @return plan
+     */
+    public ZMatrixPlan compile(CMLMolecule molecule) {
+        return new ZMatrixPlan(this, molecule);
+    }
+
     private void setCoordinates(CMLAngle angle, CMLLength length0, CMLLength length1,
             CMLMolecule molecule) {
         int i0 = -1;
@@ -0,0 +1,541 @@
+/**
+ *    Copyright 2011 Peter Murray-Rust et. al.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package org.xmlcml.cml.element;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.xmlcml.cml.base.CMLConstants;
+import org.xmlcml.cml.base.CMLElements;
+import org.xmlcml.cml.base.CMLType;
+import org.xmlcml.cml.base.CMLUtil;
+import org.xmlcml.cml.element.CMLTable.TableType;
+
+/**
+ * typed column-oriented view of a table.
+ * <p>
+ * Each column of a columnBased, contentBased or rowBased table is parsed
+ * once into a primitive array: xsd:double columns into double[],
+ * xsd:integer into int[] and all others into int[] codes into a dictionary
+ * of distinct strings. Cells are then read by row and column without
+ * further parsing or creating strings.
+ * </p>
+ * <p>
+ * Changes through the setters are held in the view and only written to
+ * the table by flush(). The view is a snapshot and is not updated if the
+ * table is changed directly.
+ * </p>
+ * @author pm286
+ */
+public class ColumnarTable implements CMLConstants {
+
+    private CMLTable table;
+    private TableType tableType;
+    private int rows;
+    /** all columns of the table, shared by projections */
+    private Column[] allColumns;
+    private Column[] columns;
+
+    /** parses table.
+     * @param table
+     * @throws RuntimeException if table type cannot be determined or
+     *     table is not rectangular
+     */
+    public ColumnarTable(CMLTable table) {
+        this.table = table;
+        tableType = table.getTableTypeEnum();
+        if (tableType == null) {
+            for (TableType t : TableType.values()) {
+                if (table.check(t)) {
+                    tableType = t;
+                    break;
+                }
+            }
+        }
+        if (TableType.COLUMN_BASED.equals(tableType)) {
+            readArrayList();
+        } else if (TableType.CONTENT_BASED.equals(tableType)) {
+            readContent();
+        } else if (TableType.ROW_BASED.equals(tableType)) {
+            readRows();
+        } else {
+            throw new RuntimeException("cannot determine table type");
+        }
+        columns = allColumns;
+    }
+
+    private ColumnarTable(ColumnarTable parent, Column[] columns) {
+        this.table = parent.table;
+        this.tableType = parent.tableType;
+        this.rows = parent.rows;
+        this.allColumns = parent.allColumns;
+        this.columns = columns;
+    }
+
+    private void readArrayList() {
+        CMLArrayList arrayList = (CMLArrayList) table.getFirstCMLChild(CMLArrayList.TAG);
+        CMLElements<CMLArray> arrays = (arrayList == null) ? null : arrayList.getArrayElements();
+        int n = (arrays == null) ? 0 : arrays.size();
+        allColumns = new Column[n];
+        rows = (n == 0) ? 0 : -1;
+        for (int j = 0; j < n; j++) {
+            CMLArray array = arrays.get(j);
+            Column column = new Column(array.getDataType(), array.getDictRef(), array.getTitle());
+            column.array = array;
+            if (XSD_DOUBLE.equals(column.dataType)) {
+                column.doubles = array.getDoubles();
+            } else if (XSD_INTEGER.equals(column.dataType)) {
+                column.ints = array.getInts();
+            } else {
+                String[] strings = array.getTokens();
+                column.initCodes(strings.length);
+                for (int i = 0; i < strings.length; i++) {
+                    column.codes[i] = column.encode(strings[i]);
+                }
+            }
+            allColumns[j] = column;
+            checkRows(column.size());
+        }
+    }
+
+    private void checkRows(int nr) {
+        if (rows == -1) {
+            rows = nr;
+        } else if (rows != nr) {
+            throw new RuntimeException("inconsistent row lengths: " + rows + S_SLASH + nr);
+        }
+    }
+
+    private void readHeader(int nrows) {
+        CMLTableHeader header = (CMLTableHeader) table.getFirstCMLChild(CMLTableHeader.TAG);
+        CMLElements<CMLTableHeaderCell> cells = header.getTableHeaderCellElements();
+        allColumns = new Column[cells.size()];
+        for (int j = 0; j < allColumns.length; j++) {
+            CMLTableHeaderCell cell = cells.get(j);
+            Column column = new Column(CMLType.getNormalizedValue(cell.getDataType()),
+                cell.getDictRef(), cell.getTitle());
+            if (XSD_DOUBLE.equals(column.dataType)) {
+                column.doubles = new double[nrows];
+            } else if (XSD_INTEGER.equals(column.dataType)) {
+                column.ints = new int[nrows];
+            } else {
+                column.initCodes(nrows);
+            }
+            allColumns[j] = column;
+        }
+        rows = nrows;
+    }
+
+    private void readContent() {
+        CMLTableContent content = (CMLTableContent) table.getFirstCMLChild(CMLTableContent.TAG);
+        CMLTableHeader header = (CMLTableHeader) table.getFirstCMLChild(CMLTableHeader.TAG);
+        int ncols = header.getColumnCount();
+        String[] strings = content.getStrings();
+        if (strings.length == 1 && strings[0].length() == 0) {
+            strings = new String[0];
+        }
+        if (ncols == 0 || strings.length % ncols != 0) {
+            throw new RuntimeException("non-rectangular table: " + strings.length
+                    + S_SLASH + ncols);
+        }
+        readHeader(strings.length / ncols);
+        int k = 0;
+        for (int i = 0; i < rows; i++) {
+            for (int j = 0; j < ncols; j++) {
+                allColumns[j].parse(i, strings[k++]);
+            }
+        }
+    }
+
+    private void readRows() {
+        CMLTableRowList rowList = (CMLTableRowList) table.getFirstCMLChild(CMLTableRowList.TAG);
+        CMLElements<CMLTableRow> tableRows = rowList.getTableRowElements();
+        readHeader(tableRows.size());
+        for (int i = 0; i < rows; i++) {
+            CMLElements<CMLTableCell> cells = tableRows.get(i).getTableCellElements();
+            if (cells.size() != allColumns.length) {
+                throw new RuntimeException("inconsistent column length in rows: "
+                        + cells.size() + S_SLASH + allColumns.length);
+            }
+            for (int j = 0; j < allColumns.length; j++) {
+                allColumns[j].parse(i, cells.get(j).getValue());
+            }
+        }
+    }
+
+    /** type of underlying table.
+     * @return type
+     */
+    public TableType getTableType() {
+        return tableType;
+    }
+
+    /** number of rows.
+     * @return rows
+     */
+    public int getRowCount() {
+        return rows;
+    }
+
+    /** number of columns in this view.
+     * @return columns
+     */
+    public int getColumnCount() {
+        return columns.length;
+    }
+
+    /** normalized dataType of column.
+     * @param col
+     * @return XSD_DOUBLE, XSD_INTEGER or other type held as strings
+     */
+    public String getDataType(int col) {
+        return columns[col].dataType;
+    }
+
+    /** dictRef of column.
+     * @param col
+     * @return dictRef or null
+     */
+    public String getDictRef(int col) {
+        return columns[col].dictRef;
+    }
+
+    /** title of column.
+     * @param col
+     * @return title or null
+     */
+    public String getTitle(int col) {
+        return columns[col].title;
+    }
+
+    /** index of column with given dictRef or title.
+     * @param name dictRef or title
+     * @return index or -1
+     */
+    public int indexOf(String name) {
+        for (int j = 0; j < columns.length; j++) {
+            if (name.equals(columns[j].dictRef) || name.equals(columns[j].title)) {
+                return j;
+            }
+        }
+        return -1;
+    }
+
+    /** view of selected columns.
+     * the view shares values with this so changes made through either
+     * are visible in both and written by flush() on either.
+     * @param cols indexes of columns in this view
+     * @return projection
+     */
+    public ColumnarTable project(int[] cols) {
+        Column[] projected = new Column[cols.length];
+        for (int j = 0; j < cols.length; j++) {
+            projected[j] = columns[cols[j]];
+        }
+        return new ColumnarTable(this, projected);
+    }
+
+    /** values of double column.
+     * @param col
+     * @return values; not a copy, do not alter
+     * @throws RuntimeException if column is not xsd:double
+     */
+    public double[] getDoubleColumn(int col) {
+        return columns[col].checkDoubles();
+    }
+
+    /** values of integer column.
+     * @param col
+     * @return values; not a copy, do not alter
+     * @throws RuntimeException if column is not xsd:integer
+     */
+    public int[] getIntColumn(int col) {
+        return columns[col].checkInts();
+    }
+
+    /** dictionary codes of string column.
+     * @param col
+     * @return codes indexing getDictionary(col); not a copy, do not alter
+     * @throws RuntimeException if column is numeric
+     */
+    public int[] getCodeColumn(int col) {
+        return columns[col].checkCodes();
+    }
+
+    /** distinct strings of string column.
+     * @param col
+     * @return read-only strings in order of first occurrence
+     * @throws RuntimeException if column is numeric
+     */
+    public List<String> getDictionary(int col) {
+        columns[col].checkCodes();
+        return Collections.unmodifiableList(columns[col].dictionary);
+    }
+
+    /** code of string in dictionary of column.
+     * @param col
+     * @param s
+     * @return code or -1 if string does not occur
+     */
+    public int getCode(int col, String s) {
+        Integer code = columns[col].checkCodeMap().get(s);
+        return (code == null) ? -1 : code.intValue();
+    }
+
+    /** cell of double column.
+     * @param row
+     * @param col
+     * @return value
+     */
+    public double getDouble(int row, int col) {
+        return columns[col].checkDoubles()[row];
+    }
+
+    /** cell of integer column.
+     * @param row
+     * @param col
+     * @return value
+     */
+    public int getInt(int row, int col) {
+        return columns[col].checkInts()[row];
+    }
+
+    /** code of cell of string column.
+     * @param row
+     * @param col
+     * @return index into getDictionary(col)
+     */
+    public int getCode(int row, int col) {
+        return columns[col].checkCodes()[row];
+    }
+
+    /** cell as string.
+     * strings are taken from the dictionary; numbers are formatted.
+     * @param row
+     * @param col
+     * @return value
+     */
+    public String getString(int row, int col) {
+        return columns[col].format(row);
+    }
+
+    /** sets cell of double column.
+     * @param row
+     * @param col
+     * @param d
+     */
+    public void setDouble(int row, int col, double d) {
+        columns[col].checkDoubles()[row] = d;
+        columns[col].dirty = true;
+    }
+
+    /** sets cell of integer column.
+     * @param row
+     * @param col
+     * @param i
+     */
+    public void setInt(int row, int col, int i) {
+        columns[col].checkInts()[row] = i;
+        columns[col].dirty = true;
+    }
+
+    /** sets cell of string column.
+     * @param row
+     * @param col
+     * @param s
+     */
+    public void setString(int row, int col, String s) {
+        Column column = columns[col];
+        column.checkCodes()[row] = column.encode(s);
+        column.dirty = true;
+    }
+
+    /** whether any column has changes not written to the table.
+     * @return true if flush() would alter the table
+     */
+    public boolean isDirty() {
+        for (Column column : allColumns) {
+            if (column.dirty) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** writes changed columns back to the table.
+     */
+    public void flush() {
+        if (!isDirty()) {
+            return;
+        }
+        if (TableType.COLUMN_BASED.equals(tableType)) {
+            for (Column column : allColumns) {
+                if (column.dirty) {
+                    column.writeArray();
+                }
+            }
+        } else if (TableType.CONTENT_BASED.equals(tableType)) {
+            writeContent();
+        } else {
+            writeRows();
+        }
+        for (Column column : allColumns) {
+            column.dirty = false;
+        }
+    }
+
+    private void writeContent() {
+        CMLTableContent content = (CMLTableContent) table.getFirstCMLChild(CMLTableContent.TAG);
+        String delimiter = (content.getDelimiterAttribute() == null) ? null : content.getDelimiter();
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < rows; i++) {
+            for (int j = 0; j < allColumns.length; j++) {
+                if (delimiter != null) {
+                    sb.append(delimiter);
+                } else if (j > 0) {
+                    sb.append(S_SPACE);
+                } else if (i > 0) {
+                    sb.append(S_NEWLINE);
+                }
+                sb.append(allColumns[j].format(i));
+            }
+        }
+        if (delimiter != null && rows > 0) {
+            sb.append(delimiter);
+        }
+        content.setXMLContent(sb.toString());
+    }
+
+    private void writeRows() {
+        CMLTableRowList rowList = (CMLTableRowList) table.getFirstCMLChild(CMLTableRowList.TAG);
+        CMLElements<CMLTableRow> tableRows = rowList.getTableRowElements();
+        for (int i = 0; i < rows; i++) {
+            CMLElements<CMLTableCell> cells = tableRows.get(i).getTableCellElements();
+            for (int j = 0; j < allColumns.length; j++) {
+                if (allColumns[j].dirty) {
+                    CMLUtil.setXMLContent(cells.get(j), allColumns[j].format(i));
+                }
+            }
+        }
+    }
+
+    private static final class Column {
+        private final String dataType;
+        private final String dictRef;
+        private final String title;
+        private CMLArray array;
+        private double[] doubles;
+        private int[] ints;
+        private int[] codes;
+        private List<String> dictionary;
+        private Map<String, Integer> codeMap;
+        private boolean dirty;
+
+        Column(String dataType, String dictRef, String title) {
+            this.dataType = dataType;
+            this.dictRef = dictRef;
+            this.title = title;
+        }
+
+        void initCodes(int size) {
+            codes = new int[size];
+            dictionary = new ArrayList<String>();
+            codeMap = new HashMap<String, Integer>();
+        }
+
+        int size() {
+            return (doubles != null) ? doubles.length :
+                (ints != null) ? ints.length : codes.length;
+        }
+
+        int encode(String s) {
+            Integer code = codeMap.get(s);
+            if (code == null) {
+                code = dictionary.size();
+                dictionary.add(s);
+                codeMap.put(s, code);
+            }
+            return code.intValue();
+        }
+
+        void parse(int row, String s) {
+            if (doubles != null) {
+                try {
+                    doubles[row] = Double.parseDouble(s.trim());
+                } catch (NumberFormatException e) {
+                    throw new RuntimeException("bad double in table: "+s, e);
+                }
+            } else if (ints != null) {
+                try {
+                    ints[row] = Integer.parseInt(s.trim());
+                } catch (NumberFormatException e) {
+                    throw new RuntimeException("bad integer in table: "+s, e);
+                }
+            } else {
+                codes[row] = encode(s);
+            }
+        }
+
+        String format(int row) {
+            return (doubles != null) ? S_EMPTY + doubles[row] :
+                (ints != null) ? S_EMPTY + ints[row] : dictionary.get(codes[row]);
+        }
+
+        double[] checkDoubles() {
+            if (doubles == null) {
+                throw new RuntimeException("column is not "+XSD_DOUBLE+": "+dataType);
+            }
+            return doubles;
+        }
+
+        int[] checkInts() {
+            if (ints == null) {
+                throw new RuntimeException("column is not "+XSD_INTEGER+": "+dataType);
+            }
+            return ints;
+        }
+
+        int[] checkCodes() {
+            if (codes == null) {
+                throw new RuntimeException("column is numeric: "+dataType);
+            }
+            return codes;
+        }
+
+        Map<String, Integer> checkCodeMap() {
+            checkCodes();
+            return codeMap;
+        }
+
+        void writeArray() {
+            if (doubles != null) {
+                array.setArray(doubles);
+            } else if (ints != null) {
+                array.setArray(ints);
+            } else {
+                String[] strings = new String[codes.length];
+                for (int i = 0; i < codes.length; i++) {
+                    strings[i] = dictionary.get(codes[i]);
+                }
+                array.setTokens(strings, dataType);
+            }
+        }
+    }
+}
@@ -0,0 +1,327 @@
+/**
+ *    Copyright 2011 Peter Murray-Rust et. al.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package org.xmlcml.cml.element;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.xmlcml.euclid.Point3;
+
+/**
+ * crystallographic operators compiled to integer form.
+ * <p>
+ * Each operator is held as an integer 3x3 rotation matrix and a translation
+ * in units of 1/24 (which covers halves, thirds, quarters, sixths and
+ * eighths) so comparison is exact. Operators are hashed both as given and
+ * with translations reduced to the range [0, 1), so membership is O(1)
+ * and group closure O(n^2). Operators are applied to fractional
+ * coordinates.
+ * </p>
+ * <p>
+ * The compiled form is a snapshot and is not updated when the symmetry
+ * changes. Operators which are not crystallographic (non-integer rotation
+ * or translation not a multiple of 1/24) cannot be compiled.
+ * </p>
+ * @author pm286
+ */
+public class CompiledSymmetry {
+
+    /** translation denominator */
+    public final static int DENOMINATOR = 24;
+    /** tolerance when converting to integers */
+    private final static double QUANTUM_EPS = 0.000001;
+    /** default tolerance for fractional coordinate comparison as in
+     * Point3.equalsCrystallographically() */
+    public final static double FRACT_EPS = 0.001;
+
+    /** rotation (9 elements, rows) */
+    private int[][] rot;
+    /** translation in units of 1/DENOMINATOR */
+    private int[][] trans;
+    private Map<OperatorKey, Integer> rawIndex;
+    private Map<OperatorKey, Integer> reducedIndex;
+
+    /** compiles operators of symmetry.
+     * @param symmetry
+     * @throws RuntimeException if any operator is not crystallographic
+     */
+    public CompiledSymmetry(CMLSymmetry symmetry) {
+        this(symmetry.getTransform3Elements().getList());
+    }
+
+    /** compiles operators.
+     * @param transformList
+     * @throws RuntimeException if any operator is not crystallographic
+     */
+    public CompiledSymmetry(List<CMLTransform3> transformList) {
+        int n = transformList.size();
+        rot = new int[n][];
+        trans = new int[n][];
+        rawIndex = new HashMap<OperatorKey, Integer>(2 * n);
+        reducedIndex = new HashMap<OperatorKey, Integer>(2 * n);
+        for (int i = 0; i < n; i++) {
+            double[] dd = transformList.get(i).getMatrixAsArray();
+            rot[i] = new int[9];
+            trans[i] = new int[3];
+            for (int row = 0; row < 3; row++) {
+                for (int col = 0; col < 3; col++) {
+                    rot[i][3 * row + col] = quantize(dd[4 * row + col], 1, dd);
+                }
+                trans[i][row] = quantize(dd[4 * row + 3], DENOMINATOR, dd);
+            }
+            OperatorKey raw = new OperatorKey(rot[i], trans[i]);
+            if (!rawIndex.containsKey(raw)) {
+                rawIndex.put(raw, i);
+            }
+            OperatorKey reduced = new OperatorKey(rot[i], reduce(trans[i]));
+            if (!reducedIndex.containsKey(reduced)) {
+                reducedIndex.put(reduced, i);
+            }
+        }
+    }
+
+    private static int quantize(double d, int denominator, double[] dd) {
+        double scaled = d * denominator;
+        long l = Math.round(scaled);
+        if (Math.abs(scaled - l) > QUANTUM_EPS * denominator) {
+            throw new RuntimeException("not a crystallographic operator: "+Arrays.toString(dd));
+        }
+        return (int) l;
+    }
+
+    private static int[] reduce(int[] t) {
+        int[] tt = new int[3];
+        for (int i = 0; i < 3; i++) {
+            tt[i] = ((t[i] % DENOMINATOR) + DENOMINATOR) % DENOMINATOR;
+        }
+        return tt;
+    }
+
+    /** number of operators.
+     * @return size
+     */
+    public int size() {
+        return rot.length;
+    }
+
+    /** index of operator.
+     * @param transform
+     * @param reduceTranslation if true compare translations modulo 1
+     * @return index of first equal operator or -1 (also if transform
+     *      is not crystallographic)
+     */
+    public int indexOf(CMLTransform3 transform, boolean reduceTranslation) {
+        CompiledSymmetry single = null;
+        try {
+            single = new CompiledSymmetry(Arrays.asList(new CMLTransform3[]{transform}));
+        } catch (RuntimeException e) {
+            return -1;
+        }
+        int[] t = (reduceTranslation) ? reduce(single.trans[0]) : single.trans[0];
+        return indexOf(single.rot[0], t, reduceTranslation);
+    }
+
+    private int indexOf(int[] r, int[] t, boolean reduceTranslation) {
+        Integer index = (reduceTranslation) ?
+            reducedIndex.get(new OperatorKey(r, reduce(t))) :
+            rawIndex.get(new OperatorKey(r, t));
+        return (index == null) ? -1 : index.intValue();
+    }
+
+    /** are all products of operators also operators.
+     * translations are compared exactly, see CMLSymmetry.isGroup()
+     * @return true if group
+     */
+    public boolean isGroup() {
+        return isClosed(false);
+    }
+
+    /** are all products of operators also operators modulo lattice translations.
+     * see CMLSymmetry.isSpaceGroup()
+     * @return true if group
+     */
+    public boolean isSpaceGroup() {
+        return isClosed(true);
+    }
+
+    private boolean isClosed(boolean reduceTranslation) {
+        int n = rot.length;
+        if (n == 0) {
+            return false;
+        }
+        int[] r = new int[9];
+        int[] t = new int[3];
+        for (int i = 0; i < n; i++) {
+            for (int j = 0; j < n; j++) {
+                multiply(i, j, r, t);
+                if (indexOf(r, t, reduceTranslation) == -1) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /** product op[i] * op[j], i.e. op[j] applied first as CMLTransform3.concatenate() */
+    private void multiply(int i, int j, int[] r, int[] t) {
+        int[] ri = rot[i];
+        int[] rj = rot[j];
+        int[] tj = trans[j];
+        for (int row = 0; row < 3; row++) {
+            int r0 = ri[3 * row];
+            int r1 = ri[3 * row + 1];
+            int r2 = ri[3 * row + 2];
+            for (int col = 0; col < 3; col++) {
+                r[3 * row + col] = r0 * rj[col] + r1 * rj[3 + col] + r2 * rj[6 + col];
+            }
+            t[row] = r0 * tj[0] + r1 * tj[1] + r2 * tj[2] + trans[i][row];
+        }
+    }
+
+    /** applies all operators to fractional coordinates.
+     * @param xyz coordinates as x0, y0, z0, x1, y1, z1...
+     * @return size() * xyz.length coordinates; operator k applied to point p
+     *     is at 3 * (k * npoints + p)
+     */
+    public double[] transform(double[] xyz) {
+        double[] result = new double[rot.length * xyz.length];
+        transform(xyz, 0, rot.length, result);
+        return result;
+    }
+
+    /** applies a range of operators to fractional coordinates.
+     * images are written where transform(xyz) puts them, so disjoint
+     * ranges can be applied from different threads into one result.
+     * @param xyz coordinates as x0, y0, z0, x1, y1, z1...
+     * @param from first operator
+     * @param to operator after last
+     * @param result of length size() * xyz.length
+     */
+    public void transform(double[] xyz, int from, int to, double[] result) {
+        if (xyz.length % 3 != 0) {
+            throw new RuntimeException("coordinate array length must be a multiple of 3: "+xyz.length);
+        }
+        int npoints = xyz.length / 3;
+        int k = from * xyz.length;
+        for (int op = from; op < to; op++) {
+            int[] r = rot[op];
+            double t0 = (double) trans[op][0] / DENOMINATOR;
+            double t1 = (double) trans[op][1] / DENOMINATOR;
+            double t2 = (double) trans[op][2] / DENOMINATOR;
+            for (int p = 0; p < npoints; p++) {
+                double x = xyz[3 * p];
+                double y = xyz[3 * p + 1];
+                double z = xyz[3 * p + 2];
+                result[k++] = r[0] * x + r[1] * y + r[2] * z + t0;
+                result[k++] = r[3] * x + r[4] * y + r[5] * z + t1;
+                result[k++] = r[6] * x + r[7] * y + r[8] * z + t2;
+            }
+        }
+    }
+
+    /** count of operators mapping each point onto itself or a lattice
+     * translation of itself.
+     * @param xyz fractional coordinates as x0, y0, z0, x1, y1, z1...
+     * @param eps tolerance in fractional coordinates
+     * @return multiplicity for each point
+     */
+    public int[] getSpaceGroupMultiplicities(double[] xyz, double eps) {
+        return getMultiplicities(xyz, eps, true);
+    }
+
+    /** count of operators mapping point onto itself or a lattice
+     * translation of itself.
+     * @param point fractional
+     * @return multiplicity (0 if point is null)
+     */
+    public int getSpaceGroupMultiplicity(Point3 point) {
+        return (point == null) ? 0 :
+            getMultiplicities(point.getArray(), FRACT_EPS, true)[0];
+    }
+
+    /** count of operators mapping point onto itself without lattice
+     * translation.
+     * @param point
+     * @param eps
+     * @return multiplicity
+     */
+    public int getPointGroupMultiplicity(Point3 point, double eps) {
+        return getMultiplicities(point.getArray(), eps, false)[0];
+    }
+
+    private int[] getMultiplicities(double[] xyz, double eps, boolean periodic) {
+        double[] transformed = transform(xyz);
+        int npoints = xyz.length / 3;
+        int[] count = new int[npoints];
+        int k = 0;
+        for (int op = 0; op < rot.length; op++) {
+            for (int p = 0; p < npoints; p++) {
+                boolean equal = true;
+                for (int i = 0; i < 3; i++) {
+                    double d = transformed[k++] - xyz[3 * p + i];
+                    if (periodic) {
+                        d -= Math.rint(d);
+                    }
+                    if (Math.abs(d) > eps) {
+                        equal = false;
+                    }
+                }
+                if (equal) {
+                    count[p]++;
+                }
+            }
+        }
+        return count;
+    }
+
+    /** rotation of operator.
+     * @param i
+     * @return copy of 9 elements by rows
+     */
+    public int[] getRotation(int i) {
+        return rot[i].clone();
+    }
+
+    /** translation of operator in units of 1/DENOMINATOR.
+     * @param i
+     * @return copy of 3 elements
+     */
+    public int[] getTranslation(int i) {
+        return trans[i].clone();
+    }
+
+    private static final class OperatorKey {
+        private final int[] value = new int[12];
+        private final int hash;
+
+        OperatorKey(int[] r, int[] t) {
+            System.arraycopy(r, 0, value, 0, 9);
+            System.arraycopy(t, 0, value, 9, 3);
+            hash = Arrays.hashCode(value);
+        }
+
+        public int hashCode() {
+            return hash;
+        }
+
+        public boolean equals(Object o) {
+            return (o instanceof OperatorKey) && Arrays.equals(value, ((OperatorKey) o).value);
+        }
+    }
+}
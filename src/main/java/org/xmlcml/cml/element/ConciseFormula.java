@@ -0,0 +1,480 @@
+/**
+ *    Copyright 2011 Peter Murray-Rust et. al.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package org.xmlcml.cml.element;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+import org.xmlcml.cml.base.CMLConstants;
+import org.xmlcml.cml.base.LRUCache;
+import org.xmlcml.euclid.Util;
+import org.xmlcml.molutil.ChemicalElement;
+import org.xmlcml.molutil.ChemicalElement.AS;
+
+/**
+ * immutable formula without XOM.
+ * <p>
+ * Holds element types (sorted C, H, then alphabetically), counts and formal
+ * charge. Two formulae are equal if their concise strings are equal, as in
+ * CMLFormula.equalsConcise(). Intended for deduplicating and aggregating
+ * large numbers of formulae; use toCMLFormula() when an element is needed.
+ * </p>
+ * <p>
+ * parse() reads concise ("C 2 H 3 O 2 -1") and the compact forms accepted
+ * by CMLFormula.createFormula(s, Type.ANY) ("C2H3O2-", "C2 H3 O2 -1").
+ * Moiety and bracketed forms are not supported.
+ * </p>
+ * @author pm286
+ */
+public final class ConciseFormula {
+
+    private final static String[] NO_TYPES = new String[0];
+    private final static double[] NO_COUNTS = new double[0];
+    private final static double EPS = 0.000001;
+
+    /** the empty formula */
+    public final static ConciseFormula EMPTY = new ConciseFormula(NO_TYPES, NO_COUNTS, 0);
+
+    private final String[] elementTypes;
+    private final double[] counts;
+    private final int formalCharge;
+    private final String concise;
+    private double mass = Double.NaN;
+
+    private ConciseFormula(FormulaCounter counter, int formalCharge) {
+        this(counter.getElementTypes(), counter.getCounts(), formalCharge);
+    }
+
+    /** sorts copies of types and counts */
+    private ConciseFormula(String[] types, double[] cc, int formalCharge) {
+        Integer[] index = new Integer[types.length];
+        for (int i = 0; i < index.length; i++) {
+            index[i] = i;
+        }
+        final String[] tt = types;
+        Arrays.sort(index, new Comparator<Integer>() {
+            public int compare(Integer i0, Integer i1) {
+                return compareElements(tt[i0], tt[i1]);
+            }
+        });
+        this.elementTypes = new String[types.length];
+        this.counts = new double[types.length];
+        for (int i = 0; i < index.length; i++) {
+            elementTypes[i] = types[index[i]];
+            counts[i] = cc[index[i]];
+        }
+        this.formalCharge = formalCharge;
+        this.concise = createConcise();
+    }
+
+    /** creates formula from elements and counts.
+     * duplicate elements are summed
+     * @param elementTypes
+     * @param counts same length as elementTypes
+     * @param formalCharge
+     * @return formula
+     */
+    public static ConciseFormula create(String[] elementTypes, double[] counts, int formalCharge) {
+        FormulaCounter counter = new FormulaCounter();
+        counter.add(elementTypes, counts);
+        return new ConciseFormula(counter, formalCharge);
+    }
+
+    /** creates formula from counter.
+     * @param counter
+     * @param formalCharge
+     * @return formula
+     */
+    public static ConciseFormula create(FormulaCounter counter, int formalCharge) {
+        return new ConciseFormula(counter, formalCharge);
+    }
+
+    /** creates formula from CMLFormula.
+     * uses atomArray if present, else concise; sub-formulae are aggregated.
+     * counts and charge are multiplied by the count attribute.
+     * @param formula
+     * @return formula
+     */
+    public static ConciseFormula create(CMLFormula formula) {
+        if (formula.getFormulaElements().size() > 0) {
+            formula = formula.getAggregateFormula();
+        }
+        double multiplier = (formula.getCountAttribute() == null) ? 1.0 : formula.getCount();
+        int charge = (formula.getFormalChargeAttribute() == null) ? 0 : formula.getFormalCharge();
+        ConciseFormula cf = null;
+        if (formula.getElementTypes() != null) {
+            FormulaCounter counter = new FormulaCounter();
+            counter.add(formula.getElementTypes(), formula.getCounts());
+            cf = new ConciseFormula(counter, charge);
+        } else if (formula.getConcise() != null) {
+            cf = parse(formula.getConcise(), true);
+        } else {
+            cf = new ConciseFormula(NO_TYPES, NO_COUNTS, charge);
+        }
+        return (multiplier == 1.0) ? cf : cf.multiplyBy(multiplier);
+    }
+
+    /** parses concise or compact formula.
+     * @param s
+     * @return formula
+     * @throws RuntimeException unknown element or bad syntax
+     */
+    public static ConciseFormula parse(String s) {
+        return parse(s, false);
+    }
+
+    /** parses concise or compact formula.
+     * @param s
+     * @param allowNegativeCounts if true "C-1" is read as count -1 not charge -1
+     * @return formula
+     * @throws RuntimeException unknown element or bad syntax
+     */
+    public static ConciseFormula parse(String s, boolean allowNegativeCounts) {
+        FormulaCounter counter = new FormulaCounter();
+        int charge = 0;
+        int l = s.length();
+        int i = skipWhite(s, 0, l);
+        while (i < l) {
+            char c = s.charAt(i);
+            if (Character.isUpperCase(c)) {
+                int ii = i + 1;
+                if (ii < l && Character.isLowerCase(s.charAt(ii))) {
+                    ii++;
+                }
+                String elementType = s.substring(i, ii);
+                if (ChemicalElement.getChemicalElement(elementType) == null) {
+                    throw new RuntimeException("Bad element (" + elementType + ") in: " + s);
+                }
+                i = skipWhite(s, ii, l);
+                int start = i;
+                if (allowNegativeCounts && i < l - 1 && s.charAt(i) == CMLConstants.C_MINUS &&
+                        isCountChar(s.charAt(i + 1))) {
+                    i++;
+                }
+                while (i < l && isCountChar(s.charAt(i))) {
+                    i++;
+                }
+                double count = 1.0;
+                if (i > start) {
+                    try {
+                        count = Double.parseDouble(s.substring(start, i));
+                    } catch (NumberFormatException nfe) {
+                        throw new RuntimeException("Bad element count (" +
+                                s.substring(start, i) + ") in: " + s);
+                    }
+                }
+                counter.add(elementType, count);
+                i = skipWhite(s, i, l);
+            } else {
+                charge = parseCharge(s, i, l);
+                break;
+            }
+        }
+        return new ConciseFormula(counter, charge);
+    }
+
+    private static boolean isCountChar(char c) {
+        return c == CMLConstants.C_PERIOD || (c >= '0' && c <= '9');
+    }
+
+    private static int skipWhite(String s, int i, int l) {
+        while (i < l && Character.isWhitespace(s.charAt(i))) {
+            i++;
+        }
+        return i;
+    }
+
+    /** charge is [+|-]digits, +, - or digits- */
+    private static int parseCharge(String s, int i, int l) {
+        String ss = s.substring(i, l).trim();
+        int charge = 0;
+        try {
+            if (ss.equals(CMLConstants.S_PLUS)) {
+                charge = 1;
+            } else if (ss.equals(CMLConstants.S_MINUS)) {
+                charge = -1;
+            } else if (ss.startsWith(CMLConstants.S_PLUS)) {
+                charge = Integer.parseInt(ss.substring(1));
+            } else if (ss.endsWith(CMLConstants.S_MINUS)) {
+                charge = -Integer.parseInt(ss.substring(0, ss.length() - 1));
+            } else if (ss.endsWith(CMLConstants.S_PLUS)) {
+                charge = Integer.parseInt(ss.substring(0, ss.length() - 1));
+            } else {
+                charge = Integer.parseInt(ss);
+            }
+        } catch (NumberFormatException nfe) {
+            throw new RuntimeException("Bad charge (" + ss + ") in: " + s);
+        }
+        return charge;
+    }
+
+    /** C first, H second, then alphabetic */
+    private static int compareElements(String e0, String e1) {
+        int r0 = rank(e0);
+        int r1 = rank(e1);
+        return (r0 != r1) ? r0 - r1 : e0.compareTo(e1);
+    }
+
+    private static int rank(String e) {
+        return AS.C.value.equals(e) ? 0 : (AS.H.value.equals(e) ? 1 : 2);
+    }
+
+    private String createConcise() {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < elementTypes.length; i++) {
+            if (i > 0) {
+                sb.append(CMLConstants.S_SPACE);
+            }
+            sb.append(elementTypes[i]);
+            sb.append(CMLConstants.S_SPACE);
+            sb.append(Util.trim(Util.format(counts[i], 4)));
+        }
+        if (formalCharge != 0) {
+            if (sb.length() > 0) {
+                sb.append(CMLConstants.S_SPACE);
+            }
+            sb.append(formalCharge);
+        }
+        return sb.toString();
+    }
+
+    /** concise string as in CMLFormula.getConcise().
+     * @return concise (empty string for empty formula)
+     */
+    public String getConcise() {
+        return concise;
+    }
+
+    /** element types sorted C, H, then alphabetically.
+     * @return copy
+     */
+    public String[] getElementTypes() {
+        return elementTypes.clone();
+    }
+
+    /** counts aligned with getElementTypes().
+     * @return copy
+     */
+    public double[] getCounts() {
+        return counts.clone();
+    }
+
+    /** count for element.
+     * @param elementType
+     * @return count or 0.0 if absent
+     */
+    public double getCount(String elementType) {
+        for (int i = 0; i < elementTypes.length; i++) {
+            if (elementTypes[i].equals(elementType)) {
+                return counts[i];
+            }
+        }
+        return 0.0;
+    }
+
+    /** formal charge.
+     * @return charge
+     */
+    public int getFormalCharge() {
+        return formalCharge;
+    }
+
+    /** sum of counts.
+     * @return count
+     */
+    public double getTotalAtomCount() {
+        double total = 0.0;
+        for (double count : counts) {
+            total += count;
+        }
+        return total;
+    }
+
+    /** true if no elements.
+     * @return is empty
+     */
+    public boolean isEmpty() {
+        return elementTypes.length == 0;
+    }
+
+    /** molecular mass from atomic weights.
+     * unknown elements count as zero
+     * @return mass
+     */
+    public double getCalculatedMolecularMass() {
+        double m = mass;
+        if (Double.isNaN(m)) {
+            m = 0.0;
+            for (int i = 0; i < elementTypes.length; i++) {
+                ChemicalElement el = ChemicalElement.getChemicalElement(elementTypes[i]);
+                m += (el == null) ? 0.0 : el.getAtomicWeight() * counts[i];
+            }
+            mass = m;
+        }
+        return m;
+    }
+
+    /** sum of formulae including charge.
+     * @param formula
+     * @return new formula
+     */
+    public ConciseFormula add(ConciseFormula formula) {
+        FormulaCounter counter = new FormulaCounter();
+        counter.add(elementTypes, counts);
+        counter.add(formula.elementTypes, formula.counts);
+        return new ConciseFormula(counter, formalCharge + formula.formalCharge);
+    }
+
+    /** this minus formula.
+     * elements whose counts differ by less than 0.000001 are omitted
+     * as in CMLFormula.getDifference()
+     * @param formula
+     * @return new formula (may have negative counts)
+     */
+    public ConciseFormula getDifference(ConciseFormula formula) {
+        FormulaCounter counter = new FormulaCounter();
+        counter.add(elementTypes, counts);
+        for (int i = 0; i < formula.elementTypes.length; i++) {
+            counter.add(formula.elementTypes[i], -formula.counts[i]);
+        }
+        String[] allTypes = counter.getElementTypes();
+        double[] allDeltas = counter.getCounts();
+        List<String> types = new ArrayList<String>();
+        List<Double> deltas = new ArrayList<Double>();
+        for (int i = 0; i < allTypes.length; i++) {
+            if (Math.abs(allDeltas[i]) > EPS) {
+                types.add(allTypes[i]);
+                deltas.add(allDeltas[i]);
+            }
+        }
+        double[] dd = new double[deltas.size()];
+        for (int i = 0; i < dd.length; i++) {
+            dd[i] = deltas.get(i);
+        }
+        return new ConciseFormula(types.toArray(NO_TYPES), dd, formalCharge - formula.formalCharge);
+    }
+
+    /** multiplies counts and charge.
+     * charge is rounded
+     * @param d
+     * @return new formula
+     */
+    public ConciseFormula multiplyBy(double d) {
+        double[] cc = new double[counts.length];
+        for (int i = 0; i < cc.length; i++) {
+            cc[i] = counts[i] * d;
+        }
+        return new ConciseFormula(elementTypes, cc, (int) Math.round(formalCharge * d));
+    }
+
+    /** creates new CMLFormula with atomArray and concise.
+     * @return formula
+     */
+    public CMLFormula toCMLFormula() {
+        CMLFormula formula = new CMLFormula();
+        boolean negative = false;
+        for (double count : counts) {
+            negative |= count < 0.0;
+        }
+        formula.setAllowNegativeCounts(negative);
+        FormulaCounter counter = new FormulaCounter();
+        counter.add(elementTypes, counts);
+        formula.add(counter);
+        if (formalCharge != 0) {
+            formula.setFormalCharge(formalCharge);
+        }
+        return formula;
+    }
+
+    /** equality of concise strings.
+     * @param o
+     * @return true if same concise
+     */
+    public boolean equals(Object o) {
+        return (o instanceof ConciseFormula) && concise.equals(((ConciseFormula) o).concise);
+    }
+
+    /** hash of concise.
+     * @return hash
+     */
+    public int hashCode() {
+        return concise.hashCode();
+    }
+
+    /** concise.
+     * @return concise
+     */
+    public String toString() {
+        return concise;
+    }
+
+    /**
+     * bounded cache of parsed formulae.
+     * <p>
+     * keyed by input string and by concise so that equal formulae share
+     * a single instance. least recently used entries are dropped when the
+     * cache is full. Methods are thread-safe.
+     * </p>
+     */
+    public static class Cache {
+
+        private final LRUCache<String, ConciseFormula> cache;
+
+        /** cache holding up to maxSize keys.
+         * @param maxSize
+         */
+        public Cache(int maxSize) {
+            cache = new LRUCache<String, ConciseFormula>(maxSize);
+        }
+
+        /** parses s or returns cached formula.
+         * @param s concise or compact formula
+         * @return formula
+         */
+        public ConciseFormula get(String s) {
+            ConciseFormula formula = cache.get(s);
+            if (formula == null) {
+                formula = intern(ConciseFormula.parse(s));
+                cache.put(s, formula);
+            }
+            return formula;
+        }
+
+        /** returns cached formula with same concise or caches this one.
+         * @param formula
+         * @return canonical instance
+         */
+        public ConciseFormula intern(ConciseFormula formula) {
+            return cache.putIfAbsent(formula.concise, formula);
+        }
+
+        /** number of keys.
+         * @return size
+         */
+        public int size() {
+            return cache.size();
+        }
+
+        /** empties cache.
+         */
+        public void clear() {
+            cache.clear();
+        }
+    }
+}
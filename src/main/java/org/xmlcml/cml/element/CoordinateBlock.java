@@ -0,0 +1,245 @@
+/**
+ *    Copyright 2011 Peter Murray-Rust et. al.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package org.xmlcml.cml.element;
+
+import java.util.List;
+
+import org.xmlcml.cml.base.CMLElement.CoordinateType;
+import org.xmlcml.cml.base.DoubleSTAttribute;
+import org.xmlcml.euclid.Transform3;
+
+/**
+ * primitive coordinate store for the atoms of a molecule.
+ * <p>
+ * Holds x2/y2, x3/y3/z3 and xFract/yFract/zFract in parallel double arrays
+ * indexed by the position of the atom in the molecule when the block was
+ * created. While an atom is bound to a block its coordinate getters
+ * (getX3(), getXYZ3(), hasCoordinates(), etc.) read the arrays instead of
+ * the attributes. Setters write through to both, so the attributes (and
+ * hence serialization, XPath and copy()) are always current.
+ * </p>
+ * <p>
+ * Unset coordinates are held as NaN. Atoms added to the molecule after the
+ * block was created are not bound and read their attributes as usual.
+ * Changing a coordinate attribute object directly (rather than through the
+ * atom) is not seen by the block.
+ * </p>
+ * @see CMLMolecule#createCoordinateBlock()
+ * @author pm286
+ */
+public class CoordinateBlock {
+
+    /** index of x2 */
+    public final static int X2 = 0;
+    /** index of y2 */
+    public final static int Y2 = 1;
+    /** index of x3 */
+    public final static int X3 = 2;
+    /** index of y3 */
+    public final static int Y3 = 3;
+    /** index of z3 */
+    public final static int Z3 = 4;
+    /** index of xFract */
+    public final static int XFRACT = 5;
+    /** index of yFract */
+    public final static int YFRACT = 6;
+    /** index of zFract */
+    public final static int ZFRACT = 7;
+
+    final static String[] NAMES = {
+        "x2", "y2", "x3", "y3", "z3", "xFract", "yFract", "zFract",
+    };
+
+    private CMLAtom[] atoms;
+    /** values[coordinate][atom] */
+    final double[][] values;
+
+    /** binds the current atoms of the molecule.
+     * any previous binding of the atoms is replaced.
+     * @param molecule
+     */
+    CoordinateBlock(CMLMolecule molecule) {
+        List<CMLAtom> atomList = molecule.getAtoms();
+        int n = atomList.size();
+        atoms = atomList.toArray(new CMLAtom[n]);
+        values = new double[NAMES.length][n];
+        for (int i = 0; i < n; i++) {
+            CMLAtom atom = atoms[i];
+            for (int j = 0; j < NAMES.length; j++) {
+                DoubleSTAttribute att = (DoubleSTAttribute) atom.getAttribute(NAMES[j]);
+                values[j][i] = (att == null) ? Double.NaN : att.getDouble();
+            }
+            atom.coordinateBlock = this;
+            atom.coordinateIndex = i;
+        }
+    }
+
+    /** index of coordinate attribute.
+     * @param name attribute name (e.g. "x3")
+     * @return index (X2...ZFRACT) or -1 if not a coordinate
+     */
+    public static int getCoordinateIndex(String name) {
+        for (int j = 0; j < NAMES.length; j++) {
+            if (NAMES[j].equals(name)) {
+                return j;
+            }
+        }
+        return -1;
+    }
+
+    /** number of atoms in block.
+     * @return size
+     */
+    public int size() {
+        return atoms.length;
+    }
+
+    /** gets atom.
+     * @param i serial of atom in block
+     * @return atom
+     */
+    public CMLAtom getAtom(int i) {
+        return atoms[i];
+    }
+
+    /** serial of atom in block.
+     * @param atom
+     * @return serial or -1 if atom is not bound to this block
+     */
+    public int indexOf(CMLAtom atom) {
+        return (atom.coordinateBlock == this) ? atom.coordinateIndex : -1;
+    }
+
+    /** gets coordinate.
+     * @param coordinate X2...ZFRACT
+     * @param i serial of atom
+     * @return value or NaN if unset
+     */
+    public double get(int coordinate, int i) {
+        return values[coordinate][i];
+    }
+
+    /** gets the backing array for a coordinate.
+     * the array must not be modified; use the setters.
+     * @param coordinate X2...ZFRACT
+     * @return array indexed by atom serial
+     */
+    public double[] getArray(int coordinate) {
+        return values[coordinate];
+    }
+
+    /** are all coordinates of given type set.
+     * @param i serial of atom
+     * @param type
+     * @return true if none is NaN
+     */
+    public boolean hasCoordinates(int i, CoordinateType type) {
+        if (CoordinateType.TWOD.equals(type)) {
+            return isSet(X2, i) && isSet(Y2, i);
+        } else if (CoordinateType.CARTESIAN.equals(type)) {
+            return isSet(X3, i) && isSet(Y3, i) && isSet(Z3, i);
+        } else if (CoordinateType.FRACTIONAL.equals(type)) {
+            return isSet(XFRACT, i) && isSet(YFRACT, i) && isSet(ZFRACT, i);
+        }
+        return false;
+    }
+
+    private boolean isSet(int coordinate, int i) {
+        return !Double.isNaN(values[coordinate][i]);
+    }
+
+    /** sets x2 y2.
+     * writes through to atom attributes.
+     * @param i serial of atom
+     * @param x
+     * @param y
+     */
+    public void setXY2(int i, double x, double y) {
+        atoms[i].setX2(x);
+        atoms[i].setY2(y);
+    }
+
+    /** sets x3 y3 z3.
+     * writes through to atom attributes.
+     * @param i serial of atom
+     * @param x
+     * @param y
+     * @param z
+     */
+    public void setXYZ3(int i, double x, double y, double z) {
+        atoms[i].setX3(x);
+        atoms[i].setY3(y);
+        atoms[i].setZ3(z);
+    }
+
+    /** sets xFract yFract zFract.
+     * writes through to atom attributes.
+     * @param i serial of atom
+     * @param x
+     * @param y
+     * @param z
+     */
+    public void setXYZFract(int i, double x, double y, double z) {
+        atoms[i].setXFract(x);
+        atoms[i].setYFract(y);
+        atoms[i].setZFract(z);
+    }
+
+    /** transforms cartesians of all atoms with x3 y3 z3.
+     * equivalent to CMLAtom.transformCartesians() on each atom
+     * without creating intermediate points.
+     * @param transform
+     */
+    public void transformCartesians(Transform3 transform) {
+        double[][] m = transform.getMatrix();
+        double[] x3 = values[X3];
+        double[] y3 = values[Y3];
+        double[] z3 = values[Z3];
+        for (int i = 0; i < atoms.length; i++) {
+            if (hasCoordinates(i, CoordinateType.CARTESIAN)) {
+                double x = x3[i];
+                double y = y3[i];
+                double z = z3[i];
+                setXYZ3(i,
+                    m[0][0] * x + m[0][1] * y + m[0][2] * z + m[0][3],
+                    m[1][0] * x + m[1][1] * y + m[1][2] * z + m[1][3],
+                    m[2][0] * x + m[2][1] * y + m[2][2] * z + m[2][3]);
+            }
+        }
+    }
+
+    /** unbinds all atoms.
+     * atoms revert to reading their attributes.
+     */
+    public void release() {
+        for (CMLAtom atom : atoms) {
+            if (atom.coordinateBlock == this) {
+                atom.coordinateBlock = null;
+                atom.coordinateIndex = -1;
+            }
+        }
+    }
+
+    /** called by atom when a coordinate changes.
+     * @param i serial of atom
+     * @param coordinate
+     * @param value (NaN if removed)
+     */
+    void update(int i, int coordinate, double value) {
+        values[coordinate][i] = value;
+    }
+}
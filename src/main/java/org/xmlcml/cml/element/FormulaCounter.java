@@ -0,0 +1,201 @@
+/**
+ *    Copyright 2011 Peter Murray-Rust et. al.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package org.xmlcml.cml.element;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.xmlcml.cml.base.CMLConstants;
+import org.xmlcml.molutil.ChemicalElement;
+
+/**
+ * accumulates element counts for a formula.
+ * <p>
+ * Counts are held in an array indexed by atomic number so adding an atom
+ * is O(1); symbols which are not chemical elements (or share an atomic
+ * number, e.g. D and T) are given slots after the periodic table. Elements are reported in order of first addition.
+ * The counter is written to a formula once with CMLFormula.add(FormulaCounter)
+ * rather than updating the atomArray and concise for every atom.
+ * </p>
+ * @author pm286
+ */
+public class FormulaCounter {
+
+    private double[] counts;
+    /** symbol for each used slot */
+    private String[] symbols;
+    /** slots in order of first addition */
+    private int[] order;
+    private int nelem;
+    private Map<String, Integer> otherSlotMap;
+
+    /** empty counter.
+     */
+    public FormulaCounter() {
+        counts = new double[ChemicalElement.MAXELEM];
+        symbols = new String[ChemicalElement.MAXELEM];
+        order = new int[16];
+        nelem = 0;
+    }
+
+    /** counter holding the contents of a formula.
+     * uses formula count if present
+     * @param formula
+     */
+    public FormulaCounter(CMLFormula formula) {
+        this();
+        add(formula);
+    }
+
+    /** adds count for element.
+     * @param elementType element symbol (case-sensitive)
+     * @param count
+     */
+    public void add(String elementType, double count) {
+        int slot = getSlot(elementType);
+        if (symbols[slot] == null) {
+            symbols[slot] = elementType;
+            if (nelem == order.length) {
+                order = Arrays.copyOf(order, 2 * nelem);
+            }
+            order[nelem++] = slot;
+        }
+        counts[slot] += count;
+    }
+
+    /** adds counts for elements.
+     * @param elementTypes
+     * @param elementCounts same length as elementTypes
+     */
+    public void add(String[] elementTypes, double[] elementCounts) {
+        if (elementTypes.length != elementCounts.length) {
+            throw new RuntimeException("inconsistent elementTypes/counts "+
+                    elementTypes.length+CMLConstants.S_SLASH+elementCounts.length);
+        }
+        for (int i = 0; i < elementTypes.length; i++) {
+            add(elementTypes[i], elementCounts[i]);
+        }
+    }
+
+    /** adds contents of formula.
+     * uses formula count if present. ignores charge
+     * @param formula
+     */
+    public void add(CMLFormula formula) {
+        String[] elementTypes = formula.getElementTypes();
+        double[] elementCounts = formula.getCounts();
+        if (elementTypes != null && elementCounts != null) {
+            double multiplier = (formula.getCountAttribute() == null) ?
+                    1.0 : formula.getCount();
+            for (int i = 0; i < elementTypes.length; i++) {
+                add(elementTypes[i], elementCounts[i] * multiplier);
+            }
+        }
+    }
+
+    /** adds contents of another counter.
+     * @param counter
+     */
+    public void add(FormulaCounter counter) {
+        for (int i = 0; i < counter.nelem; i++) {
+            int slot = counter.order[i];
+            add(counter.symbols[slot], counter.counts[slot]);
+        }
+    }
+
+    /** count for element.
+     * @param elementType
+     * @return count (0.0 if not present)
+     */
+    public double getCount(String elementType) {
+        int slot = getElementSlot(elementType);
+        if (slot < 0) {
+            Integer other = (otherSlotMap == null) ? null : otherSlotMap.get(elementType);
+            slot = (other == null) ? -1 : other;
+        }
+        return (slot < 0) ? 0.0 : counts[slot];
+    }
+
+    /** element symbols in order of first addition.
+     * @return symbols
+     */
+    public String[] getElementTypes() {
+        String[] elementTypes = new String[nelem];
+        for (int i = 0; i < nelem; i++) {
+            elementTypes[i] = symbols[order[i]];
+        }
+        return elementTypes;
+    }
+
+    /** counts aligned with getElementTypes().
+     * @return counts
+     */
+    public double[] getCounts() {
+        double[] elementCounts = new double[nelem];
+        for (int i = 0; i < nelem; i++) {
+            elementCounts[i] = counts[order[i]];
+        }
+        return elementCounts;
+    }
+
+    /** number of different elements.
+     * @return count
+     */
+    public int size() {
+        return nelem;
+    }
+
+    /** true if nothing has been added.
+     * @return is empty
+     */
+    public boolean isEmpty() {
+        return nelem == 0;
+    }
+
+    /** atomic number if elementType is the element's own symbol; else -1 */
+    private static int getElementSlot(String elementType) {
+        ChemicalElement element = ChemicalElement.getChemicalElement(elementType);
+        if (element != null) {
+            int atomicNumber = element.getAtomicNumber();
+            if (ChemicalElement.getElement(atomicNumber) == element) {
+                return atomicNumber;
+            }
+        }
+        return -1;
+    }
+
+    private int getSlot(String elementType) {
+        int elementSlot = getElementSlot(elementType);
+        if (elementSlot >= 0) {
+            return elementSlot;
+        }
+        if (otherSlotMap == null) {
+            otherSlotMap = new HashMap<String, Integer>();
+        }
+        Integer slot = otherSlotMap.get(elementType);
+        if (slot == null) {
+            slot = ChemicalElement.MAXELEM + otherSlotMap.size();
+            otherSlotMap.put(elementType, slot);
+            if (slot >= counts.length) {
+                counts = Arrays.copyOf(counts, 2 * counts.length);
+                symbols = Arrays.copyOf(symbols, 2 * symbols.length);
+            }
+        }
+        return slot;
+    }
+}
@@ -0,0 +1,360 @@
+/**
+ *    Copyright 2011 Peter Murray-Rust et. al.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package org.xmlcml.cml.element;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * compact snapshot of the connection table of a molecule.
+ * <p>
+ * Atoms and bonds are numbered by their position in the molecule when the
+ * snapshot was taken. Neighbours are held in compressed sparse row form:
+ * the ligands of atom i are neighbours[offsets[i]] ...
+ * neighbours[offsets[i+1]-1] and the corresponding bonds are at the same
+ * positions in bondIndex. Traversals over the arrays do not touch the
+ * XOM tree.
+ * </p>
+ * <p>
+ * The snapshot is not updated when the molecule changes. Bonds can be
+ * added or deleted on the snapshot and applied to the molecule with
+ * writeBack(), which returns a new snapshot.
+ * </p>
+ * @author pm286
+ */
+public class MoleculeGraph {
+
+    private CMLMolecule molecule;
+    private CMLAtom[] atoms;
+    private CMLBond[] bonds;
+    private Map<CMLAtom, Integer> atomIndexMap;
+    private int[] offsets;
+    private int[] neighbours;
+    private int[] bondIndex;
+    /** atom serials of bond b are bondAtoms[2b] and bondAtoms[2b+1] */
+    private int[] bondAtoms;
+    private List<Integer> deletedBonds;
+    private List<int[]> addedBonds;
+    private List<String> addedOrders;
+
+    /** snapshot of current atoms and bonds.
+     * 
+     * @param molecule
+     * @throws RuntimeException if a bond references an atom not in molecule
+     */
+    public MoleculeGraph(CMLMolecule molecule) {
+        this.molecule = molecule;
+        List<CMLAtom> atomList = molecule.getAtomView();
+        List<CMLBond> bondList = molecule.getBondView();
+        int natoms = atomList.size();
+        int nbonds = bondList.size();
+        atoms = atomList.toArray(new CMLAtom[natoms]);
+        bonds = bondList.toArray(new CMLBond[nbonds]);
+        atomIndexMap = new IdentityHashMap<CMLAtom, Integer>(natoms);
+        for (int i = 0; i < natoms; i++) {
+            atomIndexMap.put(atoms[i], i);
+        }
+        bondAtoms = new int[2 * nbonds];
+        offsets = new int[natoms + 1];
+        for (int b = 0; b < nbonds; b++) {
+            List<CMLAtom> bondAtomList = bonds[b].getAtoms();
+            for (int j = 0; j < 2; j++) {
+                int i = indexOf(bondAtomList.get(j));
+                if (i == -1) {
+                    throw new RuntimeException("bond atom not in molecule: "+bonds[b].getString());
+                }
+                bondAtoms[2 * b + j] = i;
+                offsets[i + 1]++;
+            }
+        }
+        for (int i = 0; i < natoms; i++) {
+            offsets[i + 1] += offsets[i];
+        }
+        neighbours = new int[2 * nbonds];
+        bondIndex = new int[2 * nbonds];
+        int[] next = Arrays.copyOf(offsets, natoms);
+        for (int b = 0; b < nbonds; b++) {
+            int i0 = bondAtoms[2 * b];
+            int i1 = bondAtoms[2 * b + 1];
+            neighbours[next[i0]] = i1;
+            bondIndex[next[i0]++] = b;
+            neighbours[next[i1]] = i0;
+            bondIndex[next[i1]++] = b;
+        }
+        deletedBonds = new ArrayList<Integer>();
+        addedBonds = new ArrayList<int[]>();
+        addedOrders = new ArrayList<String>();
+    }
+
+    /** molecule the snapshot was taken from.
+     * @return molecule
+     */
+    public CMLMolecule getMolecule() {
+        return molecule;
+    }
+
+    /** number of atoms.
+     * @return count
+     */
+    public int getAtomCount() {
+        return atoms.length;
+    }
+
+    /** number of bonds.
+     * @return count
+     */
+    public int getBondCount() {
+        return bonds.length;
+    }
+
+    /** atom by serial.
+     * @param i
+     * @return atom
+     */
+    public CMLAtom getAtom(int i) {
+        return atoms[i];
+    }
+
+    /** bond by serial.
+     * @param b
+     * @return bond
+     */
+    public CMLBond getBond(int b) {
+        return bonds[b];
+    }
+
+    /** serial of atom.
+     * @param atom
+     * @return serial or -1 if not in snapshot
+     */
+    public int indexOf(CMLAtom atom) {
+        Integer i = atomIndexMap.get(atom);
+        return (i == null) ? -1 : i.intValue();
+    }
+
+    /** serial of an atom of a bond.
+     * @param b bond serial
+     * @param j 0 or 1
+     * @return atom serial
+     */
+    public int getBondAtom(int b, int j) {
+        return bondAtoms[2 * b + j];
+    }
+
+    /** number of ligands of atom.
+     * @param i atom serial
+     * @return degree
+     */
+    public int getDegree(int i) {
+        return offsets[i + 1] - offsets[i];
+    }
+
+    /** row offsets; length is atomCount+1.
+     * must not be modified.
+     * @return offsets
+     */
+    public int[] getOffsets() {
+        return offsets;
+    }
+
+    /** ligand atom serials in row order.
+     * must not be modified.
+     * @return neighbours
+     */
+    public int[] getNeighbours() {
+        return neighbours;
+    }
+
+    /** bond serials aligned with getNeighbours().
+     * must not be modified.
+     * @return bond serials
+     */
+    public int[] getBondIndex() {
+        return bondIndex;
+    }
+
+    /** serial of bond joining two atoms.
+     * @param i atom serial
+     * @param j atom serial
+     * @return bond serial or -1
+     */
+    public int getBondIndex(int i, int j) {
+        for (int k = offsets[i]; k < offsets[i + 1]; k++) {
+            if (neighbours[k] == j) {
+                return bondIndex[k];
+            }
+        }
+        return -1;
+    }
+
+    /** labels each atom with its connected component.
+     * components are numbered from 0 in order of their lowest atom serial.
+     * @return component serial for each atom
+     */
+    public int[] getComponents() {
+        int natoms = atoms.length;
+        int[] component = new int[natoms];
+        Arrays.fill(component, -1);
+        int[] queue = new int[natoms];
+        int ncomp = 0;
+        for (int s = 0; s < natoms; s++) {
+            if (component[s] != -1) {
+                continue;
+            }
+            int head = 0;
+            int tail = 0;
+            queue[tail++] = s;
+            component[s] = ncomp;
+            while (head < tail) {
+                int u = queue[head++];
+                for (int k = offsets[u]; k < offsets[u + 1]; k++) {
+                    int v = neighbours[k];
+                    if (component[v] == -1) {
+                        component[v] = ncomp;
+                        queue[tail++] = v;
+                    }
+                }
+            }
+            ncomp++;
+        }
+        return component;
+    }
+
+    /** number of connected components.
+     * @return count (0 for no atoms)
+     */
+    public int getComponentCount() {
+        int count = 0;
+        for (int c : getComponents()) {
+            count = Math.max(count, c + 1);
+        }
+        return count;
+    }
+
+    /** is every atom connected to every other.
+     * @return true if one component (or no atoms)
+     */
+    public boolean isConnected() {
+        return getComponentCount() <= 1;
+    }
+
+    /** finds bonds in rings.
+     * a bond is cyclic if it is not a bridge. Iterative so safe for
+     * very large molecules.
+     * @return flag for each bond serial
+     */
+    public boolean[] getCyclicBonds() {
+        int natoms = atoms.length;
+        boolean[] cyclic = new boolean[bonds.length];
+        Arrays.fill(cyclic, true);
+        int[] disc = new int[natoms];
+        Arrays.fill(disc, -1);
+        int[] low = new int[natoms];
+        int[] parentBond = new int[natoms];
+        int[] edge = new int[natoms];
+        int[] stack = new int[natoms];
+        int time = 0;
+        for (int s = 0; s < natoms; s++) {
+            if (disc[s] != -1) {
+                continue;
+            }
+            int sp = 0;
+            stack[sp++] = s;
+            disc[s] = low[s] = time++;
+            parentBond[s] = -1;
+            edge[s] = offsets[s];
+            while (sp > 0) {
+                int u = stack[sp - 1];
+                if (edge[u] < offsets[u + 1]) {
+                    int k = edge[u]++;
+                    int v = neighbours[k];
+                    if (bondIndex[k] == parentBond[u]) {
+                        continue;
+                    }
+                    if (disc[v] == -1) {
+                        disc[v] = low[v] = time++;
+                        parentBond[v] = bondIndex[k];
+                        edge[v] = offsets[v];
+                        stack[sp++] = v;
+                    } else {
+                        low[u] = Math.min(low[u], disc[v]);
+                    }
+                } else {
+                    sp--;
+                    if (sp > 0) {
+                        int p = stack[sp - 1];
+                        low[p] = Math.min(low[p], low[u]);
+                        if (low[u] > disc[p]) {
+                            cyclic[parentBond[u]] = false;
+                        }
+                    }
+                }
+            }
+        }
+        return cyclic;
+    }
+
+    /** records deletion of a bond.
+     * applied by writeBack().
+     * @param b bond serial
+     */
+    public void deleteBond(int b) {
+        if (b < 0 || b >= bonds.length) {
+            throw new RuntimeException("bad bond serial: "+b);
+        }
+        deletedBonds.add(b);
+    }
+
+    /** records a new bond.
+     * applied by writeBack().
+     * @param i atom serial
+     * @param j atom serial
+     * @param order bond order (may be null)
+     */
+    public void addBond(int i, int j, String order) {
+        if (i == j || i < 0 || j < 0 || i >= atoms.length || j >= atoms.length) {
+            throw new RuntimeException("bad atom serials: "+i+"/"+j);
+        }
+        addedBonds.add(new int[] { i, j });
+        addedOrders.add(order);
+    }
+
+    /** applies recorded deletions and additions to the molecule.
+     * @return new snapshot of the updated molecule
+     */
+    public MoleculeGraph writeBack() {
+        for (Integer b : deletedBonds) {
+            molecule.deleteBond(bonds[b]);
+        }
+        for (int k = 0; k < addedBonds.size(); k++) {
+            int[] pair = addedBonds.get(k);
+            CMLBond bond = new CMLBond(atoms[pair[0]], atoms[pair[1]]);
+            String order = addedOrders.get(k);
+            if (order != null) {
+                bond.setOrder(order);
+            }
+            molecule.addBond(bond);
+        }
+        deletedBonds.clear();
+        addedBonds.clear();
+        addedOrders.clear();
+        return new MoleculeGraph(molecule);
+    }
+}
@@ -0,0 +1,322 @@
+/**
+ *    Copyright 2011 Peter Murray-Rust et. al.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package org.xmlcml.cml.element;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * fractional coordinates packed into a unit cell by compiled symmetry.
+ * <p>
+ * All operators are applied to an asymmetric unit held as a packed array
+ * (x0, y0, z0, x1, y1, z1...) and each image is reduced into [0, 1).
+ * Images of the same source point which coincide (special positions) are
+ * removed using a periodic spatial hash with cells of side eps, so only
+ * neighbouring cells are compared and packing is linear in the number of
+ * images. Supercells are generated by adding lattice translations to the
+ * packed cell.
+ * </p>
+ * <p>
+ * As duplicates only arise among images of one source point, ranges of
+ * source points can be transformed and deduplicated in parallel by a
+ * caller-supplied ExecutorService and the results concatenated. The packed
+ * cell is not modified after construction, so supercell coordinates can be
+ * generated from several threads.
+ * </p>
+ * @author pm286
+ */
+public class PackedCell {
+
+    /** largest hash grid along each axis */
+    private final static int MAX_GRID = 1 << 20;
+    /** fewest images computed by one parallel task */
+    private final static int MIN_TASK_IMAGES = 4096;
+
+    private int grid;
+    private double eps;
+    private int size;
+    private double[] xyz;
+    private int[] source;
+    private int[] operator;
+
+    /** packs with default tolerance.
+     * @param symmetry operators
+     * @param xyz fractional coordinates of asymmetric unit
+     */
+    public PackedCell(CompiledSymmetry symmetry, double[] xyz) {
+        this(symmetry, xyz, CompiledSymmetry.FRACT_EPS);
+    }
+
+    /** packs.
+     * @param symmetry operators
+     * @param xyz fractional coordinates of asymmetric unit as x0, y0, z0...
+     * @param eps images of a point closer than this (in fractional
+     *     coordinates along each axis) are the same position
+     * @throws RuntimeException if eps is not positive
+     */
+    public PackedCell(CompiledSymmetry symmetry, double[] xyz, double eps) {
+        setEps(eps);
+        Packing packing = new Packing(applyOperators(symmetry, xyz),
+            xyz.length / 3, symmetry.size(), 0);
+        this.xyz = packing.xyz;
+        this.source = packing.source;
+        this.operator = packing.operator;
+        this.size = packing.size;
+    }
+
+    /** packs, splitting the source points across tasks.
+     * each task applies all operators to a range of source points and
+     * removes their duplicates, so the result is the same as from the
+     * serial constructor. The executor is not shut down.
+     * @param symmetry operators
+     * @param xyz fractional coordinates of asymmetric unit as x0, y0, z0...
+     * @param eps as for the serial constructor
+     * @param executor
+     * @throws RuntimeException if eps is not positive, any task fails or
+     *     the thread is interrupted
+     */
+    public PackedCell(final CompiledSymmetry symmetry, final double[] xyz, double eps,
+            ExecutorService executor) {
+        setEps(eps);
+        final int nops = symmetry.size();
+        int npoints = xyz.length / 3;
+        int pointsPerTask = Math.max(1, MIN_TASK_IMAGES / Math.max(1, nops));
+        List<Callable<Packing>> tasks = new ArrayList<Callable<Packing>>();
+        for (int start = 0; start < npoints; start += pointsPerTask) {
+            final int from = start;
+            final int to = Math.min(npoints, start + pointsPerTask);
+            tasks.add(new Callable<Packing>() {
+                public Packing call() {
+                    double[] asym = Arrays.copyOfRange(xyz, 3 * from, 3 * to);
+                    return new Packing(applyOperators(symmetry, asym), to - from, nops, from);
+                }
+            });
+        }
+        List<Packing> packings = new ArrayList<Packing>();
+        try {
+            for (Future<Packing> future : executor.invokeAll(tasks)) {
+                packings.add(future.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("interrupted", e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException("cannot pack cell", e.getCause());
+        }
+        size = 0;
+        for (Packing packing : packings) {
+            size += packing.size;
+        }
+        this.xyz = new double[3 * size];
+        this.source = new int[size];
+        this.operator = new int[size];
+        int n = 0;
+        for (Packing packing : packings) {
+            System.arraycopy(packing.xyz, 0, this.xyz, 3 * n, 3 * packing.size);
+            System.arraycopy(packing.source, 0, this.source, n, packing.size);
+            System.arraycopy(packing.operator, 0, this.operator, n, packing.size);
+            n += packing.size;
+        }
+    }
+
+    private void setEps(double eps) {
+        if (!(eps > 0.0)) {
+            throw new RuntimeException("eps must be positive: "+eps);
+        }
+        this.eps = eps;
+        grid = (int) Math.max(1, Math.min(MAX_GRID, Math.floor(1.0 / eps)));
+    }
+
+    /** transforms points by all operators and reduces into [0, 1).
+     * @return images, operator-major
+     */
+    private static double[] applyOperators(CompiledSymmetry symmetry, double[] asym) {
+        double[] images = new double[symmetry.size() * asym.length];
+        symmetry.transform(asym, 0, symmetry.size(), images);
+        for (int k = 0; k < images.length; k++) {
+            images[k] = reduce(images[k]);
+        }
+        return images;
+    }
+
+    /** unique images of a range of source points.
+     */
+    private class Packing {
+        private double[] xyz;
+        private int[] source;
+        private int[] operator;
+        private int size;
+        // chains of packed points sharing a hash cell
+        private int[] next;
+
+        /**
+         * @param images operator-major images of npoints source points
+         * @param firstSource index of the first source point
+         */
+        Packing(double[] images, int npoints, int nops, int firstSource) {
+            xyz = new double[images.length];
+            source = new int[images.length / 3];
+            operator = new int[images.length / 3];
+            next = new int[images.length / 3];
+            Map<Long, Integer> cells = new HashMap<Long, Integer>();
+            double[] r = new double[3];
+            int[] c = new int[3];
+            size = 0;
+            for (int p = 0; p < npoints; p++) {
+                // duplicates only arise from the same source point
+                cells.clear();
+                for (int op = 0; op < nops; op++) {
+                    int k = 3 * (op * npoints + p);
+                    for (int i = 0; i < 3; i++) {
+                        r[i] = images[k + i];
+                        c[i] = cell(r[i]);
+                    }
+                    if (findDuplicate(cells, r, c)) {
+                        continue;
+                    }
+                    System.arraycopy(r, 0, xyz, 3 * size, 3);
+                    source[size] = firstSource + p;
+                    operator[size] = op;
+                    Long key = key(c[0], c[1], c[2]);
+                    Integer head = cells.get(key);
+                    next[size] = (head == null) ? -1 : head.intValue();
+                    cells.put(key, size);
+                    size++;
+                }
+            }
+            xyz = Arrays.copyOf(xyz, 3 * size);
+            source = Arrays.copyOf(source, size);
+            operator = Arrays.copyOf(operator, size);
+            next = null;
+        }
+
+        private boolean findDuplicate(Map<Long, Integer> cells, double[] r, int[] c) {
+            for (int dx = -1; dx <= 1; dx++) {
+                for (int dy = -1; dy <= 1; dy++) {
+                    for (int dz = -1; dz <= 1; dz++) {
+                        Integer head = cells.get(key(
+                            wrap(c[0] + dx), wrap(c[1] + dy), wrap(c[2] + dz)));
+                        if (head == null) {
+                            continue;
+                        }
+                        for (int i = head.intValue(); i >= 0; i = next[i]) {
+                            if (periodicEquals(r, i)) {
+                                return true;
+                            }
+                        }
+                    }
+                }
+            }
+            return false;
+        }
+
+        private boolean periodicEquals(double[] r, int i) {
+            for (int j = 0; j < 3; j++) {
+                double d = r[j] - xyz[3 * i + j];
+                d -= Math.rint(d);
+                if (Math.abs(d) > eps) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    private static double reduce(double x) {
+        double r = x - Math.floor(x);
+        // rounding of tiny negative values
+        return (r >= 1.0) ? 0.0 : r;
+    }
+
+    private int cell(double r) {
+        int c = (int) (r * grid);
+        return (c >= grid) ? grid - 1 : c;
+    }
+
+    private int wrap(int c) {
+        return (c + grid) % grid;
+    }
+
+    private Long key(int cx, int cy, int cz) {
+        return Long.valueOf(((long) cx * grid + cy) * grid + cz);
+    }
+
+    /** number of unique positions in the cell.
+     * @return size
+     */
+    public int size() {
+        return size;
+    }
+
+    /** packed coordinates.
+     * @return copy of fractional coordinates in [0, 1) as x0, y0, z0...
+     */
+    public double[] getXYZ() {
+        return xyz.clone();
+    }
+
+    /** index of the asymmetric unit point for each packed position.
+     * @return copy of indices
+     */
+    public int[] getSourceIndices() {
+        return source.clone();
+    }
+
+    /** index of the operator generating each packed position.
+     * @return copy of indices
+     */
+    public int[] getOperatorIndices() {
+        return operator.clone();
+    }
+
+    /** coordinates of a supercell.
+     * the packed cell is repeated na * nb * nc times; translation (i, j, k)
+     * is outermost so position m of the result is packed position
+     * m % size() translated. Coordinates are in units of the original cell.
+     * @param na cells along a
+     * @param nb cells along b
+     * @param nc cells along c
+     * @return fractional coordinates as x0, y0, z0...
+     * @throws RuntimeException if any count is less than 1
+     */
+    public double[] getSupercellXYZ(int na, int nb, int nc) {
+        if (na < 1 || nb < 1 || nc < 1) {
+            throw new RuntimeException("bad supercell: "+na+"/"+nb+"/"+nc);
+        }
+        double[] result = new double[xyz.length * na * nb * nc];
+        int k = 0;
+        for (int i = 0; i < na; i++) {
+            for (int j = 0; j < nb; j++) {
+                for (int l = 0; l < nc; l++) {
+                    for (int m = 0; m < size; m++) {
+                        result[k++] = xyz[3 * m] + i;
+                        result[k++] = xyz[3 * m + 1] + j;
+                        result[k++] = xyz[3 * m + 2] + l;
+                    }
+                }
+            }
+        }
+        return result;
+    }
+}
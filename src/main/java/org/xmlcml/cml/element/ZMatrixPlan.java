@@ -0,0 +1,349 @@
+/**
+ *    Copyright 2011 Peter Murray-Rust et. al.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package org.xmlcml.cml.element;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import nu.xom.Elements;
+
+import org.xmlcml.euclid.Point3;
+
+/**
+ * zMatrix compiled against a molecule for repeated conversion to cartesians.
+ * <p>
+ * Atom references are resolved once to indices in molecule.getAtoms() so
+ * many sets of internal coordinates (e.g. scanned conformers) sharing the
+ * topology of the zMatrix can be converted without touching the XML.
+ * Internal coordinates are held in a single array: lengths, then angles,
+ * then torsions, each in the order of the zMatrix children. Angles and
+ * torsions are in degrees. The geometry is that of
+ * CMLZMatrix.addCartesiansTo().
+ * </p>
+ * <p>
+ * The plan is not modified after construction and may be shared between
+ * threads.
+ * </p>
+ * @author pm286
+ */
+public class ZMatrixPlan {
+
+    /** conformers converted by each task in parallel conversion */
+    private final static int CHUNK = 64;
+    private final static double DTOR = Math.PI / 180.;
+
+    private int atomCount;
+    private int nlength;
+    private int nangle;
+    private int ntorsion;
+    /** atoms placed at origin, on x and in xy plane (-1 if absent) */
+    private int first0 = -1;
+    private int first1 = -1;
+    private int first2 = -1;
+    /** torsion atoms a-b-c-d; d is placed */
+    private int[] torsionAtoms;
+    private double[] internals;
+
+    /** compiles.
+     * @param zMatrix
+     * @param molecule containing all atoms referenced in zMatrix
+     * @throws RuntimeException if atoms cannot be found or zMatrix is bad
+     */
+    public ZMatrixPlan(CMLZMatrix zMatrix, CMLMolecule molecule) {
+        Elements lengthElements = zMatrix.getChildCMLElements(CMLLength.TAG);
+        Elements angleElements = zMatrix.getChildCMLElements(CMLAngle.TAG);
+        Elements torsionElements = zMatrix.getChildCMLElements(CMLTorsion.TAG);
+        List<CMLAtom> atoms = molecule.getAtoms();
+        atomCount = atoms.size();
+        Map<String, Integer> indexById = new HashMap<String, Integer>();
+        for (int i = 0; i < atomCount; i++) {
+            indexById.put(atoms.get(i).getId(), i);
+        }
+        nlength = lengthElements.size();
+        nangle = angleElements.size();
+        ntorsion = 0;
+        if (nlength == 1) {
+            String[] refs = ((CMLLength) lengthElements.get(0)).getAtomRefs2();
+            first0 = index(indexById, refs[1]);
+            first1 = index(indexById, refs[0]);
+        } else if (nlength >= 2) {
+            if (nangle == 0) {
+                throw new RuntimeException("Bad zMatrix");
+            }
+            compileFirstAngle((CMLAngle) angleElements.get(0),
+                (CMLLength) lengthElements.get(0), indexById);
+            if (nlength > 2) {
+                ntorsion = torsionElements.size();
+            }
+        }
+        if (nlength > 2 && (nangle < ntorsion + 1 || nlength < ntorsion + 2)) {
+            throw new RuntimeException("Bad zMatrix");
+        }
+        boolean[] placed = new boolean[atomCount];
+        markPlaced(placed, first0);
+        markPlaced(placed, first1);
+        markPlaced(placed, first2);
+        torsionAtoms = new int[4 * ntorsion];
+        for (int k = 0; k < ntorsion; k++) {
+            String[] refs = ((CMLTorsion) torsionElements.get(k)).getAtomRefs4();
+            for (int i = 0; i < 4; i++) {
+                int index = index(indexById, refs[i]);
+                if (i < 3 && !placed[index]) {
+                    throw new RuntimeException("should not be null p"+i+" "+refs[i]);
+                } else if (i == 3 && placed[index]) {
+                    throw new RuntimeException("should be null p3 "+refs[i]);
+                }
+                torsionAtoms[4 * k + i] = index;
+            }
+            placed[torsionAtoms[4 * k + 3]] = true;
+        }
+        internals = new double[getInternalCount()];
+        for (int i = 0; i < nlength; i++) {
+            internals[i] = ((CMLLength) lengthElements.get(i)).getXMLContent();
+        }
+        for (int i = 0; i < nangle; i++) {
+            internals[nlength + i] = ((CMLAngle) angleElements.get(i)).getXMLContent();
+        }
+        for (int i = 0; i < ntorsion; i++) {
+            internals[nlength + nangle + i] = ((CMLTorsion) torsionElements.get(i)).getXMLContent();
+        }
+    }
+
+    private void compileFirstAngle(CMLAngle angle, CMLLength length0,
+            Map<String, Integer> indexById) {
+        String[] refs3 = angle.getAtomRefs3();
+        String hash = CMLBond.atomHash(length0.getAtomRefs2());
+        int i0 = -1;
+        int i2 = -1;
+        if (hash.equals(CMLBond.atomHash(refs3[0], refs3[1]))) {
+            i0 = 0;
+            i2 = 2;
+        } else if (hash.equals(CMLBond.atomHash(refs3[2], refs3[1]))) {
+            i0 = 2;
+            i2 = 0;
+        } else {
+            throw new RuntimeException("Cannot match lengths to angle");
+        }
+        first0 = index(indexById, refs3[i0]);
+        first1 = index(indexById, refs3[1]);
+        first2 = index(indexById, refs3[i2]);
+    }
+
+    private static int index(Map<String, Integer> indexById, String id) {
+        Integer index = indexById.get(id);
+        if (index == null) {
+            throw new RuntimeException("Cannot find atom: "+id);
+        }
+        return index.intValue();
+    }
+
+    private static void markPlaced(boolean[] placed, int index) {
+        if (index >= 0) {
+            placed[index] = true;
+        }
+    }
+
+    /** number of atoms in molecule.
+     * @return count
+     */
+    public int getAtomCount() {
+        return atomCount;
+    }
+
+    /** length of internal coordinate array.
+     * @return lengths + angles + torsions
+     */
+    public int getInternalCount() {
+        return nlength + nangle + ntorsion;
+    }
+
+    /** internal coordinates of the zMatrix when compiled.
+     * @return copy of lengths, angles, torsions
+     */
+    public double[] getInternals() {
+        return internals.clone();
+    }
+
+    /** converts one set of internal coordinates.
+     * @param internals lengths, angles, torsions
+     * @return cartesians as x0, y0, z0... indexed as molecule.getAtoms();
+     *     NaN for atoms not in zMatrix
+     */
+    public double[] toCartesians(double[] internals) {
+        double[] xyz = new double[3 * atomCount];
+        toCartesians(internals, xyz);
+        return xyz;
+    }
+
+    /** converts one set of internal coordinates into an existing array.
+     * @param internals lengths, angles, torsions
+     * @param xyz length 3 * getAtomCount(); overwritten
+     * @throws RuntimeException if arrays are the wrong length
+     */
+    public void toCartesians(double[] internals, double[] xyz) {
+        if (internals.length != getInternalCount()) {
+            throw new RuntimeException("expected "+getInternalCount()+
+                " internal coordinates, found "+internals.length);
+        }
+        if (xyz.length != 3 * atomCount) {
+            throw new RuntimeException("expected "+3 * atomCount+
+                " cartesians, found "+xyz.length);
+        }
+        Arrays.fill(xyz, Double.NaN);
+        if (first0 >= 0) {
+            set(xyz, first0, 0, 0, 0);
+        }
+        if (first1 >= 0) {
+            set(xyz, first1, internals[0], 0, 0);
+        }
+        if (first2 >= 0) {
+            double l0 = internals[0];
+            double l1 = internals[1];
+            double angle = internals[nlength] * DTOR;
+            set(xyz, first2, l0 - l1 * Math.cos(angle), l1 * Math.sin(angle), 0);
+        }
+        for (int k = 0; k < ntorsion; k++) {
+            place(xyz, 4 * k, internals[k + 2],
+                internals[nlength + k + 1] * DTOR,
+                internals[nlength + nangle + k] * DTOR);
+        }
+    }
+
+    // as CMLZMatrix.setXYZ3()
+    private void place(double[] xyz, int t, double len, double ang, double tangle) {
+        int p0 = 3 * torsionAtoms[t];
+        int p1 = 3 * torsionAtoms[t + 1];
+        int p2 = 3 * torsionAtoms[t + 2];
+        double v01x = xyz[p0] - xyz[p1];
+        double v01y = xyz[p0 + 1] - xyz[p1 + 1];
+        double v01z = xyz[p0 + 2] - xyz[p1 + 2];
+        double v12x = xyz[p2] - xyz[p1];
+        double v12y = xyz[p2 + 1] - xyz[p1 + 1];
+        double v12z = xyz[p2 + 2] - xyz[p1 + 2];
+        // cross1 = v01 x v12
+        double c1x = v01y * v12z - v01z * v12y;
+        double c1y = v01z * v12x - v01x * v12z;
+        double c1z = v01x * v12y - v01y * v12x;
+        double r = 1.0 / Math.sqrt(c1x * c1x + c1y * c1y + c1z * c1z);
+        c1x *= r;
+        c1y *= r;
+        c1z *= r;
+        // cross2 = v12 x cross1
+        double c2x = v12y * c1z - v12z * c1y;
+        double c2y = v12z * c1x - v12x * c1z;
+        double c2z = v12x * c1y - v12y * c1x;
+        r = 1.0 / Math.sqrt(c2x * c2x + c2y * c2y + c2z * c2z);
+        c2x *= r;
+        c2y *= r;
+        c2z *= r;
+        double s = Math.sin(-tangle);
+        double c = Math.cos(tangle);
+        double c3x = c1x * s + c2x * c;
+        double c3y = c1y * s + c2y * c;
+        double c3z = c1z * s + c2z * c;
+        r = 1.0 / Math.sqrt(c3x * c3x + c3y * c3y + c3z * c3z);
+        double a = len * Math.sin(ang) * r;
+        double b = len * Math.cos(ang) /
+            Math.sqrt(v12x * v12x + v12y * v12y + v12z * v12z);
+        set(xyz, torsionAtoms[t + 3],
+            xyz[p2] + c3x * a - v12x * b,
+            xyz[p2 + 1] + c3y * a - v12y * b,
+            xyz[p2 + 2] + c3z * a - v12z * b);
+    }
+
+    private static void set(double[] xyz, int atom, double x, double y, double z) {
+        xyz[3 * atom] = x;
+        xyz[3 * atom + 1] = y;
+        xyz[3 * atom + 2] = z;
+    }
+
+    /** converts many sets of internal coordinates.
+     * @param internals one array for each conformer
+     * @return cartesians for each conformer
+     */
+    public double[][] toCartesians(double[][] internals) {
+        double[][] xyz = new double[internals.length][];
+        convert(internals, xyz, 0, internals.length);
+        return xyz;
+    }
+
+    /** converts many sets of internal coordinates in parallel.
+     * conformers are split into chunks submitted to executor. The
+     * executor is not shut down.
+     * @param internals one array for each conformer
+     * @param executor
+     * @return cartesians for each conformer
+     * @throws RuntimeException if any conversion fails or the thread is
+     *     interrupted
+     */
+    public double[][] toCartesians(final double[][] internals, ExecutorService executor) {
+        final double[][] xyz = new double[internals.length][];
+        List<Callable<Object>> tasks = new ArrayList<Callable<Object>>();
+        for (int start = 0; start < internals.length; start += CHUNK) {
+            final int from = start;
+            final int to = Math.min(internals.length, start + CHUNK);
+            tasks.add(new Callable<Object>() {
+                public Object call() {
+                    convert(internals, xyz, from, to);
+                    return null;
+                }
+            });
+        }
+        try {
+            for (Future<Object> future : executor.invokeAll(tasks)) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("interrupted", e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException("cannot convert zMatrix", e.getCause());
+        }
+        return xyz;
+    }
+
+    private void convert(double[][] internals, double[][] xyz, int from, int to) {
+        for (int i = from; i < to; i++) {
+            xyz[i] = toCartesians(internals[i]);
+        }
+    }
+
+    /** sets cartesians on atoms of molecule.
+     * atoms with NaN coordinates are not altered
+     * @param molecule as compiled
+     * @param xyz from toCartesians()
+     * @throws RuntimeException if molecule has wrong number of atoms
+     */
+    public void setXYZ3(CMLMolecule molecule, double[] xyz) {
+        List<CMLAtom> atoms = molecule.getAtoms();
+        if (atoms.size() != atomCount || xyz.length != 3 * atomCount) {
+            throw new RuntimeException("molecule does not match zMatrix plan");
+        }
+        for (int i = 0; i < atomCount; i++) {
+            if (!Double.isNaN(xyz[3 * i])) {
+                atoms.get(i).setXYZ3(new Point3(xyz[3 * i], xyz[3 * i + 1], xyz[3 * i + 2]));
+            }
+        }
+    }
+}
@@ -0,0 +1,118 @@
+/**
+ *    Copyright 2011 Peter Murray-Rust et. al.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package org.xmlcml.cml.base;
+
+import java.util.regex.Pattern;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.xmlcml.cml.element.CMLAtom;
+
+/**
+ * tests for CMLBuilder.
+ * 
+ * @author pmr
+ * 
+ */
+public class CMLBuilderTest {
+
+	static String BAD_ID = "<atom id='a 1' elementType='C' "+CMLConstants.CML_XMLNS+"/>";
+	static String GOOD = "<molecule id='m1' "+CMLConstants.CML_XMLNS+">" +
+			"<atomArray><atom id='a1' elementType='C' formalCharge='-1'/><atom id='a2' elementType='O'/></atomArray>" +
+			"<bondArray><bond atomRefs2='a1 a2' order='2'/></bondArray>" +
+			"</molecule>";
+
+	/**
+	 * values are not checked by default.
+	 */
+	@Test
+	public void testValidationOff() {
+		CMLBuilder builder = new CMLBuilder();
+		Assert.assertEquals("default", CMLBuilder.Validation.OFF, builder.getValidation());
+		CMLAtom atom = (CMLAtom) builder.parseString(BAD_ID);
+		Assert.assertEquals("id", "a 1", atom.getId());
+		Assert.assertNull("type", ((CMLAttribute) atom.getAttribute("id")).getCmlType());
+	}
+
+	/**
+	 * values checked during parse.
+	 */
+	@Test
+	public void testValidationStrict() {
+		CMLBuilder builder = new CMLBuilder(CMLBuilder.Validation.STRICT);
+		CMLElement molecule = (CMLElement) builder.parseString(GOOD);
+		Assert.assertEquals("atoms", 2, CMLUtil.getQueryNodes(molecule, ".//*[local-name()='atom']").size());
+		try {
+			builder.parseString(BAD_ID);
+			Assert.fail("should reject id");
+		} catch (RuntimeException e) {
+			Assert.assertTrue(e.getCause().getMessage(), e.getCause().getMessage().contains("does not match pattern"));
+		}
+		// builder remains usable
+		builder.parseString(GOOD);
+	}
+
+	/**
+	 * values checked on first access.
+	 */
+	@Test
+	public void testValidationDeferred() {
+		CMLBuilder builder = new CMLBuilder();
+		builder.setValidation(CMLBuilder.Validation.DEFERRED);
+		CMLAtom atom = (CMLAtom) builder.parseString(BAD_ID);
+		Assert.assertEquals("unchecked", "C", atom.getElementType());
+		try {
+			atom.getId();
+			Assert.fail("should reject id");
+		} catch (RuntimeException e) {
+			Assert.assertTrue(e.getMessage(), e.getMessage().contains("does not match pattern"));
+		}
+		// still rejected on later access
+		try {
+			atom.getId();
+			Assert.fail("should reject id");
+		} catch (RuntimeException e) {
+		}
+		// good values are checked once and then hold their type
+		atom = (CMLAtom) builder.parseString(GOOD).query(".//*[@id='a1']").get(0);
+		Assert.assertEquals("charge", -1, atom.getFormalCharge());
+		Assert.assertEquals("id", "a1", atom.getId());
+		CMLAttribute id = (CMLAttribute) atom.getAttribute("id");
+		Assert.assertNotNull("type", id.getCmlType());
+		try {
+			id.setCMLValue("a 2");
+			Assert.fail("should reject id");
+		} catch (RuntimeException e) {
+		}
+	}
+
+	/**
+	 * pattern is compiled once.
+	 */
+	@Test
+	public void testCompiledPattern() {
+		CMLType type = new CMLType();
+		Assert.assertNull("no pattern", type.getCompiledPattern());
+		type.setPattern("[a-z]+");
+		Pattern pattern = type.getCompiledPattern();
+		Assert.assertEquals("pattern", "[a-z]+", pattern.pattern());
+		Assert.assertSame("cached", pattern, type.getCompiledPattern());
+		type.setPattern("[A-Z]+");
+		Assert.assertEquals("recompiled", "[A-Z]+", type.getCompiledPattern().pattern());
+	}
+
+}
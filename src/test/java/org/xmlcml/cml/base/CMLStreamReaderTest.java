@@ -0,0 +1,141 @@
+/**
+ *    Copyright 2011 Peter Murray-Rust et. al.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package org.xmlcml.cml.base;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import nu.xom.Document;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.xmlcml.cml.element.CMLMolecule;
+
+/**
+ * tests for CMLStreamReader.
+ * 
+ * @author pmr
+ * 
+ */
+public class CMLStreamReaderTest {
+
+	private static InputStream makeMoleculeList(int nMolecules) throws Exception {
+		StringBuilder sb = new StringBuilder();
+		sb.append("<cml " + CMLConstants.CML_XMLNS + " id='root'>\n");
+		sb.append("  <moleculeList>\n");
+		for (int i = 0; i < nMolecules; i++) {
+			sb.append("    <molecule id='m" + i + "'><atomArray>");
+			for (int j = 0; j <= i % 3; j++) {
+				sb.append("<atom id='a" + j + "' elementType='C'/>");
+			}
+			sb.append("</atomArray></molecule>\n");
+		}
+		sb.append("  </moleculeList>\n");
+		sb.append("</cml>");
+		return new ByteArrayInputStream(sb.toString().getBytes("UTF-8"));
+	}
+
+	/**
+	 * iterate over molecules.
+	 * @throws Exception
+	 */
+	@Test
+	public void testIterator() throws Exception {
+		CMLStreamReader<CMLMolecule> reader = CMLStreamReader.createMoleculeReader(makeMoleculeList(1000));
+		int count = 0;
+		try {
+			for (CMLMolecule molecule : reader) {
+				Assert.assertEquals("id", "m" + count, molecule.getId());
+				Assert.assertEquals("atoms", count % 3 + 1, molecule.getAtomCount());
+				Assert.assertNull("detached", molecule.getParent());
+				count++;
+			}
+		} finally {
+			reader.close();
+		}
+		Assert.assertEquals("molecules", 1000, count);
+		Assert.assertFalse("exhausted", reader.hasNext());
+	}
+
+	/**
+	 * push-style parse keeps only the skeleton.
+	 */
+	@Test
+	public void testParse() throws Exception {
+		final List<CMLMolecule> molecules = new ArrayList<CMLMolecule>();
+		String s = "<cml " + CMLConstants.CML_XMLNS + ">" +
+				"<molecule id='outer'><molecule id='inner1'/><molecule id='inner2'/></molecule>" +
+				"<molecule id='m2'/>" +
+				"</cml>";
+		Document doc = CMLStreamReader.parse(new ByteArrayInputStream(s.getBytes("UTF-8")), CMLMolecule.class, 
+				new CMLStreamingNodeFactory.Handler<CMLMolecule>() {
+			public void handle(CMLMolecule molecule) {
+				molecules.add(molecule);
+			}
+		});
+		Assert.assertEquals("outermost only", 2, molecules.size());
+		Assert.assertEquals("outer", "outer", molecules.get(0).getId());
+		Assert.assertEquals("children kept", 2, molecules.get(0).getMoleculeElements().size());
+		Assert.assertEquals("skeleton", 0, doc.getRootElement().getChildCount());
+
+		// root molecule is handed off and kept
+		molecules.clear();
+		s = "<molecule " + CMLConstants.CML_XMLNS + " id='root'/>";
+		doc = CMLStreamReader.parse(new ByteArrayInputStream(s.getBytes("UTF-8")), CMLMolecule.class, 
+				new CMLStreamingNodeFactory.Handler<CMLMolecule>() {
+			public void handle(CMLMolecule molecule) {
+				molecules.add(molecule);
+			}
+		});
+		Assert.assertEquals("root", 1, molecules.size());
+		Assert.assertSame("root", molecules.get(0), doc.getRootElement());
+	}
+
+	/**
+	 * errors surface in the consumer.
+	 * @throws Exception
+	 */
+	@Test
+	public void testBadDocument() throws Exception {
+		String s = "<cml " + CMLConstants.CML_XMLNS + "><molecule id='m1'/><molecule id='m2'></cml>";
+		CMLStreamReader<CMLMolecule> reader = CMLStreamReader.createMoleculeReader(
+				new ByteArrayInputStream(s.getBytes("UTF-8")));
+		Assert.assertEquals("first", "m1", reader.next().getId());
+		try {
+			reader.hasNext();
+			Assert.fail("should throw parse error");
+		} catch (RuntimeException e) {
+			// OK
+		}
+		Assert.assertFalse("finished", reader.hasNext());
+		reader.close();
+	}
+
+	/**
+	 * abandon iteration early.
+	 * @throws Exception
+	 */
+	@Test
+	public void testClose() throws Exception {
+		CMLStreamReader<CMLMolecule> reader = CMLStreamReader.createMoleculeReader(makeMoleculeList(1000));
+		Assert.assertEquals("first", "m0", reader.next().getId());
+		reader.close();
+		Assert.assertFalse("closed", reader.hasNext());
+	}
+}
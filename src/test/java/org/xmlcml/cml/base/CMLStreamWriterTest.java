@@ -0,0 +1,124 @@
+/**
+ *    Copyright 2011 Peter Murray-Rust et. al.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package org.xmlcml.cml.base;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+
+import nu.xom.Element;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.xmlcml.cml.element.CMLAtom;
+import org.xmlcml.cml.element.CMLCml;
+import org.xmlcml.cml.element.CMLMolecule;
+import org.xmlcml.cml.element.CMLMoleculeList;
+import org.xmlcml.cml.element.CMLReaction;
+
+/**
+ * tests for CMLStreamWriter.
+ * 
+ * @author pmr
+ * 
+ */
+public class CMLStreamWriterTest {
+
+	private static CMLMolecule makeMolecule(String id) {
+		CMLMolecule molecule = new CMLMolecule();
+		molecule.setId(id);
+		CMLAtom atom = new CMLAtom();
+		atom.setId("a1");
+		atom.setElementType("C");
+		molecule.addAtom(atom);
+		return molecule;
+	}
+
+	/**
+	 * write molecules and read them back.
+	 * @throws Exception
+	 */
+	@Test
+	public void testWriteElement() throws Exception {
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		CMLStreamWriter writer = new CMLStreamWriter(baos);
+		CMLCml parent = new CMLCml();
+		CMLMolecule attached = makeMolecule("m0");
+		parent.appendChild(attached);
+		writer.writeElement(attached);
+		for (int i = 1; i < 100; i++) {
+			writer.writeElement(makeMolecule("m" + i));
+		}
+		writer.writeElement(new CMLReaction());
+		writer.close();
+		Assert.assertEquals("count", 101, writer.getCount());
+		Assert.assertSame("not moved", parent, attached.getParent());
+
+		Element root = new CMLBuilder().build(new ByteArrayInputStream(baos.toByteArray())).getRootElement();
+		Assert.assertTrue("cml", root instanceof CMLCml);
+		Assert.assertEquals("children", 101, root.getChildElements().size());
+		CMLMolecule molecule = (CMLMolecule) root.getChildElements().get(42);
+		Assert.assertEquals("id", "m42", molecule.getId());
+		Assert.assertEquals("atoms", 1, molecule.getAtomCount());
+		Assert.assertTrue("reaction", root.getChildElements().get(100) instanceof CMLReaction);
+
+		try {
+			writer.writeElement(makeMolecule("late"));
+			Assert.fail("should throw after close");
+		} catch (RuntimeException e) {
+			// OK
+		}
+	}
+
+	/**
+	 * indented output with moleculeList root matches the XOM serializer.
+	 * @throws Exception
+	 */
+	@Test
+	public void testIndent() throws Exception {
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		CMLMoleculeList root = new CMLMoleculeList();
+		root.setId("list");
+		CMLStreamWriter writer = new CMLStreamWriter(baos, root);
+		writer.setIndent(2);
+		writer.writeElement(makeMolecule("m1"));
+		writer.writeElement(makeMolecule("m2"));
+		writer.close();
+
+		CMLMoleculeList list = new CMLMoleculeList();
+		list.setId("list");
+		list.addMolecule(makeMolecule("m1"));
+		list.addMolecule(makeMolecule("m2"));
+		ByteArrayOutputStream expected = new ByteArrayOutputStream();
+		CMLSerializer serializer = new CMLSerializer(expected);
+		serializer.setIndent(2);
+		serializer.write(new nu.xom.Document(list));
+		Assert.assertEquals("indented", expected.toString("UTF-8"), baos.toString("UTF-8"));
+	}
+
+	/**
+	 * empty document.
+	 * @throws Exception
+	 */
+	@Test
+	public void testEmpty() throws Exception {
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		CMLStreamWriter writer = new CMLStreamWriter(baos);
+		writer.close();
+		Element root = new CMLBuilder().build(new ByteArrayInputStream(baos.toByteArray())).getRootElement();
+		Assert.assertEquals("empty", 0, root.getChildCount());
+	}
+}
@@ -0,0 +1,113 @@
+/**
+ *    Copyright 2011 Peter Murray-Rust et. al.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package org.xmlcml.cml.base;
+
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.xmlcml.cml.element.CMLMolecule;
+import org.xmlcml.cml.element.CMLReaction;
+import org.xmlcml.cml.element.CMLReaction.Component;
+
+/**
+ * test DescendantIndex through CMLElement.
+ * 
+ * @author pm286
+ */
+public class DescendantIndexTest {
+
+	private static final String REACTION =
+		"<reaction xmlns='"+CMLConstants.CML_NS+"' id='r1'>" +
+		"  <reactantList>" +
+		"    <reactant><molecule id='m1'><molecule id='m1a'/></molecule></reactant>" +
+		"    <reactant><molecule id='m2'/></reactant>" +
+		"  </reactantList>" +
+		"  <productList>" +
+		"    <product><molecule id='m3'/></product>" +
+		"  </productList>" +
+		"</reaction>";
+
+	private CMLReaction parse() {
+		return (CMLReaction) new CMLBuilder().parseString(REACTION);
+	}
+
+	private static String ids(List<? extends CMLElement> elements) {
+		StringBuilder sb = new StringBuilder();
+		for (CMLElement element : elements) {
+			sb.append(element.getId()).append(' ');
+		}
+		return sb.toString().trim();
+	}
+
+	/** */
+	@Test
+	public void testGetDescendantElements() {
+		CMLReaction reaction = parse();
+		Assert.assertEquals("all", "m1 m1a m2 m3",
+				ids(reaction.getDescendantElements(CMLMolecule.TAG)));
+		Assert.assertEquals("xpath", ids(reaction.getElements(".//cml:molecule")),
+				ids(reaction.getDescendantElements(CMLMolecule.TAG)));
+		Assert.assertEquals("not nested", "m1 m2 m3",
+				ids(reaction.getDescendantElements(CMLMolecule.TAG, false)));
+		CMLElement reactantList = (CMLElement) reaction.getReactantList();
+		Assert.assertEquals("subtree", "m1 m1a m2",
+				ids(reactantList.getDescendantElements(CMLMolecule.TAG)));
+		CMLElement m1 = reaction.getDescendantElements(CMLMolecule.TAG).get(0);
+		Assert.assertEquals("excludes self", "m1a",
+				ids(m1.getDescendantElements(CMLMolecule.TAG)));
+		Assert.assertEquals("none", 0, m1.getDescendantElements("atom").size());
+		Assert.assertEquals("reactants", "m1 m2",
+				ids(reaction.getMolecules(Component.REACTANT)));
+	}
+
+	/** */
+	@Test
+	public void testMutation() {
+		CMLReaction reaction = parse();
+		CMLElement reactantList = (CMLElement) reaction.getReactantList();
+		Assert.assertEquals("before", "m1 m1a m2 m3",
+				ids(reaction.getDescendantElements(CMLMolecule.TAG)));
+		CMLMolecule molecule = new CMLMolecule();
+		molecule.setId("m4");
+		reactantList.getChildCMLElements().get(1).appendChild(molecule);
+		Assert.assertEquals("appended", "m1 m1a m2 m4 m3",
+				ids(reaction.getDescendantElements(CMLMolecule.TAG)));
+		Assert.assertEquals("subtree", "m1 m1a m2 m4",
+				ids(reactantList.getDescendantElements(CMLMolecule.TAG)));
+		reaction.getDescendantElements(CMLMolecule.TAG).get(0).detach();
+		Assert.assertEquals("detached", "m2 m4 m3",
+				ids(reaction.getDescendantElements(CMLMolecule.TAG)));
+		Assert.assertEquals("subtree", "m2 m4",
+				ids(reactantList.getDescendantElements(CMLMolecule.TAG)));
+	}
+
+	/** */
+	@Test
+	public void testGetDescendants() {
+		CMLReaction reaction = parse();
+		List<CMLElement> all = reaction.getDescendants();
+		Assert.assertEquals("all", 10, all.size());
+		Assert.assertSame("self first", reaction, all.get(0));
+		Assert.assertEquals("with id", "r1 m1 m1a m2 m3",
+				ids(reaction.getDescendants(null, "id", true)));
+		Assert.assertEquals("outer", "r1",
+				ids(reaction.getDescendants(null, "id", false)));
+		Assert.assertEquals("molecules", "m1 m2 m3",
+				ids(reaction.getDescendants(CMLMolecule.TAG, false)));
+	}
+}
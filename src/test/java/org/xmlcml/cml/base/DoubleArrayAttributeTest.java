@@ -140,4 +140,34 @@ public class DoubleArrayAttributeTest {
 				daa1.getDoubleArray(), EC.EPS);
 	}
 
+	/**
+	 * hand-written parser must agree exactly with Double.parseDouble.
+	 */
+	@Test
+	public void testParseDoubles() {
+		String[] values = { "0", "-0.0", "+1.5", "3.14159", "1e-7", "2.5E+10",
+				"123456789012345", "1234567890123456789", "0.1", "0.30000000000000004",
+				"1e22", "1e23", "4.9e-324", ".5", "5.", "-1.0e-300" };
+		StringBuilder sb = new StringBuilder("\n ");
+		for (String value : values) {
+			sb.append(value).append(" \t ");
+		}
+		double[] dd = ArrayParser.parseDoubles(sb.toString());
+		Assert.assertEquals("count", values.length, dd.length);
+		for (int i = 0; i < values.length; i++) {
+			Assert.assertEquals(values[i], Double.doubleToLongBits(Double.parseDouble(values[i])),
+					Double.doubleToLongBits(dd[i]));
+		}
+		daa1.setCMLValue("  1  2.50\n-3 ");
+		DoubleTestBase.assertEquals("values", new double[] { 1.0, 2.5, -3.0 },
+				daa1.getDoubleArray(), EC.EPS);
+		Assert.assertEquals("normalized", "1 2.50 -3", daa1.getValue());
+		try {
+			daa1.setCMLValue("1.0 x 2.0");
+			Assert.fail("should reject x");
+		} catch (RuntimeException e) {
+			Assert.assertEquals("Bad double value: x at 1 in 1.0 x 2.0", e.getMessage());
+		}
+	}
+
 }
@@ -0,0 +1,154 @@
+/**
+ *    Copyright 2011 Peter Murray-Rust et. al.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package org.xmlcml.cml.base;
+
+import java.util.List;
+
+import nu.xom.Attribute;
+import nu.xom.Element;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.xmlcml.cml.element.CMLAtom;
+import org.xmlcml.cml.element.CMLMolecule;
+
+/**
+ * test IdIndex through CMLElement.
+ * 
+ * @author pm286
+ */
+public class IdIndexTest {
+
+	private static final String XML =
+		"<cml xmlns='"+CMLConstants.CML_NS+"' id='c1'>" +
+		"  <molecule id='m1'>" +
+		"    <atomArray><atom id='a1'/><atom id='a2'/></atomArray>" +
+		"  </molecule>" +
+		"  <molecule id='m2'>" +
+		"    <atomArray><atom id='a1'/></atomArray>" +
+		"  </molecule>" +
+		"  <element ref='m2'/>" +
+		"</cml>";
+
+	private CMLElement parse() {
+		return (CMLElement) new CMLBuilder().parseString(XML);
+	}
+
+	private static String ids(List<CMLElement> elements) {
+		StringBuilder sb = new StringBuilder();
+		for (CMLElement element : elements) {
+			sb.append(element.getLocalName()).append(' ');
+		}
+		return sb.toString().trim();
+	}
+
+	/** */
+	@Test
+	public void testGetElementsById() {
+		CMLElement cml = parse();
+		Assert.assertEquals("unique", "molecule", ids(cml.getElementsById("m1", false)));
+		Assert.assertEquals("duplicate", 2, cml.getElementsById("a1", false).size());
+		Assert.assertEquals("none", 0, cml.getElementsById("zz", false).size());
+		CMLElement m2 = cml.getElementsById("m2", false).get(0);
+		Assert.assertEquals("subtree", 1, m2.getElementsById("a1", false).size());
+		Assert.assertEquals("self", 1, m2.getElementsById("m2", false).size());
+		Assert.assertEquals("descendants", 0, m2.getDescendantCMLElementsById("m2").size());
+		Assert.assertEquals("descendants", 2, cml.getDescendantCMLElementsById("a1").size());
+	}
+
+	/** */
+	@Test
+	public void testIdChanges() {
+		CMLElement cml = parse();
+		CMLMolecule m1 = (CMLMolecule) cml.getElementsById("m1", false).get(0);
+		m1.setId("m3");
+		Assert.assertEquals("old", 0, cml.getElementsById("m1", false).size());
+		Assert.assertEquals("new", 1, cml.getElementsById("m3", false).size());
+		m1.resetId("m4");
+		Assert.assertEquals("reset", 1, cml.getElementsById("m4", false).size());
+		Assert.assertEquals("reset", 0, cml.getElementsById("m3", false).size());
+		m1.getAttribute("id").setValue("m5");
+		Assert.assertSame("setValue", m1, cml.getElementsById("m5", false).get(0));
+		CMLAtom a2 = (CMLAtom) cml.getElementsById("a2", false).get(0);
+		a2.removeAttribute("id");
+		Assert.assertEquals("removed", 0, cml.getElementsById("a2", false).size());
+		a2.setId("a6");
+		Assert.assertEquals("setId", 1, cml.getElementsById("a6", false).size());
+		a2.setAttribute("id", "a7");
+		Assert.assertEquals("setAttribute", 1, cml.getElementsById("a7", false).size());
+		Assert.assertEquals("setAttribute", 0, cml.getElementsById("a6", false).size());
+	}
+
+	/** */
+	@Test
+	public void testAttachDetach() {
+		CMLElement cml = parse();
+		CMLMolecule m1 = (CMLMolecule) cml.getElementsById("m1", false).get(0);
+		m1.detach();
+		Assert.assertEquals("detached", 0, cml.getElementsById("m1", false).size());
+		Assert.assertEquals("detached", 1, cml.getElementsById("a1", false).size());
+		Assert.assertEquals("detached", 0, cml.getElementsById("a2", false).size());
+		Assert.assertEquals("own tree", 1, m1.getElementsById("a2", false).size());
+		m1.setId("m3");
+		cml.appendChild(m1);
+		Assert.assertEquals("attached", 1, cml.getElementsById("m3", false).size());
+		Assert.assertEquals("attached", 2, cml.getElementsById("a1", false).size());
+		CMLMolecule m4 = new CMLMolecule();
+		m4.setId("m4");
+		cml.replaceChild(m1, m4);
+		Assert.assertEquals("replaced", 0, cml.getElementsById("m3", false).size());
+		Assert.assertEquals("replaced", 1, cml.getElementsById("m4", false).size());
+		Assert.assertEquals("refresh", ids(cml.getElementsById("a1", false)),
+				ids(cml.getElementsById("a1", true)));
+	}
+
+	/** */
+	@Test
+	public void testDereferenceRef() {
+		CMLElement cml = parse();
+		CMLElement element = (CMLElement) cml.getChildCMLElements().get(2);
+		CMLElement m2 = cml.getElementsById("m2", false).get(0);
+		Assert.assertSame("ref", m2, element.dereferenceRef());
+		m2.detach();
+		CMLMolecule m3 = new CMLMolecule();
+		m3.setId("m2");
+		cml.appendChild(m3);
+		Assert.assertSame("ref", m3, element.dereferenceRef());
+	}
+
+	/** */
+	@Test
+	public void testDereferenceRefUnderNonCMLParent() {
+		Element w = new CMLBuilder().parseString(
+			"<w><molecule xmlns='"+CMLConstants.CML_NS+"' id='x'/>" +
+			"<molecule xmlns='"+CMLConstants.CML_NS+"' ref='x'/></w>");
+		Assert.assertFalse("non-CML root", w instanceof CMLElement);
+		CMLElement x = (CMLElement) w.getChildElements().get(0);
+		CMLElement ref = (CMLElement) w.getChildElements().get(1);
+		Assert.assertSame("sibling tree", x, ref.dereferenceRef());
+		// CML element below a non-CML child is not indexed
+		CMLElement cml = parse();
+		Element foo = new Element("foo");
+		CMLMolecule m3 = new CMLMolecule();
+		m3.setId("m3");
+		foo.appendChild(m3);
+		cml.appendChild(foo);
+		CMLElement element = (CMLElement) cml.getChildCMLElements().get(2);
+		element.addAttribute(new Attribute("ref", "m3"));
+		Assert.assertSame("below non-CML", m3, element.dereferenceRef());
+	}
+}
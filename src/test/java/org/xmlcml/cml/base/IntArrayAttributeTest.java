@@ -137,4 +137,24 @@ public class IntArrayAttributeTest {
 		}
 	}
 
+	/**
+	 * hand-written parser must agree with Integer.parseInt.
+	 */
+	@Test
+	public void testParseInts() {
+		int[] ii = ArrayParser.parseInts(" 0 -7\n+12 2147483647 -2147483648 ");
+		String s = Int.testEquals(new int[] { 0, -7, 12, Integer.MAX_VALUE, Integer.MIN_VALUE }, ii);
+		Assert.assertNull("parse", s);
+		String[] bad = { "2147483648", "1.0", "-", "12345678901" };
+		for (String b : bad) {
+			try {
+				ArrayParser.parseInts("1 " + b);
+				Assert.fail("should reject " + b);
+			} catch (RuntimeException e) {
+			}
+		}
+		daa1.setCMLValue(" 3\t 5 ");
+		Assert.assertEquals("normalized", "3 5", daa1.getValue());
+	}
+
 }
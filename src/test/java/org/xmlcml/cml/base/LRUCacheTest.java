@@ -0,0 +1,58 @@
+/**
+ *    Copyright 2011 Peter Murray-Rust et. al.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package org.xmlcml.cml.base;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * test LRUCache.
+ * 
+ * @author pm286
+ * 
+ */
+public class LRUCacheTest {
+
+	@Test
+	public void testEviction() {
+		LRUCache<String, Integer> cache = new LRUCache<String, Integer>(2);
+		cache.put("a", 1);
+		cache.put("b", 2);
+		// touch a so b is least recently used
+		Assert.assertEquals("a", Integer.valueOf(1), cache.get("a"));
+		cache.put("c", 3);
+		Assert.assertEquals("bounded", 2, cache.size());
+		Assert.assertNull("evicted", cache.get("b"));
+		Assert.assertEquals("kept", Integer.valueOf(1), cache.get("a"));
+		Assert.assertEquals("added", Integer.valueOf(3), cache.get("c"));
+		cache.clear();
+		Assert.assertEquals("cleared", 0, cache.size());
+	}
+
+	@Test
+	public void testPutIfAbsent() {
+		LRUCache<String, Integer> cache = new LRUCache<String, Integer>(4);
+		Assert.assertEquals("added", Integer.valueOf(1), cache.putIfAbsent("a", 1));
+		Assert.assertEquals("present", Integer.valueOf(1), cache.putIfAbsent("a", 2));
+		Assert.assertEquals("unchanged", Integer.valueOf(1), cache.get("a"));
+	}
+
+	@Test(expected = RuntimeException.class)
+	public void testBadSize() {
+		new LRUCache<String, Integer>(0);
+	}
+}
@@ -0,0 +1,160 @@
+/**
+ *    Copyright 2011 Peter Murray-Rust et. al.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package org.xmlcml.cml.base;
+
+import nu.xom.Document;
+import nu.xom.Element;
+import nu.xom.Node;
+import nu.xom.Nodes;
+import nu.xom.XPathContext;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * test QueryPlan against XOM.
+ * 
+ * @author pm286
+ */
+public class QueryPlanTest {
+
+	private static final String XML =
+		"<cml xmlns='"+CMLConstants.CML_NS+"' xmlns:x='http://x'>" +
+		"  <molecule id='m1'>" +
+		"    <atomArray><atom id='a1'/><atom id='a2'/></atomArray>" +
+		"    <molecule id='m1a'><atomArray><atom id='a3'/></atomArray></molecule>" +
+		"  </molecule>" +
+		"  <x:foo id='f1'><bar xmlns='' id='b1'/><x:foo id='f2'/></x:foo>" +
+		"  <list id='l1'><molecule id='m2'/><scalar id='s1'>1</scalar></list>" +
+		"</cml>";
+
+	private static final String[] XPATHS = {
+		"./cml:molecule",
+		".//cml:molecule",
+		"cml:molecule",
+		"cml:molecule/cml:atomArray/cml:atom",
+		".//cml:atomArray/cml:atom",
+		".//cml:molecule/cml:atomArray",
+		"./cml:molecule//cml:atom",
+		".//cml:atom",
+		"./*",
+		".//*",
+		".//x:*",
+		".//x:foo",
+		".//bar",
+		"./cml:list/*",
+		".//cml:scalar",
+		".//cml:none",
+		// evaluated by XOM
+		".//cml:molecule[@id='m2']",
+		".//@id",
+		"//cml:atom",
+		".//cml:scalar/text()",
+		".",
+		"..",
+		"./cml:list | ./cml:molecule",
+	};
+
+	private static String ids(Nodes nodes) {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < nodes.size(); i++) {
+			Node node = nodes.get(i);
+			sb.append((node instanceof Element) ?
+					((Element) node).getAttributeValue("id") : node.getValue());
+			sb.append(' ');
+		}
+		return sb.toString().trim();
+	}
+
+	/** */
+	@Test
+	public void testQuery() {
+		Document doc = new CMLBuilder().parseString(XML).getDocument();
+		XPathContext context = new XPathContext("cml", CMLConstants.CML_NS);
+		context.addNamespace("x", "http://x");
+		Element root = doc.getRootElement();
+		for (String xpath : XPATHS) {
+			Assert.assertEquals(xpath, ids(root.query(xpath, context)),
+					ids(QueryPlan.query(root, xpath, context)));
+			Element m1 = root.getChildElements().get(0);
+			Assert.assertEquals(xpath, ids(m1.query(xpath, context)),
+					ids(QueryPlan.query(m1, xpath, context)));
+		}
+		Assert.assertEquals("document", "m1 m1a m2",
+				ids(QueryPlan.query(doc, ".//cml:molecule", context)));
+		Assert.assertEquals("document child", "",
+				ids(QueryPlan.query(doc, "./cml:molecule", context)));
+	}
+
+	/** */
+	@Test
+	public void testParse() {
+		Assert.assertEquals("cmlQuery", "m1 m1a m2",
+				ids(((CMLElement) new CMLBuilder().parseString(XML)).cmlQuery(".//cml:molecule")));
+		String[] unsupported = {
+			"", ".", "/cml", "//cml", "a/", "a///b", "a[1]", "@id", "a | b",
+			"text()", "child::a", "a/..", "1a", "$x",
+		};
+		for (String xpath : unsupported) {
+			Assert.assertNull(xpath,
+					QueryPlan.parse(xpath).evaluate(new Element("a"), null));
+		}
+		Element a = new Element("a");
+		a.appendChild(new Element("b"));
+		Assert.assertEquals("no namespace", 1,
+				QueryPlan.parse("./b").evaluate(a, null).size());
+		Assert.assertNull("unbound prefix",
+				QueryPlan.parse("./x:b").evaluate(a, null));
+		Assert.assertNull("nested then step",
+				QueryPlan.parse(".//a/b").evaluate(parseNested(), null));
+	}
+
+	private Element parseNested() {
+		Element root = new Element("root");
+		Element outer = new Element("a");
+		root.appendChild(outer);
+		Element inner = new Element("a");
+		outer.appendChild(inner);
+		inner.appendChild(new Element("b"));
+		outer.appendChild(new Element("b"));
+		return root;
+	}
+
+	/** */
+	@Test
+	public void testUnboundPrefix() {
+		Element root = new CMLBuilder().parseString(XML);
+		try {
+			CMLUtil.getQueryNodes(root, ".//y:foo", CMLConstants.CML_XPATH);
+			Assert.fail("should throw");
+		} catch (Exception e) {
+			// expected from XOM
+		}
+	}
+
+	/** */
+	@Test
+	public void testCache() {
+		String xpath = "./cml:molecule/cml:uncached"+System.nanoTime();
+		int size = QueryPlan.getCacheSize();
+		CMLUtil.getQueryNodes(new Element("a"), xpath, CMLConstants.CML_XPATH);
+		CMLUtil.getQueryNodes(new Element("a"), xpath, CMLConstants.CML_XPATH);
+		Assert.assertTrue("cached", QueryPlan.getCacheSize() <= QueryPlan.CACHE_SIZE);
+		Assert.assertTrue("added", QueryPlan.getCacheSize() == size + 1 ||
+				size == QueryPlan.CACHE_SIZE);
+	}
+}
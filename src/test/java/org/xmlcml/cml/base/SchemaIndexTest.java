@@ -0,0 +1,104 @@
+/**
+ *    Copyright 2011 Peter Murray-Rust et. al.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package org.xmlcml.cml.base;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * tests for SchemaIndex.
+ * 
+ * @author pmr
+ * 
+ */
+public class SchemaIndexTest {
+
+	static AttributeFactory xsdFactory;
+	static byte[] index;
+
+	/**
+	 * index the schema once.
+	 * @throws Exception
+	 */
+	@BeforeClass
+	public static void setUpClass() throws Exception {
+		xsdFactory = AttributeFactory.createFromSchemaFiles();
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		SchemaIndex.write(xsdFactory, baos);
+		index = baos.toByteArray();
+	}
+
+	/**
+	 * index must reproduce the maps built from the XSD.
+	 * @throws Exception
+	 */
+	@Test
+	public void testReadWrite() throws Exception {
+		AttributeFactory indexFactory = AttributeFactory.createFromSchemaIndex(new ByteArrayInputStream(index));
+
+		Map<String, CMLType> xsdTypes = xsdFactory.getSchemaManager().getTypeGenerator().getMap();
+		Map<String, CMLType> indexTypes = indexFactory.getSchemaManager().getTypeGenerator().getMap();
+		Assert.assertEquals("types", xsdTypes.keySet(), indexTypes.keySet());
+		for (String name : xsdTypes.keySet()) {
+			CMLType xsdType = xsdTypes.get(name);
+			CMLType indexType = indexTypes.get(name);
+			Assert.assertEquals(name, xsdType.getBase(), indexType.getBase());
+			Assert.assertEquals(name, xsdType.getJavaType(), indexType.getJavaType());
+			Assert.assertEquals(name, xsdType.getIsList(), indexType.getIsList());
+			Assert.assertEquals(name, xsdType.getPattern(), indexType.getPattern());
+			Assert.assertEquals(name, xsdType.getFullDescription(), indexType.getFullDescription());
+		}
+
+		Map<String, CMLAttribute> xsdGroups = xsdFactory.getSchemaManager().getAttributeGenerator().getAttributeGroupMap();
+		Map<String, CMLAttribute> indexGroups = indexFactory.getSchemaManager().getAttributeGenerator().getAttributeGroupMap();
+		Assert.assertEquals("groups", xsdGroups.keySet(), indexGroups.keySet());
+		for (String name : xsdGroups.keySet()) {
+			assertAttributeEquals(name, xsdGroups.get(name), indexGroups.get(name));
+			assertAttributeEquals(name, xsdFactory.getAttributeGroupNameAttributeMap().get(name), 
+					indexFactory.getAttributeGroupNameAttributeMap().get(name));
+		}
+		Assert.assertEquals("group types", xsdFactory.getSchemaManager().getAttributeGenerator().getAttributeGroupTypeNameMap(),
+				indexFactory.getSchemaManager().getAttributeGenerator().getAttributeGroupTypeNameMap());
+		Assert.assertEquals("synonyms", xsdFactory.getElementSynonymMap(), indexFactory.getElementSynonymMap());
+		Assert.assertEquals("atom x3", "x3", indexFactory.getAttributeGroupName("x3", "atom"));
+	}
+
+	private static void assertAttributeEquals(String name, CMLAttribute expected, CMLAttribute found) {
+		Assert.assertEquals(name, expected.getClass(), found.getClass());
+		Assert.assertEquals(name, expected.getLocalName(), found.getLocalName());
+		Assert.assertEquals(name, expected.getSummary(), found.getSummary());
+		Assert.assertEquals(name, expected.getDescription(), found.getDescription());
+	}
+
+	/**
+	 * a corrupt index must be rejected.
+	 */
+	@Test
+	public void testBadIndex() {
+		try {
+			AttributeFactory.createFromSchemaIndex(new ByteArrayInputStream(new byte[] {1, 2, 3, 4, 5, 6, 7, 8}));
+			Assert.fail("should reject bad index");
+		} catch (Exception e) {
+			Assert.assertTrue("message", e.getMessage().startsWith("not a schema index"));
+		}
+	}
+}
@@ -0,0 +1,139 @@
+/**
+ *    Copyright 2011 Peter Murray-Rust et. al.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package org.xmlcml.cml.base;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import nu.xom.Builder;
+import nu.xom.Element;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.xmlcml.cml.element.CMLAtom;
+import org.xmlcml.cml.element.CMLMolecule;
+
+/**
+ * test StructuralComparator.
+ * 
+ * @author pm286
+ */
+public class StructuralComparatorTest {
+
+	private static final String MOL1 =
+		"<molecule id='m1' xmlns='"+CMLConstants.CML_NS+"'>" +
+		"  <atomArray>" +
+		"    <atom id='a1' elementType='C'/>" +
+		"    <atom elementType='O' id='a2'/>" +
+		"  </atomArray>" +
+		"</molecule>";
+	private static final String MOL2 =
+		"<molecule xmlns='"+CMLConstants.CML_NS+"' id='m1'><atomArray>" +
+		"<atom elementType='C' id='a1'/><atom id='a2' elementType='O'/>" +
+		"</atomArray></molecule>";
+
+	private CMLMolecule parse(String s) {
+		return (CMLMolecule) new CMLBuilder().parseString(s);
+	}
+
+	/** */
+	@Test
+	public void testCompare() throws Exception {
+		StructuralComparator comparator = new StructuralComparator();
+		CMLMolecule mol1 = parse(MOL1);
+		CMLMolecule mol2 = parse(MOL2);
+		Assert.assertEquals("hash", mol1.getStructuralHash(), mol2.getStructuralHash());
+		Assert.assertEquals("equal", 0, comparator.compare(mol1, mol2));
+		Assert.assertNull("canonical", CMLUtil.equalsCanonically(mol1, mol2, true));
+		Assert.assertTrue("structural", mol1.equalsStructurally(mol2));
+		// plain XOM elements hash identically
+		Element plain = new Builder().build(new StringReader(MOL1)).getRootElement();
+		Assert.assertEquals("plain", mol1.getStructuralHash(),
+			CMLUtil.getStructuralHash(plain));
+		mol2.getAtom(1).setElementType("N");
+		int i = comparator.compare(mol1, mol2);
+		Assert.assertTrue("different", i != 0);
+		Assert.assertEquals("antisymmetric", -i, comparator.compare(mol2, mol1));
+		Assert.assertFalse("structural", mol1.equalsStructurally(mol2));
+	}
+
+	/** */
+	@Test
+	public void testWhitespace() {
+		StructuralComparator comparator = new StructuralComparator();
+		Element array1 = new CMLBuilder().parseString(
+			"<array xmlns='"+CMLConstants.CML_NS+"' title='1 23'>1.0 23.0</array>");
+		Element array2 = new CMLBuilder().parseString(
+			"<array xmlns='"+CMLConstants.CML_NS+"' title='1 23'>1.02 3.0</array>");
+		Assert.assertTrue("tokens differ", comparator.compare(array1, array2) != 0);
+		Assert.assertTrue("hash", CMLUtil.getStructuralHash(array1) !=
+			CMLUtil.getStructuralHash(array2));
+		Element array3 = new CMLBuilder().parseString(
+			"<array xmlns='"+CMLConstants.CML_NS+"' title='12 3'>1.0 23.0</array>");
+		Assert.assertTrue("attribute tokens differ", comparator.compare(array1, array3) != 0);
+		Element array4 = new CMLBuilder().parseString(
+			"<array xmlns='"+CMLConstants.CML_NS+"' title=' 1\t 23'>\n 1.0\n  23.0 </array>");
+		Assert.assertEquals("collapsed", 0, comparator.compare(array1, array4));
+		Assert.assertEquals("hash", CMLUtil.getStructuralHash(array1),
+			CMLUtil.getStructuralHash(array4));
+	}
+
+	/** */
+	@Test
+	public void testInvalidate() {
+		CMLMolecule mol = parse(MOL1);
+		long hash = mol.getStructuralHash();
+		CMLAtom atom = mol.getAtom(0);
+		atom.setElementType("N");
+		long hash1 = mol.getStructuralHash();
+		Assert.assertTrue("attribute change", hash != hash1);
+		atom.setElementType("C");
+		Assert.assertEquals("restored", hash, mol.getStructuralHash());
+		mol.getAtomArray().removeChild(atom);
+		Assert.assertTrue("child removed", hash != mol.getStructuralHash());
+		mol.getAtomArray().insertChild(atom, 0);
+		Assert.assertEquals("child restored", hash, mol.getStructuralHash());
+		mol.setTitle("foo");
+		Assert.assertTrue("attribute added", hash != mol.getStructuralHash());
+	}
+
+	/** */
+	@Test
+	public void testSortAndDeduplicate() {
+		List<Element> molecules = new ArrayList<Element>();
+		for (int i = 0; i < 10; i++) {
+			CMLMolecule mol = parse((i % 2 == 0) ? MOL1 : MOL2);
+			if (i % 3 == 0) {
+				mol.getAtom(0).setElementType("S");
+			}
+			molecules.add(mol);
+		}
+		StructuralComparator comparator = new StructuralComparator();
+		Collections.sort(molecules, comparator);
+		int distinct = 1;
+		for (int i = 1; i < molecules.size(); i++) {
+			int c = comparator.compare(molecules.get(i - 1), molecules.get(i));
+			Assert.assertTrue("sorted", c <= 0);
+			if (c != 0) {
+				distinct++;
+			}
+		}
+		Assert.assertEquals("distinct", 2, distinct);
+	}
+}
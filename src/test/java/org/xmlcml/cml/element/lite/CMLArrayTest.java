@@ -16,6 +16,10 @@
 
 package org.xmlcml.cml.element.lite;
 
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.ReadOnlyBufferException;
+
 import nu.xom.Element;
 
 import org.junit.Assert;
@@ -804,6 +808,49 @@ public class CMLArrayTest {
 		}
 	}
 
+	/**
+	 * Test method for 'org.xmlcml.cml.element.CMLArray.getDoubleView()'
+	 */
+	@Test
+	public void testGetDoubleView() {
+		Assert.assertNull("ints", xomI0.getDoubleView());
+		DoubleBuffer view = xomD1.getDoubleView();
+		Assert.assertEquals("size", 5, view.limit());
+		Assert.assertEquals("view0", 10., view.get(0), EPS);
+		Assert.assertEquals("view4", 50., view.get(4), EPS);
+		Assert.assertTrue("read only", view.isReadOnly());
+		try {
+			view.put(0, 1.0);
+			Assert.fail("should not write through view");
+		} catch (ReadOnlyBufferException e) {
+			// expected
+		}
+		// buffer grows beyond the size when appending
+		CMLArray array = new CMLArray(new double[] { 1., 2. });
+		array.append(3.);
+		view = array.getDoubleView();
+		Assert.assertEquals("appended size", 3, view.limit());
+		Assert.assertEquals("appended", 3., view.get(2), EPS);
+	}
+
+	/**
+	 * Test method for 'org.xmlcml.cml.element.CMLArray.getIntView()'
+	 */
+	@Test
+	public void testGetIntView() {
+		Assert.assertNull("doubles", xomD0.getIntView());
+		IntBuffer view = xomI1.getIntView();
+		Assert.assertEquals("size", 5, view.limit());
+		Assert.assertEquals("view0", 10, view.get(0));
+		Assert.assertEquals("view4", 50, view.get(4));
+		Assert.assertTrue("read only", view.isReadOnly());
+		CMLArray array = new CMLArray(new int[] { 1, 2 });
+		array.append(3);
+		view = array.getIntView();
+		Assert.assertEquals("appended size", 3, view.limit());
+		Assert.assertEquals("appended", 3, view.get(2));
+	}
+
 	/**
 	 * Test method for 'org.xmlcml.cml.element.CMLArray.getInts()'
 	 */
@@ -1187,6 +1234,58 @@ public class CMLArrayTest {
 		CMLArrayTest.assertEquals("append", array, arrayRef, 0.000001);
 	}
 
+	@Test
+	public void testAppendManyDoubles() {
+		CMLArray array = new CMLArray(new double[] {});
+		int n = 100000;
+		for (int i = 0; i < n; i++) {
+			array.append((double) i);
+		}
+		Assert.assertEquals("size", n, array.getSize());
+		double[] dd = array.getDoubles();
+		Assert.assertEquals("length", n, dd.length);
+		Assert.assertEquals("last", n - 1.0, dd[n - 1], 0.0);
+		String content = array.getXMLContent();
+		Assert.assertTrue("start", content.startsWith("0.0 1.0 2.0 "));
+		Assert.assertTrue("end", content.endsWith(" 99998.0 99999.0"));
+		// returned array is a copy
+		dd[0] = 42.;
+		Assert.assertEquals("copy", 0.0, array.getDoubles()[0], 0.0);
+	}
+
+	@Test
+	public void testAppendManyInts() {
+		CMLArray array = new CMLArray(new int[] { 1, 2 }, "|");
+		for (int i = 3; i <= 2000; i++) {
+			array.append(i);
+		}
+		int[] ii = array.getInts();
+		Assert.assertEquals("length", 2000, ii.length);
+		Assert.assertEquals("last", 2000, ii[1999]);
+		Assert.assertTrue("content", array.getXMLContent().startsWith("|1|2|3|"));
+		Assert.assertTrue("content", array.getXMLContent().endsWith("|1999|2000|"));
+		CMLArray copy = new CMLArray(array.getInts(), "|");
+		Assert.assertEquals("xml", copy.toXML(), array.toXML());
+	}
+
+	@Test
+	public void testBufferChangedContent() {
+		CMLArray array = new CMLArray(new double[] { 1., 2. });
+		Assert.assertEquals("before", 2, array.getDoubles().length);
+		array.setXMLContent("3.0 4.0 5.0");
+		array.removeAttribute(array.getSizeAttribute());
+		DoubleTestBase.assertEquals("set", new double[] { 3., 4., 5. },
+				array.getDoubles(), EPS);
+		array.append(6.);
+		array.appendChild(" 7.0");
+		DoubleTestBase.assertEquals("append", new double[] { 3., 4., 5., 6., 7. },
+				array.getDoubles(), EPS);
+		array.removeChildren();
+		array.appendChild("8.0");
+		DoubleTestBase.assertEquals("replace", new double[] { 8. },
+				array.getDoubles(), EPS);
+	}
+
 	@Test
 	public void testAppendMixedArray() {
 		CMLArray array = new CMLArray(new String[] { "a", "b" });
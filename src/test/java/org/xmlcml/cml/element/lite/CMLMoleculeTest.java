@@ -263,6 +263,78 @@ public class CMLMoleculeTest {
 				.getAtomRefs2());
 	}
 
+	/**
+	 * cached atom and bond views are refreshed only when children change.
+	 */
+	@Test
+	public void testAtomAndBondViews() {
+		fixture.makeMol5a();
+		CMLMolecule mol5a = fixture.mol5a;
+		List<CMLAtom> atoms = mol5a.getAtomView();
+		Assert.assertSame(atoms, mol5a.getAtomView());
+		Assert.assertEquals(5, atoms.size());
+		Assert.assertSame(atoms.get(2), mol5a.getAtom(2));
+		try {
+			atoms.remove(0);
+			Assert.fail("view should be read-only");
+		} catch (UnsupportedOperationException e) {
+			// expected
+		}
+		List<CMLBond> bonds = mol5a.getBondView();
+		Assert.assertSame(bonds, mol5a.getBondView());
+		Assert.assertEquals(4, mol5a.getBondCount());
+
+		CMLAtom atom = new CMLAtom("a99", AS.N);
+		mol5a.addAtom(atom);
+		Assert.assertNotSame(atoms, mol5a.getAtomView());
+		Assert.assertEquals(5, atoms.size());
+		Assert.assertEquals(6, mol5a.getAtomCount());
+		Assert.assertSame(atom, mol5a.getAtom(5));
+		mol5a.addBond(new CMLBond(atom, mol5a.getAtom(0)));
+		Assert.assertEquals(5, mol5a.getBondCount());
+		Assert.assertEquals(4, bonds.size());
+
+		// plain XOM edits are also seen
+		mol5a.getAtomArray().removeChild((nu.xom.Node) mol5a.getAtom(4));
+		Assert.assertEquals(5, mol5a.getAtomCount());
+		mol5a.deleteAtom(atom);
+		Assert.assertEquals(4, mol5a.getAtomCount());
+		Assert.assertEquals(4, mol5a.getBondCount());
+		// getAtoms() still returns a modifiable copy
+		List<CMLAtom> atomList = mol5a.getAtoms();
+		atomList.clear();
+		Assert.assertEquals(4, mol5a.getAtomCount());
+	}
+
+	/**
+	 * getBond(CMLAtom, CMLAtom) is kept in step with addBond and deleteBond
+	 * and still finds bonds by id for atoms from another molecule.
+	 */
+	@Test
+	public void testGetBondIndex() {
+		fixture.makeMol5a();
+		CMLMolecule mol5a = fixture.mol5a;
+		CMLAtom atom1 = mol5a.getAtomById("a1");
+		CMLAtom atom3 = mol5a.getAtomById("a3");
+		CMLAtom atom4 = mol5a.getAtomById("a4");
+		CMLBond bond = mol5a.getBond(atom4, atom1);
+		Assert.assertSame(bond, mol5a.getBond(atom1, atom4));
+		Assert.assertNull(mol5a.getBond(atom1, atom1));
+		Assert.assertNull(mol5a.getBond(atom1, null));
+		mol5a.deleteBond(bond);
+		Assert.assertNull(mol5a.getBond(atom1, atom4));
+		CMLBond bond13 = new CMLBond(atom1, atom3);
+		mol5a.addBond(bond13);
+		Assert.assertSame(bond13, mol5a.getBond(atom3, atom1));
+		CMLMolecule copy = (CMLMolecule) mol5a.copy();
+		Assert.assertSame(bond13, mol5a.getBond(
+				copy.getAtomById("a1"), copy.getAtomById("a3")));
+		Assert.assertNotSame(bond13, copy.getBond(
+				copy.getAtomById("a1"), copy.getAtomById("a3")));
+		Assert.assertNotNull(copy.getBond(
+				copy.getAtomById("a1"), copy.getAtomById("a3")));
+	}
+
 	/**
 	 * Test method for 'org.xmlcml.cml.element.CMLMolecule.getBondCount()'
 	 */
@@ -0,0 +1,175 @@
+/**
+ *    Copyright 2011 Peter Murray-Rust et. al.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package org.xmlcml.cml.element.main;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.xmlcml.cml.base.CMLElement.CoordinateType;
+import org.xmlcml.cml.element.AtomGrid;
+import org.xmlcml.cml.element.CMLAtom;
+import org.xmlcml.cml.element.CMLBond;
+import org.xmlcml.cml.element.CMLMolecule;
+import org.xmlcml.euclid.Point3;
+import org.xmlcml.molutil.ChemicalElement.AS;
+
+/**
+ * test AtomGrid
+ * 
+ * @author pm286
+ * 
+ */
+public class AtomGridTest {
+
+	private CMLMolecule makeRandomMolecule(int n, double size) {
+		Random random = new Random(17);
+		CMLMolecule molecule = new CMLMolecule();
+		for (int i = 0; i < n; i++) {
+			CMLAtom atom = new CMLAtom("a" + i, AS.C);
+			atom.setXYZ3(new Point3(random.nextDouble() * size,
+				random.nextDouble() * size, random.nextDouble() * size));
+			atom.setXYZFract(new Point3(random.nextDouble(),
+				random.nextDouble(), random.nextDouble()));
+			molecule.addAtom(atom);
+		}
+		return molecule;
+	}
+
+	@Test
+	public void testPairsAgainstBruteForce() {
+		CMLMolecule molecule = makeRandomMolecule(400, 20.0);
+		List<CMLAtom> atoms = molecule.getAtoms();
+		double radius = 2.5;
+		AtomGrid grid = new AtomGrid(atoms, radius);
+		Assert.assertEquals(400, grid.size());
+		Set<String> expected = new HashSet<String>();
+		for (int i = 0; i < atoms.size(); i++) {
+			for (int j = i + 1; j < atoms.size(); j++) {
+				if (atoms.get(i).getDistanceTo(atoms.get(j)) <= radius) {
+					expected.add(atoms.get(i).getId() + "/" + atoms.get(j).getId());
+				}
+			}
+		}
+		Set<String> found = new HashSet<String>();
+		for (CMLAtom[] pair : grid.getPairsWithin(radius)) {
+			found.add(pair[0].getId() + "/" + pair[1].getId());
+		}
+		Assert.assertTrue(expected.size() > 0);
+		Assert.assertEquals(expected, found);
+
+		CMLAtom atom = atoms.get(7);
+		int count = 0;
+		for (CMLAtom other : atoms) {
+			if (other != atom && atom.getDistanceTo(other) <= 4.0) {
+				count++;
+			}
+		}
+		// radius larger than cell size
+		Assert.assertEquals(count, grid.getNeighbours(atom, 4.0).size());
+		Assert.assertEquals(count + 1, grid.getAtomsWithin(atom.getXYZ3(), 4.0).size());
+	}
+
+	@Test
+	public void testFractional() {
+		CMLMolecule molecule = makeRandomMolecule(200, 10.0);
+		List<CMLAtom> atoms = molecule.getAtoms();
+		AtomGrid grid = new AtomGrid(atoms, CoordinateType.FRACTIONAL, 0.1);
+		CMLAtom atom = atoms.get(3);
+		int count = 0;
+		for (CMLAtom other : atoms) {
+			if (other != atom && 
+					atom.getXYZFract().getDistanceFromPoint(other.getXYZFract()) <= 0.2) {
+				count++;
+			}
+		}
+		Assert.assertEquals(count, grid.getNeighbours(atom, 0.2).size());
+	}
+
+	@Test
+	public void testSkipsAtomsWithoutCoordinates() {
+		CMLMolecule molecule = makeRandomMolecule(5, 10.0);
+		molecule.getAtom(0).unsetXYZ3();
+		AtomGrid grid = new AtomGrid(molecule.getAtoms(), 1.0);
+		Assert.assertEquals(4, grid.size());
+		Assert.assertEquals(0, grid.getNeighbours(molecule.getAtom(0), 100.0).size());
+	}
+
+	@Test
+	public void testAddBondsFromDistances() {
+		// ethane, one C-H already bonded
+		CMLMolecule molecule = new CMLMolecule();
+		double[][] xyz = {
+			{0.0, 0.0, 0.0}, {1.54, 0.0, 0.0},
+			{-0.36, 1.03, 0.0}, {-0.36, -0.51, 0.89}, {-0.36, -0.51, -0.89},
+			{1.90, 1.03, 0.0}, {1.90, -0.51, 0.89}, {1.90, -0.51, -0.89},
+		};
+		String[] elem = {"C", "C", "H", "H", "H", "H", "H", "H"};
+		for (int i = 0; i < xyz.length; i++) {
+			CMLAtom atom = new CMLAtom("a" + (i + 1));
+			atom.setElementType(elem[i]);
+			atom.setXYZ3(new Point3(xyz[i]));
+			molecule.addAtom(atom);
+		}
+		molecule.addBond(new CMLBond(molecule.getAtom(0), molecule.getAtom(2)));
+		List<CMLBond> bonds = molecule.addBondsFromDistances(0.4);
+		Assert.assertEquals(6, bonds.size());
+		Assert.assertEquals(7, molecule.getBondCount());
+		Assert.assertNotNull(molecule.getBond(molecule.getAtom(0), molecule.getAtom(1)));
+		Assert.assertNull(molecule.getBond(molecule.getAtom(2), molecule.getAtom(3)));
+		Assert.assertEquals(4, molecule.getAtom(1).getLigandAtoms().size());
+		// idempotent
+		Assert.assertEquals(0, molecule.addBondsFromDistances(0.4).size());
+	}
+
+	/** would walk ~1e15 empty cells without clipping to occupied cells */
+	@Test(timeout = 10000)
+	public void testFarAndLargeQueries() {
+		CMLMolecule molecule = makeRandomMolecule(200, 10.0);
+		List<CMLAtom> atoms = molecule.getAtoms();
+		AtomGrid grid = new AtomGrid(atoms, 1.0);
+		Assert.assertEquals("large radius", 199,
+			grid.getNeighbours(atoms.get(0), 100000.0).size());
+		Assert.assertEquals("far probe", 0,
+			grid.getAtomsWithin(new Point3(1.0E6, 5.0, 5.0), 1.0).size());
+		Assert.assertEquals("far probe, large radius", 200,
+			grid.getAtomsWithin(new Point3(1.0E6, 5.0, 5.0), 2.0E6).size());
+		Assert.assertEquals("below grid", 0,
+			grid.getAtomsWithin(new Point3(-1.0E6, -1.0E6, -1.0E6), 1.0).size());
+	}
+
+	@Test
+	public void testAddBondsLarge() {
+		// simple cubic lattice of carbon at 1.5 A: each interior atom has 6 bonds
+		CMLMolecule molecule = new CMLMolecule();
+		int side = 30;
+		for (int i = 0; i < side; i++) {
+			for (int j = 0; j < side; j++) {
+				for (int k = 0; k < side; k++) {
+					CMLAtom atom = new CMLAtom("a" + i + "_" + j + "_" + k, AS.C);
+					atom.setXYZ3(new Point3(i * 1.5, j * 1.5, k * 1.5));
+					molecule.addAtom(atom);
+				}
+			}
+		}
+		List<CMLBond> bonds = molecule.addBondsFromDistances(0.1);
+		Assert.assertEquals(3 * side * side * (side - 1), bonds.size());
+	}
+}
@@ -0,0 +1,169 @@
+/**
+ *    Copyright 2011 Peter Murray-Rust et. al.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package org.xmlcml.cml.element.main;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.xmlcml.cml.element.AtomIndexMap;
+import org.xmlcml.cml.element.CMLAtom;
+import org.xmlcml.cml.element.CMLLink;
+import org.xmlcml.cml.element.CMLMap;
+import org.xmlcml.cml.element.CMLMolecule;
+
+/**
+ * test AtomIndexMap
+ * 
+ * @author pm286
+ * 
+ */
+public class AtomIndexMapTest {
+
+	private static CMLMolecule makeMolecule(String prefix, int n) {
+		CMLMolecule molecule = new CMLMolecule();
+		for (int i = 0; i < n; i++) {
+			CMLAtom atom = new CMLAtom(prefix+(i + 1));
+			atom.setElementType("C");
+			molecule.addAtom(atom);
+		}
+		return molecule;
+	}
+
+	private static CMLLink makeLink(String from, String to) {
+		CMLLink link = new CMLLink();
+		link.setFrom(from);
+		link.setTo(to);
+		return link;
+	}
+
+	@Test
+	public void testLookup() {
+		CMLMolecule molA = makeMolecule("a", 4);
+		CMLMolecule molB = makeMolecule("b", 3);
+		CMLMap map = new CMLMap();
+		map.addLink(makeLink("a1", "b2"));
+		map.addLink(makeLink("a2", "b3"));
+		map.addLink(makeLink("a4", "b1"));
+		// not an atom
+		map.addLink(makeLink("x1", "b1x"));
+		AtomIndexMap indexMap = map.getAtomIndexMap(molA, molB);
+		Assert.assertEquals("from", 4, indexMap.getFromCount());
+		Assert.assertEquals("to", 3, indexMap.getToCount());
+		Assert.assertArrayEquals("forward", new int[] {1, 2, -1, 0}, indexMap.getToIndices());
+		Assert.assertArrayEquals("reverse", new int[] {3, 0, 1}, indexMap.getFromIndices());
+		Assert.assertEquals("mapped", 3, indexMap.getMappedCount());
+		Assert.assertEquals("atom", "b3", indexMap.getToAtom(1).getId());
+		Assert.assertNull("atom", indexMap.getToAtom(2));
+		Assert.assertEquals("atom", "a4", indexMap.getFromAtom(0).getId());
+		Assert.assertArrayEquals("inverse", new int[] {3, 0, 1}, indexMap.inverse().getToIndices());
+	}
+
+	@Test
+	public void testInvalidation() {
+		CMLMolecule molA = makeMolecule("a", 3);
+		CMLMolecule molB = makeMolecule("b", 3);
+		CMLMap map = new CMLMap();
+		CMLLink link = makeLink("a1", "b1");
+		map.addLink(link);
+		AtomIndexMap indexMap = map.getAtomIndexMap(molA, molB);
+		Assert.assertSame("cached", indexMap, map.getAtomIndexMap(molA, molB));
+		map.addLink(makeLink("a2", "b3"));
+		AtomIndexMap indexMap1 = map.getAtomIndexMap(molA, molB);
+		Assert.assertNotSame("added", indexMap, indexMap1);
+		Assert.assertEquals("added", 2, indexMap1.getTo(1));
+		map.removeLink(link);
+		AtomIndexMap indexMap2 = map.getAtomIndexMap(molA, molB);
+		Assert.assertEquals("removed", -1, indexMap2.getTo(0));
+		map.addLink(makeLink("a3", "b4"));
+		Assert.assertEquals("no atom", -1, map.getAtomIndexMap(molA, molB).getTo(2));
+		CMLAtom atom = new CMLAtom("b4");
+		atom.setElementType("O");
+		molB.addAtom(atom);
+		Assert.assertEquals("atoms changed", 3, map.getAtomIndexMap(molA, molB).getTo(2));
+	}
+
+	@Test
+	public void testDuplicateLinks() {
+		CMLMolecule molA = makeMolecule("a", 3);
+		CMLMolecule molB = makeMolecule("b", 3);
+		CMLMap map = new CMLMap();
+		map.addLink(makeLink("a1", "b1"));
+		// many-to-one: last link to b1 wins
+		map.addLink(makeLink("a2", "b1"));
+		AtomIndexMap indexMap = map.getAtomIndexMap(molA, molB);
+		Assert.assertArrayEquals("forward", new int[] {-1, 0, -1}, indexMap.getToIndices());
+		Assert.assertArrayEquals("reverse", new int[] {1, -1, -1}, indexMap.getFromIndices());
+		// one-to-many: last link from a2 wins
+		map.addLink(makeLink("a2", "b3"));
+		indexMap = map.getAtomIndexMap(molA, molB);
+		Assert.assertArrayEquals("forward", new int[] {-1, 2, -1}, indexMap.getToIndices());
+		Assert.assertArrayEquals("reverse", new int[] {-1, -1, 1}, indexMap.getFromIndices());
+		Assert.assertEquals("mapped", 1, indexMap.getMappedCount());
+	}
+
+	@Test
+	public void testCachedForChildMolecules() {
+		CMLMolecule molA = new CMLMolecule();
+		molA.appendChild(makeMolecule("a", 2));
+		CMLMolecule child = new CMLMolecule();
+		CMLAtom atom = new CMLAtom("a3");
+		atom.setElementType("C");
+		child.addAtom(atom);
+		molA.appendChild(child);
+		CMLMolecule molB = makeMolecule("b", 3);
+		CMLMap map = new CMLMap();
+		map.addLink(makeLink("a3", "b1"));
+		AtomIndexMap indexMap = map.getAtomIndexMap(molA, molB);
+		Assert.assertEquals("container", 0, indexMap.getTo(2));
+		Assert.assertSame("cached", indexMap, map.getAtomIndexMap(molA, molB));
+		atom = new CMLAtom("a4");
+		atom.setElementType("C");
+		child.addAtom(atom);
+		map.addLink(makeLink("a4", "b2"));
+		indexMap = map.getAtomIndexMap(molA, molB);
+		Assert.assertEquals("child changed", 4, indexMap.getFromCount());
+		Assert.assertSame("cached", indexMap, map.getAtomIndexMap(molA, molB));
+		child.deleteAtom(atom);
+		Assert.assertEquals("atom removed", 3, map.getAtomIndexMap(molA, molB).getFromCount());
+	}
+
+	@Test
+	public void testCompose() {
+		CMLMolecule molA = makeMolecule("a", 3);
+		CMLMolecule molB = makeMolecule("b", 3);
+		CMLMolecule molC = makeMolecule("c", 3);
+		CMLMap mapAB = new CMLMap();
+		mapAB.addLink(makeLink("a1", "b3"));
+		mapAB.addLink(makeLink("a2", "b1"));
+		mapAB.addLink(makeLink("a3", "b2"));
+		CMLMap mapBC = new CMLMap();
+		mapBC.addLink(makeLink("b1", "c1"));
+		mapBC.addLink(makeLink("b3", "c2"));
+		AtomIndexMap ac = mapAB.getAtomIndexMap(molA, molB).compose(
+			mapBC.getAtomIndexMap(molB, molC));
+		Assert.assertArrayEquals("composed", new int[] {1, 0, -1}, ac.getToIndices());
+		Assert.assertArrayEquals("composed", new int[] {1, 0, -1}, ac.getFromIndices());
+		CMLMap mapAC = ac.createCMLMap();
+		Assert.assertEquals("links", 2, mapAC.getLinkElements().size());
+		Assert.assertEquals("link", "c2", mapAC.getToRef("a1"));
+		Assert.assertEquals("link", "a2", mapAC.getFromRef("c1"));
+		try {
+			ac.compose(mapAB.getAtomIndexMap(makeMolecule("a", 2), molB));
+			Assert.fail("should throw");
+		} catch (RuntimeException e) {
+		}
+	}
+}
@@ -20,6 +20,7 @@ import static org.xmlcml.euclid.EuclidConstants.EPS;
 import static org.xmlcml.euclid.EuclidConstants.S_RBRAK;
 
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
@@ -603,6 +604,36 @@ public class CMLAtomSetTest {
 
 	}
 
+	/**
+	 * Test method for 'org.xmlcml.cml.element.CMLAtomSet.getBitSet()'
+	 */
+	@Test
+	public void testGetBitSet() {
+		BitSet bits = atomSet1.getBitSet();
+		Assert.assertEquals("bits", "{0, 1, 2}", bits.toString());
+		Assert.assertTrue("intersects", atomSet1.intersects(atomSet2));
+		CMLAtomSet atomSet3 = atomSet2.complement(atomSet1);
+		Assert.assertEquals("complement bits", "{3, 4}", atomSet3.getBitSet().toString());
+		Assert.assertEquals("complement", new String[] { "a4", "a5" },
+				atomSet3.getXMLContent());
+		Assert.assertFalse("intersects", atomSet1.intersects(atomSet3));
+		CMLAtomSet atomSet4 = atomSet1.symmetricDifference(atomSet2);
+		Assert.assertEquals("xor", new String[] { "a1", "a4", "a5" },
+				atomSet4.getXMLContent());
+		Assert.assertEquals("xor bits", "{0, 3, 4}", atomSet4.getBitSet().toString());
+		CMLAtomSet atomSet5 = new CMLAtomSet(fixture.xmlMolecule, atomSet4.getBitSet());
+		Assert.assertTrue("round trip", atomSet5.hasContentEqualTo(atomSet4));
+		atomSet4.removeAtomSet(atomSet3);
+		Assert.assertEquals("remove", new String[] { "a1" }, atomSet4.getXMLContent());
+		Assert.assertEquals("remove bits", "{0}", atomSet4.getBitSet().toString());
+		Assert.assertEquals("size", 1, atomSet4.getSize());
+		// bits follow the atomArray
+		Assert.assertEquals("bits", "{1, 2, 3, 4}", atomSet2.getBitSet().toString());
+		fixture.xmlMolecule.deleteAtom(fixture.xmlMolecule.getAtom(0));
+		Assert.assertEquals("bits after delete", "{0, 1, 2, 3}", atomSet2.getBitSet().toString());
+		Assert.assertNull("detached atom", atomSet1.getBitSet());
+	}
+
 	/**
 	 * Test method for
 	 * 'org.xmlcml.cml.element.CMLAtomSet.compliment(CMLAtomSet)'
@@ -19,6 +19,7 @@ package org.xmlcml.cml.element.main;
 import static org.xmlcml.euclid.EuclidConstants.S_EMPTY;
 
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
@@ -420,6 +421,26 @@ public class CMLBondSetTest {
 				.getId());
 	}
 
+	/**
+	 * test.
+	 */
+	@Test
+	public final void testGetBitSet() {
+		makeBondSet12();
+		makeBondSet34();
+		Assert.assertEquals("bits", "{0, 2, 3}", bondSet1.getBitSet().toString());
+		CMLBondSet bondSetx = bondSet3.union(bondSet4);
+		Assert.assertEquals("union", "b2 b4 b1", bondSetx.getStringContent());
+		Assert.assertEquals("union bits", "{0, 1, 3}", bondSetx.getBitSet().toString());
+		bondSetx = bondSet1.intersection(bondSet2);
+		Assert.assertEquals("intersection", "b1 b4", bondSetx.getStringContent());
+		Assert.assertEquals("intersection bits", "{0, 3}", bondSetx.getBitSet().toString());
+		Assert.assertTrue("intersects", bondSet1.intersects(bondSet2));
+		bondSetx = new CMLBondSet(fixture.xmlMolecule, bondSetx.getBitSet());
+		Assert.assertEquals("round trip", "b1 b4", bondSetx.getStringContent());
+		Assert.assertEquals("size", 2, bondSetx.getSize());
+	}
+
 	/**
 	 * test.
 	 */
@@ -22,7 +22,10 @@ import static org.xmlcml.cml.base.CMLXOMTestUtils.assertEqualsCanonically;
 import static org.xmlcml.euclid.EuclidConstants.EPS;
 import static org.xmlcml.euclid.EuclidConstants.S_SPACE;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import org.junit.Assert;
 import org.junit.Before;
@@ -30,15 +33,18 @@ import org.junit.Test;
 import org.xmlcml.cml.base.CMLConstants;
 import org.xmlcml.cml.base.CMLElements;
 import org.xmlcml.cml.base.CMLXOMTestUtils;
+import org.xmlcml.cml.element.CMLAtom;
 import org.xmlcml.cml.element.CMLCellParameter;
 import org.xmlcml.cml.element.CMLCrystal;
 import org.xmlcml.cml.element.CMLLattice;
 import org.xmlcml.cml.element.CMLLatticeVector;
+import org.xmlcml.cml.element.CMLMolecule;
 import org.xmlcml.cml.element.CMLScalar;
 import org.xmlcml.cml.element.CMLSymmetry;
 import org.xmlcml.cml.element.CMLVector3;
 import org.xmlcml.cml.element.CMLCrystal.Centering;
 import org.xmlcml.euclid.EC;
+import org.xmlcml.euclid.Point3;
 import org.xmlcml.euclid.RealSquareMatrix;
 import org.xmlcml.euclid.test.DoubleTestBase;
 
@@ -612,4 +618,58 @@ public class CMLCrystalTest {
 				cellParameterList.get(1), EPS);
 	}
 
+	/**
+	 * Test method for
+	 * 'org.xmlcml.cml.element.CMLCrystal.createSupercell(CMLMolecule, int, int, int)'
+	 */
+	@Test
+	public void testCreateSupercell() {
+		CMLCrystal crystal = new CMLCrystal(new double[] {5.0, 6.0, 7.0, 90.0, 90.0, 90.0});
+		List<String> xyz = new ArrayList<String>();
+		xyz.add("x, y, z");
+		xyz.add("-x, y+1/2, -z+1/2");
+		xyz.add("-x, -y, -z");
+		xyz.add("x, -y+1/2, z+1/2");
+		crystal.appendChild(CMLSymmetry.createFromXYZStrings(xyz));
+		CMLMolecule asym = new CMLMolecule();
+		CMLAtom atom = new CMLAtom("a1");
+		atom.setElementType("C");
+		atom.setXYZFract(new Point3(0.1, 0.2, 0.3));
+		asym.addAtom(atom);
+		atom = new CMLAtom("a2");
+		atom.setElementType("O");
+		atom.setXYZFract(new Point3(0.0, 0.0, 0.0));
+		asym.addAtom(atom);
+		// no fractionals, ignored
+		asym.addAtom(new CMLAtom("a3"));
+
+		CMLMolecule cell = crystal.createUnitCell(asym);
+		Assert.assertEquals("unit cell", 6, cell.getAtomCount());
+		CMLMolecule supercell = crystal.createSupercell(asym, 2, 1, 1);
+		Assert.assertEquals("supercell", 12, supercell.getAtomCount());
+		Assert.assertEquals("asym unchanged", 3, asym.getAtomCount());
+		CMLAtom a18 = supercell.getAtomById("a1_8");
+		Assert.assertNotNull("a1_8", a18);
+		Assert.assertEquals("element", "C", a18.getElementType());
+		Assert.assertEquals("x", 1.1, a18.getXFract(), EPS);
+		Assert.assertEquals("x3", 5.5, a18.getX3(), EPS);
+		Assert.assertEquals("z3", 7.0 * 0.8, a18.getZ3(), EPS);
+		Assert.assertNotNull("a2_4", supercell.getAtomById("a2_4"));
+		Assert.assertNull("a2_5", supercell.getAtomById("a2_5"));
+		ExecutorService executor = Executors.newFixedThreadPool(2);
+		try {
+			CMLMolecule parallel = crystal.createSupercell(asym, 2, 1, 1, executor);
+			Assert.assertEquals("parallel", 12, parallel.getAtomCount());
+			Assert.assertEquals("parallel x", 1.1,
+				parallel.getAtomById("a1_8").getXFract(), EPS);
+		} finally {
+			executor.shutdown();
+		}
+		try {
+			new CMLCrystal(new double[] {5.0, 6.0, 7.0, 90.0, 90.0, 90.0}).createUnitCell(asym);
+			Assert.fail("should throw");
+		} catch (RuntimeException e) {
+		}
+	}
+
 }
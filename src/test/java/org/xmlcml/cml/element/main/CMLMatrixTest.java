@@ -26,6 +26,8 @@ import static org.xmlcml.cml.base.CMLConstants.XSD_INTEGER;
 import static org.xmlcml.euclid.EuclidConstants.EPS;
 import static org.xmlcml.euclid.EuclidConstants.S_RBRAK;
 
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -410,6 +412,24 @@ public class CMLMatrixTest {
 		Assert.assertEquals("get array", XSD_DOUBLE, mat.getDataType());
 	}
 
+	/**
+	 * Test method for 'org.xmlcml.cml.element.CMLMatrix.getDoubleView()'
+	 */
+	@Test
+	public void testGetDoubleView() {
+		CMLMatrix mat = matrixList.get(0);
+		DoubleBuffer view = mat.getDoubleView();
+		Assert.assertEquals("size", 4, view.limit());
+		Assert.assertEquals("view1", 90., view.get(1), EPS);
+		Assert.assertTrue("read only", view.isReadOnly());
+		Assert.assertNull("int view", mat.getIntegerView());
+		IntBuffer ii = new CMLMatrix(2, 3, new int[] { 11, 12, 13, 21, 22, 23 })
+				.getIntegerView();
+		Assert.assertEquals("int size", 6, ii.limit());
+		Assert.assertEquals("int view", 23, ii.get(5));
+		Assert.assertTrue("int read only", ii.isReadOnly());
+	}
+
 	/**
 	 * Test method for 'org.xmlcml.cml.element.CMLMatrix.getDoubleMatrix()'
 	 */
@@ -606,4 +626,17 @@ public class CMLMatrixTest {
 		Assert.assertNull(scalar);
 	}
 
+	@Test
+	public void testBufferChangedContent() {
+		CMLMatrix mat = new CMLMatrix(2, 2, new double[] { 1., 2., 3., 4. });
+		Assert.assertEquals("before", 4., mat.getElementAt(1, 1).getDouble(), EPS);
+		mat.setXMLContent("5.0 6.0 7.0 8.0");
+		DoubleTestBase.assertEquals("after", new double[] { 5., 6., 7., 8. },
+				mat.getDoubleArray(), EPS);
+		Assert.assertEquals("after", 8., mat.getElementAt(1, 1).getDouble(), EPS);
+		double[] dd = mat.getDoubleArray();
+		dd[0] = 42.;
+		Assert.assertEquals("copy", 5., mat.getDoubleMatrix()[0][0], EPS);
+	}
+
 }
@@ -17,6 +17,15 @@
 package org.xmlcml.cml.element.main;
 
 import static org.xmlcml.cml.base.CMLConstants.CML1;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
 import nu.xom.Element;
 
 import org.junit.Assert;
@@ -24,7 +33,11 @@ import org.junit.Test;
 import org.xmlcml.cml.base.CMLBuilder;
 import org.xmlcml.cml.base.CMLConstants;
 import org.xmlcml.cml.base.CMLElement;
+import org.xmlcml.cml.base.CMLUtil;
 import org.xmlcml.cml.base.CMLXOMTestUtils;
+import org.xmlcml.cml.element.CMLAtom;
+import org.xmlcml.cml.element.CMLElementRegistry;
+import org.xmlcml.cml.element.CMLMolecule;
 import org.xmlcml.euclid.EuclidRuntimeException;
 
 /**
@@ -73,4 +86,72 @@ public class CMLNodeFactoryTest {
 		Assert.assertEquals("other namespace", "http://foo", namespace);
 	}
 
+	/**
+	 * registry must agree with the reflective CMLFoo naming for every tag.
+	 */
+	@Test
+	public void testElementRegistry() {
+		Assert.assertEquals("tags", 118, CMLElementRegistry.getTags().size());
+		for (String tag : CMLElementRegistry.getTags()) {
+			CMLElement element = CMLElementRegistry.createElement(tag);
+			Assert.assertNotNull(tag, element);
+			Assert.assertEquals(tag, CMLConstants.ELEMENT_CLASS_BASE + "."
+					+ CMLUtil.makeCMLName(tag), element.getClass().getName());
+			Assert.assertEquals(tag, tag, element.getLocalName());
+		}
+		Assert.assertNull("unknown", CMLElementRegistry.createElement("inchi"));
+		Assert.assertFalse("unknown", CMLElementRegistry.isRegistered("inchi"));
+		Assert.assertTrue("atom", CMLElementRegistry.isRegistered("atom"));
+	}
+
+	/**
+	 * parses independent documents on many threads at once.
+	 * each CMLBuilder has its own factory so element stacks cannot interleave.
+	 * @throws Exception
+	 */
+	@Test
+	public void testConcurrentParsing() throws Exception {
+		final int nThreads = 8;
+		final int nDocs = 50;
+		ExecutorService executor = Executors.newFixedThreadPool(nThreads);
+		List<Future<Integer>> futures = new ArrayList<Future<Integer>>();
+		for (int t = 0; t < nThreads; t++) {
+			final int thread = t;
+			futures.add(executor.submit(new Callable<Integer>() {
+				public Integer call() throws Exception {
+					int parsed = 0;
+					for (int d = 0; d < nDocs; d++) {
+						String id = "m" + thread + "_" + d;
+						CMLMolecule molecule = (CMLMolecule) new CMLBuilder().parseString(makeMolecule(id, d % 7 + 1));
+						Assert.assertEquals("id", id, molecule.getId());
+						Assert.assertEquals("atoms", d % 7 + 1, molecule.getAtomCount());
+						for (int i = 0; i < molecule.getAtomCount(); i++) {
+							CMLAtom atom = molecule.getAtom(i);
+							Assert.assertEquals("atom id", id + "_a" + i, atom.getId());
+							Assert.assertEquals("parent", molecule, atom.getMolecule());
+							Assert.assertEquals("x3", (double) i, atom.getX3(), 0.0001);
+						}
+						parsed++;
+					}
+					return parsed;
+				}
+			}));
+		}
+		executor.shutdown();
+		Assert.assertTrue("finished", executor.awaitTermination(60, TimeUnit.SECONDS));
+		for (Future<Integer> future : futures) {
+			Assert.assertEquals("documents", nDocs, future.get().intValue());
+		}
+	}
+
+	private static String makeMolecule(String id, int nAtoms) {
+		StringBuilder sb = new StringBuilder();
+		sb.append("<molecule " + CMLConstants.CML_XMLNS + " id='" + id + "'><atomArray>");
+		for (int i = 0; i < nAtoms; i++) {
+			sb.append("<atom id='" + id + "_a" + i + "' elementType='C' x3='" + i + ".0' y3='0.0' z3='0.0'/>");
+		}
+		sb.append("</atomArray></molecule>");
+		return sb.toString();
+	}
+
 }
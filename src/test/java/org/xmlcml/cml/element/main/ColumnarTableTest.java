@@ -0,0 +1,144 @@
+/**
+ *    Copyright 2011 Peter Murray-Rust et. al.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package org.xmlcml.cml.element.main;
+
+import java.io.InputStream;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.junit.Assert;
+import org.junit.Test;
+import org.xmlcml.cml.base.CMLBuilder;
+import org.xmlcml.cml.base.CMLConstants;
+import org.xmlcml.cml.element.CMLArray;
+import org.xmlcml.cml.element.CMLArrayList;
+import org.xmlcml.cml.element.CMLTable;
+import org.xmlcml.cml.element.CMLTable.TableType;
+import org.xmlcml.cml.element.ColumnarTable;
+import org.xmlcml.euclid.Util;
+
+/**
+ * test ColumnarTable
+ * 
+ * @author pm286
+ * 
+ */
+public class ColumnarTableTest extends AbstractTableBase {
+
+	private static CMLTable readTable(String resource) throws Exception {
+		InputStream in = Util.getInputStreamFromResource(resource);
+		try {
+			return (CMLTable) new CMLBuilder().build(in).getRootElement();
+		} finally {
+			in.close();
+		}
+	}
+
+	private void checkTable(String resource, TableType type) throws Exception {
+		CMLTable table = readTable(resource);
+		ColumnarTable columns = table.createColumnarTable();
+		Assert.assertEquals("type", type, columns.getTableType());
+		Assert.assertEquals("rows", 3, columns.getRowCount());
+		Assert.assertEquals("columns", 2, columns.getColumnCount());
+		Assert.assertEquals("d", 0, columns.indexOf("d"));
+		Assert.assertEquals("s", 1, columns.indexOf("s"));
+		Assert.assertEquals("dataType", CMLConstants.XSD_DOUBLE, columns.getDataType(0));
+		Assert.assertArrayEquals("d", new double[] {1, 2, 3}, columns.getDoubleColumn(0), 0.0);
+		Assert.assertArrayEquals("s", new int[] {0, 1, 2}, columns.getCodeColumn(1));
+		Assert.assertEquals("s", "b", columns.getString(1, 1));
+		Assert.assertEquals("code", 2, columns.getCode(1, "c"));
+		Assert.assertEquals("code", -1, columns.getCode(1, "z"));
+		try {
+			columns.getIntColumn(0);
+			Assert.fail("should throw");
+		} catch (RuntimeException e) {
+		}
+
+		columns.setDouble(2, 0, 3.5);
+		columns.setString(0, 1, "c");
+		Assert.assertTrue("dirty", columns.isDirty());
+		ColumnarTable reread = table.createColumnarTable();
+		Assert.assertEquals("not flushed", 3.0, reread.getDouble(2, 0), 0.0);
+		columns.flush();
+		Assert.assertFalse("dirty", columns.isDirty());
+		reread = table.createColumnarTable();
+		Assert.assertEquals("flushed", 3.5, reread.getDouble(2, 0), 0.0);
+		Assert.assertEquals("flushed", "c", reread.getString(0, 1));
+		Assert.assertEquals("flushed", "b", reread.getString(1, 1));
+		Assert.assertEquals("dictionary", 2, reread.getDictionary(1).size());
+		try {
+			reread.getDictionary(1).add("d");
+			Assert.fail("dictionary should be read-only");
+		} catch (UnsupportedOperationException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void testColumnBased() throws Exception {
+		checkTable(COLUMN_TABLE1_XML, TableType.COLUMN_BASED);
+	}
+
+	@Test
+	public void testContentBased() throws Exception {
+		checkTable(CONTENT_TABLE1_XML, TableType.CONTENT_BASED);
+	}
+
+	@Test
+	public void testRowBased() throws Exception {
+		checkTable(ROW_TABLE1_XML, TableType.ROW_BASED);
+	}
+
+	@Test
+	public void testProject() throws Exception {
+		CMLTable table = readTable(COLUMN_TABLE1_XML);
+		ColumnarTable columns = table.createColumnarTable();
+		ColumnarTable projection = columns.project(new int[] {1});
+		Assert.assertEquals("columns", 1, projection.getColumnCount());
+		Assert.assertEquals("s", "s", projection.getTitle(0));
+		projection.setString(2, 0, "x");
+		Assert.assertEquals("shared", "x", columns.getString(2, 1));
+		projection.flush();
+		Assert.assertEquals("flushed", "x", table.createColumnarTable().getString(2, 1));
+	}
+
+	@Test
+	public void testDateColumn() throws Exception {
+		DateTime d1 = new DateTime(2011, 1, 1, 0, 0, 0, 0, DateTimeZone.UTC);
+		DateTime d2 = new DateTime(2011, 1, 2, 0, 0, 0, 0, DateTimeZone.UTC);
+		CMLArray array = new CMLArray(CMLConstants.XSD_DATE);
+		array.append(d1);
+		array.append(d2);
+		array.append(d1);
+		CMLArrayList arrayList = new CMLArrayList();
+		arrayList.addArray(array);
+		CMLTable table = new CMLTable();
+		table.setTableType(TableType.COLUMN_BASED);
+		table.appendChild(arrayList);
+		ColumnarTable columns = table.createColumnarTable();
+		Assert.assertEquals("rows", 3, columns.getRowCount());
+		Assert.assertEquals("dataType", CMLConstants.XSD_DATE, columns.getDataType(0));
+		Assert.assertArrayEquals("codes", new int[] {0, 1, 0}, columns.getCodeColumn(0));
+		Assert.assertEquals("date", d2.toString(), columns.getString(1, 0));
+		columns.setString(1, 0, d1.toString());
+		columns.flush();
+		Assert.assertEquals("dataType kept", CMLConstants.XSD_DATE, array.getDataType());
+		ColumnarTable reread = table.createColumnarTable();
+		Assert.assertEquals("flushed", d1.toString(), reread.getString(1, 0));
+		Assert.assertEquals("dictionary", 1, reread.getDictionary(0).size());
+	}
+}
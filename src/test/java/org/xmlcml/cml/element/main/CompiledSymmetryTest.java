@@ -0,0 +1,135 @@
+/**
+ *    Copyright 2011 Peter Murray-Rust et. al.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package org.xmlcml.cml.element.main;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.xmlcml.cml.element.CMLSymmetry;
+import org.xmlcml.cml.element.CMLTransform3;
+import org.xmlcml.cml.element.CompiledSymmetry;
+import org.xmlcml.euclid.Point3;
+
+/**
+ * test CompiledSymmetry
+ * 
+ * @author pm286
+ * 
+ */
+public class CompiledSymmetryTest {
+
+	private final static int[][] PERMUTATIONS = {
+		{0, 1, 2}, {0, 2, 1}, {1, 0, 2}, {1, 2, 0}, {2, 0, 1}, {2, 1, 0},
+	};
+
+	private final static double[][] F_CENTRING = {
+		{0, 0, 0}, {0, 0.5, 0.5}, {0.5, 0, 0.5}, {0.5, 0.5, 0},
+	};
+
+	/** Fm-3m: all 48 signed permutations with 4 centring translations */
+	private List<CMLTransform3> makeFm3m() {
+		List<CMLTransform3> trList = new ArrayList<CMLTransform3>();
+		for (double[] t : F_CENTRING) {
+			for (int[] perm : PERMUTATIONS) {
+				for (int signs = 0; signs < 8; signs++) {
+					double[] dd = new double[16];
+					for (int row = 0; row < 3; row++) {
+						dd[4 * row + perm[row]] = ((signs >> row) & 1) == 0 ? 1 : -1;
+						dd[4 * row + 3] = t[row];
+					}
+					dd[15] = 1;
+					trList.add(new CMLTransform3(dd));
+				}
+			}
+		}
+		return trList;
+	}
+
+	@Test
+	public void testSpaceGroup() {
+		List<CMLTransform3> trList = makeFm3m();
+		CMLSymmetry symmetry = new CMLSymmetry(trList);
+		CompiledSymmetry compiled = symmetry.compile();
+		Assert.assertEquals("size", 192, compiled.size());
+		Assert.assertTrue("space group", compiled.isSpaceGroup());
+		Assert.assertTrue("space group", symmetry.isSpaceGroup());
+		// centring translations sum to lattice vectors
+		Assert.assertFalse("group", compiled.isGroup());
+		trList.remove(100);
+		Assert.assertFalse("space group", new CMLSymmetry(trList).isSpaceGroup());
+	}
+
+	@Test
+	public void testIndexOf() {
+		CMLSymmetry symmetry = CMLSymmetry.createFromXYZStrings(makeP21c());
+		CompiledSymmetry compiled = symmetry.compile();
+		Assert.assertEquals("index", 1, compiled.indexOf(new CMLTransform3("-x, y+1/2, -z+1/2"), false));
+		Assert.assertEquals("index", -1, compiled.indexOf(new CMLTransform3("-x, y-1/2, -z+1/2"), false));
+		Assert.assertEquals("index", 1, compiled.indexOf(new CMLTransform3("-x, y-1/2, -z+1/2"), true));
+		Assert.assertEquals("index", -1, compiled.indexOf(new CMLTransform3("y, x, z"), true));
+		Assert.assertArrayEquals("translation", new int[] { 0, 12, 12 }, compiled.getTranslation(1));
+	}
+
+	private List<String> makeP21c() {
+		List<String> xyz = new ArrayList<String>();
+		xyz.add("x, y, z");
+		xyz.add("-x, y+1/2, -z+1/2");
+		xyz.add("-x, -y, -z");
+		xyz.add("x, -y+1/2, z+1/2");
+		return xyz;
+	}
+
+	@Test
+	public void testTransformAndMultiplicity() {
+		CMLSymmetry symmetry = new CMLSymmetry(makeFm3m());
+		CompiledSymmetry compiled = symmetry.compile();
+		double[] xyz = { 0.0, 0.0, 0.0, 0.11, 0.23, 0.37, 0.25, 0.25, 0.25, 0.0, 0.25, 0.25 };
+		double[] transformed = compiled.transform(xyz);
+		Assert.assertEquals("length", 192 * 12, transformed.length);
+		List<CMLTransform3> trList = symmetry.getTransform3Elements().getList();
+		for (int op = 0; op < trList.size(); op += 17) {
+			Point3 p = trList.get(op).transform(new Point3(0.11, 0.23, 0.37));
+			int k = 3 * (op * 4 + 1);
+			Assert.assertEquals("x", p.getArray()[0], transformed[k], 1.0e-12);
+			Assert.assertEquals("y", p.getArray()[1], transformed[k + 1], 1.0e-12);
+			Assert.assertEquals("z", p.getArray()[2], transformed[k + 2], 1.0e-12);
+		}
+		// site symmetries of Fm-3m 4a, general, 8c, 24d
+		Assert.assertArrayEquals("multiplicities", new int[] { 48, 1, 24, 8 },
+				compiled.getSpaceGroupMultiplicities(xyz, CompiledSymmetry.FRACT_EPS));
+		Assert.assertEquals("multiplicity", 48,
+				symmetry.getSpaceGroupMultiplicity(new Point3(0.0, 0.0, 0.0)));
+		Assert.assertEquals("point group", 48,
+				compiled.getPointGroupMultiplicity(new Point3(0.0, 0.0, 0.0), 0.001));
+	}
+
+	@Test
+	public void testNonCrystallographic() {
+		List<CMLTransform3> trList = new ArrayList<CMLTransform3>();
+		trList.add(new CMLTransform3("x, y, z"));
+		trList.add(new CMLTransform3(2, Math.PI / 5));
+		CMLSymmetry symmetry = new CMLSymmetry(trList);
+		try {
+			symmetry.compile();
+			Assert.fail("should not compile");
+		} catch (RuntimeException e) {
+		}
+		Assert.assertFalse("group", symmetry.isGroup());
+	}
+}
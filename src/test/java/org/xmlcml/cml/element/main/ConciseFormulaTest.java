@@ -0,0 +1,112 @@
+/**
+ *    Copyright 2011 Peter Murray-Rust et. al.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package org.xmlcml.cml.element.main;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.xmlcml.cml.element.CMLFormula;
+import org.xmlcml.cml.element.ConciseFormula;
+
+/**
+ * test ConciseFormula
+ * 
+ * @author pm286
+ * 
+ */
+public class ConciseFormulaTest {
+
+	private final static String[] FORMULAE = {
+		"C 2 H 3 O 2 -1",
+		"C2H4Cl2",
+		"C2 H4 Cl2",
+		"O2 H4 C2",
+		"Na Cl",
+		"H2O",
+		"NH4+",
+		"C6 H5 S O3 -",
+		"Fe 1 +3",
+		"C 1.5 H 3",
+		"Br C Ca Cl N H",
+	};
+
+	@Test
+	public void testParseAgainstCMLFormula() {
+		for (String s : FORMULAE) {
+			CMLFormula formula = CMLFormula.createFormula(s);
+			ConciseFormula cf = ConciseFormula.parse(s);
+			Assert.assertEquals(s, formula.getConcise(), cf.getConcise());
+			Assert.assertEquals(s, formula.getCalculatedMolecularMass(),
+					cf.getCalculatedMolecularMass(), 0.000001);
+			Assert.assertEquals(s, cf, ConciseFormula.create(formula));
+			Assert.assertEquals(s, formula.getConcise(), cf.toCMLFormula().getConcise());
+			Assert.assertEquals(s, cf, ConciseFormula.parse(cf.getConcise()));
+		}
+	}
+
+	@Test
+	public void testBadFormula() {
+		try {
+			ConciseFormula.parse("C 2 Xq 3");
+			Assert.fail("should reject element");
+		} catch (RuntimeException e) {
+			Assert.assertEquals("Bad element (Xq) in: C 2 Xq 3", e.getMessage());
+		}
+	}
+
+	@Test
+	public void testEqualsHashCode() {
+		ConciseFormula f1 = ConciseFormula.parse("C2H6O");
+		ConciseFormula f2 = ConciseFormula.parse("O 1 C 2 H 6");
+		ConciseFormula f3 = ConciseFormula.parse("C2H6O+");
+		Assert.assertEquals("equal", f1, f2);
+		Assert.assertEquals("hash", f1.hashCode(), f2.hashCode());
+		Assert.assertFalse("charge", f1.equals(f3));
+		Assert.assertEquals("concise", "C 2 H 6 O 1 1", f3.getConcise());
+	}
+
+	@Test
+	public void testArithmetic() {
+		ConciseFormula ethanol = ConciseFormula.parse("C2H6O");
+		ConciseFormula water = ConciseFormula.parse("H2O");
+		ConciseFormula ethene = ethanol.getDifference(water);
+		Assert.assertEquals("difference", "C 2 H 4", ethene.getConcise());
+		Assert.assertEquals("difference", ConciseFormula.create(
+				CMLFormula.createFormula("C2H6O").getDifference(
+				CMLFormula.createFormula("H2O"))), ethene);
+		Assert.assertEquals("add", ethanol, ethene.add(water));
+		Assert.assertEquals("negative", "H -2 O -1",
+				ConciseFormula.EMPTY.getDifference(water).getConcise());
+		Assert.assertEquals("negative", "H -2 O -1",
+				ConciseFormula.parse("H -2 O -1", true).getConcise());
+		Assert.assertEquals("multiply", "H 4 O 2", water.multiplyBy(2).getConcise());
+		Assert.assertEquals("total", 9.0, ethanol.getTotalAtomCount(), 0.0);
+	}
+
+	@Test
+	public void testCache() {
+		ConciseFormula.Cache cache = new ConciseFormula.Cache(4);
+		ConciseFormula f1 = cache.get("C2H6O");
+		ConciseFormula f2 = cache.get("C 2 H 6 O 1");
+		Assert.assertSame("interned", f1, f2);
+		Assert.assertSame("cached", f1, cache.get("C2H6O"));
+		for (int i = 1; i < 10; i++) {
+			cache.get("C" + i);
+		}
+		Assert.assertEquals("bounded", 4, cache.size());
+		Assert.assertEquals("reparsed", f1, cache.get("C2H6O"));
+	}
+}
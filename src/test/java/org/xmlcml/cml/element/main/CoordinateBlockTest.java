@@ -0,0 +1,156 @@
+/**
+ *    Copyright 2011 Peter Murray-Rust et. al.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package org.xmlcml.cml.element.main;
+
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.xmlcml.cml.base.CMLBuilder;
+import org.xmlcml.cml.base.CMLElement.CoordinateType;
+import org.xmlcml.cml.element.CMLAtom;
+import org.xmlcml.cml.element.CMLMolecule;
+import org.xmlcml.cml.element.CoordinateBlock;
+import org.xmlcml.euclid.Point3;
+import org.xmlcml.euclid.Transform3;
+
+/**
+ * test CoordinateBlock
+ * 
+ * @author pm286
+ * 
+ */
+public class CoordinateBlockTest {
+
+	private final static String MOL_S = 
+		"<molecule xmlns='http://www.xml-cml.org/schema'>" +
+		"  <atomArray>" +
+		"    <atom id='a1' elementType='C' x3='0.0' y3='0.0' z3='0.0' x2='1.0' y2='2.0'/>" +
+		"    <atom id='a2' elementType='O' x3='1.2' y3='0.0' z3='0.0'/>" +
+		"    <atom id='a3' elementType='H' xFract='0.1' yFract='0.2' zFract='0.3'/>" +
+		"  </atomArray>" +
+		"</molecule>";
+
+	private CMLMolecule parse() throws Exception {
+		return (CMLMolecule) new CMLBuilder().parseString(MOL_S);
+	}
+
+	@Test
+	public void testCreate() throws Exception {
+		CMLMolecule molecule = parse();
+		CoordinateBlock block = molecule.createCoordinateBlock();
+		Assert.assertSame(block, molecule.getCoordinateBlock());
+		Assert.assertEquals(3, block.size());
+		CMLAtom a2 = molecule.getAtom(1);
+		Assert.assertSame(block, a2.getCoordinateBlock());
+		Assert.assertEquals(1, block.indexOf(a2));
+		Assert.assertEquals(1.2, block.get(CoordinateBlock.X3, 1), 0.0);
+		Assert.assertEquals(1.2, a2.getX3(), 0.0);
+		Assert.assertTrue(Double.isNaN(block.get(CoordinateBlock.X2, 1)));
+		Assert.assertTrue(molecule.getAtom(0).hasCoordinates(CoordinateType.TWOD));
+		Assert.assertFalse(a2.hasCoordinates(CoordinateType.TWOD));
+		Assert.assertFalse(molecule.getAtom(2).hasCoordinates(CoordinateType.CARTESIAN));
+		Assert.assertTrue(molecule.getAtom(2).hasCoordinates(CoordinateType.FRACTIONAL));
+		Assert.assertEquals(0.3, molecule.getAtom(2).getZFract(), 0.0);
+		Assert.assertEquals(1.2, molecule.getAtom(0).getDistanceTo(a2), 1.0E-12);
+		Assert.assertTrue(Double.isNaN(
+			molecule.getAtom(0).getSquaredDistanceTo(molecule.getAtom(2))));
+	}
+
+	@Test
+	public void testWriteThrough() throws Exception {
+		CMLMolecule molecule = parse();
+		CoordinateBlock block = molecule.createCoordinateBlock();
+		CMLAtom a1 = molecule.getAtom(0);
+		a1.setXYZ3(new Point3(1.0, 2.0, 3.0));
+		Assert.assertEquals(2.0, block.get(CoordinateBlock.Y3, 0), 0.0);
+		Assert.assertEquals("3.0", a1.getAttributeValue("z3"));
+		block.setXY2(1, 5.0, 6.0);
+		Assert.assertEquals("5.0", molecule.getAtom(1).getAttributeValue("x2"));
+		Assert.assertTrue(molecule.getAtom(1).hasCoordinates(CoordinateType.TWOD));
+		// string setter and routed addAttribute
+		a1.setX3("4.5");
+		Assert.assertEquals(4.5, block.get(CoordinateBlock.X3, 0), 0.0);
+		a1.addAttribute(new nu.xom.Attribute("y3", "-1.5"));
+		Assert.assertEquals(-1.5, a1.getY3(), 0.0);
+		a1.unsetXY2();
+		Assert.assertTrue(Double.isNaN(block.get(CoordinateBlock.X2, 0)));
+		Assert.assertFalse(a1.hasCoordinates(CoordinateType.TWOD));
+		Assert.assertNull(a1.getAttribute("x2"));
+	}
+
+	@Test
+	public void testTransformCartesians() throws Exception {
+		CMLMolecule ref = parse();
+		CMLMolecule molecule = parse();
+		Transform3 t = new Transform3("y, -x, z+1/2");
+		for (CMLAtom atom : ref.getAtoms()) {
+			atom.transformCartesians(t);
+		}
+		molecule.createCoordinateBlock().transformCartesians(t);
+		for (int i = 0; i < 2; i++) {
+			Point3 expected = ref.getAtom(i).getXYZ3();
+			Point3 found = molecule.getAtom(i).getXYZ3();
+			Assert.assertTrue(expected.isEqualTo(found, 1.0E-12));
+		}
+		molecule.releaseCoordinateBlock();
+		Assert.assertNull(molecule.getAtom(1).getCoordinateBlock());
+		Assert.assertNull(molecule.getCoordinateBlock());
+		Assert.assertEquals(ref.getAtom(1).getY3(), molecule.getAtom(1).getY3(), 1.0E-12);
+		Assert.assertNull(molecule.getAtom(2).getXYZ3());
+	}
+
+	@Test
+	public void testCopyNotBound() throws Exception {
+		CMLMolecule molecule = parse();
+		molecule.createCoordinateBlock();
+		CMLMolecule copy = (CMLMolecule) molecule.copy();
+		Assert.assertNull(copy.getCoordinateBlock());
+		Assert.assertNull(copy.getAtom(0).getCoordinateBlock());
+		copy.getAtom(1).setX3(9.0);
+		Assert.assertEquals(1.2, molecule.getAtom(1).getX3(), 0.0);
+	}
+
+	/** conformer-style loop reads the same through block and attributes. */
+	@Test
+	public void testConformerReads() throws Exception {
+		CMLMolecule molecule = new CMLMolecule();
+		for (int i = 0; i < 500; i++) {
+			CMLAtom atom = new CMLAtom("a" + i);
+			atom.setElementType("C");
+			atom.setXYZ3(new Point3(i, i * 0.5, -i));
+			molecule.addAtom(atom);
+		}
+		int loops = 20;
+		double attSum = sumDistances(molecule, loops);
+		molecule.createCoordinateBlock();
+		double blockSum = sumDistances(molecule, loops);
+		Assert.assertEquals(attSum, blockSum, attSum * 1.0E-12);
+	}
+
+	private double sumDistances(CMLMolecule molecule, int loops) {
+		double sum = 0.0;
+		List<CMLAtom> atoms = molecule.getAtoms();
+		CMLAtom atom0 = atoms.get(0);
+		for (int loop = 0; loop < loops; loop++) {
+			for (CMLAtom atom : atoms) {
+				sum += atom.getSquaredDistanceTo(atom0);
+			}
+		}
+		return sum;
+	}
+}
@@ -0,0 +1,88 @@
+/**
+ *    Copyright 2011 Peter Murray-Rust et. al.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package org.xmlcml.cml.element.main;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.xmlcml.cml.element.CMLAtom;
+import org.xmlcml.cml.element.CMLFormula;
+import org.xmlcml.cml.element.CMLMolecule;
+import org.xmlcml.cml.element.FormulaCounter;
+import org.xmlcml.molutil.ChemicalElement.AS;
+
+/**
+ * test FormulaCounter
+ * 
+ * @author pm286
+ * 
+ */
+public class FormulaCounterTest {
+
+	@Test
+	public void testAdd() {
+		FormulaCounter counter = new FormulaCounter();
+		Assert.assertTrue("empty", counter.isEmpty());
+		counter.add("O", 1.0);
+		counter.add("C", 2.0);
+		counter.add("O", 0.5);
+		counter.add("D", 1.0);
+		counter.add("H", 3.0);
+		counter.add("R", 1.0);
+		counter.add("Xx", 2.0);
+		Assert.assertEquals("size", 6, counter.size());
+		Assert.assertArrayEquals("order",
+				new String[] { "O", "C", "D", "H", "R", "Xx" },
+				counter.getElementTypes());
+		Assert.assertArrayEquals("counts",
+				new double[] { 1.5, 2.0, 1.0, 3.0, 1.0, 2.0 },
+				counter.getCounts(), 0.0);
+		Assert.assertEquals("H", 3.0, counter.getCount("H"), 0.0);
+		Assert.assertEquals("D", 1.0, counter.getCount("D"), 0.0);
+		Assert.assertEquals("Xx", 2.0, counter.getCount("Xx"), 0.0);
+		Assert.assertEquals("N", 0.0, counter.getCount("N"), 0.0);
+		Assert.assertEquals("Yy", 0.0, counter.getCount("Yy"), 0.0);
+	}
+
+	@Test
+	public void testAddFormula() {
+		CMLFormula formula = CMLFormula.createFormula("C 2 H 6 O 1");
+		formula.setCount(2.0);
+		FormulaCounter counter = new FormulaCounter(formula);
+		counter.add(new String[] { "O", "N" }, new double[] { 1.0, 1.0 });
+		Assert.assertEquals("C", 4.0, counter.getCount("C"), 0.0);
+		Assert.assertEquals("O", 3.0, counter.getCount("O"), 0.0);
+		Assert.assertEquals("N", 1.0, counter.getCount("N"), 0.0);
+		FormulaCounter total = new FormulaCounter();
+		total.add(counter);
+		total.add(counter);
+		Assert.assertEquals("H", 24.0, total.getCount("H"), 0.0);
+	}
+
+	@Test
+	public void testLargeMolecule() {
+		CMLMolecule molecule = new CMLMolecule();
+		AS[] elements = { AS.C, AS.N, AS.O, AS.S, AS.C };
+		for (int i = 0; i < 10000; i++) {
+			CMLAtom atom = new CMLAtom("a" + i, elements[i % elements.length]);
+			atom.setHydrogenCount(1);
+			molecule.addAtom(atom);
+		}
+		CMLFormula formula = new CMLFormula(molecule);
+		Assert.assertEquals("concise", "C 4000 H 10000 N 2000 O 2000 S 2000",
+				formula.getConcise());
+	}
+}
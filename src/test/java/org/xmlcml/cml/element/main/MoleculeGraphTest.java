@@ -0,0 +1,137 @@
+/**
+ *    Copyright 2011 Peter Murray-Rust et. al.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package org.xmlcml.cml.element.main;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.xmlcml.cml.base.CMLBuilder;
+import org.xmlcml.cml.element.CMLAtom;
+import org.xmlcml.cml.element.CMLBond;
+import org.xmlcml.cml.element.CMLMolecule;
+import org.xmlcml.cml.element.MoleculeGraph;
+import org.xmlcml.molutil.ChemicalElement.AS;
+
+/**
+ * test MoleculeGraph
+ * 
+ * @author pm286
+ * 
+ */
+public class MoleculeGraphTest {
+
+	// cyclopropane a1-a3 with methyl a4 on a1, plus separate a5-a6
+	private final static String MOL_S = 
+		"<molecule xmlns='http://www.xml-cml.org/schema'>" +
+		"  <atomArray>" +
+		"    <atom id='a1' elementType='C'/>" +
+		"    <atom id='a2' elementType='C'/>" +
+		"    <atom id='a3' elementType='C'/>" +
+		"    <atom id='a4' elementType='C'/>" +
+		"    <atom id='a5' elementType='O'/>" +
+		"    <atom id='a6' elementType='H'/>" +
+		"  </atomArray>" +
+		"  <bondArray>" +
+		"    <bond atomRefs2='a1 a2' order='1'/>" +
+		"    <bond atomRefs2='a2 a3' order='1'/>" +
+		"    <bond atomRefs2='a3 a1' order='1'/>" +
+		"    <bond atomRefs2='a1 a4' order='1'/>" +
+		"    <bond atomRefs2='a5 a6' order='1'/>" +
+		"  </bondArray>" +
+		"</molecule>";
+
+	private CMLMolecule parse() throws Exception {
+		return (CMLMolecule) new CMLBuilder().parseString(MOL_S);
+	}
+
+	@Test
+	public void testCSR() throws Exception {
+		CMLMolecule molecule = parse();
+		MoleculeGraph graph = new MoleculeGraph(molecule);
+		Assert.assertEquals(6, graph.getAtomCount());
+		Assert.assertEquals(5, graph.getBondCount());
+		Assert.assertArrayEquals(new int[] {0, 3, 5, 7, 8, 9, 10}, graph.getOffsets());
+		Assert.assertArrayEquals(new int[] {1, 2, 3, 0, 2, 1, 0, 0, 5, 4}, graph.getNeighbours());
+		Assert.assertArrayEquals(new int[] {0, 2, 3, 0, 1, 1, 2, 3, 4, 4}, graph.getBondIndex());
+		Assert.assertEquals(3, graph.getDegree(0));
+		Assert.assertEquals(2, graph.getBondIndex(2, 0));
+		Assert.assertEquals(-1, graph.getBondIndex(1, 3));
+		Assert.assertEquals(0, graph.getBondAtom(3, 0));
+		Assert.assertEquals(3, graph.getBondAtom(3, 1));
+		CMLAtom a4 = molecule.getAtomById("a4");
+		Assert.assertEquals(3, graph.indexOf(a4));
+		Assert.assertSame(a4, graph.getAtom(3));
+		Assert.assertEquals(-1, graph.indexOf(new CMLAtom("a1")));
+	}
+
+	@Test
+	public void testComponentsAndRings() throws Exception {
+		MoleculeGraph graph = new MoleculeGraph(parse());
+		Assert.assertArrayEquals(new int[] {0, 0, 0, 0, 1, 1}, graph.getComponents());
+		Assert.assertEquals(2, graph.getComponentCount());
+		Assert.assertFalse(graph.isConnected());
+		boolean[] cyclic = graph.getCyclicBonds();
+		Assert.assertTrue(cyclic[0]);
+		Assert.assertTrue(cyclic[1]);
+		Assert.assertTrue(cyclic[2]);
+		Assert.assertFalse(cyclic[3]);
+		Assert.assertFalse(cyclic[4]);
+	}
+
+	@Test
+	public void testWriteBack() throws Exception {
+		CMLMolecule molecule = parse();
+		MoleculeGraph graph = new MoleculeGraph(molecule);
+		graph.deleteBond(graph.getBondIndex(1, 2));
+		graph.addBond(3, 4, CMLBond.DOUBLE_D);
+		// snapshot is unchanged until written back
+		Assert.assertEquals(5, molecule.getBondCount());
+		MoleculeGraph graph1 = graph.writeBack();
+		Assert.assertEquals(5, molecule.getBondCount());
+		Assert.assertNull(molecule.getBond(
+			molecule.getAtomById("a2"), molecule.getAtomById("a3")));
+		CMLBond bond = molecule.getBond(
+			molecule.getAtomById("a4"), molecule.getAtomById("a5"));
+		Assert.assertNotNull(bond);
+		Assert.assertEquals(CMLBond.DOUBLE_D, bond.getOrder());
+		Assert.assertTrue(graph1.isConnected());
+		for (boolean cyclic : graph1.getCyclicBonds()) {
+			Assert.assertFalse(cyclic);
+		}
+	}
+
+	/** long chain would overflow a recursive search. */
+	@Test
+	public void testLargeChain() {
+		CMLMolecule molecule = new CMLMolecule();
+		int n = 100000;
+		CMLAtom last = null;
+		for (int i = 0; i < n; i++) {
+			CMLAtom atom = new CMLAtom("a" + i, AS.C);
+			molecule.addAtom(atom);
+			if (last != null) {
+				molecule.addBond(new CMLBond(last, atom));
+			}
+			last = atom;
+		}
+		molecule.addBond(new CMLBond(last, molecule.getAtom(0)));
+		MoleculeGraph graph = new MoleculeGraph(molecule);
+		Assert.assertTrue(graph.isConnected());
+		boolean[] cyclic = graph.getCyclicBonds();
+		Assert.assertTrue(cyclic[0]);
+		Assert.assertTrue(cyclic[n - 1]);
+	}
+}
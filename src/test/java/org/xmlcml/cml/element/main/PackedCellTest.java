@@ -0,0 +1,120 @@
+/**
+ *    Copyright 2011 Peter Murray-Rust et. al.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package org.xmlcml.cml.element.main;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.xmlcml.cml.element.CMLSymmetry;
+import org.xmlcml.cml.element.CompiledSymmetry;
+import org.xmlcml.cml.element.PackedCell;
+
+/**
+ * test PackedCell
+ * 
+ * @author pm286
+ * 
+ */
+public class PackedCellTest {
+
+	private CompiledSymmetry makeP21c() {
+		List<String> xyz = new ArrayList<String>();
+		xyz.add("x, y, z");
+		xyz.add("-x, y+1/2, -z+1/2");
+		xyz.add("-x, -y, -z");
+		xyz.add("x, -y+1/2, z+1/2");
+		return CMLSymmetry.createFromXYZStrings(xyz).compile();
+	}
+
+	@Test
+	public void testPack() {
+		// general position, inversion centre, inversion centre at cell edge
+		double[] asym = {0.1, 0.2, 0.3, 0.0, 0.0, 0.0, 0.5, 0.0, 0.5};
+		PackedCell cell = new PackedCell(makeP21c(), asym);
+		Assert.assertEquals("size", 8, cell.size());
+		Assert.assertArrayEquals("source",
+			new int[] {0, 0, 0, 0, 1, 1, 2, 2}, cell.getSourceIndices());
+		Assert.assertArrayEquals("operator",
+			new int[] {0, 1, 2, 3, 0, 1, 0, 1}, cell.getOperatorIndices());
+		double[] xyz = cell.getXYZ();
+		for (double x : xyz) {
+			Assert.assertTrue("in cell", x >= 0.0 && x < 1.0);
+		}
+		// -x, y+1/2, -z+1/2 applied to (0.1, 0.2, 0.3)
+		Assert.assertEquals("x", 0.9, xyz[3], 1.0E-10);
+		Assert.assertEquals("y", 0.7, xyz[4], 1.0E-10);
+		Assert.assertEquals("z", 0.2, xyz[5], 1.0E-10);
+	}
+
+	@Test
+	public void testPackTolerance() {
+		// close to but not on the inversion centre
+		double[] asym = {0.0002, 0.9999, 0.0};
+		Assert.assertEquals("special", 2, new PackedCell(makeP21c(), asym).size());
+		Assert.assertEquals("general", 4, new PackedCell(makeP21c(), asym, 0.0001).size());
+		try {
+			new PackedCell(makeP21c(), asym, 0.0);
+			Assert.fail("should throw");
+		} catch (RuntimeException e) {
+		}
+	}
+
+	@Test
+	public void testSupercell() {
+		PackedCell cell = new PackedCell(makeP21c(), new double[] {0.1, 0.2, 0.3});
+		double[] xyz = cell.getSupercellXYZ(2, 3, 1);
+		Assert.assertEquals("length", 3 * 4 * 6, xyz.length);
+		// translation (1, 2, 0) is the last block
+		Assert.assertEquals("x", 1.1, xyz[3 * 20], 1.0E-10);
+		Assert.assertEquals("y", 2.2, xyz[3 * 20 + 1], 1.0E-10);
+		Assert.assertEquals("z", 0.3, xyz[3 * 20 + 2], 1.0E-10);
+		try {
+			cell.getSupercellXYZ(0, 1, 1);
+			Assert.fail("should throw");
+		} catch (RuntimeException e) {
+		}
+	}
+
+	@Test
+	public void testParallelPack() {
+		// enough points for several tasks, some on special positions
+		double[] asym = new double[3 * 5000];
+		for (int i = 0; i < asym.length; i++) {
+			// every tenth point at the origin, an inversion centre
+			asym[i] = ((i / 3) % 10 == 0) ? 0.0 : ((i * 37) % 1000) / 1000.0;
+		}
+		PackedCell serial = new PackedCell(makeP21c(), asym);
+		Assert.assertTrue("duplicates removed", serial.size() < 4 * 5000);
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			PackedCell parallel = new PackedCell(makeP21c(), asym,
+				CompiledSymmetry.FRACT_EPS, executor);
+			Assert.assertEquals("size", serial.size(), parallel.size());
+			Assert.assertArrayEquals("xyz", serial.getXYZ(), parallel.getXYZ(), 0.0);
+			Assert.assertArrayEquals("source",
+				serial.getSourceIndices(), parallel.getSourceIndices());
+			Assert.assertArrayEquals("operator",
+				serial.getOperatorIndices(), parallel.getOperatorIndices());
+		} finally {
+			executor.shutdown();
+		}
+	}
+}
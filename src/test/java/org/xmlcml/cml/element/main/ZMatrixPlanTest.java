@@ -0,0 +1,142 @@
+/**
+ *    Copyright 2011 Peter Murray-Rust et. al.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package org.xmlcml.cml.element.main;
+
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.xmlcml.cml.base.CMLUtil;
+import org.xmlcml.cml.element.CMLAtom;
+import org.xmlcml.cml.element.CMLMolecule;
+import org.xmlcml.cml.element.CMLTorsion;
+import org.xmlcml.cml.element.CMLZMatrix;
+import org.xmlcml.cml.element.ZMatrixPlan;
+import org.xmlcml.euclid.Point3;
+
+/**
+ * test ZMatrixPlan
+ * 
+ * @author pm286
+ * 
+ */
+public class ZMatrixPlanTest {
+
+	private final static String MOLECULE_S =
+		"<molecule xmlns='http://www.xml-cml.org/schema'>" +
+		"  <zMatrix>" +
+		"    <length atomRefs2='a2 a1'>1.0</length>" +
+		"    <length atomRefs2='a1 a3'>1.07046</length>" +
+		"    <angle atomRefs3='a2 a1 a3'>90.08384</angle>" +
+		"    <length atomRefs2='a1 a4'>1.07046</length>" +
+		"    <angle atomRefs3='a2 a1 a4'>90.08384</angle>" +
+		"    <torsion atomRefs4='a3 a2 a1 a4'>120.0</torsion>" +
+		"    <length atomRefs2='a1 a5'>1.07046</length>" +
+		"    <angle atomRefs3='a2 a1 a5'>90.08384</angle>" +
+		"    <torsion atomRefs4='a3 a2 a1 a5'>-120.0</torsion>" +
+		"  </zMatrix>" +
+		"  <atomArray>" +
+		"    <atom elementType='C' id='a1'/>" +
+		"    <atom elementType='X' id='a2'/>" +
+		"    <atom elementType='H' id='a3'/>" +
+		"    <atom elementType='H' id='a4'/>" +
+		"    <atom elementType='H' id='a5'/>" +
+		"    <atom elementType='H' id='a6'/>" +
+		"  </atomArray>" +
+		"</molecule>";
+
+	private static CMLMolecule makeMolecule() {
+		return (CMLMolecule) CMLUtil.parseQuietlyIntoCML(MOLECULE_S);
+	}
+
+	private static CMLZMatrix getZMatrix(CMLMolecule molecule) {
+		return (CMLZMatrix) molecule.getChildElements().get(0);
+	}
+
+	private static void assertSameCartesians(CMLMolecule molecule, double[] xyz) {
+		List<CMLAtom> atoms = molecule.getAtoms();
+		for (int i = 0; i < atoms.size(); i++) {
+			Point3 p = atoms.get(i).getXYZ3();
+			if (p == null) {
+				Assert.assertTrue("not placed", Double.isNaN(xyz[3 * i]));
+			} else {
+				for (int j = 0; j < 3; j++) {
+					Assert.assertEquals("xyz", p.getArray()[j], xyz[3 * i + j], 1.0E-10);
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testToCartesians() {
+		CMLMolecule molecule = makeMolecule();
+		ZMatrixPlan plan = getZMatrix(molecule).compile(molecule);
+		Assert.assertEquals("atoms", 6, plan.getAtomCount());
+		Assert.assertEquals("internals", 9, plan.getInternalCount());
+		double[] xyz = plan.toCartesians(plan.getInternals());
+		getZMatrix(molecule).addCartesiansTo(molecule);
+		assertSameCartesians(molecule, xyz);
+	}
+
+	@Test
+	public void testChangedTorsion() {
+		CMLMolecule molecule = makeMolecule();
+		ZMatrixPlan plan = getZMatrix(molecule).compile(molecule);
+		double[] internals = plan.getInternals();
+		internals[8] = -100.0;
+		double[] xyz = plan.toCartesians(internals);
+		CMLTorsion torsion = (CMLTorsion) getZMatrix(molecule).getChildCMLElements(CMLTorsion.TAG).get(1);
+		torsion.setXMLContent(-100.0);
+		getZMatrix(molecule).addCartesiansTo(molecule);
+		assertSameCartesians(molecule, xyz);
+
+		CMLMolecule molecule1 = makeMolecule();
+		plan.setXYZ3(molecule1, xyz);
+		Assert.assertTrue("a5", molecule.getAtomById("a5").getXYZ3().isEqualTo(
+			molecule1.getAtomById("a5").getXYZ3(), 1.0E-10));
+		Assert.assertNull("a6", molecule1.getAtomById("a6").getXYZ3());
+	}
+
+	@Test
+	public void testParallel() throws Exception {
+		CMLMolecule molecule = makeMolecule();
+		ZMatrixPlan plan = getZMatrix(molecule).compile(molecule);
+		double[][] internals = new double[300][];
+		for (int i = 0; i < internals.length; i++) {
+			internals[i] = plan.getInternals();
+			internals[i][7] = i;
+		}
+		double[][] serial = plan.toCartesians(internals);
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			double[][] parallel = plan.toCartesians(internals, executor);
+			Assert.assertEquals("conformers", 300, parallel.length);
+			for (int i = 0; i < serial.length; i++) {
+				Assert.assertArrayEquals("conformer "+i, serial[i], parallel[i], 0.0);
+			}
+		} finally {
+			executor.shutdown();
+		}
+		try {
+			plan.toCartesians(new double[3]);
+			Assert.fail("should throw");
+		} catch (RuntimeException e) {
+		}
+	}
+}